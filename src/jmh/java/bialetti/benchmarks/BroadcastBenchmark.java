@@ -0,0 +1,198 @@
+package bialetti.benchmarks;
+
+import bialetti.annotations.methods.BialettiEndMethod;
+import bialetti.annotations.methods.BialettiHandleMethod;
+import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.server.tcp.BialettiTCPServer;
+import bialetti.server.tcp.BialettiTCPServerClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the fan-out latency of {@link BialettiTCPServer#broadcast(ByteBuffer)}: the time from the start of a
+ * broadcast until every connection has received the whole message
+ * The server multiplexes its clients on event loops, all connections are read by a single selector thread.
+ * @apiNote the 10000 connections run needs a file descriptor limit above 20000
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BroadcastBenchmark {
+    /**
+     * The number of connected clients
+     */
+    @Param({"1000", "10000"})
+    public int connections;
+    /**
+     * The size of the broadcast message in bytes
+     */
+    @Param({"64"})
+    public int messageSize;
+
+    /**
+     * The server under test
+     */
+    private BroadcastServer server;
+    /**
+     * The client side of the connections
+     */
+    private List<SocketChannel> channels;
+    /**
+     * Reads every connection
+     */
+    private Selector selector;
+    /**
+     * Runs the selector
+     */
+    private Thread reader;
+    /**
+     * The number of bytes received by all connections so far
+     */
+    private AtomicLong received;
+    /**
+     * The message broadcast on every invocation
+     */
+    private ByteBuffer message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server   = new BroadcastServer(ExecutionModeBenchmark.freePort());
+        channels = new ArrayList<>(connections);
+        selector = Selector.open();
+        received = new AtomicLong();
+        message  = ByteBuffer.allocateDirect(messageSize);
+
+        server.run();
+
+        for (int i = 0; i < connections; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            channels.add(channel);
+        }
+
+        // Wait for every client to run its init methods
+        while (server.connected.get() < connections) Thread.onSpinWait();
+
+        reader = new Thread(this::read, "reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        reader.interrupt();
+        selector.close();
+        reader.join(1000);
+
+        for (SocketChannel channel : channels) channel.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        long target = received.get() + (long) connections * messageSize;
+
+        server.broadcast(message.clear());
+
+        // Wait for the message to reach every connection
+        while (received.get() < target) Thread.onSpinWait();
+    }
+
+    /**
+     * Reads and counts everything the connections receive
+     */
+    private void read() {
+        ByteBuffer sink = ByteBuffer.allocateDirect(64 * 1024);
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select();
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    int read = ((SocketChannel) key.channel()).read(sink.clear());
+                    if (read > 0) received.addAndGet(read);
+                }
+
+                selector.selectedKeys().clear();
+            }
+        }
+
+        catch (Exception ignored) { }
+    }
+
+    /**
+     * A server that only broadcasts
+     * @author Alessandro-Salerno
+     */
+    public static class BroadcastServer extends BialettiTCPServer<IdleClient> {
+        /**
+         * The number of clients that ran their init methods
+         */
+        final AtomicInteger connected = new AtomicInteger();
+
+        public BroadcastServer(int port) {
+            super(port, Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        protected IdleClient getNewClient(BialettiTCPConnection bialettiTCPConnection) {
+            return new IdleClient(bialettiTCPConnection, this);
+        }
+
+        @Override
+        public void onStart() { }
+        @Override
+        public void onStop() { }
+    }
+
+    /**
+     * A client that ignores everything it receives
+     * @author Alessandro-Salerno
+     */
+    public static class IdleClient extends BialettiTCPServerClient<BroadcastServer> {
+        public IdleClient(BialettiTCPConnection c, BroadcastServer s) {
+            super(c, s);
+        }
+
+        @BialettiHandleMethod
+        public void discard() throws IOException {
+            getConnection().receive();
+        }
+
+        @Override
+        @BialettiInitMethod
+        public void onConnect() { getServer().connected.incrementAndGet(); }
+        @Override
+        @BialettiEndMethod
+        public void onClose() { }
+    }
+}
@@ -0,0 +1,157 @@
+package bialetti.benchmarks;
+
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.exceptions.BialettiCodecException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of turning a message into bytes and back through a {@link BialettiCodec} and through the string
+ * path applications use today (Formatting the message, encoding the string with the default charset, then decoding
+ * and parsing it on the other end)
+ * @apiNote run with -prof gc to compare the bytes allocated per message
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    /**
+     * The message being sent
+     */
+    private Trade trade;
+    /**
+     * The charset of the string path
+     */
+    private Charset charset;
+    /**
+     * The writer of the codec path, reused as a connection's send path would reuse pooled buffers
+     */
+    private BialettiBinaryWriter writer;
+    /**
+     * The message encoded by the codec
+     */
+    private ByteBuffer encoded;
+    /**
+     * The message encoded as a string
+     */
+    private ByteBuffer encodedString;
+
+    @Setup
+    public void setUp() {
+        trade   = new Trade(1_234_567_890L, "BIALETTI", 101.25, 500);
+        charset = Charset.defaultCharset();
+        writer  = new BialettiBinaryWriter();
+
+        Trade.CODEC.encode(trade, writer);
+        encoded       = ByteBuffer.allocateDirect(writer.size()).put(writer.getWritten()).flip();
+        encodedString = charset.encode(trade.format());
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.close();
+    }
+
+    @Benchmark
+    public int encodeString() {
+        return charset.encode(trade.format()).remaining();
+    }
+
+    @Benchmark
+    public int encodeCodec() {
+        Trade.CODEC.encode(trade, writer.reset());
+        return writer.size();
+    }
+
+    @Benchmark
+    public Trade decodeString() {
+        return Trade.parse(charset.decode(encodedString.duplicate()).toString());
+    }
+
+    @Benchmark
+    public Trade decodeCodec() throws BialettiCodecException {
+        return Trade.CODEC.decode(new BialettiBinaryReader(encoded.duplicate()));
+    }
+
+    @Benchmark
+    public Trade roundTripString() {
+        return Trade.parse(charset.decode(charset.encode(trade.format())).toString());
+    }
+
+    @Benchmark
+    public Trade roundTripCodec() throws BialettiCodecException {
+        Trade.CODEC.encode(trade, writer.reset());
+        return Trade.CODEC.decode(new BialettiBinaryReader(writer.getWritten()));
+    }
+
+    /**
+     * A typical small application message
+     * @author Alessandro-Salerno
+     */
+    public static class Trade {
+        /**
+         * Binary codec of trades
+         */
+        static final BialettiCodec<Trade> CODEC = new BialettiCodec<>() {
+            @Override
+            public void encode(Trade message, BialettiBinaryWriter out) {
+                out.writeVarLong(message.id)
+                   .writeString(message.symbol)
+                   .writeDouble(message.price)
+                   .writeVarInt(message.quantity);
+            }
+
+            @Override
+            public Trade decode(BialettiBinaryReader in) throws BialettiCodecException {
+                return new Trade(in.readVarLong(), in.readString(), in.readDouble(), in.readVarInt());
+            }
+        };
+
+        final long id;
+        final String symbol;
+        final double price;
+        final int quantity;
+
+        Trade(long i, String s, double p, int q) {
+            id       = i;
+            symbol   = s;
+            price    = p;
+            quantity = q;
+        }
+
+        /**
+         * @return the trade as text, the way applications send it over the string API
+         */
+        String format() {
+            return id + "," + symbol + "," + price + "," + quantity;
+        }
+
+        /**
+         * @param text a trade as text
+         * @return the trade
+         */
+        static Trade parse(String text) {
+            String[] fields = text.split(",");
+            return new Trade(Long.parseLong(fields[0]), fields[1], Double.parseDouble(fields[2]), Integer.parseInt(fields[3]));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package bialetti.benchmarks;
+
+import bialetti.util.MethodCaller;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls per second of a handle method dispatched through {@link Method#invoke(Object, Object...)},
+ * through {@link MethodCaller} and through a plain virtual call
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    /**
+     * The object on which the method is called
+     */
+    private Target target;
+    /**
+     * The method, for reflective calls
+     */
+    private Method method;
+    /**
+     * The compiled call
+     */
+    private MethodCaller caller;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        target = new Target();
+        method = Target.class.getMethod("handle");
+        caller = new MethodCaller(target, method);
+    }
+
+    @Benchmark
+    public int reflective() throws Exception {
+        method.invoke(target);
+        return target.counter;
+    }
+
+    @Benchmark
+    public int compiled() throws Throwable {
+        caller.call();
+        return target.counter;
+    }
+
+    @Benchmark
+    public int direct() {
+        target.handle();
+        return target.counter;
+    }
+
+    /**
+     * Stand-in for a service with a cheap handle method
+     * @author Alessandro-Salerno
+     */
+    public static class Target {
+        /**
+         * Number of calls so far
+         */
+        int counter;
+
+        public void handle() { counter++; }
+    }
+}
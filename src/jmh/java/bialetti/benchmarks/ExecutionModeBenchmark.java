@@ -0,0 +1,183 @@
+package bialetti.benchmarks;
+
+import bialetti.annotations.methods.BialettiEndMethod;
+import bialetti.annotations.methods.BialettiHandleMethod;
+import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.server.tcp.BialettiTCPServer;
+import bialetti.server.tcp.BialettiTCPServerClient;
+import bialetti.service.BialettiExecutionMode;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares how many connections a {@link BialettiTCPServer} can take on with platform and virtual handler threads
+ * Every invocation opens the given number of connections and waits until all clients have been started.
+ * The secondary results report the number of live OS threads and the used heap once all connections are up.
+ * @apiNote the VIRTUAL runs require Java 21 or newer
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExecutionModeBenchmark {
+    /**
+     * The kind of threads used by the server's clients
+     */
+    @Param({"PLATFORM", "VIRTUAL"})
+    public BialettiExecutionMode mode;
+    /**
+     * The number of connections opened per invocation
+     */
+    @Param({"1000", "5000"})
+    public int connections;
+
+    /**
+     * The server under test
+     */
+    private EchoServer server;
+    /**
+     * The client side of the connections
+     */
+    private List<SocketChannel> channels;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        BialettiExecutionMode.setDefault(mode);
+
+        server   = new EchoServer(freePort());
+        channels = new ArrayList<>(connections);
+        server.run();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        for (SocketChannel channel : channels) channel.close();
+        server.stop();
+
+        BialettiExecutionMode.setDefault(BialettiExecutionMode.PLATFORM);
+    }
+
+    @Benchmark
+    public void connect(Footprint footprint) throws Exception {
+        for (int i = 0; i < connections; i++) {
+            channels.add(SocketChannel.open(new InetSocketAddress("localhost", server.getPort())));
+        }
+
+        // Wait for every client to run its init methods
+        while (server.connected.get() < connections) Thread.onSpinWait();
+
+        footprint.record();
+    }
+
+    /**
+     * Memory and thread footprint of the server once all connections are up
+     * @author Alessandro-Salerno
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        /**
+         * The number of live platform threads
+         */
+        public long osThreads;
+        /**
+         * The used heap in megabytes
+         */
+        public long heapMegabytes;
+
+        /**
+         * Takes a snapshot of the footprint
+         */
+        void record() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+
+            osThreads     = ManagementFactory.getThreadMXBean().getThreadCount();
+            heapMegabytes = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        }
+    }
+
+    /**
+     * A server whose clients echo everything they receive
+     * @author Alessandro-Salerno
+     */
+    public static class EchoServer extends BialettiTCPServer<EchoClient> {
+        /**
+         * The number of clients that ran their init methods
+         */
+        final AtomicInteger connected = new AtomicInteger();
+
+        public EchoServer(int port) {
+            super(port);
+        }
+
+        @Override
+        protected EchoClient getNewClient(BialettiTCPConnection bialettiTCPConnection) {
+            return new EchoClient(bialettiTCPConnection, this);
+        }
+
+        @Override
+        public void onStart() { }
+        @Override
+        public void onStop() { }
+    }
+
+    /**
+     * A client that echoes everything it receives
+     * @author Alessandro-Salerno
+     */
+    public static class EchoClient extends BialettiTCPServerClient<EchoServer> {
+        public EchoClient(BialettiTCPConnection c, EchoServer s) {
+            super(c, s);
+        }
+
+        @BialettiHandleMethod
+        public void echo() throws IOException {
+            String message = getConnection().receive();
+
+            if (!message.isEmpty()) getConnection().send(message);
+            else if (isRunning()) stop();
+        }
+
+        @Override
+        @BialettiInitMethod
+        public void onConnect() { getServer().connected.incrementAndGet(); }
+        @Override
+        @BialettiEndMethod
+        public void onClose() { }
+    }
+
+    /**
+     * @return a port that is currently free
+     * @throws IOException if no port could be found
+     */
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) { return socket.getLocalPort(); }
+    }
+}
@@ -0,0 +1,161 @@
+package bialetti.benchmarks;
+
+import bialetti.connection.tcp.BialettiFlushPolicy;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares messages per second sent over loopback with each {@link BialettiFlushPolicy}
+ * The secondary results count the messages sent and the write calls issued, their ratio is the number of
+ * system calls per message
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlushPolicyBenchmark {
+    /**
+     * The flush policy under test (EXPLICIT flushes every 16 messages)
+     */
+    @Param({"IMMEDIATE", "BATCH_16", "DEADLINE_50US", "EXPLICIT_16"})
+    public String policy;
+    /**
+     * The size of each message in bytes
+     */
+    @Param({"64"})
+    public int messageSize;
+
+    /**
+     * The connection under test
+     */
+    private BialettiTCPConnection connection;
+    /**
+     * Accepts the connection
+     */
+    private ServerSocketChannel listener;
+    /**
+     * Reads and discards everything the connection sends
+     */
+    private Thread drain;
+    /**
+     * The message sent on every invocation
+     */
+    private ByteBuffer message;
+    /**
+     * The number of messages sent since the last explicit flush
+     */
+    private int unflushed;
+    /**
+     * Whether messages are flushed explicitly
+     */
+    private boolean explicit;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        listener   = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        connection = new BialettiTCPConnection("localhost", listener.socket().getLocalPort());
+        message    = ByteBuffer.allocateDirect(messageSize);
+        explicit   = policy.equals("EXPLICIT_16");
+
+        SocketChannel peer = listener.accept();
+        drain = new Thread(() -> {
+            ByteBuffer sink = ByteBuffer.allocateDirect(64 * 1024);
+
+            try {
+                while (peer.read(sink.clear()) != -1) Thread.onSpinWait();
+            }
+
+            catch (IOException ignored) { }
+        }, "drain");
+
+        drain.setDaemon(true);
+        drain.start();
+
+        connection.setFlushPolicy(switch (policy) {
+            case "BATCH_16"      -> BialettiFlushPolicy.batch(16);
+            case "DEADLINE_50US" -> BialettiFlushPolicy.deadline(50);
+            case "EXPLICIT_16"   -> BialettiFlushPolicy.EXPLICIT;
+            default              -> BialettiFlushPolicy.IMMEDIATE;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connection.flush();
+        connection.close();
+        listener.close();
+        drain.join(1000);
+    }
+
+    @Benchmark
+    public void send(Syscalls syscalls) {
+        connection.send(message.clear());
+
+        if (explicit && ++unflushed == 16) {
+            connection.flush();
+            unflushed = 0;
+        }
+
+        syscalls.record(connection);
+    }
+
+    /**
+     * Messages sent and write calls issued during an iteration
+     * @author Alessandro-Salerno
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Syscalls {
+        /**
+         * The number of messages sent
+         */
+        public long messages;
+        /**
+         * The number of write calls issued
+         */
+        public long writes;
+        /**
+         * The connection's write count at the start of the iteration (-1 before the first message)
+         */
+        private long base = -1;
+
+        @Setup(Level.Iteration)
+        public void reset() { base = -1; }
+
+        /**
+         * Accounts for a message
+         * @param connection the connection the message was sent on
+         */
+        void record(BialettiTCPConnection connection) {
+            long count = connection.getWriteCount();
+            if (base < 0) base = count - 1;
+
+            messages++;
+            writes = count - base;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package bialetti.benchmarks;
+
+import bialetti.metrics.BialettiCounter;
+import bialetti.metrics.BialettiHistogram;
+import bialetti.metrics.BialettiMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of what a handler iteration records with metrics disabled and enabled, from several threads
+ * sharing the same metrics
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MetricsBenchmark {
+    /**
+     * Whether metrics are enabled
+     */
+    @Param({"false", "true"})
+    public boolean enabled;
+
+    /**
+     * The shared metrics (null if disabled)
+     */
+    private BialettiMetrics metrics;
+    /**
+     * The latency of the handler (null if disabled)
+     */
+    private BialettiHistogram latency;
+
+    @Setup
+    public void setUp() {
+        metrics = enabled ? new BialettiMetrics("benchmark") : null;
+        latency = enabled ? metrics.histogram("handle") : null;
+    }
+
+    /**
+     * Records a message and the latency of the iteration that handled it, like a connection and a service do
+     * @return the start of the iteration
+     */
+    @Benchmark
+    public long iteration() {
+        BialettiHistogram histogram = latency;
+        long start                  = (histogram != null) ? System.nanoTime() : 0;
+
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) {
+            recorder.add(BialettiCounter.BYTES_IN, 128);
+            recorder.increment(BialettiCounter.MESSAGES_IN);
+        }
+
+        if (histogram != null) histogram.record(System.nanoTime() - start);
+        return start;
+    }
+}
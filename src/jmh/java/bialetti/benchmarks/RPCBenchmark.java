@@ -0,0 +1,153 @@
+package bialetti.benchmarks;
+
+import bialetti.annotations.methods.BialettiEndMethod;
+import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.annotations.methods.BialettiRPCMethod;
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.connection.tcp.rpc.BialettiRPCChannel;
+import bialetti.server.tcp.BialettiRPCServerClient;
+import bialetti.server.tcp.BialettiTCPServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls per second over loopback with different numbers of calls in flight
+ * A depth of 1 waits for every response before sending the next request, so it is bound by the round trip
+ * @author Alessandro-Salerno
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RPCBenchmark {
+    /**
+     * The number of calls sent before waiting for their responses
+     */
+    @Param({"1", "16", "128"})
+    public int depth;
+
+    /**
+     * The number of calls made by each invocation
+     */
+    private static final int CALLS = 128;
+
+    /**
+     * Answers the calls
+     */
+    private EchoServer server;
+    /**
+     * Makes the calls
+     */
+    private BialettiRPCChannel channel;
+    /**
+     * The argument of every call
+     */
+    private ByteBuffer argument;
+    /**
+     * The calls in flight
+     */
+    private CompletableFuture<?>[] window;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EchoServer(ExecutionModeBenchmark.freePort());
+        server.run();
+
+        channel  = new BialettiRPCChannel(new BialettiTCPConnection("localhost", server.getPort()));
+        argument = ByteBuffer.allocate(64);
+        window   = new CompletableFuture<?>[depth];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        channel.close();
+        server.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public void call() {
+        for (int sent = 0; sent < CALLS; sent += depth) {
+            for (int i = 0; i < depth; i++) window[i] = channel.call("echo", argument.clear());
+            for (int i = 0; i < depth; i++) window[i].join();
+        }
+    }
+
+    /**
+     * A server that sends back the arguments of its calls
+     * @author Alessandro-Salerno
+     */
+    public static class EchoServer extends BialettiTCPServer<EchoClient> {
+        /**
+         * Constructor
+         * @param port the port to listen on
+         */
+        public EchoServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public void onStart() { }
+
+        @Override
+        public void onStop() { }
+
+        @Override
+        protected EchoClient getNewClient(BialettiTCPConnection connection) {
+            return new EchoClient(connection, this);
+        }
+    }
+
+    /**
+     * A client of the {@link EchoServer}
+     * @author Alessandro-Salerno
+     */
+    public static class EchoClient extends BialettiRPCServerClient<EchoServer> {
+        /**
+         * Constructor
+         * @param c the connection
+         * @param s the server
+         */
+        public EchoClient(BialettiTCPConnection c, EchoServer s) {
+            super(c, s);
+        }
+
+        @Override
+        @BialettiInitMethod
+        public void onConnect() { }
+
+        @Override
+        @BialettiEndMethod
+        public void onClose() { }
+
+        /**
+         * Sends back the argument
+         * @param in the argument
+         * @param out the result
+         */
+        @BialettiRPCMethod
+        public void echo(BialettiBinaryReader in, BialettiBinaryWriter out) {
+            out.writeRaw(in.readRemaining());
+        }
+    }
+}
@@ -3,37 +3,61 @@ package bialetti;
 import bialetti.annotations.exceptions.BialettiExceptionHandlerMethod;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /*
  * The standard implementation for a BialettiServerExceptionHandler
+ * Handler methods are resolved once per handler class and exception class, walking up the exception's superclasses,
+ * so that onIOException also handles a SocketException
  * @author Alessandro-Salerno
  */
 public abstract class BialettiExceptionHandler {
+    /**
+     * The type every resolved handler is adapted to
+     */
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class,
+                                                                         BialettiExceptionHandler.class,
+                                                                         Throwable.class);
+    /**
+     * Marks exception classes that have no dedicated handler method
+     */
+    private static final MethodHandle NO_HANDLER = MethodHandles.empty(HANDLER_TYPE);
+    /**
+     * Resolved handler methods, per handler class and exception class
+     */
+    private static final ClassValue<Map<Class<?>, MethodHandle>> HANDLERS = new ClassValue<>() {
+        @Override
+        protected Map<Class<?>, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     /**
      * Calls the right handler method for the throwable
      * @param throwable The Exception itself
      */
     public final void raiseException(Throwable throwable) {
-        try {
-            Method handlerMethod = getHandlerMethod(
-                    throwable, BialettiExceptionHandlerMethod.class,
-                    throwable.getClass()
-            );
-
-            // Call handler method
-            handlerMethod.invoke(this, throwable);
-        }
+        MethodHandle handler = HANDLERS.get(getClass())
+                                       .computeIfAbsent(throwable.getClass(), this::resolveHandler);
 
         // What happens if there's no dedicated handler method
-        catch (NoSuchMethodException noSuchMethodException) {
+        if (handler == NO_HANDLER) {
             // Call the generic throwable handler
             onThrowable(throwable);
+            return;
         }
 
+        // Call handler method
+        try { handler.invokeExact(this, throwable); }
+
         // If some other throwable is raised during the process
-        catch (Exception e) {
-            e.printStackTrace();
+        catch (Throwable t) {
+            t.printStackTrace();
         }
     }
 
@@ -62,4 +86,31 @@ public abstract class BialettiExceptionHandler {
     public void onThrowable(Throwable throwable) {
         throw new RuntimeException(throwable);
     }
+
+    /**
+     * Finds the handler method for an exception class, looking at its superclasses as well
+     * @param exceptionClass the exception class
+     * @return the handler, adapted to (BialettiExceptionHandler, Throwable)void, or {@link #NO_HANDLER}
+     */
+    private MethodHandle resolveHandler(Class<?> exceptionClass) {
+        // Throwable itself is handled by onThrowable
+        for (Class<?> c = exceptionClass; c != null && c != Throwable.class; c = c.getSuperclass()) {
+            if (c.getSimpleName().isEmpty()) continue;
+
+            try {
+                Method handlerMethod = getClass().getMethod("on" + c.getSimpleName(), c);
+                if (!handlerMethod.isAnnotationPresent(BialettiExceptionHandlerMethod.class)) continue;
+
+                handlerMethod.trySetAccessible();
+                return MethodHandles.lookup()
+                                    .unreflect(handlerMethod)
+                                    .asType(HANDLER_TYPE);
+            }
+
+            // Try the superclass
+            catch (NoSuchMethodException | IllegalAccessException ignored) { }
+        }
+
+        return NO_HANDLER;
+    }
 }
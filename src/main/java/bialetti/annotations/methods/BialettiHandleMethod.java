@@ -8,6 +8,9 @@ import java.lang.annotation.Target;
 /**
  * Marker annotation
  * Marks a method for continuous execution on a separate thread until the service is terminated
+ * Clients of a server that runs on an event loop group are the exception: their handle methods run on the loop's
+ * selector thread whenever data is received, so they must not block. A handler that blocks (On a lock, a sleep or a
+ * blocking call) stalls every other connection served by the same loop.
  * @apiNote used inside @{@link bialetti.service.BialettiManagedService} child classes
  * @author Alessandro-Salerno
  */
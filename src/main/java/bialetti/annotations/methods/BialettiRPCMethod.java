@@ -0,0 +1,22 @@
+package bialetti.annotations.methods;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as callable through a {@link bialetti.connection.tcp.rpc.BialettiRPCChannel}
+ * The method must be public and take a {@link bialetti.codec.BialettiBinaryReader}, from which it reads the
+ * arguments, and a {@link bialetti.codec.BialettiBinaryWriter}, to which it writes the result
+ * @apiNote used inside {@link bialetti.server.tcp.BialettiRPCServerClient} child classes
+ * @author Alessandro-Salerno
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BialettiRPCMethod {
+    /**
+     * @return the name under which the method is called (The method's own name if empty)
+     */
+    String value() default "";
+}
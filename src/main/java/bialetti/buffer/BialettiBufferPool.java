@@ -0,0 +1,311 @@
+package bialetti.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of direct {@link ByteBuffer}s
+ * Buffers are grouped in size classes (Powers of two between the minimum and the maximum size) and recently released
+ * buffers are kept in a small per-thread cache before going back to the shared pool, so that most acquisitions do not
+ * need any synchronization. Requests larger than the maximum size are served with unpooled buffers.
+ * @apiNote threads that acquire and release buffers at a high rate should be long-lived (Such as event loop threads):
+ * buffers left in the cache of a thread that dies are reclaimed by the garbage collector
+ * @author Alessandro-Salerno
+ */
+public final class BialettiBufferPool {
+    /**
+     * The pool used by Bialetti's connections
+     */
+    private static final BialettiBufferPool DEFAULT = new BialettiBufferPool(256, 64 * 1024, 256, 16);
+    /**
+     * Reports buffers that are garbage collected without being released
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * The base-2 logarithm of the smallest size class
+     */
+    private final int minShift;
+    /**
+     * The base-2 logarithm of the largest size class
+     */
+    private final int maxShift;
+    /**
+     * The maximum number of buffers kept in the cache of each thread, per size class
+     */
+    private final int threadCacheSize;
+    /**
+     * Buffers shared by all threads, per size class
+     */
+    private final ArrayBlockingQueue<ByteBuffer>[] sharedBuffers;
+    /**
+     * Buffers cached by each thread
+     */
+    private final ThreadLocal<ThreadCache> threadCaches;
+    /**
+     * The number of acquisitions served with a pooled buffer
+     */
+    private final LongAdder hits;
+    /**
+     * The number of acquisitions that required a new allocation
+     */
+    private final LongAdder misses;
+    /**
+     * The number of buffers acquired and not released yet
+     */
+    private final LongAdder outstanding;
+    /**
+     * The number of buffers garbage collected without being released
+     */
+    private final LongAdder leaks;
+    /**
+     * Whether buffers are tracked to report leaks
+     */
+    private volatile boolean leakDetection = false;
+
+    /**
+     * Constructor
+     * @param minSize the size of the smallest class (Rounded up to a power of two)
+     * @param maxSize the size of the largest class (Rounded up to a power of two)
+     * @param sharedPerClass the maximum number of buffers kept in the shared pool, per size class
+     * @param cachedPerThread the maximum number of buffers kept in the cache of each thread, per size class
+     * (0 to disable thread caches)
+     * @throws IllegalArgumentException if the sizes are not valid
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public BialettiBufferPool(int minSize,
+                              int maxSize,
+                              int sharedPerClass,
+                              int cachedPerThread) throws IllegalArgumentException {
+        if (minSize <= 0 || maxSize < minSize || maxSize > (1 << 30) || sharedPerClass <= 0 || cachedPerThread < 0) {
+            throw new IllegalArgumentException("Invalid buffer pool configuration");
+        }
+
+        minShift        = shiftFor(minSize);
+        maxShift        = shiftFor(maxSize);
+        threadCacheSize = cachedPerThread;
+        sharedBuffers   = new ArrayBlockingQueue[maxShift - minShift + 1];
+        threadCaches    = ThreadLocal.withInitial(() -> new ThreadCache(sharedBuffers.length, threadCacheSize));
+        hits            = new LongAdder();
+        misses          = new LongAdder();
+        outstanding     = new LongAdder();
+        leaks           = new LongAdder();
+
+        for (int i = 0; i < sharedBuffers.length; i++) {
+            sharedBuffers[i] = new ArrayBlockingQueue<>(sharedPerClass);
+        }
+    }
+
+    /**
+     * Acquires a buffer
+     * @param capacity the minimum capacity of the buffer
+     * @return a cleared buffer whose limit is the requested capacity, with a reference count of 1
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public BialettiPooledBuffer acquire(int capacity) throws IllegalArgumentException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative buffer capacity: " + capacity);
+        }
+
+        int sizeClass = sizeClassOf(capacity);
+        ByteBuffer buffer = null;
+
+        if (sizeClass >= 0) {
+            buffer = threadCaches.get().pop(sizeClass);
+            if (buffer == null) buffer = sharedBuffers[sizeClass].poll();
+        }
+
+        if (buffer != null) hits.increment();
+
+        else {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect((sizeClass >= 0) ? 1 << (sizeClass + minShift) : capacity);
+        }
+
+        buffer.clear().limit(capacity);
+        outstanding.increment();
+
+        return new BialettiPooledBuffer(this, buffer, sizeClass, leakDetection ? new LeakTracker(leaks) : null);
+    }
+
+    /**
+     * Takes a buffer back
+     * @param buffer the buffer
+     * @param sizeClass the size class of the buffer (Negative for unpooled buffers)
+     */
+    void recycle(ByteBuffer buffer, int sizeClass) {
+        outstanding.decrement();
+
+        // Unpooled buffers are left to the garbage collector
+        if (sizeClass < 0) return;
+
+        if (!threadCaches.get().push(sizeClass, buffer)) {
+            sharedBuffers[sizeClass].offer(buffer);
+        }
+    }
+
+    /**
+     * Registers a tracked buffer so that a leak is reported if it is garbage collected
+     * @param owner the buffer
+     * @param tracker the buffer's tracker
+     * @return the registration
+     */
+    static Cleaner.Cleanable register(BialettiPooledBuffer owner, LeakTracker tracker) {
+        return CLEANER.register(owner, tracker);
+    }
+
+    /**
+     * @param capacity a capacity
+     * @return the size class that can hold the capacity, -1 if it is too large to be pooled
+     */
+    private int sizeClassOf(int capacity) {
+        int shift = Math.max(shiftFor(capacity), minShift);
+        return (shift <= maxShift) ? shift - minShift : -1;
+    }
+
+    /**
+     * @param size a size
+     * @return the base-2 logarithm of the smallest power of two that is not less than the size
+     */
+    private static int shiftFor(int size) {
+        return (size <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Enables or disables leak detection
+     * When enabled, every buffer remembers where it was acquired and buffers that are garbage collected without
+     * being released are reported
+     * @apiNote meant for tests, tracking has a cost on every acquisition
+     * @param enabled whether buffers acquired from now on are tracked
+     */
+    public void setLeakDetection(boolean enabled) { leakDetection = enabled; }
+    /**
+     * @return whether leak detection is enabled
+     */
+    public boolean isLeakDetectionEnabled() { return leakDetection; }
+
+    /**
+     * @return the number of acquisitions served with a pooled buffer
+     */
+    public long getHits() { return hits.sum(); }
+    /**
+     * @return the number of acquisitions that required a new allocation
+     */
+    public long getMisses() { return misses.sum(); }
+    /**
+     * @return the fraction of acquisitions served with a pooled buffer
+     */
+    public double getHitRatio() {
+        long hit  = getHits();
+        long miss = getMisses();
+
+        return (hit + miss == 0) ? 0 : (double) hit / (hit + miss);
+    }
+    /**
+     * @return the number of buffers acquired and not released yet
+     */
+    public long getOutstanding() { return outstanding.sum(); }
+    /**
+     * @return the number of buffers garbage collected without being released (Only counted with leak detection)
+     */
+    public long getLeaks() { return leaks.sum(); }
+
+    /**
+     * @return the pool used by Bialetti's connections
+     */
+    public static BialettiBufferPool getDefault() { return DEFAULT; }
+
+    /**
+     * The buffers cached by a thread
+     * @author Alessandro-Salerno
+     */
+    private static final class ThreadCache {
+        /**
+         * The cached buffers, per size class
+         */
+        private final ByteBuffer[][] stacks;
+        /**
+         * The number of cached buffers, per size class
+         */
+        private final int[] counts;
+
+        /**
+         * Constructor
+         * @param classes the number of size classes
+         * @param size the maximum number of buffers per size class
+         */
+        ThreadCache(int classes, int size) {
+            stacks = new ByteBuffer[classes][size];
+            counts = new int[classes];
+        }
+
+        /**
+         * @param sizeClass the size class
+         * @return a cached buffer, null if there is none
+         */
+        ByteBuffer pop(int sizeClass) {
+            if (counts[sizeClass] == 0) return null;
+
+            int top = --counts[sizeClass];
+            ByteBuffer buffer = stacks[sizeClass][top];
+            stacks[sizeClass][top] = null;
+
+            return buffer;
+        }
+
+        /**
+         * @param sizeClass the size class
+         * @param buffer the buffer to be cached
+         * @return whether the buffer was cached
+         */
+        boolean push(int sizeClass, ByteBuffer buffer) {
+            if (counts[sizeClass] == stacks[sizeClass].length) return false;
+
+            stacks[sizeClass][counts[sizeClass]++] = buffer;
+            return true;
+        }
+    }
+
+    /**
+     * Remembers where a buffer was acquired and reports it if it is never released
+     * @author Alessandro-Salerno
+     */
+    static final class LeakTracker implements Runnable {
+        /**
+         * The stack trace of the acquisition
+         */
+        private final Throwable origin;
+        /**
+         * The pool's leak counter
+         */
+        private final LongAdder leaks;
+        /**
+         * Whether the buffer has been released
+         */
+        private volatile boolean released = false;
+
+        /**
+         * Constructor
+         * @param counter the pool's leak counter
+         */
+        LeakTracker(LongAdder counter) {
+            origin = new Throwable("Buffer acquired here");
+            leaks  = counter;
+        }
+
+        /**
+         * Marks the buffer as released
+         */
+        void release() { released = true; }
+
+        @Override
+        public void run() {
+            if (released) return;
+
+            leaks.increment();
+            new IllegalStateException("Pooled buffer garbage collected without being released", origin).printStackTrace();
+        }
+    }
+}
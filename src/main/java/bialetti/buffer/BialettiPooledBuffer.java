@@ -0,0 +1,133 @@
+package bialetti.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A direct {@link ByteBuffer} borrowed from a {@link BialettiBufferPool}
+ * The buffer is reference counted: it goes back to the pool when the last reference is released, after which neither
+ * the buffer nor any view of it may be used
+ * @author Alessandro-Salerno
+ */
+public final class BialettiPooledBuffer implements AutoCloseable {
+    /**
+     * Atomic access to the reference count
+     */
+    private static final AtomicIntegerFieldUpdater<BialettiPooledBuffer> REFERENCES =
+            AtomicIntegerFieldUpdater.newUpdater(BialettiPooledBuffer.class, "references");
+
+    /**
+     * The pool the buffer belongs to
+     */
+    private final BialettiBufferPool pool;
+    /**
+     * The size class of the buffer (Negative if the buffer is not pooled)
+     */
+    private final int sizeClass;
+    /**
+     * Reports the buffer if it is never released (null if leak detection is disabled)
+     */
+    private final BialettiBufferPool.LeakTracker tracker;
+    /**
+     * The registration of the tracker (null if leak detection is disabled)
+     */
+    private final Cleaner.Cleanable cleanable;
+    /**
+     * The buffer itself (null once released)
+     */
+    private ByteBuffer buffer;
+    /**
+     * The number of references to the buffer
+     */
+    private volatile int references = 1;
+
+    /**
+     * Constructor
+     * @param owner the pool the buffer belongs to
+     * @param buff the buffer
+     * @param sClass the size class of the buffer
+     * @param leakTracker the tracker (null if leak detection is disabled)
+     */
+    BialettiPooledBuffer(BialettiBufferPool owner,
+                         ByteBuffer buff,
+                         int sClass,
+                         BialettiBufferPool.LeakTracker leakTracker) {
+        pool      = owner;
+        buffer    = buff;
+        sizeClass = sClass;
+        tracker   = leakTracker;
+        cleanable = (leakTracker != null) ? BialettiBufferPool.register(this, leakTracker) : null;
+    }
+
+    /**
+     * Adds a reference to the buffer
+     * @return the buffer itself
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public BialettiPooledBuffer retain() throws IllegalStateException {
+        int current;
+
+        do {
+            current = references;
+            if (current <= 0) throw new IllegalStateException("The buffer has already been released");
+        } while (!REFERENCES.compareAndSet(this, current, current + 1));
+
+        return this;
+    }
+
+    /**
+     * Removes a reference to the buffer, giving it back to the pool if it was the last one
+     * @return whether the buffer went back to the pool
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public boolean release() throws IllegalStateException {
+        int remaining = REFERENCES.decrementAndGet(this);
+
+        if (remaining > 0) return false;
+        if (remaining < 0) throw new IllegalStateException("The buffer has already been released");
+
+        ByteBuffer released = buffer;
+        buffer = null;
+
+        if (tracker != null) {
+            tracker.release();
+            cleanable.clean();
+        }
+
+        pool.recycle(released, sizeClass);
+        return true;
+    }
+
+    /**
+     * Releases a reference to the buffer
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    @Override
+    public void close() throws IllegalStateException {
+        release();
+    }
+
+    /**
+     * @return the buffer
+     * @throws IllegalStateException if the buffer has already been released
+     */
+    public ByteBuffer getBuffer() throws IllegalStateException {
+        ByteBuffer current = buffer;
+
+        if (current == null || references <= 0) {
+            throw new IllegalStateException("The buffer has already been released");
+        }
+
+        return current;
+    }
+
+    /**
+     * @return the number of references to the buffer
+     */
+    public int getReferenceCount() { return Math.max(0, references); }
+    /**
+     * @return the pool the buffer belongs to
+     */
+    public BialettiBufferPool getPool() { return pool; }
+}
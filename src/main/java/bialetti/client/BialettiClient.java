@@ -2,9 +2,12 @@ package bialetti.client;
 
 import bialetti.annotations.methods.BialettiEndMethod;
 import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.connection.BialettiSocketOptions;
 import bialetti.exceptions.BialettiNullAddressException;
 import bialetti.service.BialettiRunnableService;
 
+import java.util.Objects;
+
 /**
  * A Bialetti Client
  * @author Alessandro-Salerno
@@ -18,6 +21,10 @@ public abstract class BialettiClient extends BialettiRunnableService {
      * The port of the target server
      */
     private final int serverPort;
+    /**
+     * The options of the client's socket
+     */
+    private final BialettiSocketOptions socketOptions;
 
     /**
      * Constructor
@@ -26,6 +33,17 @@ public abstract class BialettiClient extends BialettiRunnableService {
      * @throws BialettiNullAddressException if the address is null
      */
     public BialettiClient(String address, int port) throws BialettiNullAddressException {
+        this(address, port, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * @param address the host address
+     * @param port the port
+     * @param options the options of the client's socket
+     * @throws BialettiNullAddressException if the address is null
+     */
+    public BialettiClient(String address, int port, BialettiSocketOptions options) throws BialettiNullAddressException {
         if (address == null) {
             // Throw an exception if the address is null
             throw new BialettiNullAddressException();
@@ -33,6 +51,7 @@ public abstract class BialettiClient extends BialettiRunnableService {
 
         serverAddress = address;
         serverPort    = port;
+        socketOptions = Objects.requireNonNull(options);
     }
 
     /**
@@ -54,4 +73,8 @@ public abstract class BialettiClient extends BialettiRunnableService {
      * @return the port of the target server
      */
     public int getServerPort() { return serverPort; }
+    /**
+     * @return the options of the client's socket
+     */
+    public BialettiSocketOptions getSocketOptions() { return socketOptions; }
 }
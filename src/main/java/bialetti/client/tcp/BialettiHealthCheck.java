@@ -0,0 +1,23 @@
+package bialetti.client.tcp;
+
+import bialetti.connection.tcp.BialettiTCPConnection;
+
+/**
+ * Probes the idle connections of a {@link BialettiTCPClientPool}
+ * @author Alessandro-Salerno
+ */
+@FunctionalInterface
+public interface BialettiHealthCheck {
+    /**
+     * Only checks that the socket is still connected and open both ways
+     */
+    BialettiHealthCheck CONNECTED = BialettiTCPClientPool::isConnected;
+
+    /**
+     * Probes a connection (Such as by sending a ping and waiting for the answer)
+     * @param connection the connection, which nobody else is using during the probe
+     * @return whether the connection can still be used
+     * @throws Exception if the probe fails, which counts as unhealthy
+     */
+    boolean isHealthy(BialettiTCPConnection connection) throws Exception;
+}
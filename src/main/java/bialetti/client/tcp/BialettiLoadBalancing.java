@@ -0,0 +1,16 @@
+package bialetti.client.tcp;
+
+/**
+ * How a {@link BialettiTCPClientPool} chooses the endpoint of each borrowed connection
+ * @author Alessandro-Salerno
+ */
+public enum BialettiLoadBalancing {
+    /**
+     * Endpoints take turns
+     */
+    ROUND_ROBIN,
+    /**
+     * The endpoint with the fewest borrowed connections is chosen, which favours the endpoints that answer fastest
+     */
+    LEAST_IN_FLIGHT
+}
@@ -1,9 +1,16 @@
 package bialetti.client.tcp;
 
 import bialetti.client.BialettiClient;
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.connection.tcp.BialettiIdleMonitor;
+import bialetti.connection.tcp.BialettiIdlePolicy;
+import bialetti.connection.tcp.BialettiIdleState;
 import bialetti.connection.tcp.BialettiTCPConnection;
 import bialetti.exceptions.BialettiIllegalOperationException;
 import bialetti.exceptions.BialettiNullAddressException;
+import bialetti.service.BialettiServiceState;
+
+import java.util.Objects;
 
 /**
  * A Bialetti TCP Client
@@ -14,6 +21,22 @@ public abstract class BialettiTCPClient extends BialettiClient {
      * The connection to the server
      */
     private BialettiTCPConnection connection;
+    /**
+     * The number of queued bytes at which the connection becomes writable again
+     */
+    private long lowWatermark = BialettiTCPConnection.DEFAULT_LOW_WATERMARK;
+    /**
+     * The number of queued bytes at which the connection stops being writable
+     */
+    private long highWatermark = BialettiTCPConnection.DEFAULT_HIGH_WATERMARK;
+    /**
+     * The idle timeouts and heartbeats of the connection
+     */
+    private BialettiIdlePolicy idlePolicy = BialettiIdlePolicy.NONE;
+    /**
+     * Watches the connection for inactivity (null if the client has no idle policy)
+     */
+    private BialettiIdleMonitor idleMonitor;
 
     /**
      * Constructor
@@ -27,12 +50,25 @@ public abstract class BialettiTCPClient extends BialettiClient {
     }
 
     /**
-     * Stops the client
+     * Constructor
+     *
+     * @param address the host address
+     * @param port    the port
+     * @param options the options of the client's socket
+     * @throws BialettiNullAddressException if the address is null
+     */
+    public BialettiTCPClient(String address, int port, BialettiSocketOptions options) throws BialettiNullAddressException {
+        super(address, port, options);
+    }
+
+    /**
+     * Closes the connection to the server
+     * @throws RuntimeException if the connection could not be closed
      */
     @Override
-    public void stop() throws RuntimeException,
-                              BialettiIllegalOperationException {
-        super.stop();
+    protected void unblock() throws RuntimeException {
+        super.unblock();
+        if (idleMonitor != null) idleMonitor.stop();
 
         try { connection.close(); }
         catch (Exception e) {
@@ -46,7 +82,19 @@ public abstract class BialettiTCPClient extends BialettiClient {
      */
     @Override
     public void run() throws RuntimeException {
-        try { connection = new BialettiTCPConnection(getServerAddress(), getServerPort());  }
+        try {
+            connection = new BialettiTCPConnection(getServerAddress(), getServerPort(), getSocketOptions());
+
+            connection.setWatermarks(lowWatermark, highWatermark);
+            connection.setWritabilityListener(this::onWritabilityChanged);
+            connection.setMetrics(getMetrics());
+
+            if (idlePolicy.isEnabled()) {
+                idleMonitor = new BialettiIdleMonitor(connection, idlePolicy, this::onIdle);
+                idleMonitor.start();
+            }
+        }
+
         catch (Exception e) {
             // Throw exception
             throw new RuntimeException(e);
@@ -55,8 +103,80 @@ public abstract class BialettiTCPClient extends BialettiClient {
         super.run();
     }
 
+    /**
+     * What happens when the data waiting to be sent to the server crosses one of the connection's watermarks
+     * Producers can use this to defer or shed messages instead of blocking
+     * @apiNote runs on the thread whose send or write crossed the watermark, and should not block. The default
+     * implementation does nothing
+     * @param writable false once the queued bytes reach the high watermark, true once they fall to the low one
+     */
+    public void onWritabilityChanged(boolean writable) { }
+
+    /**
+     * What happens when the connection has been idle for one of the client's idle timeouts
+     * The default implementation stops the client, which closes the connection and runs its end methods
+     * @apiNote runs on a thread shared by the idle monitors, never on the timer's, so it may block
+     * @see #setIdlePolicy(BialettiIdlePolicy)
+     * @param state the kind of inactivity
+     */
+    public void onIdle(BialettiIdleState state) {
+        try { if (isRunning()) stop(); }
+
+        // Somebody else stopped it first
+        catch (BialettiIllegalOperationException ignored) { }
+    }
+
+    /**
+     * Sets the watermarks of the connection's outbound queue
+     * @see BialettiTCPConnection#setWatermarks(long, long)
+     * @param low the number of queued bytes at which the connection becomes writable again
+     * @param high the number of queued bytes at which the connection stops being writable
+     * @throws BialettiIllegalOperationException if the client has already been started
+     * @throws IllegalArgumentException if the low watermark is negative or greater than the high one
+     */
+    public void setWatermarks(long low, long high) throws BialettiIllegalOperationException,
+                                                          IllegalArgumentException {
+        ensureNotStarted();
+        if (low < 0 || low > high) throw new IllegalArgumentException("The watermarks must satisfy 0 <= low <= high");
+
+        lowWatermark  = low;
+        highWatermark = high;
+    }
+
+    /**
+     * Sets the idle timeouts and heartbeats of the connection
+     * The client is told when the connection has been idle for a timeout through {@link #onIdle(BialettiIdleState)}
+     * @param policy the timeouts and heartbeat interval ({@link BialettiIdlePolicy#NONE} to disable them)
+     * @throws BialettiIllegalOperationException if the client has already been started
+     */
+    public void setIdlePolicy(BialettiIdlePolicy policy) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        idlePolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * @throws BialettiIllegalOperationException if the client has already been started
+     */
+    private void ensureNotStarted() throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Client \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+    }
+
     /**
      * @return the client's {@link BialettiTCPConnection}
      */
     public BialettiTCPConnection getConnection() { return connection; }
+    /**
+     * @return the number of queued bytes at which the connection becomes writable again
+     */
+    public long getLowWatermark() { return lowWatermark; }
+    /**
+     * @return the number of queued bytes at which the connection stops being writable
+     */
+    public long getHighWatermark() { return highWatermark; }
+    /**
+     * @return the idle timeouts and heartbeats of the connection
+     */
+    public BialettiIdlePolicy getIdlePolicy() { return idlePolicy; }
 }
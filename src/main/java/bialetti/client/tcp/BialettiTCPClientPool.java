@@ -0,0 +1,974 @@
+package bialetti.client.tcp;
+
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.exceptions.BialettiIllegalOperationException;
+import bialetti.exceptions.BialettiNullAddressException;
+import bialetti.exceptions.BialettiPoolExhaustedException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps warm TCP connections to one or more endpoints, which callers borrow and give back instead of connecting
+ * Connections are opened when needed, up to a maximum per endpoint, and the ones left idle for too long are closed
+ * down to a minimum per endpoint. A background thread probes idle connections, reconnects to endpoints that failed
+ * and keeps the minimum open. Endpoints that cannot be reached are skipped until they recover, unless none can.
+ * @apiNote a borrowed connection belongs to its borrower until the {@link Lease} is closed, and must be left ready
+ * for the next borrower (No unread responses)
+ * @author Alessandro-Salerno
+ */
+public class BialettiTCPClientPool implements AutoCloseable {
+    /**
+     * The minimum number of connections per endpoint unless another one is given
+     */
+    public static final int DEFAULT_MIN_CONNECTIONS = 1;
+    /**
+     * The maximum number of connections per endpoint unless another one is given
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    /**
+     * How long connections stay idle before being closed unless another time is given, in milliseconds
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60_000;
+    /**
+     * How often the background thread runs unless another interval is given, in milliseconds
+     */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 5_000;
+    /**
+     * How long borrowers wait for a connection unless another time is given, in milliseconds
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT = 5_000;
+
+    /**
+     * The endpoints
+     */
+    private final Endpoint[] endpoints;
+    /**
+     * The options of the pool's sockets
+     */
+    private final BialettiSocketOptions socketOptions;
+    /**
+     * Guards the state of the endpoints
+     */
+    private final ReentrantLock lock;
+    /**
+     * Signalled when a connection is given back or a slot frees up
+     */
+    private final Condition available;
+    /**
+     * Signalled when the pool is closed, to wake the background thread
+     */
+    private final Condition closing;
+    /**
+     * The index of the endpoint the next round robin selection starts from
+     */
+    private int nextEndpoint = 0;
+    /**
+     * Probes, evicts and reconnects in the background (null until the pool is opened)
+     */
+    private Thread maintenance;
+    /**
+     * A boolean that tells whether the pool has been opened
+     */
+    private volatile boolean opened = false;
+    /**
+     * A boolean that tells whether the pool has been closed
+     */
+    private volatile boolean closed = false;
+    /**
+     * How borrowed connections are spread over the endpoints
+     */
+    private BialettiLoadBalancing loadBalancing = BialettiLoadBalancing.LEAST_IN_FLIGHT;
+    /**
+     * The minimum number of connections per endpoint
+     */
+    private int minConnections = DEFAULT_MIN_CONNECTIONS;
+    /**
+     * The maximum number of connections per endpoint
+     */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /**
+     * How long connections stay idle before being closed, in nanoseconds
+     */
+    private long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT);
+    /**
+     * How often the background thread runs, in nanoseconds
+     */
+    private long healthCheckIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_HEALTH_CHECK_INTERVAL);
+    /**
+     * How long borrowers wait for a connection, in nanoseconds
+     */
+    private long borrowTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BORROW_TIMEOUT);
+    /**
+     * Probes idle connections
+     */
+    private BialettiHealthCheck healthCheck = BialettiHealthCheck.CONNECTED;
+    /**
+     * Prepares every new connection (Such as by setting its framing)
+     */
+    private Consumer<BialettiTCPConnection> initializer = connection -> { };
+
+    /**
+     * Constructor
+     * @param address the host address of the server
+     * @param port the port of the server
+     * @throws BialettiNullAddressException if the address is null
+     */
+    public BialettiTCPClientPool(String address, int port) throws BialettiNullAddressException {
+        this(address, port, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * @param address the host address of the server
+     * @param port the port of the server
+     * @param options the options of the pool's sockets
+     * @throws BialettiNullAddressException if the address is null
+     */
+    public BialettiTCPClientPool(String address, int port, BialettiSocketOptions options) throws BialettiNullAddressException {
+        this(List.of(unresolved(address, port)), options);
+    }
+
+    /**
+     * Constructor
+     * @param servers the endpoints (Unresolved addresses are resolved on every connection)
+     * @param options the options of the pool's sockets
+     * @throws BialettiNullAddressException if an endpoint is null
+     * @throws IllegalArgumentException if there are no endpoints
+     */
+    public BialettiTCPClientPool(List<InetSocketAddress> servers, BialettiSocketOptions options) throws BialettiNullAddressException,
+                                                                                                       IllegalArgumentException {
+        if (servers.isEmpty()) throw new IllegalArgumentException("The pool needs at least one endpoint");
+
+        // Set fields
+        endpoints     = new Endpoint[servers.size()];
+        socketOptions = Objects.requireNonNull(options);
+        lock          = new ReentrantLock();
+        available     = lock.newCondition();
+        closing       = lock.newCondition();
+
+        for (int i = 0; i < endpoints.length; i++) {
+            InetSocketAddress server = servers.get(i);
+            if (server == null) throw new BialettiNullAddressException();
+
+            endpoints[i] = new Endpoint(server);
+        }
+    }
+
+    /**
+     * Opens the minimum number of connections and starts the background thread
+     * Endpoints that cannot be reached are marked as unhealthy instead of failing
+     * @apiNote the first borrow opens the pool if needed
+     */
+    public void open() {
+        lock.lock();
+
+        try {
+            if (opened) return;
+            if (closed) throw new BialettiIllegalOperationException("Pool has already been closed");
+
+            opened      = true;
+            maintenance = new Thread(this::maintain, getClass().getSimpleName() + "-maintenance");
+            maintenance.setDaemon(true);
+        }
+
+        finally { lock.unlock(); }
+
+        for (Endpoint endpoint : endpoints) fill(endpoint);
+        maintenance.start();
+    }
+
+    /**
+     * Borrows a connection, waiting up to the borrow timeout if every endpoint is at its maximum
+     * @return the lease of the connection, to be closed when done
+     * @throws BialettiPoolExhaustedException if no connection becomes available in time
+     * @throws ClosedChannelException if the pool has been closed
+     * @throws IOException if no endpoint can be reached
+     */
+    public Lease borrow() throws IOException {
+        if (!opened) open();
+
+        long deadline = System.nanoTime() + borrowTimeoutNanos;
+
+        while (true) {
+            Endpoint endpoint;
+            BialettiTCPConnection idle = null;
+
+            lock.lock();
+
+            try {
+                endpoint = select();
+
+                while (endpoint == null) {
+                    long left = deadline - System.nanoTime();
+
+                    if (left <= 0) {
+                        throw new BialettiPoolExhaustedException("No connection became available within "
+                                                                 + TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos) + "ms");
+                    }
+
+                    try { available.awaitNanos(left); }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new BialettiPoolExhaustedException("Interrupted while waiting for a connection");
+                    }
+
+                    endpoint = select();
+                }
+
+                // Reserve the connection or the slot for a new one
+                endpoint.inFlight++;
+
+                if (!endpoint.idle.isEmpty()) idle = endpoint.idle.pollFirst().connection;
+                else endpoint.open++;
+            }
+
+            finally { lock.unlock(); }
+
+            if (idle != null) {
+                if (isConnected(idle)) return new Lease(endpoint, idle);
+
+                // Closed while idle, try again
+                discard(endpoint, idle);
+                continue;
+            }
+
+            try { return new Lease(endpoint, connect(endpoint)); }
+            catch (IOException | RuntimeException e) {
+                if (failed(endpoint)) throw e;
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the background thread
+     * Borrowed connections are closed when they are given back
+     */
+    @Override
+    public void close() {
+        List<BialettiTCPConnection> idle = new ArrayList<>();
+        lock.lock();
+
+        try {
+            if (closed) return;
+            closed = true;
+
+            for (Endpoint endpoint : endpoints) {
+                for (Idle entry : endpoint.idle) idle.add(entry.connection);
+
+                endpoint.open -= endpoint.idle.size();
+                endpoint.idle.clear();
+            }
+
+            available.signalAll();
+            closing.signalAll();
+        }
+
+        finally { lock.unlock(); }
+
+        for (BialettiTCPConnection connection : idle) closeQuietly(connection);
+    }
+
+    /**
+     * Chooses the endpoint of the next borrowed connection (Called with the lock held)
+     * Only endpoints with an idle connection or room for a new one are considered, and only healthy ones unless every
+     * endpoint is unhealthy
+     * @return the endpoint, null if every candidate is at its maximum
+     * @throws ClosedChannelException if the pool has been closed
+     */
+    private Endpoint select() throws ClosedChannelException {
+        if (closed) throw new ClosedChannelException();
+
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.healthy) return select(true);
+        }
+
+        return select(false);
+    }
+
+    /**
+     * Chooses among the endpoints with an idle connection or room for a new one (Called with the lock held)
+     * @param healthy whether to only consider healthy endpoints
+     * @return the endpoint, null if there is none
+     */
+    private Endpoint select(boolean healthy) {
+        Endpoint chosen = null;
+        int start       = nextEndpoint;
+
+        for (int i = 0; i < endpoints.length; i++) {
+            int index         = (start + i) % endpoints.length;
+            Endpoint endpoint = endpoints[index];
+
+            if (healthy && !endpoint.healthy) continue;
+            if (endpoint.idle.isEmpty() && endpoint.open >= maxConnections) continue;
+
+            if (loadBalancing == BialettiLoadBalancing.ROUND_ROBIN) {
+                nextEndpoint = Math.floorMod(index + 1, endpoints.length);
+                return endpoint;
+            }
+
+            if (chosen == null || endpoint.inFlight < chosen.inFlight) chosen = endpoint;
+        }
+
+        // Rotate ties between equally loaded endpoints
+        nextEndpoint = Math.floorMod(start + 1, endpoints.length);
+        return chosen;
+    }
+
+    /**
+     * Gives a connection back to its endpoint
+     * @param endpoint the endpoint
+     * @param connection the connection
+     */
+    private void giveBack(Endpoint endpoint, BialettiTCPConnection connection) {
+        lock.lock();
+
+        try {
+            if (!closed) {
+                // Most recently used first, so that the least used ones reach the idle timeout
+                endpoint.inFlight--;
+                endpoint.idle.addFirst(new Idle(connection, System.nanoTime()));
+                available.signal();
+
+                return;
+            }
+        }
+
+        finally { lock.unlock(); }
+
+        discard(endpoint, connection);
+    }
+
+    /**
+     * Closes a borrowed connection and frees its slot
+     * @param endpoint the endpoint
+     * @param connection the connection
+     */
+    private void discard(Endpoint endpoint, BialettiTCPConnection connection) {
+        lock.lock();
+
+        try {
+            endpoint.inFlight--;
+            endpoint.open--;
+            available.signalAll();
+        }
+
+        finally { lock.unlock(); }
+
+        closeQuietly(connection);
+    }
+
+    /**
+     * Frees the slot of a connection that could not be opened and marks its endpoint as unhealthy
+     * @param endpoint the endpoint
+     * @return whether the borrower should give up, because no healthy endpoint is left
+     */
+    private boolean failed(Endpoint endpoint) {
+        lock.lock();
+
+        try {
+            endpoint.inFlight--;
+            endpoint.open--;
+            endpoint.healthy = false;
+            available.signalAll();
+
+            for (Endpoint other : endpoints) {
+                if (other.healthy) return false;
+            }
+
+            return true;
+        }
+
+        finally { lock.unlock(); }
+    }
+
+    /**
+     * Opens a connection to an endpoint
+     * @param endpoint the endpoint
+     * @return the connection, prepared by the initializer
+     * @throws IOException if the connection cannot be established
+     */
+    private BialettiTCPConnection connect(Endpoint endpoint) throws IOException {
+        BialettiTCPConnection connection = new BialettiTCPConnection(endpoint.address.getHostString(),
+                                                                     endpoint.address.getPort(),
+                                                                     socketOptions);
+
+        try { initializer.accept(connection); }
+        catch (RuntimeException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+
+        return connection;
+    }
+
+    /**
+     * Opens connections to an endpoint until it has the minimum, or one fails
+     * @param endpoint the endpoint
+     */
+    private void fill(Endpoint endpoint) {
+        while (true) {
+            lock.lock();
+
+            try {
+                if (closed || endpoint.open >= minConnections) return;
+                endpoint.open++;
+            }
+
+            finally { lock.unlock(); }
+
+            BialettiTCPConnection connection;
+
+            try { connection = connect(endpoint); }
+            catch (IOException | RuntimeException e) {
+                lock.lock();
+
+                try {
+                    endpoint.open--;
+                    endpoint.healthy = false;
+                }
+
+                finally { lock.unlock(); }
+                return;
+            }
+
+            lock.lock();
+
+            try {
+                endpoint.healthy = true;
+
+                if (!closed) {
+                    endpoint.idle.addLast(new Idle(connection, System.nanoTime()));
+                    available.signal();
+                    continue;
+                }
+
+                endpoint.open--;
+            }
+
+            finally { lock.unlock(); }
+
+            closeQuietly(connection);
+            return;
+        }
+    }
+
+    /**
+     * Runs the background tasks every health check interval until the pool is closed
+     */
+    private void maintain() {
+        while (!closed) {
+            lock.lock();
+
+            try {
+                if (closed) return;
+
+                try { closing.awaitNanos(healthCheckIntervalNanos); }
+                catch (InterruptedException e) { return; }
+            }
+
+            finally { lock.unlock(); }
+
+            for (Endpoint endpoint : endpoints) {
+                if (closed) return;
+
+                evict(endpoint);
+                probe(endpoint);
+                recover(endpoint);
+                fill(endpoint);
+            }
+        }
+    }
+
+    /**
+     * Closes the connections of an endpoint that have been idle for too long, down to the minimum
+     * @param endpoint the endpoint
+     */
+    private void evict(Endpoint endpoint) {
+        List<BialettiTCPConnection> expired = new ArrayList<>();
+        long now = System.nanoTime();
+
+        lock.lock();
+
+        try {
+            // The least recently used are at the end
+            while (!endpoint.idle.isEmpty() && endpoint.open > minConnections
+                   && now - endpoint.idle.peekLast().since >= idleTimeoutNanos) {
+                expired.add(endpoint.idle.pollLast().connection);
+                endpoint.open--;
+            }
+        }
+
+        finally { lock.unlock(); }
+
+        for (BialettiTCPConnection connection : expired) closeQuietly(connection);
+    }
+
+    /**
+     * Runs the health check on the idle connections of an endpoint, closing the ones that fail
+     * The endpoint is marked as unhealthy if every probe fails
+     * @param endpoint the endpoint
+     */
+    private void probe(Endpoint endpoint) {
+        List<Idle> probed = new ArrayList<>();
+        lock.lock();
+
+        try {
+            // Taken out of the pool so that nobody borrows them during the probe
+            probed.addAll(endpoint.idle);
+            endpoint.idle.clear();
+        }
+
+        finally { lock.unlock(); }
+
+        if (probed.isEmpty()) return;
+
+        int failures = 0;
+
+        for (Idle entry : probed) {
+            boolean healthy;
+
+            try { healthy = healthCheck.isHealthy(entry.connection); }
+            catch (Exception e) { healthy = false; }
+
+            lock.lock();
+
+            try {
+                // Keep the time it became idle, probes do not count as use
+                if (healthy && !closed) {
+                    endpoint.idle.addLast(entry);
+                    available.signal();
+                    continue;
+                }
+
+                endpoint.open--;
+                available.signalAll();
+            }
+
+            finally { lock.unlock(); }
+
+            if (!healthy) failures++;
+            closeQuietly(entry.connection);
+        }
+
+        if (failures == probed.size()) endpoint.healthy = false;
+    }
+
+    /**
+     * Tries to reconnect to an unhealthy endpoint, which becomes healthy again if it succeeds
+     * @param endpoint the endpoint
+     */
+    private void recover(Endpoint endpoint) {
+        lock.lock();
+
+        try {
+            if (endpoint.healthy || closed || endpoint.open >= maxConnections) return;
+            endpoint.open++;
+        }
+
+        finally { lock.unlock(); }
+
+        BialettiTCPConnection connection;
+
+        try { connection = connect(endpoint); }
+        catch (IOException | RuntimeException e) {
+            lock.lock();
+
+            try { endpoint.open--; }
+            finally { lock.unlock(); }
+            return;
+        }
+
+        lock.lock();
+
+        try {
+            if (!closed) {
+                endpoint.healthy = true;
+                endpoint.idle.addFirst(new Idle(connection, System.nanoTime()));
+                available.signalAll();
+
+                return;
+            }
+
+            endpoint.open--;
+        }
+
+        finally { lock.unlock(); }
+
+        closeQuietly(connection);
+    }
+
+    /**
+     * @param connection a connection
+     * @return whether the connection's socket is still connected and open both ways
+     */
+    static boolean isConnected(BialettiTCPConnection connection) {
+        Socket socket = connection.getSocket();
+        return socket.isConnected() && !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+    }
+
+    /**
+     * Closes a connection, ignoring failures
+     * @param connection the connection
+     */
+    private static void closeQuietly(BialettiTCPConnection connection) {
+        try { connection.close(); }
+        catch (Exception ignored) {
+            // The connection is gone either way
+        }
+    }
+
+    /**
+     * @param address a host address
+     * @param port a port
+     * @return the unresolved endpoint
+     * @throws BialettiNullAddressException if the address is null
+     */
+    private static InetSocketAddress unresolved(String address, int port) throws BialettiNullAddressException {
+        if (address == null) throw new BialettiNullAddressException();
+        return InetSocketAddress.createUnresolved(address, port);
+    }
+
+    /**
+     * Throws an exception if the pool has been opened
+     * @throws BialettiIllegalOperationException if the pool has been opened
+     */
+    private void ensureNotStarted() throws BialettiIllegalOperationException {
+        if (opened || closed) throw new BialettiIllegalOperationException("Pool has already been opened");
+    }
+
+    /**
+     * Sets how borrowed connections are spread over the endpoints
+     * @param policy the policy
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     */
+    public void setLoadBalancing(BialettiLoadBalancing policy) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        loadBalancing = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Sets how many connections each endpoint keeps open
+     * @param min the number of connections kept open even when idle
+     * @param max the maximum number of connections
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     * @throws IllegalArgumentException if the minimum is negative or greater than the maximum, or the maximum is not positive
+     */
+    public void setConnectionBounds(int min, int max) throws BialettiIllegalOperationException,
+                                                             IllegalArgumentException {
+        ensureNotStarted();
+        if (max <= 0) throw new IllegalArgumentException("The maximum must be positive");
+        if (min < 0 || min > max) throw new IllegalArgumentException("The minimum must be between 0 and the maximum");
+
+        minConnections = min;
+        maxConnections = max;
+    }
+
+    /**
+     * Sets how long connections stay idle before being closed (Down to the minimum)
+     * @param timeout the timeout
+     * @param unit the unit of the timeout
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public void setIdleTimeout(long timeout, TimeUnit unit) throws BialettiIllegalOperationException,
+                                                                   IllegalArgumentException {
+        ensureNotStarted();
+        if (timeout < 0) throw new IllegalArgumentException("The timeout cannot be negative");
+
+        idleTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets how often idle connections are probed, evicted and replenished, and unhealthy endpoints retried
+     * @param interval the interval
+     * @param unit the unit of the interval
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public void setHealthCheckInterval(long interval, TimeUnit unit) throws BialettiIllegalOperationException,
+                                                                            IllegalArgumentException {
+        ensureNotStarted();
+        if (interval <= 0) throw new IllegalArgumentException("The interval must be positive");
+
+        healthCheckIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Sets how long borrowers wait for a connection when every endpoint is at its maximum
+     * @param timeout the timeout
+     * @param unit the unit of the timeout
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public void setBorrowTimeout(long timeout, TimeUnit unit) throws BialettiIllegalOperationException,
+                                                                     IllegalArgumentException {
+        ensureNotStarted();
+        if (timeout < 0) throw new IllegalArgumentException("The timeout cannot be negative");
+
+        borrowTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets the probe run on idle connections in the background
+     * @param check the probe
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     */
+    public void setHealthCheck(BialettiHealthCheck check) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        healthCheck = Objects.requireNonNull(check);
+    }
+
+    /**
+     * Sets what is done to every new connection before its first use (Such as setting its framing)
+     * @param action the action
+     * @throws BialettiIllegalOperationException if the pool has already been opened
+     */
+    public void setInitializer(Consumer<BialettiTCPConnection> action) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        initializer = Objects.requireNonNull(action);
+    }
+
+    /**
+     * @return how borrowed connections are spread over the endpoints
+     */
+    public BialettiLoadBalancing getLoadBalancing() { return loadBalancing; }
+    /**
+     * @return the number of connections each endpoint keeps open even when idle
+     */
+    public int getMinConnections() { return minConnections; }
+    /**
+     * @return the maximum number of connections per endpoint
+     */
+    public int getMaxConnections() { return maxConnections; }
+    /**
+     * @return how long connections stay idle before being closed, in milliseconds
+     */
+    public long getIdleTimeout() { return TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos); }
+    /**
+     * @return how often the background tasks run, in milliseconds
+     */
+    public long getHealthCheckInterval() { return TimeUnit.NANOSECONDS.toMillis(healthCheckIntervalNanos); }
+    /**
+     * @return how long borrowers wait for a connection, in milliseconds
+     */
+    public long getBorrowTimeout() { return TimeUnit.NANOSECONDS.toMillis(borrowTimeoutNanos); }
+    /**
+     * @return the options of the pool's sockets
+     */
+    public BialettiSocketOptions getSocketOptions() { return socketOptions; }
+    /**
+     * @return whether the pool has been closed
+     */
+    public boolean isClosed() { return closed; }
+
+    /**
+     * @return the endpoints
+     */
+    public List<InetSocketAddress> getEndpoints() {
+        List<InetSocketAddress> addresses = new ArrayList<>(endpoints.length);
+        for (Endpoint endpoint : endpoints) addresses.add(endpoint.address);
+
+        return addresses;
+    }
+
+    /**
+     * @return the endpoints that have not failed since they were last reached
+     */
+    public List<InetSocketAddress> getHealthyEndpoints() {
+        List<InetSocketAddress> addresses = new ArrayList<>(endpoints.length);
+
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.healthy) addresses.add(endpoint.address);
+        }
+
+        return addresses;
+    }
+
+    /**
+     * @return the number of open connections, borrowed or not
+     */
+    public int getOpenConnections() {
+        lock.lock();
+
+        try {
+            int open = 0;
+            for (Endpoint endpoint : endpoints) open += endpoint.open;
+
+            return open;
+        }
+
+        finally { lock.unlock(); }
+    }
+
+    /**
+     * @return the number of idle connections
+     */
+    public int getIdleConnections() {
+        lock.lock();
+
+        try {
+            int idle = 0;
+            for (Endpoint endpoint : endpoints) idle += endpoint.idle.size();
+
+            return idle;
+        }
+
+        finally { lock.unlock(); }
+    }
+
+    /**
+     * @return the number of borrowed connections
+     */
+    public int getInFlight() {
+        lock.lock();
+
+        try {
+            int inFlight = 0;
+            for (Endpoint endpoint : endpoints) inFlight += endpoint.inFlight;
+
+            return inFlight;
+        }
+
+        finally { lock.unlock(); }
+    }
+
+    /**
+     * A borrowed connection, given back to the pool when closed
+     * @author Alessandro-Salerno
+     */
+    public final class Lease implements AutoCloseable {
+        /**
+         * The endpoint of the connection
+         */
+        private final Endpoint endpoint;
+        /**
+         * The connection
+         */
+        private final BialettiTCPConnection connection;
+        /**
+         * A boolean that tells whether the connection has been given back or discarded
+         */
+        private final AtomicBoolean returned;
+
+        /**
+         * Constructor
+         * @param e the endpoint of the connection
+         * @param c the connection
+         */
+        private Lease(Endpoint e, BialettiTCPConnection c) {
+            endpoint   = e;
+            connection = c;
+            returned   = new AtomicBoolean(false);
+        }
+
+        /**
+         * Gives the connection back to the pool
+         * Connections that have been closed in the meantime are discarded
+         */
+        @Override
+        public void close() {
+            if (!returned.compareAndSet(false, true)) return;
+
+            if (isConnected(connection)) giveBack(endpoint, connection);
+            else discard(endpoint, connection);
+        }
+
+        /**
+         * Closes the connection instead of giving it back (Such as after a failed exchange, which may have left
+         * unread data behind)
+         */
+        public void invalidate() {
+            if (returned.compareAndSet(false, true)) discard(endpoint, connection);
+        }
+
+        /**
+         * @return the connection
+         * @throws IllegalStateException if the connection has been given back
+         */
+        public BialettiTCPConnection getConnection() throws IllegalStateException {
+            if (returned.get()) throw new IllegalStateException("The connection has been given back");
+            return connection;
+        }
+
+        /**
+         * @return the endpoint of the connection
+         */
+        public InetSocketAddress getEndpoint() { return endpoint.address; }
+    }
+
+    /**
+     * The connections to an endpoint
+     * Every field but the address is guarded by the pool's lock
+     * @author Alessandro-Salerno
+     */
+    private static final class Endpoint {
+        /**
+         * The address of the endpoint
+         */
+        private final InetSocketAddress address;
+        /**
+         * The idle connections, most recently used first
+         */
+        private final Deque<Idle> idle;
+        /**
+         * The number of open connections, including borrowed ones and ones being opened
+         */
+        private int open = 0;
+        /**
+         * The number of borrowed connections
+         */
+        private int inFlight = 0;
+        /**
+         * A boolean that tells whether the endpoint has not failed since it was last reached
+         */
+        private volatile boolean healthy = true;
+
+        /**
+         * Constructor
+         * @param a the address of the endpoint
+         */
+        Endpoint(InetSocketAddress a) {
+            address = a;
+            idle    = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * An idle connection
+     * @author Alessandro-Salerno
+     */
+    private static final class Idle {
+        /**
+         * The connection
+         */
+        private final BialettiTCPConnection connection;
+        /**
+         * When the connection became idle, as given by {@link System#nanoTime()}
+         */
+        private final long since;
+
+        /**
+         * Constructor
+         * @param c the connection
+         * @param s when the connection became idle
+         */
+        Idle(BialettiTCPConnection c, long s) {
+            connection = c;
+            since      = s;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package bialetti.client.udp;
 
 import bialetti.client.BialettiClient;
+import bialetti.codec.BialettiCompressor;
+import bialetti.connection.BialettiSocketOptions;
 import bialetti.connection.udp.BialettiUDPClientConnection;
+import bialetti.connection.udp.BialettiUDPFragmenter;
 import bialetti.exceptions.BialettiIllegalOperationException;
 import bialetti.exceptions.BialettiNullAddressException;
+import bialetti.service.BialettiServiceState;
 
 /**
  * A Bialetti UDP Client
@@ -11,6 +15,18 @@ import bialetti.exceptions.BialettiNullAddressException;
  */
 public abstract class BialettiUDPClient extends BialettiClient {
     private BialettiUDPClientConnection connection;
+    /**
+     * The maximum size of a received datagram
+     */
+    private int window = BialettiUDPClientConnection.DEFAULT_WINDOW;
+    /**
+     * The size of the largest datagram sent by fragmentation (0 if fragmentation is disabled)
+     */
+    private int fragmentationMtu = 0;
+    /**
+     * The compression of the client's connection (null if compression is disabled)
+     */
+    private BialettiCompressor compression;
 
     /**
      * Constructor
@@ -24,11 +40,23 @@ public abstract class BialettiUDPClient extends BialettiClient {
     }
 
     /**
-     * Stops the client
+     * Constructor
+     *
+     * @param address the host address
+     * @param port    the port
+     * @param options the options of the client's socket
+     * @throws BialettiNullAddressException if the address is null
+     */
+    public BialettiUDPClient(String address, int port, BialettiSocketOptions options) throws BialettiNullAddressException {
+        super(address, port, options);
+    }
+
+    /**
+     * Closes the connection to the server
      */
     @Override
-    public void stop() throws BialettiIllegalOperationException {
-        super.stop();
+    protected void unblock() {
+        super.unblock();
         connection.close();
     }
 
@@ -37,7 +65,14 @@ public abstract class BialettiUDPClient extends BialettiClient {
      */
     @Override
     public void run() throws RuntimeException {
-        try { connection = new BialettiUDPClientConnection(getServerAddress(), getServerPort()); }
+        try {
+            connection = new BialettiUDPClientConnection(getServerAddress(), getServerPort(), getSocketOptions(), window);
+
+            if (fragmentationMtu != 0) connection.setFragmentation(fragmentationMtu);
+            connection.setCompression(compression);
+            connection.setMetrics(getMetrics());
+        }
+
         catch (Exception e) {
             // Throw runtime exception
             throw new RuntimeException(e);
@@ -46,8 +81,78 @@ public abstract class BialettiUDPClient extends BialettiClient {
         super.run();
     }
 
+    /**
+     * Sets the maximum size of a received datagram, larger ones are discarded
+     * @param size the window
+     * @throws BialettiIllegalOperationException if the client has already been started
+     * @throws IllegalArgumentException if the window is not positive or smaller than the fragmentation MTU
+     */
+    public void setWindow(int size) throws BialettiIllegalOperationException,
+                                           IllegalArgumentException {
+        ensureNotStarted();
+        if (size <= 0) throw new IllegalArgumentException("The window must be positive");
+        if (size < fragmentationMtu) throw new IllegalArgumentException("The window cannot be smaller than the fragmentation MTU");
+
+        window = size;
+    }
+
+    /**
+     * Enables or disables fragmentation on the client's connection
+     * Messages are split into datagrams of at most the given size and put back together when received, the server
+     * must enable it as well
+     * @param mtu the size of the largest datagram, header included (0 to disable fragmentation)
+     * @throws BialettiIllegalOperationException if the client has already been started
+     * @throws IllegalArgumentException if the MTU is larger than the window or cannot hold a fragment header
+     */
+    public void setFragmentation(int mtu) throws BialettiIllegalOperationException,
+                                                 IllegalArgumentException {
+        ensureNotStarted();
+
+        if (mtu != 0) {
+            if (mtu <= BialettiUDPFragmenter.HEADER) {
+                throw new IllegalArgumentException("The MTU must be larger than " + BialettiUDPFragmenter.HEADER);
+            }
+
+            if (mtu > window) throw new IllegalArgumentException("The MTU cannot be larger than the window");
+        }
+
+        fragmentationMtu = mtu;
+    }
+
+    /**
+     * Sets the compression of the client's connection
+     * The server must enable compression as well
+     * @param compressor the compressor (null to disable compression)
+     * @throws BialettiIllegalOperationException if the client has already been started
+     */
+    public void setCompression(BialettiCompressor compressor) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        compression = compressor;
+    }
+
     /**
      * @return the {@link BialettiUDPClientConnection}
      */
     public BialettiUDPClientConnection getConnection() { return connection; }
+    /**
+     * @return the maximum size of a received datagram
+     */
+    public int getWindow() { return window; }
+    /**
+     * @return the size of the largest datagram sent by fragmentation (0 if fragmentation is disabled)
+     */
+    public int getFragmentationMtu() { return fragmentationMtu; }
+    /**
+     * @return the compression of the client's connection (null if it is disabled)
+     */
+    public BialettiCompressor getCompression() { return compression; }
+
+    /**
+     * @throws BialettiIllegalOperationException if the client has already been started
+     */
+    private void ensureNotStarted() throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Client \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+    }
 }
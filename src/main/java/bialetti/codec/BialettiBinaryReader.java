@@ -0,0 +1,221 @@
+package bialetti.codec;
+
+import bialetti.exceptions.BialettiCodecException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the primitives written by a {@link BialettiBinaryWriter} straight from a buffer
+ * @apiNote readers are not thread safe, and are only valid as long as the buffer they read is
+ * @author Alessandro-Salerno
+ */
+public final class BialettiBinaryReader {
+    /**
+     * The buffer being read, in read mode
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor
+     * @param in the buffer to be read (In read mode), its position is moved as values are read
+     */
+    public BialettiBinaryReader(ByteBuffer in) {
+        buffer = in;
+    }
+
+    /**
+     * @return the next byte
+     * @throws BialettiCodecException if there are no bytes left
+     */
+    public byte readByte() throws BialettiCodecException {
+        return require(Byte.BYTES).get();
+    }
+
+    /**
+     * @return the next byte, as a value between 0 and 255
+     * @throws BialettiCodecException if there are no bytes left
+     */
+    public int readUnsignedByte() throws BialettiCodecException {
+        return readByte() & 0xFF;
+    }
+
+    /**
+     * @return the next boolean
+     * @throws BialettiCodecException if there are no bytes left
+     */
+    public boolean readBoolean() throws BialettiCodecException {
+        return readByte() != 0;
+    }
+
+    /**
+     * @return the next short
+     * @throws BialettiCodecException if fewer than 2 bytes are left
+     */
+    public short readShort() throws BialettiCodecException {
+        return require(Short.BYTES).getShort();
+    }
+
+    /**
+     * @return the next int
+     * @throws BialettiCodecException if fewer than 4 bytes are left
+     */
+    public int readInt() throws BialettiCodecException {
+        return require(Integer.BYTES).getInt();
+    }
+
+    /**
+     * @return the next long
+     * @throws BialettiCodecException if fewer than 8 bytes are left
+     */
+    public long readLong() throws BialettiCodecException {
+        return require(Long.BYTES).getLong();
+    }
+
+    /**
+     * @return the next float
+     * @throws BialettiCodecException if fewer than 4 bytes are left
+     */
+    public float readFloat() throws BialettiCodecException {
+        return require(Float.BYTES).getFloat();
+    }
+
+    /**
+     * @return the next double
+     * @throws BialettiCodecException if fewer than 8 bytes are left
+     */
+    public double readDouble() throws BialettiCodecException {
+        return require(Double.BYTES).getDouble();
+    }
+
+    /**
+     * @see BialettiBinaryWriter#writeVarInt(int)
+     * @return the next variable length int
+     * @throws BialettiCodecException if the data ends early or the value is longer than 5 bytes
+     */
+    public int readVarInt() throws BialettiCodecException {
+        int value = 0;
+
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0) return value;
+        }
+
+        throw new BialettiCodecException("Variable length int is longer than 5 bytes");
+    }
+
+    /**
+     * @see BialettiBinaryWriter#writeVarLong(long)
+     * @return the next variable length long
+     * @throws BialettiCodecException if the data ends early or the value is longer than 10 bytes
+     */
+    public long readVarLong() throws BialettiCodecException {
+        long value = 0;
+
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) return value;
+        }
+
+        throw new BialettiCodecException("Variable length long is longer than 10 bytes");
+    }
+
+    /**
+     * @see BialettiBinaryWriter#writeString(String)
+     * @return the next string (May be null), malformed UTF-8 is replaced
+     * @throws BialettiCodecException if the data ends early
+     */
+    public String readString() throws BialettiCodecException {
+        int length = readLength();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        require(length).get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @see BialettiBinaryWriter#writeBytes(byte[])
+     * @return a copy of the next bytes (May be null)
+     * @throws BialettiCodecException if the data ends early
+     */
+    public byte[] readBytes() throws BialettiCodecException {
+        int length = readLength();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        require(length).get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Reads the next bytes without copying them
+     * @see BialettiBinaryWriter#writeBytes(ByteBuffer)
+     * @return a view of the next bytes that shares the buffer's memory (May be null)
+     * @throws BialettiCodecException if the data ends early
+     */
+    public ByteBuffer readSlice() throws BialettiCodecException {
+        int length = readLength();
+        if (length < 0) return null;
+
+        ByteBuffer in    = require(length);
+        ByteBuffer slice = in.slice(in.position(), length);
+        in.position(in.position() + length);
+
+        return slice;
+    }
+
+    /**
+     * Reads every byte left without copying them
+     * @return a view of the bytes left that shares the buffer's memory
+     */
+    public ByteBuffer readRemaining() {
+        ByteBuffer rest = buffer.slice();
+        buffer.position(buffer.limit());
+
+        return rest;
+    }
+
+    /**
+     * @return the number of bytes left
+     */
+    public int remaining() { return buffer.remaining(); }
+    /**
+     * @return whether there are bytes left
+     */
+    public boolean hasRemaining() { return buffer.hasRemaining(); }
+
+    /**
+     * Reads the length written before strings and bytes
+     * @return the length, -1 for null
+     * @throws BialettiCodecException if the data ends early or the length is negative
+     */
+    private int readLength() throws BialettiCodecException {
+        int length = readVarInt() - 1;
+
+        if (length < -1) {
+            throw new BialettiCodecException("Invalid length " + length);
+        }
+
+        return length;
+    }
+
+    /**
+     * @param bytes the number of bytes about to be read
+     * @return the buffer
+     * @throws BialettiCodecException if fewer bytes are left
+     */
+    private ByteBuffer require(int bytes) throws BialettiCodecException {
+        if (buffer.remaining() < bytes) {
+            throw new BialettiCodecException("Expected " + bytes + " bytes, " + buffer.remaining() + " left");
+        }
+
+        return buffer;
+    }
+}
@@ -0,0 +1,335 @@
+package bialetti.codec;
+
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes primitives into a pooled buffer in network byte order
+ * The buffer grows by doubling when needed. Strings are encoded to UTF-8 one character at a time, straight into the
+ * buffer, so writing never allocates anything but bigger buffers.
+ * @apiNote writers are not thread safe and must be closed to give their buffer back to the pool
+ * @author Alessandro-Salerno
+ */
+public final class BialettiBinaryWriter implements AutoCloseable {
+    /**
+     * The initial capacity unless another one is given
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The buffer holding the written bytes (null once closed)
+     */
+    private BialettiPooledBuffer pooled;
+    /**
+     * The pooled buffer's {@link ByteBuffer}, in write mode
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Constructor
+     */
+    public BialettiBinaryWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     * @param capacity the initial capacity
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public BialettiBinaryWriter(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) throw new IllegalArgumentException("The capacity must be positive");
+
+        pooled = BialettiBufferPool.getDefault().acquire(capacity);
+        buffer = pooled.getBuffer();
+    }
+
+    /**
+     * Writes a byte
+     * @param value the byte (Only the lowest 8 bits are written)
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeByte(int value) {
+        ensure(Byte.BYTES).put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes a boolean as a single byte
+     * @param value the boolean
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeBoolean(boolean value) {
+        return writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a short
+     * @param value the short (Only the lowest 16 bits are written)
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeShort(int value) {
+        ensure(Short.BYTES).putShort((short) value);
+        return this;
+    }
+
+    /**
+     * Writes an int in 4 bytes
+     * @param value the int
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeInt(int value) {
+        ensure(Integer.BYTES).putInt(value);
+        return this;
+    }
+
+    /**
+     * Writes a long in 8 bytes
+     * @param value the long
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeLong(long value) {
+        ensure(Long.BYTES).putLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a float
+     * @param value the float
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeFloat(float value) {
+        ensure(Float.BYTES).putFloat(value);
+        return this;
+    }
+
+    /**
+     * Writes a double
+     * @param value the double
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeDouble(double value) {
+        ensure(Double.BYTES).putDouble(value);
+        return this;
+    }
+
+    /**
+     * Writes an int in 1 to 5 bytes, 7 bits at a time
+     * Small non-negative values take the fewest bytes, negative values always take 5
+     * @param value the int
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeVarInt(int value) {
+        ByteBuffer out = ensure(5);
+
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes a long in 1 to 10 bytes, 7 bits at a time
+     * Small non-negative values take the fewest bytes, negative values always take 10
+     * @param value the long
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeVarLong(long value) {
+        ByteBuffer out = ensure(10);
+
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its UTF-8 bytes
+     * Unpaired surrogates are written as '?'
+     * @param value the string (May be null)
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeString(String value) {
+        // 0 stands for null, lengths are shifted by one
+        if (value == null) return writeVarInt(0);
+
+        int chars  = value.length();
+        int length = utf8Length(value);
+
+        writeVarInt(length + 1);
+        ByteBuffer out = ensure(length);
+
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) out.put((byte) c);
+
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+
+            else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+
+                out.put((byte) (0xF0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+
+            else if (Character.isSurrogate(c)) out.put((byte) '?');
+
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes bytes as their length followed by the bytes themselves
+     * @param value the bytes (May be null)
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeBytes(byte[] value) {
+        // 0 stands for null, lengths are shifted by one
+        if (value == null) return writeVarInt(0);
+
+        writeVarInt(value.length + 1);
+        ensure(value.length).put(value);
+
+        return this;
+    }
+
+    /**
+     * Writes bytes as their length followed by the bytes themselves
+     * @param value the bytes, its position is moved to its limit
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeBytes(ByteBuffer value) {
+        writeVarInt(value.remaining() + 1);
+        ensure(value.remaining()).put(value);
+
+        return this;
+    }
+
+    /**
+     * Writes bytes as they are, without their length
+     * @param value the bytes, its position is moved to its limit
+     * @return the writer itself
+     */
+    public BialettiBinaryWriter writeRaw(ByteBuffer value) {
+        ensure(value.remaining()).put(value);
+        return this;
+    }
+
+    /**
+     * Discards the written bytes so that the writer can be reused
+     * @return the writer itself
+     * @throws IllegalStateException if the writer has been closed
+     */
+    public BialettiBinaryWriter reset() throws IllegalStateException {
+        checkOpen().clear();
+        return this;
+    }
+
+    /**
+     * @return a view of the written bytes, in read mode (Valid until the writer is written to, reset or closed)
+     * @throws IllegalStateException if the writer has been closed
+     */
+    public ByteBuffer getWritten() throws IllegalStateException {
+        return checkOpen().duplicate().flip();
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() { return checkOpen().position(); }
+
+    /**
+     * Gives the buffer back to the pool
+     */
+    @Override
+    public void close() {
+        if (pooled == null) return;
+
+        pooled.release();
+        pooled = null;
+        buffer = null;
+    }
+
+    /**
+     * Makes room for more bytes, doubling the buffer as many times as needed
+     * @param bytes the number of bytes about to be written
+     * @return the buffer, with at least that many bytes remaining
+     * @throws IllegalStateException if the writer has been closed
+     */
+    ByteBuffer ensure(int bytes) throws IllegalStateException {
+        ByteBuffer out = checkOpen();
+        if (out.remaining() >= bytes) return out;
+
+        long needed   = (long) out.position() + bytes;
+        long capacity = out.capacity();
+        while (capacity < needed) capacity *= 2;
+
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Message of " + needed + " bytes is too large");
+        }
+
+        BialettiPooledBuffer bigger = BialettiBufferPool.getDefault().acquire((int) capacity);
+        bigger.getBuffer().put(out.flip());
+        pooled.release();
+
+        pooled = bigger;
+        buffer = bigger.getBuffer();
+
+        return buffer;
+    }
+
+    /**
+     * @return the buffer
+     * @throws IllegalStateException if the writer has been closed
+     */
+    private ByteBuffer checkOpen() throws IllegalStateException {
+        if (buffer == null) throw new IllegalStateException("The writer has been closed");
+        return buffer;
+    }
+
+    /**
+     * @param value a string
+     * @return the number of bytes of the string in UTF-8, unpaired surrogates counting as one
+     */
+    private static int utf8Length(String value) {
+        int chars  = value.length();
+        int length = chars;
+
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) continue;
+
+            if (c < 0x800) length++;
+
+            else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // 4 bytes for 2 chars
+                length += 2;
+                i++;
+            }
+
+            else if (!Character.isSurrogate(c)) length += 2;
+        }
+
+        return length;
+    }
+}
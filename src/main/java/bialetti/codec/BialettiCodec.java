@@ -0,0 +1,28 @@
+package bialetti.codec;
+
+import bialetti.exceptions.BialettiCodecException;
+
+/**
+ * Turns messages of a given type into bytes and back
+ * Codecs write straight into the pooled buffer of a {@link BialettiBinaryWriter} and read straight from the received
+ * buffer through a {@link BialettiBinaryReader}, so that no intermediate string or array is needed
+ * @apiNote codecs are shared by every connection they are used with, so they must be stateless or thread safe
+ * @param <T> the type of the messages
+ * @author Alessandro-Salerno
+ */
+public interface BialettiCodec<T> {
+    /**
+     * Writes a message
+     * @param message the message
+     * @param out the writer
+     */
+    void encode(T message, BialettiBinaryWriter out);
+
+    /**
+     * Reads a message
+     * @param in the reader, positioned at the start of the message
+     * @return the message
+     * @throws BialettiCodecException if the data is not a valid message
+     */
+    T decode(BialettiBinaryReader in) throws BialettiCodecException;
+}
@@ -0,0 +1,322 @@
+package bialetti.codec;
+
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.exceptions.BialettiCompressionException;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses messages at or above a size threshold with DEFLATE
+ * Every message starts with a flag byte: {@link #RAW} messages carry the payload as it is, {@link #DEFLATE} messages
+ * carry the size of the payload (4 bytes) followed by the compressed payload. Payloads that do not shrink are sent raw.
+ * Deflaters and inflaters are kept per thread and reset for every message, so compressing does not allocate them.
+ * @apiNote both ends of a connection must use compression, with any threshold and level
+ * @author Alessandro-Salerno
+ */
+public final class BialettiCompressor {
+    /**
+     * The flag of messages sent as they are
+     */
+    public static final byte RAW = 0;
+    /**
+     * The flag of compressed messages
+     */
+    public static final byte DEFLATE = 1;
+    /**
+     * The compression level unless another one is given (Favours speed, which matters more for large snapshots)
+     */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+    /**
+     * The size of the largest decompressed message unless another one is given
+     */
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The size of the header of compressed messages (Flag and size)
+     */
+    private static final int DEFLATE_HEADER = 1 + Integer.BYTES;
+    /**
+     * The smallest amount of room given to the deflater at once
+     */
+    private static final int DEFLATE_CHUNK = 512;
+    /**
+     * The flag of raw messages, duplicated for every message
+     */
+    private static final ByteBuffer RAW_FLAG = ByteBuffer.allocateDirect(1).put(RAW).flip().asReadOnlyBuffer();
+    /**
+     * Receives the output of an inflater that should have finished (Never read)
+     */
+    private static final byte[] OVERFLOW = new byte[1];
+    /**
+     * The deflater of each thread
+     */
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(Deflater::new);
+    /**
+     * The inflater of each thread
+     */
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * The size from which payloads are compressed
+     */
+    private final int threshold;
+    /**
+     * The compression level
+     */
+    private final int level;
+    /**
+     * The size of the largest decompressed message
+     */
+    private final int maxSize;
+    /**
+     * The number of compressed messages
+     */
+    private final LongAdder compressedMessages;
+    /**
+     * The number of bytes given to the deflater
+     */
+    private final LongAdder bytesIn;
+    /**
+     * The number of bytes produced by the deflater
+     */
+    private final LongAdder bytesOut;
+
+    /**
+     * Constructor
+     * @param sizeThreshold the size from which payloads are compressed
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public BialettiCompressor(int sizeThreshold) throws IllegalArgumentException {
+        this(sizeThreshold, DEFAULT_LEVEL, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param sizeThreshold the size from which payloads are compressed
+     * @param compressionLevel the compression level (From {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION})
+     * @param maxMessageSize the size of the largest decompressed message
+     * @throws IllegalArgumentException if the threshold is negative, the level is not valid or the size is not positive
+     */
+    public BialettiCompressor(int sizeThreshold, int compressionLevel, int maxMessageSize) throws IllegalArgumentException {
+        if (sizeThreshold < 0) {
+            throw new IllegalArgumentException("The threshold cannot be negative");
+        }
+
+        if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+
+        if (maxMessageSize <= 0) {
+            throw new IllegalArgumentException("The maximum message size must be positive");
+        }
+
+        // Set fields
+        threshold          = sizeThreshold;
+        level              = compressionLevel;
+        maxSize            = maxMessageSize;
+        compressedMessages = new LongAdder();
+        bytesIn            = new LongAdder();
+        bytesOut           = new LongAdder();
+    }
+
+    /**
+     * Turns a payload into a message
+     * The payload is compressed into the writer if it reaches the threshold and shrinks, else the message is made of
+     * the flag followed by the payload's own buffers
+     * @param out receives the compressed message (Reset first, left untouched if the message is raw)
+     * @param payload the parts of the payload (In read mode), their positions are moved to their limits if compressed
+     * @return the buffers of the message, to be written in order
+     * @throws IllegalArgumentException if the payload is larger than the maximum message size
+     */
+    public ByteBuffer[] compress(BialettiBinaryWriter out, ByteBuffer... payload) throws IllegalArgumentException {
+        long length = 0;
+        for (ByteBuffer part : payload) length += part.remaining();
+
+        if (length > maxSize) {
+            throw new IllegalArgumentException("Payload of " + length + " bytes is larger than " + maxSize);
+        }
+
+        if (length < threshold || !deflate(out, payload, (int) length)) return raw(payload);
+
+        for (ByteBuffer part : payload) part.position(part.limit());
+
+        compressedMessages.increment();
+        bytesIn.add(length);
+        bytesOut.add(out.size());
+
+        return new ByteBuffer[] { out.getWritten() };
+    }
+
+    /**
+     * Turns a payload into a message without compressing it
+     * @param payload the parts of the payload (In read mode)
+     * @return the flag followed by the payload's own buffers
+     */
+    public ByteBuffer[] raw(ByteBuffer... payload) {
+        ByteBuffer[] message = new ByteBuffer[payload.length + 1];
+
+        message[0] = RAW_FLAG.duplicate();
+        System.arraycopy(payload, 0, message, 1, payload.length);
+
+        return message;
+    }
+
+    /**
+     * Reads a message into a pooled buffer, decompressing it if needed
+     * @param message the message (In read mode), its position is moved to its limit
+     * @return the payload, which must be released by the caller
+     * @throws BialettiCompressionException if the message is malformed or larger than the maximum message size
+     */
+    public BialettiPooledBuffer decompress(ByteBuffer message) throws BialettiCompressionException {
+        if (!isCompressed(message)) {
+            ByteBuffer payload = message.position(message.position() + 1);
+            BialettiPooledBuffer pooled = BialettiBufferPool.getDefault().acquire(Math.max(1, payload.remaining()));
+
+            pooled.getBuffer().put(payload).flip();
+            return pooled;
+        }
+
+        if (message.remaining() < DEFLATE_HEADER) {
+            throw new BialettiCompressionException("Truncated compressed message");
+        }
+
+        int length = message.getInt(message.position() + 1);
+        if (length < 0 || length > maxSize) {
+            throw new BialettiCompressionException("Invalid decompressed size " + length);
+        }
+
+        message.position(message.position() + DEFLATE_HEADER);
+        BialettiPooledBuffer pooled = BialettiBufferPool.getDefault().acquire(Math.max(1, length));
+
+        try {
+            inflate(message, pooled.getBuffer().limit(length));
+            return pooled;
+        }
+
+        catch (BialettiCompressionException | RuntimeException e) {
+            pooled.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param message a message (In read mode)
+     * @return whether the message is compressed
+     * @throws BialettiCompressionException if the message is empty or its flag is unknown
+     */
+    public static boolean isCompressed(ByteBuffer message) throws BialettiCompressionException {
+        if (!message.hasRemaining()) throw new BialettiCompressionException("Empty message");
+
+        byte flag = message.get(message.position());
+        if (flag != RAW && flag != DEFLATE) throw new BialettiCompressionException("Unknown compression flag " + flag);
+
+        return flag == DEFLATE;
+    }
+
+    /**
+     * Compresses a payload into a writer
+     * @param out the writer
+     * @param payload the parts of the payload (Left untouched)
+     * @param length the size of the payload
+     * @return false if the compressed message would not be smaller than the raw one
+     */
+    private boolean deflate(BialettiBinaryWriter out, ByteBuffer[] payload, int length) {
+        Deflater deflater = DEFLATERS.get();
+        int limit         = DEFLATE_HEADER + length;
+
+        deflater.reset();
+        deflater.setLevel(level);
+        out.reset().writeByte(DEFLATE).writeInt(length);
+
+        try {
+            for (ByteBuffer part : payload) {
+                deflater.setInput(part.duplicate());
+
+                while (!deflater.needsInput()) {
+                    deflater.deflate(out.ensure(DEFLATE_CHUNK));
+                    if (out.size() >= limit) return false;
+                }
+            }
+
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                deflater.deflate(out.ensure(DEFLATE_CHUNK));
+                if (out.size() >= limit) return false;
+            }
+
+            return true;
+        }
+
+        // Drop the reference to the payload
+        finally { deflater.reset(); }
+    }
+
+    /**
+     * Decompresses the body of a message
+     * @param body the compressed bytes, its position is moved past them
+     * @param payload receives the payload (Limited to its size), flipped once full
+     * @throws BialettiCompressionException if the body is malformed or does not match the size of the payload
+     */
+    private static void inflate(ByteBuffer body, ByteBuffer payload) throws BialettiCompressionException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(body);
+
+        try {
+            while (payload.hasRemaining()) {
+                if (inflater.inflate(payload) > 0) continue;
+
+                if (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()) {
+                    throw new BialettiCompressionException("Compressed message is shorter than its declared size");
+                }
+            }
+
+            // Reach the end of the stream, which must not hold any more data
+            if (!inflater.finished() && inflater.inflate(OVERFLOW) > 0) {
+                throw new BialettiCompressionException("Compressed message is longer than its declared size");
+            }
+
+            if (!inflater.finished()) throw new BialettiCompressionException("Truncated compressed message");
+        }
+
+        catch (DataFormatException e) {
+            throw new BialettiCompressionException(e);
+        }
+
+        // Drop the reference to the body
+        finally { inflater.reset(); }
+
+        payload.flip();
+    }
+
+    /**
+     * @return the size from which payloads are compressed
+     */
+    public int getThreshold() { return threshold; }
+    /**
+     * @return the compression level
+     */
+    public int getLevel() { return level; }
+    /**
+     * @return the size of the largest decompressed message
+     */
+    public int getMaxSize() { return maxSize; }
+    /**
+     * @return the number of compressed messages
+     */
+    public long getCompressedMessages() { return compressedMessages.sum(); }
+
+    /**
+     * @return the size of compressed messages relative to their payloads (1 if nothing has been compressed yet)
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn.sum();
+        return (in == 0) ? 1 : (double) bytesOut.sum() / in;
+    }
+}
@@ -0,0 +1,40 @@
+package bialetti.codec;
+
+import bialetti.exceptions.BialettiCodecException;
+
+/**
+ * A codec for strings, encoded to UTF-8 with their length
+ * @author Alessandro-Salerno
+ */
+public final class BialettiStringCodec implements BialettiCodec<String> {
+    /**
+     * The shared instance
+     */
+    public static final BialettiStringCodec INSTANCE = new BialettiStringCodec();
+
+    /**
+     * Constructor
+     */
+    private BialettiStringCodec() { }
+
+    /**
+     * Writes a string
+     * @param message the string (May be null)
+     * @param out the writer
+     */
+    @Override
+    public void encode(String message, BialettiBinaryWriter out) {
+        out.writeString(message);
+    }
+
+    /**
+     * Reads a string
+     * @param in the reader
+     * @return the string (May be null)
+     * @throws BialettiCodecException if the data is not a valid string
+     */
+    @Override
+    public String decode(BialettiBinaryReader in) throws BialettiCodecException {
+        return in.readString();
+    }
+}
@@ -0,0 +1,247 @@
+package bialetti.connection;
+
+import java.io.IOException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * The socket options used by Bialetti clients, servers and connections
+ * Options that are not set keep the system default, options that do not apply to a kind of socket (Such as
+ * TCP_NODELAY on a UDP socket) are skipped. Instances are immutable, the with methods return modified copies.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiSocketOptions {
+    /**
+     * Leaves every option to the system default
+     */
+    public static final BialettiSocketOptions DEFAULT = new BialettiSocketOptions(null, null, null, null, null, null, null, null);
+    /**
+     * Small messages that must arrive as soon as possible (Request/response traffic)
+     * Disables Nagle's algorithm and asks for low delay routing
+     */
+    public static final BialettiSocketOptions LOW_LATENCY = DEFAULT.withTcpNoDelay(true)
+                                                                   .withKeepAlive(true)
+                                                                   .withTrafficClass(0x10);
+    /**
+     * Large volumes of data (Bulk transfers and streaming)
+     * Keeps Nagle's algorithm, uses 1 MiB socket buffers and asks for high throughput routing
+     */
+    public static final BialettiSocketOptions HIGH_THROUGHPUT = DEFAULT.withTcpNoDelay(false)
+                                                                       .withKeepAlive(true)
+                                                                       .withSendBufferSize(1024 * 1024)
+                                                                       .withReceiveBufferSize(1024 * 1024)
+                                                                       .withTrafficClass(0x08);
+
+    /**
+     * TCP_NODELAY (null if not set)
+     */
+    private final Boolean tcpNoDelay;
+    /**
+     * SO_KEEPALIVE (null if not set)
+     */
+    private final Boolean keepAlive;
+    /**
+     * SO_SNDBUF (null if not set)
+     */
+    private final Integer sendBufferSize;
+    /**
+     * SO_RCVBUF (null if not set)
+     */
+    private final Integer receiveBufferSize;
+    /**
+     * SO_LINGER in seconds, negative if disabled (null if not set)
+     */
+    private final Integer linger;
+    /**
+     * IP_TOS (null if not set)
+     */
+    private final Integer trafficClass;
+    /**
+     * SO_REUSEADDR (null if not set)
+     */
+    private final Boolean reuseAddress;
+    /**
+     * SO_REUSEPORT (null if not set)
+     */
+    private final Boolean reusePort;
+
+    /**
+     * Constructor
+     * @param noDelay TCP_NODELAY
+     * @param alive SO_KEEPALIVE
+     * @param sndbuf SO_SNDBUF
+     * @param rcvbuf SO_RCVBUF
+     * @param lingerSeconds SO_LINGER
+     * @param tos IP_TOS
+     * @param reuse SO_REUSEADDR
+     * @param reuseP SO_REUSEPORT
+     */
+    private BialettiSocketOptions(Boolean noDelay, Boolean alive, Integer sndbuf, Integer rcvbuf,
+                                  Integer lingerSeconds, Integer tos, Boolean reuse, Boolean reuseP) {
+        tcpNoDelay        = noDelay;
+        keepAlive         = alive;
+        sendBufferSize    = sndbuf;
+        receiveBufferSize = rcvbuf;
+        linger            = lingerSeconds;
+        trafficClass      = tos;
+        reuseAddress      = reuse;
+        reusePort         = reuseP;
+    }
+
+    /**
+     * @param enabled whether Nagle's algorithm is disabled
+     * @return a copy with TCP_NODELAY set
+     */
+    public BialettiSocketOptions withTcpNoDelay(boolean enabled) {
+        return new BialettiSocketOptions(enabled, keepAlive, sendBufferSize, receiveBufferSize, linger, trafficClass, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param enabled whether idle connections are probed
+     * @return a copy with SO_KEEPALIVE set
+     */
+    public BialettiSocketOptions withKeepAlive(boolean enabled) {
+        return new BialettiSocketOptions(tcpNoDelay, enabled, sendBufferSize, receiveBufferSize, linger, trafficClass, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param bytes the size of the socket's send buffer
+     * @return a copy with SO_SNDBUF set
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public BialettiSocketOptions withSendBufferSize(int bytes) throws IllegalArgumentException {
+        if (bytes <= 0) throw new IllegalArgumentException("The send buffer size must be positive");
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, bytes, receiveBufferSize, linger, trafficClass, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param bytes the size of the socket's receive buffer
+     * @return a copy with SO_RCVBUF set
+     * @throws IllegalArgumentException if the size is not positive
+     */
+    public BialettiSocketOptions withReceiveBufferSize(int bytes) throws IllegalArgumentException {
+        if (bytes <= 0) throw new IllegalArgumentException("The receive buffer size must be positive");
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, sendBufferSize, bytes, linger, trafficClass, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param seconds how long closing a TCP socket waits for unsent data (Negative to disable lingering)
+     * @return a copy with SO_LINGER set
+     */
+    public BialettiSocketOptions withLinger(int seconds) {
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize, seconds, trafficClass, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param tos the type of service (Or traffic class) octet of outgoing packets
+     * @return a copy with IP_TOS set
+     * @throws IllegalArgumentException if the value does not fit in an octet
+     */
+    public BialettiSocketOptions withTrafficClass(int tos) throws IllegalArgumentException {
+        if (tos < 0 || tos > 255) throw new IllegalArgumentException("The traffic class must be between 0 and 255");
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize, linger, tos, reuseAddress, reusePort);
+    }
+
+    /**
+     * @param enabled whether the address can be bound while old connections are still in TIME_WAIT
+     * @return a copy with SO_REUSEADDR set
+     */
+    public BialettiSocketOptions withReuseAddress(boolean enabled) {
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize, linger, trafficClass, enabled, reusePort);
+    }
+
+    /**
+     * @param enabled whether several sockets can be bound to the same port, the system spreading traffic across them
+     * @return a copy with SO_REUSEPORT set (Skipped where the platform does not support it)
+     * @see #isReusePortSupported()
+     */
+    public BialettiSocketOptions withReusePort(boolean enabled) {
+        return new BialettiSocketOptions(tcpNoDelay, keepAlive, sendBufferSize, receiveBufferSize, linger, trafficClass, reuseAddress, enabled);
+    }
+
+    /**
+     * @return whether SO_REUSEPORT is supported on this platform
+     */
+    public static boolean isReusePortSupported() {
+        try (DatagramChannel probe = DatagramChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+
+        catch (IOException e) { return false; }
+    }
+
+    /**
+     * Applies the options to a channel
+     * Buffer sizes should be applied before the channel is bound or connected to have their full effect
+     * @param channel the channel
+     * @param <ChannelType> the type of channel
+     * @return the channel
+     * @throws IOException if an option cannot be set
+     */
+    public <ChannelType extends NetworkChannel> ChannelType applyTo(ChannelType channel) throws IOException {
+        set(channel, StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+        set(channel, StandardSocketOptions.SO_KEEPALIVE, keepAlive);
+        set(channel, StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        set(channel, StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+        set(channel, StandardSocketOptions.SO_LINGER, linger);
+        set(channel, StandardSocketOptions.IP_TOS, trafficClass);
+        set(channel, StandardSocketOptions.SO_REUSEADDR, reuseAddress);
+        set(channel, StandardSocketOptions.SO_REUSEPORT, reusePort);
+
+        return channel;
+    }
+
+    /**
+     * Sets an option if it has a value and the channel supports it
+     * @param channel the channel
+     * @param option the option
+     * @param value the value (May be null)
+     * @param <T> the type of the value
+     * @throws IOException if the option cannot be set
+     */
+    private static <T> void set(NetworkChannel channel, SocketOption<T> option, T value) throws IOException {
+        if (value != null && channel.supportedOptions().contains(option)) channel.setOption(option, value);
+    }
+
+    /**
+     * @return TCP_NODELAY (null if not set)
+     */
+    public Boolean getTcpNoDelay() { return tcpNoDelay; }
+    /**
+     * @return SO_KEEPALIVE (null if not set)
+     */
+    public Boolean getKeepAlive() { return keepAlive; }
+    /**
+     * @return SO_SNDBUF (null if not set)
+     */
+    public Integer getSendBufferSize() { return sendBufferSize; }
+    /**
+     * @return SO_RCVBUF (null if not set)
+     */
+    public Integer getReceiveBufferSize() { return receiveBufferSize; }
+    /**
+     * @return SO_LINGER in seconds, negative if disabled (null if not set)
+     */
+    public Integer getLinger() { return linger; }
+    /**
+     * @return IP_TOS (null if not set)
+     */
+    public Integer getTrafficClass() { return trafficClass; }
+    /**
+     * @return SO_REUSEADDR (null if not set)
+     */
+    public Boolean getReuseAddress() { return reuseAddress; }
+    /**
+     * @return SO_REUSEPORT (null if not set)
+     */
+    public Boolean getReusePort() { return reusePort; }
+
+    @Override
+    public String toString() {
+        return "BialettiSocketOptions[tcpNoDelay=" + tcpNoDelay + ", keepAlive=" + keepAlive
+                + ", sendBufferSize=" + sendBufferSize + ", receiveBufferSize=" + receiveBufferSize
+                + ", linger=" + linger + ", trafficClass=" + trafficClass + ", reuseAddress=" + reuseAddress + ", reusePort=" + reusePort + "]";
+    }
+}
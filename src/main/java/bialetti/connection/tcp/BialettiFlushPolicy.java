@@ -0,0 +1,159 @@
+package bialetti.connection.tcp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the messages queued on a {@link BialettiTCPConnection} are written to the socket
+ * Messages that are flushed together go out with a single gathering write
+ * @author Alessandro-Salerno
+ */
+public final class BialettiFlushPolicy {
+    /**
+     * Every message is written as soon as it is sent
+     */
+    public static final BialettiFlushPolicy IMMEDIATE = new BialettiFlushPolicy(Kind.IMMEDIATE, 1, 0);
+    /**
+     * Messages are only written when {@link BialettiTCPConnection#flush()} is called
+     */
+    public static final BialettiFlushPolicy EXPLICIT = new BialettiFlushPolicy(Kind.EXPLICIT, Integer.MAX_VALUE, 0);
+    /**
+     * The number of queued bytes that triggers a flush regardless of the batch size or deadline
+     */
+    public static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    /**
+     * The kind of policy
+     */
+    private final Kind kind;
+    /**
+     * The number of messages that triggers a flush
+     */
+    private final int batchSize;
+    /**
+     * How long a message can wait before being flushed, in nanoseconds
+     */
+    private final long deadlineNanos;
+
+    /**
+     * Constructor
+     * @param k the kind of policy
+     * @param size the number of messages that triggers a flush
+     * @param nanos how long a message can wait before being flushed
+     */
+    private BialettiFlushPolicy(Kind k, int size, long nanos) {
+        kind          = k;
+        batchSize     = size;
+        deadlineNanos = nanos;
+    }
+
+    /**
+     * Creates a policy that writes messages once enough of them are queued
+     * @param messages the number of messages that triggers a flush
+     * @return the policy
+     * @throws IllegalArgumentException if the number of messages is not positive
+     */
+    public static BialettiFlushPolicy batch(int messages) throws IllegalArgumentException {
+        if (messages <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+
+        return new BialettiFlushPolicy(Kind.BATCH, messages, 0);
+    }
+
+    /**
+     * Creates a policy that writes messages at most the given number of microseconds after the first of them was sent
+     * @param micros how long a message can wait before being flushed
+     * @return the policy
+     * @throws IllegalArgumentException if the deadline is not positive
+     */
+    public static BialettiFlushPolicy deadline(long micros) throws IllegalArgumentException {
+        if (micros <= 0) {
+            throw new IllegalArgumentException("The deadline must be positive");
+        }
+
+        return new BialettiFlushPolicy(Kind.DEADLINE, Integer.MAX_VALUE, TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+
+    /**
+     * Schedules a deadline flush
+     * @param flush the flush
+     */
+    void schedule(Runnable flush) {
+        Timer.INSTANCE.schedule(flush, deadlineNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param messages the number of messages queued since the last flush
+     * @param bytes the number of bytes queued since the last flush
+     * @return whether the queued messages must be written now
+     */
+    boolean shouldFlush(int messages, long bytes) {
+        if (kind == Kind.EXPLICIT) return false;
+        return messages >= batchSize || bytes >= MAX_BATCH_BYTES;
+    }
+
+    /**
+     * @return the kind of policy
+     */
+    public Kind getKind() { return kind; }
+    /**
+     * @return the number of messages that triggers a flush
+     */
+    public int getBatchSize() { return batchSize; }
+    /**
+     * @return how long a message can wait before being flushed, in microseconds (0 if the policy has no deadline)
+     */
+    public long getDeadline() { return TimeUnit.NANOSECONDS.toMicros(deadlineNanos); }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case BATCH    -> "BATCH(" + batchSize + ")";
+            case DEADLINE -> "DEADLINE(" + getDeadline() + "us)";
+            default       -> kind.name();
+        };
+    }
+
+    /**
+     * The kinds of flush policies
+     * @author Alessandro-Salerno
+     */
+    public enum Kind {
+        /**
+         * Every message is written right away
+         */
+        IMMEDIATE,
+        /**
+         * Messages are written once enough of them are queued
+         */
+        BATCH,
+        /**
+         * Messages are written once the oldest of them has waited long enough
+         */
+        DEADLINE,
+        /**
+         * Messages are written on request
+         */
+        EXPLICIT
+    }
+
+    /**
+     * Holds the thread that runs deadline flushes, started the first time it is needed
+     * Connections that are not driven by an event loop only hand their flush to a writer thread on it, so that the
+     * timer never blocks on a socket
+     * @author Alessandro-Salerno
+     */
+    private static final class Timer {
+        /**
+         * The timer shared by all connections
+         */
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "bialetti-flush-timer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,15 @@
+package bialetti.connection.tcp;
+
+/**
+ * Told when a connection watched by a {@link BialettiIdleMonitor} has been idle for one of its timeouts
+ * @author Alessandro-Salerno
+ */
+@FunctionalInterface
+public interface BialettiIdleListener {
+    /**
+     * What happens when the connection has been idle for a timeout
+     * Told again every time the timeout elapses for as long as the connection stays idle
+     * @param state the kind of inactivity
+     */
+    void onIdle(BialettiIdleState state);
+}
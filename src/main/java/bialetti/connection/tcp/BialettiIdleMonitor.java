@@ -0,0 +1,237 @@
+package bialetti.connection.tcp;
+
+import bialetti.timer.BialettiWheelTimer;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a connection for inactivity and keeps it alive with heartbeats
+ * Every enabled timeout holds a single timeout on a shared {@link BialettiWheelTimer}. When it expires, the monitor
+ * compares the time of the last read or write with the timeout: if the connection has been idle for that long the
+ * listener is told, otherwise the timeout is moved to when the connection would become idle. Reads and writes
+ * therefore cost a timestamp, and a connection costs nothing per tick until one of its timeouts comes due.
+ * Monitors stop by themselves once their connection is closed.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiIdleMonitor {
+    /**
+     * The index of the heartbeat timeout, after those of the idle states
+     */
+    private static final int HEARTBEAT = BialettiIdleState.values().length;
+
+    /**
+     * The watched connection
+     */
+    private final BialettiTCPConnection connection;
+    /**
+     * The timeouts and heartbeat interval
+     */
+    private final BialettiIdlePolicy policy;
+    /**
+     * Told when the connection has been idle for a timeout
+     */
+    private final BialettiIdleListener listener;
+    /**
+     * Runs the listener and sends heartbeats, so that neither can delay the wheel
+     */
+    private final Executor executor;
+    /**
+     * Runs the checks
+     */
+    private final BialettiWheelTimer timer;
+    /**
+     * The check of each idle state, then the one of heartbeats
+     */
+    private final Runnable[] checks;
+    /**
+     * The pending check of each idle state, then the one of heartbeats (Guarded by the monitor)
+     */
+    private final BialettiWheelTimer.Timeout[] timeouts;
+    /**
+     * A boolean that tells whether the monitor has been started
+     */
+    private boolean started = false;
+    /**
+     * A boolean that tells whether the monitor has been stopped
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor
+     * The listener and heartbeats run on threads shared by all monitors, and checks run on the default timer
+     * @param c the connection to be watched
+     * @param p the timeouts and heartbeat interval
+     * @param l told when the connection has been idle for a timeout
+     */
+    public BialettiIdleMonitor(BialettiTCPConnection c, BialettiIdlePolicy p, BialettiIdleListener l) {
+        this(c, p, l, Callbacks.INSTANCE, BialettiWheelTimer.getDefault());
+    }
+
+    /**
+     * Constructor
+     * @param c the connection to be watched
+     * @param p the timeouts and heartbeat interval
+     * @param l told when the connection has been idle for a timeout
+     * @param e runs the listener and sends heartbeats
+     * @param t runs the checks
+     */
+    public BialettiIdleMonitor(BialettiTCPConnection c, BialettiIdlePolicy p, BialettiIdleListener l, Executor e, BialettiWheelTimer t) {
+        // Set fields
+        connection = Objects.requireNonNull(c);
+        policy     = Objects.requireNonNull(p);
+        listener   = Objects.requireNonNull(l);
+        executor   = Objects.requireNonNull(e);
+        timer      = Objects.requireNonNull(t);
+        checks     = new Runnable[HEARTBEAT + 1];
+        timeouts   = new BialettiWheelTimer.Timeout[HEARTBEAT + 1];
+
+        for (BialettiIdleState state : BialettiIdleState.values()) checks[state.ordinal()] = () -> checkIdle(state);
+        checks[HEARTBEAT] = this::checkHeartbeat;
+    }
+
+    /**
+     * Starts watching the connection, and enables heartbeats on it if the policy has them
+     */
+    public synchronized void start() {
+        if (started || stopped) return;
+        started = true;
+
+        if (policy.hasHeartbeat()) {
+            connection.setHeartbeats(true);
+            schedule(HEARTBEAT, policy.getHeartbeatNanos());
+        }
+
+        for (BialettiIdleState state : BialettiIdleState.values()) {
+            long timeout = policy.getTimeoutNanos(state);
+            if (timeout > 0) schedule(state.ordinal(), timeout);
+        }
+    }
+
+    /**
+     * Stops watching the connection
+     */
+    public synchronized void stop() {
+        stopped = true;
+
+        for (int i = 0; i < timeouts.length; i++) {
+            if (timeouts[i] != null) timeouts[i].cancel();
+            timeouts[i] = null;
+        }
+    }
+
+    /**
+     * Schedules a check
+     * @param index the index of the check
+     * @param delay the delay, in nanoseconds
+     */
+    private synchronized void schedule(int index, long delay) {
+        if (stopped) return;
+        timeouts[index] = timer.schedule(checks[index], delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Tells the listener if the connection has been idle for a timeout, and schedules the next check
+     * @apiNote runs on the wheel's thread
+     * @param state the kind of inactivity
+     */
+    private void checkIdle(BialettiIdleState state) {
+        if (!isWatching()) return;
+
+        long timeout = policy.getTimeoutNanos(state);
+        long idle    = System.nanoTime() - lastActivity(state);
+
+        if (idle < timeout) {
+            schedule(state.ordinal(), timeout - idle);
+            return;
+        }
+
+        schedule(state.ordinal(), timeout);
+        executor.execute(() -> {
+            // Call handler method
+            if (!stopped) listener.onIdle(state);
+        });
+    }
+
+    /**
+     * Has a heartbeat sent if nothing has been written for the interval, and schedules the next check
+     * @apiNote runs on the wheel's thread, the heartbeat is sent by the executor
+     */
+    private void checkHeartbeat() {
+        if (!isWatching()) return;
+
+        long interval = policy.getHeartbeatNanos();
+        long idle     = System.nanoTime() - connection.getLastWriteTime();
+
+        if (idle < interval) {
+            schedule(HEARTBEAT, interval - idle);
+            return;
+        }
+
+        schedule(HEARTBEAT, interval);
+        executor.execute(() -> {
+            if (stopped) return;
+
+            try { connection.sendHeartbeat(); }
+            catch (RuntimeException ignored) {
+                // The reading side notices broken connections
+            }
+        });
+    }
+
+    /**
+     * @return whether the monitor should keep going (Stops it if the connection has been closed)
+     */
+    private boolean isWatching() {
+        if (stopped) return false;
+        if (!connection.getSocket().isClosed()) return true;
+
+        stop();
+        return false;
+    }
+
+    /**
+     * @param state a kind of inactivity
+     * @return the time of the last activity of that kind, as given by {@link System#nanoTime()}
+     */
+    private long lastActivity(BialettiIdleState state) {
+        return switch (state) {
+            case READER_IDLE -> connection.getLastReadTime();
+            case WRITER_IDLE -> connection.getLastWriteTime();
+            case ALL_IDLE    -> Math.max(connection.getLastReadTime(), connection.getLastWriteTime());
+        };
+    }
+
+    /**
+     * @return the watched connection
+     */
+    public BialettiTCPConnection getConnection() { return connection; }
+    /**
+     * @return the timeouts and heartbeat interval
+     */
+    public BialettiIdlePolicy getPolicy() { return policy; }
+    /**
+     * @return whether the monitor has been stopped
+     */
+    public boolean isStopped() { return stopped; }
+
+    /**
+     * Holds the threads that run the listeners and heartbeats of monitors created without an executor, started the
+     * first time they are needed
+     * @author Alessandro-Salerno
+     */
+    private static final class Callbacks {
+        /**
+         * The threads shared by all monitors
+         */
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "bialetti-idle-callback");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+}
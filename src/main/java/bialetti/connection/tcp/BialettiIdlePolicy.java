@@ -0,0 +1,152 @@
+package bialetti.connection.tcp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The idle timeouts and heartbeat interval of TCP connections
+ * Timeouts and heartbeats that are not set are disabled. Instances are immutable, the with methods return modified
+ * copies.
+ * @see BialettiIdleMonitor
+ * @author Alessandro-Salerno
+ */
+public final class BialettiIdlePolicy {
+    /**
+     * Disables every timeout and heartbeats
+     */
+    public static final BialettiIdlePolicy NONE = new BialettiIdlePolicy(0, 0, 0, 0);
+
+    /**
+     * How long nothing may be read, in nanoseconds (0 if disabled)
+     */
+    private final long readTimeoutNanos;
+    /**
+     * How long nothing may be written, in nanoseconds (0 if disabled)
+     */
+    private final long writeTimeoutNanos;
+    /**
+     * How long nothing may be read or written, in nanoseconds (0 if disabled)
+     */
+    private final long allTimeoutNanos;
+    /**
+     * How long nothing may be written before a heartbeat is sent, in nanoseconds (0 if disabled)
+     */
+    private final long heartbeatNanos;
+
+    /**
+     * Constructor
+     * @param read the read timeout
+     * @param write the write timeout
+     * @param all the all timeout
+     * @param heartbeat the heartbeat interval
+     */
+    private BialettiIdlePolicy(long read, long write, long all, long heartbeat) {
+        readTimeoutNanos  = read;
+        writeTimeoutNanos = write;
+        allTimeoutNanos   = all;
+        heartbeatNanos    = heartbeat;
+    }
+
+    /**
+     * @param timeout how long nothing may be read (0 to disable the timeout)
+     * @param unit the unit of the timeout
+     * @return a copy with the read timeout set
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public BialettiIdlePolicy withReadTimeout(long timeout, TimeUnit unit) throws IllegalArgumentException {
+        return new BialettiIdlePolicy(toNanos(timeout, unit), writeTimeoutNanos, allTimeoutNanos, heartbeatNanos);
+    }
+
+    /**
+     * @param timeout how long nothing may be written (0 to disable the timeout)
+     * @param unit the unit of the timeout
+     * @return a copy with the write timeout set
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public BialettiIdlePolicy withWriteTimeout(long timeout, TimeUnit unit) throws IllegalArgumentException {
+        return new BialettiIdlePolicy(readTimeoutNanos, toNanos(timeout, unit), allTimeoutNanos, heartbeatNanos);
+    }
+
+    /**
+     * @param timeout how long nothing may be read or written (0 to disable the timeout)
+     * @param unit the unit of the timeout
+     * @return a copy with the all timeout set
+     * @throws IllegalArgumentException if the timeout is negative
+     */
+    public BialettiIdlePolicy withAllTimeout(long timeout, TimeUnit unit) throws IllegalArgumentException {
+        return new BialettiIdlePolicy(readTimeoutNanos, writeTimeoutNanos, toNanos(timeout, unit), heartbeatNanos);
+    }
+
+    /**
+     * Heartbeats are empty frames, sent whenever nothing has been written for the interval, which keep the peer's
+     * read timeout from expiring. Both ends must enable them, so that they drop the heartbeats they receive.
+     * @param interval how long nothing may be written before a heartbeat is sent (0 to disable heartbeats)
+     * @param unit the unit of the interval
+     * @return a copy with the heartbeat interval set
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    public BialettiIdlePolicy withHeartbeat(long interval, TimeUnit unit) throws IllegalArgumentException {
+        return new BialettiIdlePolicy(readTimeoutNanos, writeTimeoutNanos, allTimeoutNanos, toNanos(interval, unit));
+    }
+
+    /**
+     * @param state a kind of inactivity
+     * @return the timeout of that kind of inactivity, in nanoseconds (0 if disabled)
+     */
+    long getTimeoutNanos(BialettiIdleState state) {
+        return switch (state) {
+            case READER_IDLE -> readTimeoutNanos;
+            case WRITER_IDLE -> writeTimeoutNanos;
+            case ALL_IDLE    -> allTimeoutNanos;
+        };
+    }
+
+    /**
+     * @return how long nothing may be written before a heartbeat is sent, in nanoseconds (0 if disabled)
+     */
+    long getHeartbeatNanos() { return heartbeatNanos; }
+
+    /**
+     * @param value a duration
+     * @param unit the unit of the duration
+     * @return the duration in nanoseconds
+     * @throws IllegalArgumentException if the duration is negative
+     */
+    private static long toNanos(long value, TimeUnit unit) throws IllegalArgumentException {
+        if (value < 0) throw new IllegalArgumentException("Idle timeouts and heartbeat intervals cannot be negative");
+        return unit.toNanos(value);
+    }
+
+    /**
+     * @return how long nothing may be read, in milliseconds (0 if disabled)
+     */
+    public long getReadTimeout() { return TimeUnit.NANOSECONDS.toMillis(readTimeoutNanos); }
+    /**
+     * @return how long nothing may be written, in milliseconds (0 if disabled)
+     */
+    public long getWriteTimeout() { return TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos); }
+    /**
+     * @return how long nothing may be read or written, in milliseconds (0 if disabled)
+     */
+    public long getAllTimeout() { return TimeUnit.NANOSECONDS.toMillis(allTimeoutNanos); }
+    /**
+     * @return how long nothing may be written before a heartbeat is sent, in milliseconds (0 if disabled)
+     */
+    public long getHeartbeatInterval() { return TimeUnit.NANOSECONDS.toMillis(heartbeatNanos); }
+    /**
+     * @return whether heartbeats are enabled
+     */
+    public boolean hasHeartbeat() { return heartbeatNanos > 0; }
+
+    /**
+     * @return whether any timeout or heartbeats are enabled
+     */
+    public boolean isEnabled() {
+        return readTimeoutNanos > 0 || writeTimeoutNanos > 0 || allTimeoutNanos > 0 || heartbeatNanos > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BialettiIdlePolicy[readTimeout=" + getReadTimeout() + "ms, writeTimeout=" + getWriteTimeout()
+                + "ms, allTimeout=" + getAllTimeout() + "ms, heartbeat=" + getHeartbeatInterval() + "ms]";
+    }
+}
@@ -0,0 +1,20 @@
+package bialetti.connection.tcp;
+
+/**
+ * The kinds of inactivity watched by a {@link BialettiIdleMonitor}
+ * @author Alessandro-Salerno
+ */
+public enum BialettiIdleState {
+    /**
+     * Nothing has been read for the read timeout
+     */
+    READER_IDLE,
+    /**
+     * Nothing has been written for the write timeout
+     */
+    WRITER_IDLE,
+    /**
+     * Nothing has been read or written for the all timeout
+     */
+    ALL_IDLE
+}
@@ -1,79 +1,1528 @@
 package bialetti.connection.tcp;
 
-import bialetti.util.BialettiInputStreamReader;
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.codec.BialettiCompressor;
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.connection.tcp.framing.BialettiFrameCodec;
+import bialetti.exceptions.BialettiCompressionException;
+import bialetti.exceptions.BialettiFramingException;
+import bialetti.metrics.BialettiCounter;
+import bialetti.metrics.BialettiMetrics;
+import bialetti.timer.BialettiWheelTimer;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Used to establish or represent a TCP connection
+ * Without a {@link BialettiFrameCodec}, receive() returns whatever has arrived so far; with one, it returns exactly one
+ * message per frame
+ * Frames can be compressed above a size threshold through a {@link BialettiCompressor}
+ * Messages can be exchanged as strings, as raw bytes through {@link ByteBuffer}s, without charset conversion, or as
+ * typed objects through a {@link BialettiCodec}
  * @author Alessandro-Salerno
  */
 public class BialettiTCPConnection {
+    /**
+     * The number of queued bytes at which connections stop being writable unless another one is given
+     */
+    public static final long DEFAULT_HIGH_WATERMARK = 64 * 1024;
+    /**
+     * The number of queued bytes at which connections become writable again unless another one is given
+     */
+    public static final long DEFAULT_LOW_WATERMARK = 32 * 1024;
+    /**
+     * The number of unconsumed incoming bytes at which connections driven by an event loop stop reading unless another
+     * one is given (Room for the largest frame of the default length field framing and its length field)
+     */
+    public static final int DEFAULT_INBOUND_LIMIT = 16 * 1024 * 1024 + Integer.BYTES;
+
+    /**
+     * The initial size of the buffer that holds incoming data
+     */
+    private static final int INBOUND_CAPACITY = 1024;
+
     /**
      * The Java {@link Socket} for the connection
      */
     private final Socket connectionSocket;
     /**
-     * The connection's {@link BialettiInputStreamReader}
+     * The {@link SocketChannel} behind the socket (null if the socket has no channel)
+     */
+    private final SocketChannel connectionChannel;
+    /**
+     * The channel from which incoming data is read
+     */
+    private final ReadableByteChannel inputChannel;
+    /**
+     * The channel to which outgoing data is written
+     */
+    private final WritableByteChannel outputChannel;
+    /**
+     * The charset used to convert messages from and to strings
+     */
+    private final Charset charset;
+    /**
+     * The decoder used to turn incoming bytes into characters
+     */
+    private final CharsetDecoder decoder;
+    /**
+     * Data waiting to be written, in order: first the buffers that have been flushed but not fully written yet,
+     * then the ones queued by the flush policy
+     */
+    private final Deque<ByteBuffer> outboundQueue;
+    /**
+     * Serializes blocking writes, so that the outbound queue is only locked to add or take buffers
+     */
+    private final Object writeLock;
+    /**
+     * Guards the inbound buffer, which goes back to the pool when the connection is closed
+     */
+    private final Object inboundLock;
+    /**
+     * The pooled buffer behind the inbound buffer (null once the connection is closed)
+     */
+    private BialettiPooledBuffer inboundPooled;
+    /**
+     * Incoming data that has not been consumed yet (Always in write mode)
+     */
+    private ByteBuffer inboundBuffer;
+    /**
+     * The number of bytes at the start of the inbound buffer that belong to frames already returned
+     */
+    private int consumedInbound = 0;
+    /**
+     * The number of unconsumed incoming bytes at which the connection stops reading (Event loop mode)
+     */
+    private volatile int inboundLimit = DEFAULT_INBOUND_LIMIT;
+    /**
+     * Whether the connection has stopped reading because the inbound limit was reached (Guarded by the inbound lock)
+     */
+    private boolean readingPaused = false;
+    /**
+     * The framing of messages (null to return whatever has arrived)
+     */
+    private volatile BialettiFrameCodec frameCodec;
+    /**
+     * Compresses outgoing frames and decompresses incoming ones (null if compression is disabled)
+     */
+    private volatile BialettiCompressor compression;
+    /**
+     * Holds the last decompressed frame until the next receive (null if there is none)
+     */
+    private BialettiPooledBuffer inflatedFrame;
+    /**
+     * The key of the channel if the connection is driven by an event loop
+     */
+    private volatile SelectionKey selectionKey;
+    /**
+     * Decides when queued messages are written
+     */
+    private volatile BialettiFlushPolicy flushPolicy = BialettiFlushPolicy.IMMEDIATE;
+    /**
+     * Reused to pass queued buffers to gathering writes (Event loop mode)
+     */
+    private ByteBuffer[] gatherArray = new ByteBuffer[16];
+    /**
+     * Reused to pass buffers taken from the queue to gathering writes (Blocking mode)
+     */
+    private ByteBuffer[] writeArray = new ByteBuffer[16];
+    /**
+     * The number of buffers at the head of the outbound queue that have been flushed
+     */
+    private int flushedBuffers = 0;
+    /**
+     * The number of messages queued since the last flush
+     */
+    private int batchMessages = 0;
+    /**
+     * The number of bytes queued since the last flush
+     */
+    private long batchBytes = 0;
+    /**
+     * Whether a deadline flush is already scheduled
+     */
+    private boolean flushScheduled = false;
+    /**
+     * Whether an asynchronous flush is scheduled or running, so that a connection never holds more than one writer
+     */
+    private boolean asyncFlushScheduled = false;
+    /**
+     * The number of bytes in the outbound queue
      */
-    private final BialettiInputStreamReader inputStreamReader;
+    private volatile long pendingBytes = 0;
     /**
-     * The connection's {@link java.io.OutputStream}
+     * The number of write calls issued to the socket
      */
-    private final PrintWriter outputPrintWriter;
+    private volatile long writeCount = 0;
+    /**
+     * The number of queued bytes at which the connection stops being writable
+     */
+    private volatile long highWatermark = DEFAULT_HIGH_WATERMARK;
+    /**
+     * The number of queued bytes at which the connection becomes writable again
+     */
+    private volatile long lowWatermark = DEFAULT_LOW_WATERMARK;
+    /**
+     * Whether the queued bytes are below the high watermark, or have fallen to the low one since reaching it
+     */
+    private volatile boolean writable = true;
+    /**
+     * Told when the connection stops or starts being writable (null if nobody listens)
+     */
+    private volatile BialettiWritabilityListener writabilityListener;
+    /**
+     * Serializes writability changes, so that listeners are told about them in order
+     */
+    private final Object writabilityLock = new Object();
+    /**
+     * When data was last read from the socket, as given by {@link System#nanoTime()}
+     */
+    private volatile long lastReadTime = System.nanoTime();
+    /**
+     * When data was last written to the socket, as given by {@link System#nanoTime()}
+     */
+    private volatile long lastWriteTime = lastReadTime;
+    /**
+     * Whether empty frames are heartbeats, which are dropped when received
+     */
+    private volatile boolean heartbeats = false;
+    /**
+     * Records bytes and messages in and out (null if metrics are disabled)
+     */
+    private volatile BialettiMetrics metrics;
 
     /**
      * Client-side constructor
      * @param address the IP address of the destination host
      * @param port the port of the destination host
+     * @throws IOException if the connection cannot be established
      */
     public BialettiTCPConnection(String address, int port) throws IOException {
-        this(new Socket(address, port));
+        this(address, port, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Client-side constructor
+     * @param address the IP address of the destination host
+     * @param port the port of the destination host
+     * @param options the options of the socket (Applied before connecting)
+     * @throws IOException if the connection cannot be established
+     */
+    public BialettiTCPConnection(String address, int port, BialettiSocketOptions options) throws IOException {
+        this(connect(address, port, options));
+    }
+
+    /**
+     * Server-side constructor
+     * @param channel the Java {@link SocketChannel} instance
+     * @throws IOException if it is not able to access the channel
+     */
+    public BialettiTCPConnection(SocketChannel channel) throws IOException {
+        this(channel.socket());
     }
 
     /**
      * Server-side constructor
      * @param socket the Java {@link Socket} instance
-     * @throws IOException if it is not able to instantiate the {@link BialettiInputStreamReader} or the {@link PrintWriter}
+     * @throws IOException if it is not able to access the socket's streams
      */
     public BialettiTCPConnection(Socket socket) throws IOException {
         connectionSocket  = socket;
-        inputStreamReader = new BialettiInputStreamReader(connectionSocket.getInputStream());
-        outputPrintWriter = new PrintWriter(connectionSocket.getOutputStream());
+        connectionChannel = socket.getChannel();
+        inputChannel      = (connectionChannel != null) ? connectionChannel : Channels.newChannel(socket.getInputStream());
+        outputChannel     = (connectionChannel != null) ? connectionChannel : Channels.newChannel(socket.getOutputStream());
+        charset           = Charset.defaultCharset();
+        decoder           = charset.newDecoder()
+                                   .onMalformedInput(CodingErrorAction.REPLACE)
+                                   .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        outboundQueue     = new ArrayDeque<>();
+        writeLock         = new Object();
+        inboundLock       = new Object();
+        inboundPooled     = BialettiBufferPool.getDefault().acquire(INBOUND_CAPACITY);
+        inboundBuffer     = inboundPooled.getBuffer();
     }
 
     /**
-     * Reads from the input stream and returns everything as a byte array
+     * Receives a message in string form
+     * Without framing, reads from the socket and returns everything that has arrived; with framing, returns the
+     * next complete frame
+     * @apiNote if the connection is driven by an event loop, this method never blocks and only returns what has
+     * already been read from the socket
      * @throws IOException if it fails to read
-     * @return the message
+     * @return the message (Empty if the peer closed the connection or no complete message is available)
      */
     public String receive() throws IOException {
-        // Reads the entire stream and returns it in string form
-        return inputStreamReader.readall();
+        synchronized (inboundLock) {
+            if (frameCodec != null) {
+                ByteBuffer frame = receiveFrame();
+                return (frame != null) ? charset.decode(frame).toString() : "";
+            }
+
+            discardConsumed();
+
+            if (!isEventDriven()) {
+                // Keep reading as long as the buffer gets filled up
+                while (fill() > 0 && !inboundBuffer.hasRemaining()) {
+                    growInbound();
+                }
+            }
+
+            return decodeInbound();
+        }
+    }
+
+    /**
+     * Receives the next frame
+     * The returned buffer is a read-only view of the connection's internal buffer: it is not copied, and is only
+     * valid until the next call to a receive method or until the connection is closed. Compressed frames are
+     * decompressed into a pooled buffer, held for as long.
+     * @apiNote if the connection is driven by an event loop, this method never blocks
+     * @return the frame's payload, null if the peer closed the connection or no complete frame is available
+     * @throws IOException if it fails to read, the data is not valid for the framing or cannot be decompressed
+     * @throws IllegalStateException if the connection has no framing
+     */
+    public ByteBuffer receiveFrame() throws IOException,
+                                            IllegalStateException {
+        BialettiFrameCodec codec = frameCodec;
+
+        if (codec == null) {
+            throw new IllegalStateException("The connection has no framing");
+        }
+
+        synchronized (inboundLock) {
+            discardConsumed();
+            releaseInflated();
+
+            while (true) {
+                ByteBuffer readable = inboundBuffer.duplicate().flip();
+                ByteBuffer frame    = codec.decode(readable);
+
+                if (frame != null) {
+                    consumedInbound = readable.position();
+
+                    // Heartbeats only keep the connection alive
+                    if (heartbeats && !frame.hasRemaining()) {
+                        discardConsumed();
+                        continue;
+                    }
+
+                    BialettiMetrics recorder = metrics;
+                    if (recorder != null) recorder.increment(BialettiCounter.MESSAGES_IN);
+
+                    return decompress(frame).asReadOnlyBuffer();
+                }
+
+                // Need more data
+                if (isEventDriven()) return null;
+                if (!inboundBuffer.hasRemaining()) growInbound();
+                if (fill() == -1) return null;
+            }
+        }
+    }
+
+    /**
+     * Receives a typed message
+     * The message is decoded straight from the connection's internal buffer
+     * @apiNote if the connection is driven by an event loop, this method never blocks
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return the message, null if the peer closed the connection or no complete message is available
+     * @throws IOException if it fails to read, the data is not valid for the framing or cannot be decoded
+     * @throws IllegalStateException if the connection has no framing
+     */
+    public <T> T receive(BialettiCodec<T> codec) throws IOException,
+                                                        IllegalStateException {
+        synchronized (inboundLock) {
+            ByteBuffer frame = receiveFrame();
+            return (frame != null) ? codec.decode(new BialettiBinaryReader(frame)) : null;
+        }
+    }
+
+    /**
+     * Receives raw bytes
+     * Without framing, hands over the data that has already been read or, if there is none, reads from the socket
+     * straight into the buffer; with framing, copies the next complete frame
+     * @apiNote if the connection is driven by an event loop, this method never blocks
+     * @param dst the buffer that receives the data (Heap or direct)
+     * @return the number of bytes received, -1 if the peer closed the connection
+     * @throws IOException if it fails to read or the data is not valid for the framing
+     * @throws BufferOverflowException if the next frame does not fit in the buffer (The frame is kept)
+     */
+    public int receive(ByteBuffer dst) throws IOException,
+                                              BufferOverflowException {
+        return (int) receive(new ByteBuffer[] { dst });
+    }
+
+    /**
+     * Receives raw bytes, filling the buffers in order
+     * @see #receive(ByteBuffer)
+     * @param dsts the buffers that receive the data (Heap or direct)
+     * @return the number of bytes received, -1 if the peer closed the connection
+     * @throws IOException if it fails to read or the data is not valid for the framing
+     * @throws BufferOverflowException if the next frame does not fit in the buffers (The frame is kept)
+     */
+    public long receive(ByteBuffer... dsts) throws IOException,
+                                                   BufferOverflowException {
+        synchronized (inboundLock) {
+            if (frameCodec != null) {
+                ByteBuffer frame = receiveFrame();
+                if (frame == null) return isEventDriven() ? 0 : -1;
+
+                if (frame.remaining() > remaining(dsts)) {
+                    // Leave the frame for the next call
+                    consumedInbound = 0;
+                    throw new BufferOverflowException();
+                }
+
+                return transfer(frame, dsts);
+            }
+
+            discardConsumed();
+
+            // Hand over what has already been read
+            if (hasInbound()) {
+                inboundBuffer.flip();
+                long transferred = transfer(inboundBuffer, dsts);
+                inboundBuffer.compact();
+
+                return transferred;
+            }
+        }
+
+        if (isEventDriven()) return 0;
+
+        // Single scattering read
+        if (connectionChannel != null) return recordRead(connectionChannel.read(dsts));
+
+        for (ByteBuffer dst : dsts) {
+            if (dst.hasRemaining()) return recordRead(inputChannel.read(dst));
+        }
+
+        return 0;
     }
 
     /**
      * Sends a string
+     * If the connection has framing, the string is sent as one frame
+     * @param data the message to be sent
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public void send(String data) throws RuntimeException {
+        transmit(false, false, charset.encode(data));
+    }
+
+    /**
+     * Sends raw bytes
+     * If the connection has framing, the bytes are sent as one frame
+     * @param data the data to be sent (Heap or direct), its position is moved to its limit
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public void send(ByteBuffer data) throws RuntimeException {
+        transmit(true, false, data);
+    }
+
+    /**
+     * Sends a typed message
+     * The message is encoded into a pooled buffer, which is given back once the message has been written or queued.
+     * If the connection has framing, the message is sent as one frame.
+     * @param message the message
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public <T> void send(T message, BialettiCodec<T> codec) throws RuntimeException {
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            codec.encode(message, out);
+            transmit(true, false, out.getWritten());
+        }
+    }
+
+    /**
+     * Sends raw bytes from several buffers with a single gathering write, such as a header and a body
+     * If the connection has framing, the buffers are sent as one frame
+     * @param data the data to be sent (Heap or direct), the position of each buffer is moved to its limit
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public void send(ByteBuffer... data) throws RuntimeException {
+        transmit(true, false, data);
+    }
+
+    /**
+     * Sends raw bytes unless the connection is not writable, without blocking
+     * The message is queued and flushed right away: connections driven by an event loop write as much as possible,
+     * the others leave the write to a background thread
+     * @see #isWritable()
+     * @param data the data to be sent (Heap or direct), its position is moved to its limit if accepted
+     * @return false if the queued bytes have reached the high watermark, in which case nothing is sent
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public boolean trySend(ByteBuffer data) throws RuntimeException {
+        return trySend(new ByteBuffer[] { data });
+    }
+
+    /**
+     * Sends a string unless the connection is not writable, without blocking
+     * @see #trySend(ByteBuffer)
      * @param data the message to be sent
+     * @return false if the queued bytes have reached the high watermark, in which case nothing is sent
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public boolean trySend(String data) throws RuntimeException {
+        if (!writable) return false;
+        return trySend(charset.encode(data));
+    }
+
+    /**
+     * Sends a typed message unless the connection is not writable, without blocking
+     * @see #trySend(ByteBuffer)
+     * @param message the message
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return false if the queued bytes have reached the high watermark, in which case nothing is sent
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public <T> boolean trySend(T message, BialettiCodec<T> codec) throws RuntimeException {
+        if (!writable) return false;
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            codec.encode(message, out);
+            return trySend(out.getWritten());
+        }
+    }
+
+    /**
+     * Sends raw bytes from several buffers unless the connection is not writable, without blocking
+     * @see #trySend(ByteBuffer)
+     * @param data the data to be sent (Heap or direct), the position of each buffer is moved to its limit if accepted
+     * @return false if the queued bytes have reached the high watermark, in which case nothing is sent
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public boolean trySend(ByteBuffer... data) throws RuntimeException {
+        if (!writable) return false;
+
+        transmit(true, true, data);
+        return true;
+    }
+
+    /**
+     * Sends a heartbeat, an empty frame that keeps the peer's read timeout from expiring, without blocking
+     * @see #setHeartbeats(boolean)
+     * @return false if the connection has no framing or is not writable, in which case nothing is sent
+     * @throws IllegalArgumentException if the framing does not allow empty frames
+     * @throws RuntimeException if an I/O error occurs
+     */
+    public boolean sendHeartbeat() throws IllegalArgumentException,
+                                          RuntimeException {
+        BialettiFrameCodec codec = frameCodec;
+        if (codec == null || !writable) return false;
+
+        // Not compressed, so that it stays empty
+        try { queueAndFlush(AsyncWriters.INSTANCE, false, codec.encode(ByteBuffer.allocate(0))); }
+        catch (IOException e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
+
+        updateWritability();
+        return true;
+    }
+
+    /**
+     * Writes the messages queued by the flush policy
+     * @throws RuntimeException if an I/O error occurs
      */
-    public void send(String data) {
-        // Sends the string
-        outputPrintWriter.print(data);
-        outputPrintWriter.flush();
+    public void flush() throws RuntimeException {
+        synchronized (outboundQueue) { markFlushed(); }
+
+        try { writeFlushed(); }
+        catch (IOException e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
     }
 
     /**
      * Closes the connection
+     * @apiNote messages queued by the flush policy and not flushed yet are discarded
      * @throws Exception if something goes wrong
      */
     public void close() throws Exception {
+        if (connectionChannel != null) connectionChannel.close();
         getSocket().close();
+
+        // Give the inbound buffer back once no reader is using it
+        synchronized (inboundLock) {
+            if (inboundPooled == null) return;
+
+            inboundPooled.release();
+            inboundPooled   = null;
+            inboundBuffer   = null;
+            consumedInbound = 0;
+            releaseInflated();
+        }
+    }
+
+    /**
+     * Writes buffers to the socket in order
+     * If the connection is driven by an event loop, the data that cannot be written right away is kept
+     * and written as soon as the socket becomes writable
+     * @param data the data to be written (Must not be modified by the caller afterwards)
+     * @throws IOException if an I/O error occurs
+     */
+    protected void write(ByteBuffer... data) throws IOException {
+        write(false, data);
+    }
+
+    /**
+     * Writes as much flushed data as possible without blocking
+     * @apiNote called by the event loop when the socket becomes writable
+     * @throws IOException if an I/O error occurs
+     */
+    protected void flushPending() throws IOException {
+        writeFlushed();
+    }
+
+    /**
+     * Queues a message without writing it on the calling thread
+     * The message is flushed right away: connections driven by an event loop write as much as possible without
+     * blocking, the others leave the write to a task run by the executor
+     * @apiNote failures of the write are reported to {@link #onFlushFailure(IOException)}
+     * @param executor runs blocking writes
+     * @param data the message (Not copied, must not be modified by the caller afterwards), already compressed if
+     * the connection has compression
+     * @throws IllegalStateException if the connection has compression but no framing
+     */
+    protected void sendAsync(Executor executor, ByteBuffer... data) throws IllegalStateException {
+        BialettiFrameCodec codec = frameCodec;
+
+        if (codec == null && compression != null) {
+            throw new IllegalStateException("Compression needs framing");
+        }
+
+        try { queueAndFlush(executor, false, (codec != null) ? codec.encode(data) : data); }
+        catch (IOException e) {
+            // Call handler method
+            onFlushFailure(e);
+        }
+
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) recorder.increment(BialettiCounter.MESSAGES_OUT);
+
+        updateWritability();
+    }
+
+    /**
+     * What happens when a write that is not performed by a sender (Such as an asynchronous or deadline flush) fails
+     * @apiNote the default implementation does nothing, the reading side notices broken connections
+     * @param e the exception
+     */
+    protected void onFlushFailure(IOException e) { }
+
+    /**
+     * Reads all data available on the socket without blocking
+     * Once the unconsumed data reaches the inbound limit, the connection stops reading and the event loop stops
+     * watching it until {@link #resumeReading()} is called
+     * @apiNote called by the event loop when the socket becomes readable
+     * @return the number of bytes read, -1 if the peer closed the connection
+     * @throws IOException if an I/O error occurs
+     */
+    protected int readAvailable() throws IOException {
+        int total = 0;
+        int read;
+
+        synchronized (inboundLock) {
+            discardConsumed();
+
+            while ((read = fill()) > 0) {
+                total += read;
+                if (inboundBuffer.hasRemaining()) continue;
+
+                // Leave the rest in the socket, so that the peer is slowed down by TCP instead of filling the heap
+                if (inboundBuffer.position() >= inboundLimit) {
+                    readingPaused = true;
+                    selectionKey.interestOpsAnd(~SelectionKey.OP_READ);
+                    break;
+                }
+
+                growInbound();
+            }
+        }
+
+        return (read == -1) ? -1 : total;
+    }
+
+    /**
+     * Starts reading again if the connection stopped at the inbound limit and enough data has been consumed since
+     * @apiNote called by the event loop after the handlers have consumed what they could
+     * @throws BialettiFramingException if the connection is still at the limit, because no complete message fits in it
+     */
+    protected void resumeReading() throws BialettiFramingException {
+        synchronized (inboundLock) {
+            if (!readingPaused || inboundBuffer == null) return;
+
+            if (getInboundCount() >= inboundLimit) {
+                throw new BialettiFramingException("No complete message within the inbound limit of " + inboundLimit + " bytes");
+            }
+
+            readingPaused = false;
+            selectionKey.interestOpsOr(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Makes the connection driven by an event loop
+     * @param key the key returned when the channel was registered
+     */
+    protected void attach(SelectionKey key) {
+        selectionKey = key;
+    }
+
+    /**
+     * @return the number of bytes that have been read but not consumed yet
+     */
+    protected int getInboundCount() {
+        synchronized (inboundLock) {
+            return (inboundBuffer != null) ? inboundBuffer.position() - consumedInbound : 0;
+        }
+    }
+    /**
+     * @return whether there is data that has been read but not consumed yet
+     */
+    protected boolean hasInbound() { return getInboundCount() > 0; }
+    /**
+     * @return whether the connection is driven by an event loop
+     */
+    public boolean isEventDriven() { return selectionKey != null; }
+
+    /**
+     * Sets when queued messages are written
+     * Switching to {@link BialettiFlushPolicy#IMMEDIATE} flushes the messages queued so far
+     * @apiNote on connections that are not driven by an event loop, deadline flushes are written by the threads that
+     * write the messages sent with trySend(), so a peer that stops reading holds one of them, not the shared timer
+     * @param policy the flush policy
+     * @throws RuntimeException if an I/O error occurs while flushing
+     */
+    public void setFlushPolicy(BialettiFlushPolicy policy) throws RuntimeException {
+        synchronized (outboundQueue) {
+            flushPolicy = Objects.requireNonNull(policy);
+        }
+
+        if (policy == BialettiFlushPolicy.IMMEDIATE) flush();
+    }
+    /**
+     * @return when queued messages are written
+     */
+    public BialettiFlushPolicy getFlushPolicy() { return flushPolicy; }
+    /**
+     * @return the number of write calls issued to the socket
+     */
+    public long getWriteCount() { return writeCount; }
+    /**
+     * @return the number of bytes waiting to be written
+     */
+    public long getPendingBytes() { return pendingBytes; }
+
+    /**
+     * Sets the watermarks of the outbound queue
+     * The connection stops being writable once the queued bytes reach the high watermark, and becomes writable again
+     * once they fall to the low one
+     * @param low the number of queued bytes at which the connection becomes writable again
+     * @param high the number of queued bytes at which the connection stops being writable
+     * @throws IllegalArgumentException if the low watermark is negative or greater than the high one
+     */
+    public void setWatermarks(long low, long high) throws IllegalArgumentException {
+        if (low < 0 || low > high) throw new IllegalArgumentException("The watermarks must satisfy 0 <= low <= high");
+
+        synchronized (outboundQueue) {
+            lowWatermark  = low;
+            highWatermark = high;
+        }
+
+        updateWritability();
+    }
+    /**
+     * @return the number of queued bytes at which the connection becomes writable again
+     */
+    public long getLowWatermark() { return lowWatermark; }
+    /**
+     * @return the number of queued bytes at which the connection stops being writable
+     */
+    public long getHighWatermark() { return highWatermark; }
+    /**
+     * Producers that must not block should check this before sending, or use trySend()
+     * @return whether the queued bytes are below the high watermark, or have fallen to the low one since reaching it
+     */
+    public boolean isWritable() { return writable; }
+    /**
+     * Sets who is told when the connection stops or starts being writable
+     * @param listener the listener (null to stop listening)
+     */
+    public void setWritabilityListener(BialettiWritabilityListener listener) { writabilityListener = listener; }
+    /**
+     * @return who is told when the connection stops or starts being writable (null if nobody listens)
+     */
+    public BialettiWritabilityListener getWritabilityListener() { return writabilityListener; }
+
+    /**
+     * Sets the number of unconsumed incoming bytes at which the connection stops reading (Event loop mode)
+     * @apiNote the limit must leave room for the largest frame and its header, connections that receive a larger one
+     * fail with a {@link BialettiFramingException}
+     * @param limit the limit in bytes
+     * @throws IllegalArgumentException if the limit is not positive
+     */
+    public void setInboundLimit(int limit) throws IllegalArgumentException {
+        if (limit <= 0) throw new IllegalArgumentException("The inbound limit must be positive");
+        inboundLimit = limit;
+    }
+    /**
+     * @return the number of unconsumed incoming bytes at which the connection stops reading (Event loop mode)
+     */
+    public int getInboundLimit() { return inboundLimit; }
+
+    /**
+     * @return when data was last read from the socket, as given by {@link System#nanoTime()}
+     */
+    public long getLastReadTime() { return lastReadTime; }
+    /**
+     * @return when data was last written to the socket, as given by {@link System#nanoTime()}
+     */
+    public long getLastWriteTime() { return lastWriteTime; }
+    /**
+     * Sets whether empty frames are heartbeats, which receive methods drop instead of returning
+     * Both ends must agree, and heartbeats need framing
+     * @see BialettiIdleMonitor
+     * @param enabled whether empty frames are heartbeats
+     */
+    public void setHeartbeats(boolean enabled) { heartbeats = enabled; }
+    /**
+     * @return whether empty frames are heartbeats
+     */
+    public boolean hasHeartbeats() { return heartbeats; }
+
+    /**
+     * Sets the framing of messages
+     * @param codec the frame codec (null to return whatever has arrived)
+     */
+    public void setFraming(BialettiFrameCodec codec) { frameCodec = codec; }
+    /**
+     * @return the framing of messages (null if there is none)
+     */
+    public BialettiFrameCodec getFraming() { return frameCodec; }
+    /**
+     * Sets the compression of messages
+     * Every frame is flagged as compressed or raw, so compression needs framing, and both ends must enable it
+     * @param compressor the compressor (null to disable compression)
+     */
+    public void setCompression(BialettiCompressor compressor) { compression = compressor; }
+    /**
+     * @return the compression of messages (null if it is disabled)
+     */
+    public BialettiCompressor getCompression() { return compression; }
+    /**
+     * Sets the metrics in which the connection records the bytes and messages it sends and receives
+     * Only frames count as received messages, while every send counts as a sent message
+     * @param recorder the metrics (null to disable metrics)
+     */
+    public void setMetrics(BialettiMetrics recorder) { metrics = recorder; }
+    /**
+     * @return the metrics of the connection (null if metrics are disabled)
+     */
+    public BialettiMetrics getMetrics() { return metrics; }
+
+    /**
+     * Strips the compression flag from a frame, decompressing it if needed
+     * @apiNote must hold the inbound lock
+     * @param frame the frame
+     * @return the frame's payload
+     * @throws BialettiCompressionException if the frame cannot be decompressed
+     */
+    private ByteBuffer decompress(ByteBuffer frame) throws BialettiCompressionException {
+        BialettiCompressor compressor = compression;
+        if (compressor == null) return frame;
+
+        // Raw frames are not copied
+        if (!BialettiCompressor.isCompressed(frame)) return frame.position(frame.position() + 1).slice();
+
+        inflatedFrame = compressor.decompress(frame);
+        return inflatedFrame.getBuffer();
+    }
+
+    /**
+     * Gives the last decompressed frame back to the pool
+     * @apiNote must hold the inbound lock
+     */
+    private void releaseInflated() {
+        if (inflatedFrame == null) return;
+
+        inflatedFrame.release();
+        inflatedFrame = null;
+    }
+
+    /**
+     * Reads once from the socket into the inbound buffer
+     * @return the number of bytes read, -1 if the end of the stream has been reached
+     * @throws IOException if an I/O error occurs
+     */
+    private int fill() throws IOException {
+        return (int) recordRead(inputChannel.read(inboundBuffer));
+    }
+
+    /**
+     * Records the time of a read
+     * @param read the number of bytes read
+     * @return the number of bytes read
+     */
+    private long recordRead(long read) {
+        if (read <= 0) return read;
+
+        lastReadTime = System.nanoTime();
+
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) recorder.add(BialettiCounter.BYTES_IN, read);
+
+        return read;
+    }
+
+    /**
+     * Records the time of a write
+     * @param written the number of bytes written
+     */
+    private void recordWrite(long written) {
+        if (written <= 0) return;
+
+        lastWriteTime = System.nanoTime();
+
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) recorder.add(BialettiCounter.BYTES_OUT, written);
+    }
+
+    /**
+     * Drops the bytes of frames that have already been returned
+     * @throws ClosedChannelException if the connection has been closed
+     */
+    private void discardConsumed() throws ClosedChannelException {
+        if (inboundBuffer == null) throw new ClosedChannelException();
+        if (consumedInbound == 0) return;
+
+        inboundBuffer.flip().position(consumedInbound);
+        inboundBuffer.compact();
+        consumedInbound = 0;
+    }
+
+    /**
+     * Doubles the capacity of the inbound buffer
+     */
+    private void growInbound() {
+        BialettiPooledBuffer bigger = BialettiBufferPool.getDefault().acquire(inboundBuffer.capacity() * 2);
+
+        inboundBuffer.flip();
+        bigger.getBuffer().put(inboundBuffer);
+        inboundPooled.release();
+
+        inboundPooled = bigger;
+        inboundBuffer = bigger.getBuffer();
+    }
+
+    /**
+     * Decodes all complete characters held by the inbound buffer
+     * Bytes belonging to an incomplete character are kept for the next call
+     * @return the decoded string
+     */
+    private String decodeInbound() {
+        inboundBuffer.flip();
+
+        CharBuffer chars = CharBuffer.allocate((int) (inboundBuffer.remaining() * decoder.maxCharsPerByte()) + 1);
+        decoder.decode(inboundBuffer, chars, false);
+
+        inboundBuffer.compact();
+        return chars.flip().toString();
+    }
+
+    /**
+     * Frames the data if needed and writes it
+     * @param copy whether data that cannot be written right away must be copied (The caller keeps the buffers)
+     * @param async whether to queue the data and leave the write to the event loop or a background thread
+     * @param data the data to be written
+     * @throws RuntimeException if an I/O error occurs
+     */
+    private void transmit(boolean copy, boolean async, ByteBuffer... data) throws RuntimeException {
+        BialettiFrameCodec codec      = frameCodec;
+        BialettiCompressor compressor = compression;
+
+        try {
+            if (compressor == null) {
+                write(copy, async, (codec != null) ? codec.encode(data) : data);
+                return;
+            }
+
+            if (codec == null) {
+                throw new IllegalStateException("Compression needs framing");
+            }
+
+            // Small payloads skip the writer
+            if (BialettiFrameCodec.length(data) < compressor.getThreshold()) {
+                write(copy, async, codec.encode(compressor.raw(data)));
+                return;
+            }
+
+            // The compressed frame goes back to the pool right away, so it must be copied if queued
+            try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+                write(true, async, codec.encode(compressor.compress(out, data)));
+            }
+        }
+
+        catch (IOException e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes buffers to the socket in order, or queues them
+     * @param copy whether data that is not written right away must be copied (The caller keeps the buffers)
+     * @param async whether to queue the data and leave the write to the event loop or a background thread
+     * @param data the data to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(boolean copy, boolean async, ByteBuffer... data) throws IOException {
+        if (async) queueAndFlush(AsyncWriters.INSTANCE, copy, data);
+        else write(copy, data);
+
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) recorder.increment(BialettiCounter.MESSAGES_OUT);
+
+        updateWritability();
+    }
+
+    /**
+     * Queues buffers and flushes them without writing on the calling thread
+     * Connections driven by an event loop write as much as possible without blocking, the others leave the write to
+     * a task run by the executor
+     * @param executor runs blocking writes
+     * @param copy whether the buffers must be copied (The caller keeps them)
+     * @param data the buffers
+     * @throws IOException if an I/O error occurs while writing without blocking
+     */
+    private void queueAndFlush(Executor executor, boolean copy, ByteBuffer... data) throws IOException {
+        synchronized (outboundQueue) {
+            enqueue(copy, data);
+            if (!flushQueued()) return;
+        }
+
+        submitFlush(executor);
+    }
+
+    /**
+     * Marks the queued buffers as flushed and writes them without blocking if the connection is driven by an event loop
+     * @apiNote must hold the outbound queue's lock
+     * @return whether a task must be submitted to write them (See {@link #submitFlush(Executor)})
+     * @throws IOException if an I/O error occurs while writing without blocking
+     */
+    private boolean flushQueued() throws IOException {
+        markFlushed();
+
+        if (selectionKey != null) {
+            writeFlushedNow();
+            return false;
+        }
+
+        // The task that is scheduled or running writes these buffers as well
+        if (asyncFlushScheduled) return false;
+        asyncFlushScheduled = true;
+
+        return true;
+    }
+
+    /**
+     * Hands the flushed buffers to a task run by the executor
+     * The write never runs on the calling thread: if the executor rejects the task, the buffers stay queued, still
+     * counting towards the watermarks, and the task is submitted again on the next tick of the default
+     * {@link BialettiWheelTimer}
+     * @param executor runs blocking writes
+     */
+    private void submitFlush(Executor executor) {
+        try { executor.execute(this::asyncFlush); }
+
+        catch (RejectedExecutionException e) {
+            // Nothing will write the buffers anymore, they are discarded along with the connection
+            if (connectionSocket.isClosed() || (executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown())) {
+                synchronized (outboundQueue) { asyncFlushScheduled = false; }
+                return;
+            }
+
+            BialettiWheelTimer.getDefault().schedule(() -> submitFlush(executor), 0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Writes buffers to the socket in order, or queues them according to the flush policy
+     * @param copy whether data that is not written right away must be copied (The caller keeps the buffers)
+     * @param data the data to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private void write(boolean copy, ByteBuffer... data) throws IOException {
+        BialettiFlushPolicy policy = flushPolicy;
+        boolean flush;
+
+        // Nothing to coalesce with, skip the queue
+        if (policy == BialettiFlushPolicy.IMMEDIATE) {
+            if (selectionKey == null) {
+                synchronized (writeLock) {
+                    // Messages queued by asynchronous sends go first
+                    writeFlushed();
+                    writeFully(data, data.length);
+                }
+
+                return;
+            }
+
+            synchronized (outboundQueue) {
+                if (outboundQueue.isEmpty()) {
+                    writeDirect(copy, data);
+                    return;
+                }
+            }
+        }
+
+        synchronized (outboundQueue) {
+            enqueue(copy, data);
+            batchMessages++;
+
+            flush = policy.shouldFlush(batchMessages, batchBytes);
+            if (flush) markFlushed();
+
+            else if (policy.getKind() == BialettiFlushPolicy.Kind.DEADLINE && !flushScheduled) {
+                flushScheduled = true;
+                policy.schedule(this::deadlineFlush);
+            }
+        }
+
+        if (flush) writeFlushed();
+    }
+
+    /**
+     * Writes buffers without queueing them, keeping the data that cannot be written right away
+     * @apiNote only for connections driven by an event loop, must hold the outbound queue's lock
+     * @param copy whether data that is not written right away must be copied (The caller keeps the buffers)
+     * @param data the data to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeDirect(boolean copy, ByteBuffer[] data) throws IOException {
+        recordWrite(connectionChannel.write(data));
+        writeCount++;
+
+        if (!hasRemaining(data, data.length)) return;
+
+        // Keep the rest for later
+        for (ByteBuffer buffer : data) {
+            if (!buffer.hasRemaining()) continue;
+
+            pendingBytes += buffer.remaining();
+            outboundQueue.add(copy ? copyOf(buffer) : buffer);
+            flushedBuffers++;
+        }
+
+        SelectionKey key = selectionKey;
+        key.interestOpsOr(SelectionKey.OP_WRITE);
+        key.selector().wakeup();
+    }
+
+    /**
+     * Adds buffers to the outbound queue
+     * @apiNote must hold the outbound queue's lock
+     * @param copy whether the buffers must be copied (The caller keeps them)
+     * @param data the buffers
+     */
+    private void enqueue(boolean copy, ByteBuffer[] data) {
+        for (ByteBuffer buffer : data) {
+            if (!buffer.hasRemaining()) continue;
+
+            batchBytes   += buffer.remaining();
+            pendingBytes += buffer.remaining();
+            outboundQueue.add(copy ? copyOf(buffer) : buffer);
+        }
+    }
+
+    /**
+     * Marks all queued buffers as flushed
+     * @apiNote must hold the outbound queue's lock
+     */
+    private void markFlushed() {
+        batchMessages  = 0;
+        batchBytes     = 0;
+        flushedBuffers = outboundQueue.size();
+    }
+
+    /**
+     * Flushes the queued buffers once the deadline of the flush policy expires
+     * Connections driven by an event loop write as much as possible without blocking, the others leave the write to
+     * the threads that write the messages sent with trySend(), so that a peer that stops reading does not hold the
+     * timer
+     * @apiNote runs on the flush timer's thread
+     */
+    private void deadlineFlush() {
+        boolean submit = false;
+
+        try {
+            synchronized (outboundQueue) {
+                flushScheduled = false;
+                submit         = flushQueued();
+            }
+        }
+
+        catch (IOException e) {
+            // Call handler method
+            onFlushFailure(e);
+        }
+
+        if (submit) submitFlush(AsyncWriters.INSTANCE);
+        updateWritability();
+    }
+
+    /**
+     * Writes the buffers queued by asynchronous sends and deadline flushes
+     * @apiNote runs on the executor passed to {@link #sendAsync(Executor, ByteBuffer...)}, or on the background writers
+     */
+    private void asyncFlush() {
+        boolean done = false;
+
+        try {
+            while (!done) {
+                writeFlushed();
+
+                // Buffers flushed while writing are left to this task, which still counts as scheduled
+                synchronized (outboundQueue) {
+                    done = flushedBuffers == 0;
+                    if (done) asyncFlushScheduled = false;
+                }
+            }
+        }
+
+        catch (IOException e) {
+            // Call handler method
+            onFlushFailure(e);
+        }
+
+        finally {
+            if (!done) synchronized (outboundQueue) { asyncFlushScheduled = false; }
+        }
+    }
+
+    /**
+     * Writes the flushed buffers with gathering writes
+     * If the connection is driven by an event loop, writes as much as possible without blocking; otherwise the
+     * buffers are taken from the queue and written without holding its lock, so that other threads can keep queueing
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFlushed() throws IOException {
+        try { writeFlushedLocked(); }
+        finally { updateWritability(); }
+    }
+
+    /**
+     * Writes the flushed buffers, taking the locks needed by the kind of connection
+     * @see #writeFlushed()
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFlushedLocked() throws IOException {
+        if (selectionKey != null) {
+            synchronized (outboundQueue) { writeFlushedNow(); }
+            return;
+        }
+
+        synchronized (writeLock) {
+            while (true) {
+                int count;
+                long taken;
+
+                synchronized (outboundQueue) {
+                    count = flushedBuffers;
+                    if (count == 0) return;
+
+                    if (writeArray.length < count) writeArray = new ByteBuffer[Math.max(count, writeArray.length * 2)];
+                    for (int i = 0; i < count; i++) writeArray[i] = outboundQueue.removeFirst();
+
+                    flushedBuffers = 0;
+                    taken          = remaining(writeArray, count);
+                }
+
+                try { writeFully(writeArray, count); }
+
+                finally {
+                    // The bytes still count as pending until they are written
+                    long written = taken - remaining(writeArray, count);
+                    synchronized (outboundQueue) { pendingBytes -= written; }
+
+                    Arrays.fill(writeArray, 0, count, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the flushed buffers with a single gathering write, without blocking
+     * @apiNote only for connections driven by an event loop, must hold the outbound queue's lock
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFlushedNow() throws IOException {
+        SelectionKey key = selectionKey;
+        int count = flushedBuffers;
+
+        if (gatherArray.length < count) gatherArray = new ByteBuffer[Math.max(count, gatherArray.length * 2)];
+
+        Iterator<ByteBuffer> queued = outboundQueue.iterator();
+        for (int i = 0; i < count; i++) gatherArray[i] = queued.next();
+
+        try {
+            if (count > 0) {
+                long written = connectionChannel.write(gatherArray, 0, count);
+
+                recordWrite(written);
+                pendingBytes -= written;
+                writeCount++;
+            }
+        }
+
+        finally {
+            Arrays.fill(gatherArray, 0, count, null);
+
+            // Drop what has been written
+            while (flushedBuffers > 0 && !outboundQueue.getFirst().hasRemaining()) {
+                outboundQueue.removeFirst();
+                flushedBuffers--;
+            }
+        }
+
+        if (flushedBuffers > 0) {
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+            key.selector().wakeup();
+        }
+
+        else if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) key.interestOpsAnd(~SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Tells the listener if the queued bytes crossed a watermark since the last check
+     * @apiNote must not hold the outbound queue's lock
+     */
+    private void updateWritability() {
+        // Most calls cross nothing, skip the locks
+        if (writable ? pendingBytes < highWatermark : pendingBytes > lowWatermark) return;
+
+        synchronized (writabilityLock) {
+            boolean now;
+
+            synchronized (outboundQueue) {
+                if (writable && pendingBytes >= highWatermark) writable = false;
+                else if (!writable && pendingBytes <= lowWatermark) writable = true;
+                else return;
+
+                now = writable;
+            }
+
+            BialettiWritabilityListener listener = writabilityListener;
+            if (listener != null) listener.onWritabilityChanged(now);
+        }
+    }
+
+    /**
+     * Writes buffers until they are empty
+     * @apiNote only for connections that are not driven by an event loop, must hold the write lock
+     * @param data the data to be written
+     * @param count the number of buffers to be written
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFully(ByteBuffer[] data, int count) throws IOException {
+        long written = 0;
+
+        if (connectionChannel != null) {
+            // Gathering writes
+            while (hasRemaining(data, count)) {
+                written += connectionChannel.write(data, 0, count);
+                writeCount++;
+            }
+
+            recordWrite(written);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            while (data[i].hasRemaining()) {
+                written += outputChannel.write(data[i]);
+                writeCount++;
+            }
+        }
+
+        recordWrite(written);
+    }
+
+    /**
+     * Opens a channel, applies the options and connects it
+     * @param address the IP address of the destination host
+     * @param port the port of the destination host
+     * @param options the options of the socket
+     * @return the connected channel
+     * @throws IOException if the connection cannot be established
+     */
+    private static SocketChannel connect(String address, int port, BialettiSocketOptions options) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+
+        try {
+            options.applyTo(channel).connect(new InetSocketAddress(address, port));
+            return channel;
+        }
+
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param buffer a buffer
+     * @return a heap buffer holding a copy of the buffer's remaining bytes
+     */
+    private static ByteBuffer copyOf(ByteBuffer buffer) {
+        return ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+    }
+
+    /**
+     * Copies as many bytes as possible from a buffer to others, filling them in order
+     * @param src the source buffer
+     * @param dsts the destination buffers
+     * @return the number of bytes copied
+     */
+    private static long transfer(ByteBuffer src, ByteBuffer[] dsts) {
+        long transferred = 0;
+
+        for (ByteBuffer dst : dsts) {
+            int count = Math.min(src.remaining(), dst.remaining());
+
+            dst.put(dst.position(), src, src.position(), count);
+            dst.position(dst.position() + count);
+            src.position(src.position() + count);
+            transferred += count;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * @param buffers the buffers
+     * @return the total number of bytes remaining in the buffers
+     */
+    private static long remaining(ByteBuffer[] buffers) {
+        return remaining(buffers, buffers.length);
+    }
+
+    /**
+     * @param buffers the buffers
+     * @param count the number of buffers to be counted
+     * @return the total number of bytes remaining in the first buffers
+     */
+    private static long remaining(ByteBuffer[] buffers, int count) {
+        long total = 0;
+        for (int i = 0; i < count; i++) total += buffers[i].remaining();
+
+        return total;
+    }
+
+    /**
+     * @param buffers the buffers
+     * @param count the number of buffers to be checked
+     * @return whether any of the first buffers has remaining bytes
+     */
+    private static boolean hasRemaining(ByteBuffer[] buffers, int count) {
+        for (int i = 0; i < count; i++) {
+            if (buffers[i].hasRemaining()) return true;
+        }
+
+        return false;
     }
 
     /**
      * @return the {@link Socket} instance
      */
     public Socket getSocket() { return connectionSocket; }
+    /**
+     * @return the {@link SocketChannel} instance (null if the socket has no channel)
+     */
+    public SocketChannel getChannel() { return connectionChannel; }
+
+    /**
+     * Holds the threads that write the messages sent with trySend() by connections not driven by an event loop,
+     * started the first time they are needed
+     * @apiNote there is one thread per processor (At least two) and a bounded queue: a connection whose flush finds it
+     * full keeps its messages queued and tries again on the next tick of the default {@link BialettiWheelTimer}, and a
+     * peer that stops reading holds a thread until it reads again, so senders should respect the watermarks
+     * @author Alessandro-Salerno
+     */
+    private static final class AsyncWriters {
+        /**
+         * The number of connections that may wait for a free thread
+         */
+        private static final int QUEUE_CAPACITY = 1024;
+
+        /**
+         * The threads shared by all connections
+         */
+        static final ExecutorService INSTANCE = newExecutor();
+
+        /**
+         * @return the executor (Idle threads are stopped)
+         */
+        private static ExecutorService newExecutor() {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                                                                 threads,
+                                                                 60,
+                                                                 TimeUnit.SECONDS,
+                                                                 new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                                                                 AsyncWriters::newThread);
+            executor.allowCoreThreadTimeOut(true);
+
+            return executor;
+        }
+
+        /**
+         * @param task what the thread runs
+         * @return a daemon writer thread
+         */
+        private static Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "bialetti-async-writer");
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
 }
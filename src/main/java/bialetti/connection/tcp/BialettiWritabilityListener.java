@@ -0,0 +1,15 @@
+package bialetti.connection.tcp;
+
+/**
+ * Told when the outbound queue of a {@link BialettiTCPConnection} crosses one of its watermarks
+ * @author Alessandro-Salerno
+ */
+@FunctionalInterface
+public interface BialettiWritabilityListener {
+    /**
+     * What happens when the connection stops or starts accepting data again
+     * @apiNote runs on the thread whose send or write crossed the watermark, and should not block
+     * @param writable false once the queued bytes reach the high watermark, true once they fall to the low watermark
+     */
+    void onWritabilityChanged(boolean writable);
+}
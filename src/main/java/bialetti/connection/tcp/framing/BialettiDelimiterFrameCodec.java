@@ -0,0 +1,123 @@
+package bialetti.connection.tcp.framing;
+
+import bialetti.exceptions.BialettiFramingException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Frames terminated by a delimiter, such as a line feed
+ * Bytes already searched are remembered, so data that arrives in pieces is scanned only once
+ * @author Alessandro-Salerno
+ */
+public class BialettiDelimiterFrameCodec implements BialettiFrameCodec {
+    /**
+     * The delimiter (Read-only, shared by all encoded frames)
+     */
+    private final ByteBuffer delimiter;
+    /**
+     * The maximum length of a frame's payload
+     */
+    private final int maxFrameLength;
+    /**
+     * Whether a carriage return before the delimiter is removed from the payload
+     */
+    private final boolean stripCarriageReturn;
+    /**
+     * The number of bytes after the buffer's position that are known not to start a delimiter
+     */
+    private int scanned = 0;
+
+    /**
+     * Constructor
+     * @param delim the delimiter
+     * @param maxLength the maximum length of a frame's payload
+     * @throws IllegalArgumentException if the delimiter is empty
+     */
+    public BialettiDelimiterFrameCodec(byte[] delim, int maxLength) throws IllegalArgumentException {
+        this(delim, maxLength, false);
+    }
+
+    /**
+     * Constructor
+     * @param delim the delimiter
+     * @param maxLength the maximum length of a frame's payload
+     * @param stripCR whether a carriage return before the delimiter is removed from the payload
+     * @throws IllegalArgumentException if the delimiter is empty
+     */
+    private BialettiDelimiterFrameCodec(byte[] delim, int maxLength, boolean stripCR) throws IllegalArgumentException {
+        if (delim.length == 0) {
+            throw new IllegalArgumentException("The delimiter cannot be empty");
+        }
+
+        delimiter           = ByteBuffer.wrap(delim.clone()).asReadOnlyBuffer();
+        maxFrameLength      = maxLength;
+        stripCarriageReturn = stripCR;
+    }
+
+    /**
+     * Creates a codec for lines terminated by "\n" or "\r\n"
+     * @param maxLength the maximum length of a line
+     * @return the codec
+     */
+    public static BialettiDelimiterFrameCodec lines(int maxLength) {
+        return new BialettiDelimiterFrameCodec("\n".getBytes(StandardCharsets.US_ASCII), maxLength, true);
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer) throws BialettiFramingException {
+        int start  = buffer.position();
+        int limit  = buffer.limit();
+        int length = delimiter.remaining();
+
+        for (int i = start + scanned; i + length <= limit; i++) {
+            if (!matchesAt(buffer, i)) continue;
+
+            int end = i;
+            if (stripCarriageReturn && end > start && buffer.get(end - 1) == '\r') end--;
+
+            scanned = 0;
+
+            // A frame that arrives whole is never caught by the scan, so its length is checked here
+            if (end - start > maxFrameLength) {
+                throw new BialettiFramingException("Frame of " + (end - start) + " bytes exceeds the limit of "
+                                                   + maxFrameLength);
+            }
+
+            buffer.position(i + length);
+            return buffer.slice(start, end - start);
+        }
+
+        // Remember where to resume, a delimiter may still start in the last bytes
+        scanned = Math.max(0, limit - start - length + 1);
+
+        // A carriage return that ends the read may be stripped once the delimiter arrives
+        if (scanned > maxFrameLength + (stripCarriageReturn ? 1 : 0)) {
+            throw new BialettiFramingException("No delimiter found within " + maxFrameLength + " bytes");
+        }
+
+        return null;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer... payload) {
+        ByteBuffer[] frame = Arrays.copyOf(payload, payload.length + 1);
+        frame[payload.length] = delimiter.duplicate();
+
+        return frame;
+    }
+
+    /**
+     * @param buffer the buffer
+     * @param index the index
+     * @return whether the delimiter starts at the index
+     */
+    private boolean matchesAt(ByteBuffer buffer, int index) {
+        for (int j = 0; j < delimiter.remaining(); j++) {
+            if (buffer.get(index + j) != delimiter.get(j)) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,53 @@
+package bialetti.connection.tcp.framing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames that all have the same length
+ * @author Alessandro-Salerno
+ */
+public class BialettiFixedLengthFrameCodec implements BialettiFrameCodec {
+    /**
+     * The length of every frame
+     */
+    private final int frameLength;
+
+    /**
+     * Constructor
+     * @param length the length of every frame
+     * @throws IllegalArgumentException if the length is not positive
+     */
+    public BialettiFixedLengthFrameCodec(int length) throws IllegalArgumentException {
+        if (length <= 0) {
+            throw new IllegalArgumentException("The frame length must be positive");
+        }
+
+        frameLength = length;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer) {
+        if (buffer.remaining() < frameLength) return null;
+
+        int start = buffer.position();
+        buffer.position(start + frameLength);
+
+        return buffer.slice(start, frameLength);
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer... payload) throws IllegalArgumentException {
+        int length = BialettiFrameCodec.length(payload);
+
+        if (length != frameLength) {
+            throw new IllegalArgumentException("Payload of " + length + " bytes, frames are " + frameLength + " bytes long");
+        }
+
+        return payload;
+    }
+
+    /**
+     * @return the length of every frame
+     */
+    public int getFrameLength() { return frameLength; }
+}
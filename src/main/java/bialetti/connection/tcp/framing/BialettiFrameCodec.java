@@ -0,0 +1,44 @@
+package bialetti.connection.tcp.framing;
+
+import bialetti.exceptions.BialettiFramingException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a stream of bytes into messages (Frames) and wraps outgoing messages so that the other end can do the same
+ * @apiNote decoders may keep state between calls, so each connection needs its own instance
+ * @author Alessandro-Salerno
+ */
+public interface BialettiFrameCodec {
+    /**
+     * Extracts the next frame from the buffer
+     * @param buffer the received data (In read mode), its position is moved past the frame if one is found
+     * @return a view of the frame's payload that shares the buffer's memory, null if no frame is complete yet
+     * @throws BialettiFramingException if the data is not valid for the framing
+     */
+    ByteBuffer decode(ByteBuffer buffer) throws BialettiFramingException;
+
+    /**
+     * Wraps a payload in a frame
+     * @param payload the parts of the payload (In read mode), such as a header and a body
+     * @return the buffers to be written in order (The parts of the payload are among them)
+     * @throws IllegalArgumentException if the payload cannot be framed
+     */
+    ByteBuffer[] encode(ByteBuffer... payload) throws IllegalArgumentException;
+
+    /**
+     * @param payload the parts of a payload
+     * @return the total number of bytes remaining in the parts
+     * @throws IllegalArgumentException if the total does not fit in an int
+     */
+    static int length(ByteBuffer... payload) throws IllegalArgumentException {
+        long total = 0;
+        for (ByteBuffer part : payload) total += part.remaining();
+
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Payload of " + total + " bytes is too large");
+        }
+
+        return (int) total;
+    }
+}
@@ -0,0 +1,94 @@
+package bialetti.connection.tcp.framing;
+
+import bialetti.exceptions.BialettiFramingException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames prefixed by their length, as an unsigned big-endian integer of 1, 2 or 4 bytes
+ * @author Alessandro-Salerno
+ */
+public class BialettiLengthFieldFrameCodec implements BialettiFrameCodec {
+    /**
+     * The size of the length field in bytes
+     */
+    private final int lengthFieldSize;
+    /**
+     * The maximum length of a frame's payload
+     */
+    private final int maxFrameLength;
+
+    /**
+     * Constructor
+     * Uses a 4 bytes length field and frames of up to 16 MiB
+     */
+    public BialettiLengthFieldFrameCodec() {
+        this(4, 16 * 1024 * 1024);
+    }
+
+    /**
+     * Constructor
+     * @param fieldSize the size of the length field in bytes (1, 2 or 4)
+     * @param maxLength the maximum length of a frame's payload
+     * @throws IllegalArgumentException if the field size is not valid
+     */
+    public BialettiLengthFieldFrameCodec(int fieldSize, int maxLength) throws IllegalArgumentException {
+        if (fieldSize != 1 && fieldSize != 2 && fieldSize != 4) {
+            throw new IllegalArgumentException("The length field must be 1, 2 or 4 bytes long");
+        }
+
+        lengthFieldSize = fieldSize;
+        maxFrameLength  = (fieldSize == 4) ? maxLength : Math.min(maxLength, (1 << (8 * fieldSize)) - 1);
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer) throws BialettiFramingException {
+        if (buffer.remaining() < lengthFieldSize) return null;
+
+        int start  = buffer.position();
+        long length = switch (lengthFieldSize) {
+            case 1  -> buffer.get(start) & 0xFFL;
+            case 2  -> buffer.getShort(start) & 0xFFFFL;
+            default -> buffer.getInt(start) & 0xFFFFFFFFL;
+        };
+
+        if (length > maxFrameLength) {
+            throw new BialettiFramingException("Frame of " + length + " bytes exceeds the limit of " + maxFrameLength);
+        }
+
+        // Wait for the rest of the frame
+        if (buffer.remaining() < lengthFieldSize + length) return null;
+
+        ByteBuffer frame = buffer.slice(start + lengthFieldSize, (int) length);
+        buffer.position(start + lengthFieldSize + (int) length);
+
+        return frame;
+    }
+
+    @Override
+    public ByteBuffer[] encode(ByteBuffer... payload) throws IllegalArgumentException {
+        int length = BialettiFrameCodec.length(payload);
+
+        if (length > maxFrameLength) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds the limit of " + maxFrameLength);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(lengthFieldSize);
+        switch (lengthFieldSize) {
+            case 1  -> header.put((byte) length);
+            case 2  -> header.putShort((short) length);
+            default -> header.putInt(length);
+        }
+
+        ByteBuffer[] frame = new ByteBuffer[payload.length + 1];
+        frame[0] = header.flip();
+        System.arraycopy(payload, 0, frame, 1, payload.length);
+
+        return frame;
+    }
+
+    /**
+     * @return the maximum length of a frame's payload
+     */
+    public int getMaxFrameLength() { return maxFrameLength; }
+}
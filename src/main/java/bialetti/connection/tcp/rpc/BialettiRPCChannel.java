@@ -0,0 +1,290 @@
+package bialetti.connection.tcp.rpc;
+
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.connection.tcp.framing.BialettiLengthFieldFrameCodec;
+import bialetti.exceptions.BialettiCodecException;
+import bialetti.exceptions.BialettiRPCException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls the {@link bialetti.annotations.methods.BialettiRPCMethod}s of a server over a TCP connection
+ * Every request is tagged with an id and answered through a {@link CompletableFuture}, so any number of calls can be
+ * in flight at once: callers do not wait for a response before sending the next request, and the responses are
+ * matched to their calls as they arrive.
+ * @apiNote the channel reads the connection on its own thread, which must not be read by anybody else. Futures are
+ * completed on that thread, so their dependent actions should not block.
+ * @author Alessandro-Salerno
+ */
+public class BialettiRPCChannel implements AutoCloseable {
+    /**
+     * Passes raw bytes through (Results are copied out of the connection's buffer)
+     */
+    private static final BialettiCodec<ByteBuffer> BYTES = new BialettiCodec<>() {
+        @Override
+        public void encode(ByteBuffer message, BialettiBinaryWriter out) { out.writeRaw(message); }
+
+        @Override
+        public ByteBuffer decode(BialettiBinaryReader in) {
+            ByteBuffer rest = in.readRemaining();
+            return ByteBuffer.allocate(rest.remaining()).put(rest).flip();
+        }
+    };
+
+    /**
+     * The connection to the server
+     */
+    private final BialettiTCPConnection connection;
+    /**
+     * The calls waiting for a response, by id
+     */
+    private final Map<Long, Pending<?>> pending;
+    /**
+     * The id of the next call
+     */
+    private final AtomicLong nextId;
+    /**
+     * Reads the responses
+     */
+    private final Thread reader;
+    /**
+     * How long a call waits for its response, in nanoseconds (0 to wait forever)
+     */
+    private volatile long timeoutNanos = 0;
+    /**
+     * A boolean that tells whether the channel has been closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor
+     * Connections without framing are given a {@link BialettiLengthFieldFrameCodec}, which the server must use as well
+     * @param c the connection to the server
+     */
+    public BialettiRPCChannel(BialettiTCPConnection c) {
+        if (c.getFraming() == null) c.setFraming(new BialettiLengthFieldFrameCodec());
+
+        // Set fields
+        connection = c;
+        pending    = new ConcurrentHashMap<>();
+        nextId     = new AtomicLong(1);
+        reader     = new Thread(this::read, getClass().getSimpleName() + "-reader");
+
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Calls a remote method
+     * @param method the name of the method
+     * @param argument the argument
+     * @param argumentCodec writes the argument
+     * @param resultCodec reads the result
+     * @param <A> the type of the argument
+     * @param <R> the type of the result
+     * @return the future result, failed with a {@link BialettiRPCException} if the method failed on the server
+     */
+    public <A, R> CompletableFuture<R> call(String method,
+                                            A argument,
+                                            BialettiCodec<A> argumentCodec,
+                                            BialettiCodec<R> resultCodec) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        if (closed) return failed(future, new ClosedChannelException());
+
+        long id = nextId.getAndIncrement();
+        pending.put(id, new Pending<>(future, resultCodec));
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            out.writeByte(BialettiRPCMessageType.REQUEST.getCode())
+               .writeVarLong(id)
+               .writeString(method);
+
+            argumentCodec.encode(argument, out);
+            connection.send(out.getWritten());
+        }
+
+        catch (RuntimeException e) {
+            pending.remove(id);
+            return failed(future, e);
+        }
+
+        // Closed while sending, the reader may have missed the call
+        if (closed && pending.remove(id) != null) return failed(future, new ClosedChannelException());
+
+        long timeout = timeoutNanos;
+        if (timeout > 0) {
+            future.orTimeout(timeout, TimeUnit.NANOSECONDS)
+                  .whenComplete((result, failure) -> pending.remove(id));
+        }
+
+        return future;
+    }
+
+    /**
+     * Calls a remote method with raw bytes
+     * @param method the name of the method
+     * @param argument the argument, its position is moved to its limit
+     * @return the future result, failed with a {@link BialettiRPCException} if the method failed on the server
+     */
+    public CompletableFuture<ByteBuffer> call(String method, ByteBuffer argument) {
+        return call(method, argument, BYTES, BYTES);
+    }
+
+    /**
+     * Closes the channel and the connection
+     * Calls still waiting for a response fail with a {@link ClosedChannelException}
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        try { connection.close(); }
+        catch (Exception ignored) {
+            // The reader fails the pending calls anyway
+        }
+
+        failPending(new ClosedChannelException());
+    }
+
+    /**
+     * Reads responses and completes their calls
+     */
+    private void read() {
+        Throwable cause = new ClosedChannelException();
+
+        try {
+            while (!closed) {
+                ByteBuffer frame = connection.receiveFrame();
+                if (frame == null) break;
+
+                try { dispatch(new BialettiBinaryReader(frame)); }
+
+                // A frame without a valid header cannot be matched to its call
+                catch (BialettiCodecException ignored) { }
+            }
+        }
+
+        catch (IOException | RuntimeException e) {
+            if (!closed) cause = e;
+        }
+
+        closed = true;
+        failPending(cause);
+    }
+
+    /**
+     * Completes the call a frame answers
+     * @param in the frame
+     * @throws BialettiCodecException if the frame's header is not valid
+     */
+    private void dispatch(BialettiBinaryReader in) throws BialettiCodecException {
+        BialettiRPCMessageType type = BialettiRPCMessageType.fromCode(in.readByte());
+        Pending<?> call             = pending.remove(in.readVarLong());
+
+        // Timed out already
+        if (call == null) return;
+
+        switch (type) {
+            case RESPONSE -> call.complete(in);
+            case ERROR    -> call.fail(new BialettiRPCException(in.readString()));
+            case REQUEST  -> call.fail(new BialettiRPCException("Received a request instead of a response"));
+        }
+    }
+
+    /**
+     * Fails every call still waiting for a response
+     * @param cause the cause of the failure
+     */
+    private void failPending(Throwable cause) {
+        for (Long id : pending.keySet()) {
+            Pending<?> call = pending.remove(id);
+            if (call != null) call.fail(cause);
+        }
+    }
+
+    /**
+     * @param future a future
+     * @param cause the cause of its failure
+     * @param <R> the type of the future's result
+     * @return the future, failed
+     */
+    private static <R> CompletableFuture<R> failed(CompletableFuture<R> future, Throwable cause) {
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * Sets how long calls wait for their responses, after which they fail with a
+     * {@link java.util.concurrent.TimeoutException}
+     * @param timeout the timeout (0 to wait forever)
+     * @param unit the unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) { timeoutNanos = Math.max(0, unit.toNanos(timeout)); }
+    /**
+     * @return how long calls wait for their responses, in milliseconds (0 if they wait forever)
+     */
+    public long getTimeout() { return TimeUnit.NANOSECONDS.toMillis(timeoutNanos); }
+    /**
+     * @return the number of calls waiting for a response
+     */
+    public int getInFlight() { return pending.size(); }
+    /**
+     * @return the connection to the server
+     */
+    public BialettiTCPConnection getConnection() { return connection; }
+    /**
+     * @return whether the channel has been closed
+     */
+    public boolean isClosed() { return closed; }
+
+    /**
+     * A call waiting for its response
+     * @param <R> the type of the result
+     * @author Alessandro-Salerno
+     */
+    private static final class Pending<R> {
+        /**
+         * The future result
+         */
+        private final CompletableFuture<R> future;
+        /**
+         * Reads the result
+         */
+        private final BialettiCodec<R> codec;
+
+        /**
+         * Constructor
+         * @param f the future result
+         * @param c reads the result
+         */
+        Pending(CompletableFuture<R> f, BialettiCodec<R> c) {
+            future = f;
+            codec  = c;
+        }
+
+        /**
+         * Completes the call with the result
+         * @param in the response, positioned at the result
+         */
+        void complete(BialettiBinaryReader in) {
+            try { future.complete(codec.decode(in)); }
+            catch (BialettiCodecException | RuntimeException e) { future.completeExceptionally(e); }
+        }
+
+        /**
+         * Fails the call
+         * @param cause the cause of the failure
+         */
+        void fail(Throwable cause) { future.completeExceptionally(cause); }
+    }
+}
@@ -0,0 +1,44 @@
+package bialetti.connection.tcp.rpc;
+
+import bialetti.exceptions.BialettiCodecException;
+
+/**
+ * The kinds of frames exchanged by remote procedure calls
+ * Every frame starts with the type's code and the call's id (Variable length), followed by the method's name and the
+ * arguments for requests, the result for responses and the failure's description for errors
+ * @author Alessandro-Salerno
+ */
+public enum BialettiRPCMessageType {
+    /**
+     * A call, sent by the client
+     */
+    REQUEST,
+    /**
+     * The result of a call, sent by the server
+     */
+    RESPONSE,
+    /**
+     * The failure of a call, sent by the server
+     */
+    ERROR;
+
+    /**
+     * The types, indexed by code
+     */
+    private static final BialettiRPCMessageType[] TYPES = values();
+
+    /**
+     * @return the code that identifies the type in a frame
+     */
+    public byte getCode() { return (byte) ordinal(); }
+
+    /**
+     * @param code the code read from a frame
+     * @return the type with that code
+     * @throws BialettiCodecException if no type has that code
+     */
+    public static BialettiRPCMessageType fromCode(byte code) throws BialettiCodecException {
+        if (code < 0 || code >= TYPES.length) throw new BialettiCodecException("Unknown RPC message type " + code);
+        return TYPES[code];
+    }
+}
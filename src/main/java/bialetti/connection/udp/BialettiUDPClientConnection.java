@@ -1,34 +1,95 @@
 package bialetti.connection.udp;
 
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.connection.BialettiSocketOptions;
+
 import java.io.IOException;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 /**
  * Subclass of {@link BialettiUDPConnection} that provides a client-specific interface for connections
+ * The server's address is resolved once and the socket is connected to it, so sending a datagram involves neither a
+ * name lookup nor a route lookup, and only datagrams from the server are received
  */
 public class BialettiUDPClientConnection extends BialettiUDPConnection {
     /**
-     * The address of the target server
+     * The resolved address of the target server
      */
-    private final String targetAddress;
+    private final InetSocketAddress target;
+
     /**
-     * The port on which the target server listens
+     * The window used unless another one is given
      */
-    private final int targetPort;
+    public static final int DEFAULT_WINDOW = 512;
 
     /**
      * Constructor
      * @param address the address of the target server
      * @param port the port on which the server listens
-     * @throws SocketException if the socket could not be opened
+     * @throws IOException if the socket could not be opened or the address could not be resolved
      */
-    public BialettiUDPClientConnection(String address, int port) throws SocketException {
-        super(new DatagramSocket(),
-              new byte[512]);
+    public BialettiUDPClientConnection(String address, int port) throws IOException {
+        this(address, port, BialettiSocketOptions.DEFAULT);
+    }
 
-        targetAddress = address;
-        targetPort = port;
+    /**
+     * Constructor
+     * @param address the address of the target server
+     * @param port the port on which the server listens
+     * @param options the options of the socket (Applied before binding)
+     * @throws IOException if the socket could not be opened or the address could not be resolved
+     */
+    public BialettiUDPClientConnection(String address, int port, BialettiSocketOptions options) throws IOException {
+        this(resolve(address, port), options);
+    }
+
+    /**
+     * Constructor
+     * @param address the address of the target server
+     * @param port the port on which the server listens
+     * @param options the options of the socket (Applied before binding)
+     * @param window the maximum size of a received datagram
+     * @throws IOException if the socket could not be opened or the address could not be resolved
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public BialettiUDPClientConnection(String address,
+                                       int port,
+                                       BialettiSocketOptions options,
+                                       int window) throws IOException,
+                                                          IllegalArgumentException {
+        this(resolve(address, port), options, window);
+    }
+
+    /**
+     * Constructor
+     * @param server the resolved address of the target server
+     * @param options the options of the socket (Applied before binding)
+     * @throws IOException if the socket could not be opened
+     */
+    public BialettiUDPClientConnection(InetSocketAddress server, BialettiSocketOptions options) throws IOException {
+        this(server, options, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor
+     * @param server the resolved address of the target server
+     * @param options the options of the socket (Applied before binding)
+     * @param window the maximum size of a received datagram
+     * @throws IOException if the socket could not be opened
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public BialettiUDPClientConnection(InetSocketAddress server,
+                                       BialettiSocketOptions options,
+                                       int window) throws IOException,
+                                                          IllegalArgumentException {
+        super(connect(open(options, null), server),
+              checkWindow(window));
+
+        target = server;
     }
 
     /**
@@ -42,5 +103,129 @@ public class BialettiUDPClientConnection extends BialettiUDPConnection {
      * @param data the bytearray to be sent
      * @throws IOException if an I/O error occurs
      */
-    public void send(byte[] data) throws IOException { super.send(data, targetAddress, targetPort); }
+    public void send(byte[] data) throws IOException { send(ByteBuffer.wrap(data)); }
+
+    /**
+     * Sends a datagram to the server
+     * @param data the datagram, its position is moved to its limit
+     * @throws IOException if an I/O error occurs
+     */
+    public void send(ByteBuffer data) throws IOException {
+        transmit(data, null);
+    }
+
+    /**
+     * Sends a typed message to the server
+     * The message is encoded into a pooled buffer, which is given back once the message has been sent
+     * @param message the message
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @throws IOException if an I/O error occurs
+     */
+    public <T> void send(T message, BialettiCodec<T> codec) throws IOException {
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            codec.encode(message, out);
+            send(out.getWritten());
+        }
+    }
+
+    /**
+     * Sends several datagrams to the server in one call
+     * @param datagrams the datagrams, one per buffer, their positions are moved to their limits
+     * @return the number of bytes sent
+     * @throws IOException if an I/O error occurs, the datagrams before the failing one have been sent
+     */
+    public long sendBatch(ByteBuffer... datagrams) throws IOException {
+        DatagramChannel channel = getChannel();
+        long sent               = 0;
+
+        if (isStaged()) {
+            for (ByteBuffer datagram : datagrams) {
+                sent += datagram.remaining();
+                send(datagram);
+            }
+
+            return sent;
+        }
+
+        for (ByteBuffer datagram : datagrams) sent += channel.write(datagram);
+
+        recordSent(sent, datagrams.length);
+        return sent;
+    }
+
+    /**
+     * Sends several datagrams to the server in one call
+     * @param datagrams the datagrams, one per bytearray
+     * @return the number of bytes sent
+     * @throws IOException if an I/O error occurs, the datagrams before the failing one have been sent
+     */
+    public long sendBatch(byte[]... datagrams) throws IOException {
+        DatagramChannel channel = getChannel();
+        long sent               = 0;
+
+        if (isStaged()) {
+            for (byte[] datagram : datagrams) {
+                sent += datagram.length;
+                send(datagram);
+            }
+
+            return sent;
+        }
+
+        for (byte[] datagram : datagrams) sent += channel.write(ByteBuffer.wrap(datagram));
+
+        recordSent(sent, datagrams.length);
+        return sent;
+    }
+
+    /**
+     * @return the resolved address of the target server
+     */
+    public InetSocketAddress getTarget() { return target; }
+
+    /**
+     * @return whether messages go through fragmentation or compression
+     */
+    private boolean isStaged() {
+        return getFragmenter() != null || getCompression() != null;
+    }
+
+    /**
+     * @param window a window
+     * @return the window
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    private static int checkWindow(int window) throws IllegalArgumentException {
+        if (window <= 0) throw new IllegalArgumentException("The window must be positive");
+        return window;
+    }
+
+    /**
+     * @param address the address of the target server
+     * @param port the port on which the server listens
+     * @return the resolved address
+     * @throws UnknownHostException if the address cannot be resolved
+     */
+    private static InetSocketAddress resolve(String address, int port) throws UnknownHostException {
+        InetSocketAddress resolved = new InetSocketAddress(address, port);
+        if (resolved.isUnresolved()) throw new UnknownHostException(address);
+
+        return resolved;
+    }
+
+    /**
+     * Connects a channel to the server
+     * @param channel the channel
+     * @param server the address of the server
+     * @return the channel
+     * @throws IOException if the channel cannot be connected
+     */
+    private static DatagramChannel connect(DatagramChannel channel, InetSocketAddress server) throws IOException {
+        try { return channel.connect(server); }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
 }
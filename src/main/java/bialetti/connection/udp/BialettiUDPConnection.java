@@ -1,9 +1,23 @@
 package bialetti.connection.udp;
 
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.codec.BialettiCompressor;
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.metrics.BialettiCounter;
+import bialetti.metrics.BialettiMetrics;
+
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
 
 /**
  * A UDP connection
@@ -11,38 +25,86 @@ import java.net.InetAddress;
  * @hidden
  */
 abstract class BialettiUDPConnection {
+    /**
+     * The UDP channel
+     */
+    private final DatagramChannel connectionChannel;
     /**
      * The UDP socket
      */
     private final DatagramSocket connectionSocket;
     /**
-     * The buffer used to send and receive messages
+     * The maximum size of a received datagram
+     */
+    private final int window;
+    /**
+     * Splits outgoing messages into fragments (null if fragmentation is disabled)
+     */
+    private volatile BialettiUDPFragmenter fragmenter;
+    /**
+     * Puts incoming fragments back together (null if fragmentation is disabled)
+     */
+    private volatile BialettiUDPReassembler reassembler;
+    /**
+     * Compresses outgoing messages and decompresses incoming ones (null if compression is disabled)
+     */
+    private volatile BialettiCompressor compression;
+    /**
+     * Records bytes and messages in and out (null if metrics are disabled)
      */
-    private final byte[] buffer;
+    private volatile BialettiMetrics metrics;
 
     /**
      * Constructor
-     * @param sock the UDP socket
-     * @param buff the buffer
+     * @param channel the UDP channel (Bound and in blocking mode)
+     * @param window the maximum size of a received datagram
+     */
+    public BialettiUDPConnection(DatagramChannel channel, int window) {
+        connectionChannel = channel;
+        connectionSocket  = channel.socket();
+        this.window       = window;
+    }
+
+    /**
+     * Opens a channel, applies the options and binds it
+     * @param options the options of the socket
+     * @param local the local address (null for any)
+     * @return the bound channel
+     * @throws IOException if the channel cannot be opened or bound
      */
-    public BialettiUDPConnection(DatagramSocket sock, byte[] buff) {
-        connectionSocket = sock;
-        buffer = buff;
+    static DatagramChannel open(BialettiSocketOptions options, SocketAddress local) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+
+        try { return options.applyTo(channel).bind(local); }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
     }
 
     /**
      * Receives a string
+     * The message is received in a pooled buffer, so concurrent calls do not share any data
      * @return a string containing the message
      * @throws IOException if an I/O error occurs
      */
     public String receive() throws IOException {
-        DatagramPacket packet = receivePacket();
-        return new String(packet.getData(), 0, packet.getLength());
+        if (isStaged()) {
+            try (BialettiUDPPacket message = receiveMessage()) { return message.getString(); }
+        }
+
+        try (BialettiPooledBuffer packet = BialettiBufferPool.getDefault().acquire(window)) {
+            ByteBuffer data = packet.getBuffer();
+            connectionChannel.receive(data);
+            recordReceived(data.position(), 1);
+
+            return Charset.defaultCharset().decode(data.flip()).toString();
+        }
     }
 
     /**
      * Receives a bytearray
-     * @return a bytearray containing the message
+     * @return a bytearray containing exactly the bytes of the message
      * @throws IOException if an I/O error occurs
      */
     public byte[] receiveBytes() throws IOException {
@@ -51,14 +113,115 @@ abstract class BialettiUDPConnection {
 
     /**
      * Recevies a {@link DatagramPacket}
+     * Every packet gets its own bytearray, sized to the message, so concurrent calls do not share any data
      * @return the received packet
      * @throws IOException if an I/O error occurs
      */
     public DatagramPacket receivePacket() throws IOException {
-        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-        connectionSocket.receive(packet);
+        if (isStaged()) {
+            try (BialettiUDPPacket message = receiveMessage()) {
+                byte[] data = new byte[message.getLength()];
+                message.getData().get(data);
+
+                return new DatagramPacket(data, data.length, message.getSender());
+            }
+        }
+
+        try (BialettiPooledBuffer packet = BialettiBufferPool.getDefault().acquire(window)) {
+            ByteBuffer data      = packet.getBuffer();
+            SocketAddress sender = connectionChannel.receive(data);
+            recordReceived(data.position(), 1);
+
+            byte[] message = new byte[data.flip().remaining()];
+            data.get(message);
+
+            return new DatagramPacket(message, message.length, sender);
+        }
+    }
+
+    /**
+     * Receives a packet in a pooled buffer
+     * Packets larger than the window are discarded instead of being truncated. With fragmentation, fragments are
+     * received until a message is complete. With compression, the message is decompressed into a new pooled buffer.
+     * @return the packet, which must be released by the caller (null if a datagram was larger than the window)
+     * @throws IOException if an I/O error occurs or the message cannot be decompressed
+     */
+    public BialettiUDPPacket receivePooled() throws IOException {
+        BialettiUDPPacket message     = reassemble();
+        BialettiCompressor compressor = compression;
 
-        return packet;
+        if (message != null) recordReceived(0, 1);
+        if (message == null || compressor == null) return message;
+
+        try (message) { return new BialettiUDPPacket(compressor.decompress(message.getData()), message.getSender(), this); }
+    }
+
+    /**
+     * Receives datagrams until a message is complete
+     * @return the message, which must be released by the caller (null if a datagram was larger than the window)
+     * @throws IOException if an I/O error occurs
+     */
+    private BialettiUDPPacket reassemble() throws IOException {
+        BialettiUDPReassembler assembler = reassembler;
+        if (assembler == null) return receiveDatagram();
+
+        while (true) {
+            BialettiUDPPacket fragment = receiveDatagram();
+            if (fragment == null) return null;
+
+            try (fragment) {
+                BialettiPooledBuffer message = assembler.accept(fragment.getSender(), fragment.getData());
+                if (message != null) return new BialettiUDPPacket(message, fragment.getSender(), this);
+            }
+        }
+    }
+
+    /**
+     * @return whether messages go through fragmentation or compression
+     */
+    private boolean isStaged() {
+        return reassembler != null || compression != null;
+    }
+
+    /**
+     * Receives a complete message, skipping datagrams larger than the window
+     * @return the message, which must be released by the caller
+     * @throws IOException if an I/O error occurs
+     */
+    private BialettiUDPPacket receiveMessage() throws IOException {
+        BialettiUDPPacket message;
+        do { message = receivePooled(); } while (message == null);
+
+        return message;
+    }
+
+    /**
+     * Receives a single datagram in a pooled buffer
+     * @return the datagram, which must be released by the caller (null if it was larger than the window)
+     * @throws IOException if an I/O error occurs
+     */
+    private BialettiUDPPacket receiveDatagram() throws IOException {
+        // One extra byte tells oversized packets apart from those that fill the window exactly
+        BialettiPooledBuffer packet = BialettiBufferPool.getDefault().acquire(window + 1);
+
+        try {
+            ByteBuffer data      = packet.getBuffer();
+            SocketAddress sender = connectionChannel.receive(data);
+            recordReceived(data.position(), 0);
+
+            if (data.position() > window) {
+                packet.release();
+                return null;
+            }
+
+            data.flip();
+            return new BialettiUDPPacket(packet, sender, this);
+        }
+
+        catch (IOException | RuntimeException e) {
+            packet.release();
+            throw e;
+        }
     }
 
     /**
@@ -69,8 +232,14 @@ abstract class BialettiUDPConnection {
      * @throws IOException if an I/O error occurs
      */
     public void send(byte[] data, InetAddress address, int port) throws IOException {
+        if (fragmenter != null || compression != null) {
+            transmit(ByteBuffer.wrap(data), new InetSocketAddress(address, port));
+            return;
+        }
+
         DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
         connectionSocket.send(packet);
+        recordSent(data.length, 1);
     }
 
     /**
@@ -88,14 +257,14 @@ abstract class BialettiUDPConnection {
     /**
      * Sends a bytearray
      * @param data the bytearray containing the message
-     * @param address the address of the target socket (As a byte[])
+     * @param address the raw IP address of the target socket (4 bytes for IPv4, 16 for IPv6)
      * @param port the port of the target socket
      * @throws IOException if an I/O error occurs
      */
     public void send(byte[] data,
                      byte[] address,
                      int port) throws IOException { send(data,
-                                                         new String(address),
+                                                         InetAddress.getByAddress(address),
                                                          port); }
     /**
      * Sends a bytearray
@@ -122,10 +291,196 @@ abstract class BialettiUDPConnection {
                                                          address,
                                                          port); }
 
+    /**
+     * Sends a datagram
+     * @param data the datagram, its position is moved to its limit
+     * @param target the address of the target socket (Resolved once by the caller, so that no lookup is performed)
+     * @throws IOException if an I/O error occurs
+     */
+    public void send(ByteBuffer data, SocketAddress target) throws IOException {
+        transmit(data, target);
+    }
+
+    /**
+     * Sends a message through compression and fragmentation, if they are enabled
+     * @param data the message, its position is moved to its limit
+     * @param target the address of the target socket (null to write to the connected peer)
+     * @throws IOException if an I/O error occurs
+     */
+    void transmit(ByteBuffer data, SocketAddress target) throws IOException {
+        BialettiCompressor compressor = compression;
+
+        if (compressor == null) {
+            sendDatagram(data, target);
+            return;
+        }
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter(data.remaining() + 1)) {
+            ByteBuffer[] message = compressor.compress(out, data);
+
+            // Raw messages are made of the flag and the data, which go out as one datagram
+            if (message.length > 1) {
+                out.reset();
+                for (ByteBuffer part : message) out.writeRaw(part);
+            }
+
+            sendDatagram(out.getWritten(), target);
+        }
+    }
+
+    /**
+     * Sends a message through fragmentation, if it is enabled
+     * @param data the message, its position is moved to its limit
+     * @param target the address of the target socket (null to write to the connected peer)
+     * @throws IOException if an I/O error occurs
+     */
+    private void sendDatagram(ByteBuffer data, SocketAddress target) throws IOException {
+        BialettiUDPFragmenter splitter = fragmenter;
+        int length                     = data.remaining();
+
+        if (splitter != null) splitter.send(connectionChannel, target, data);
+        else if (target != null) connectionChannel.send(data, target);
+        else connectionChannel.write(data);
+
+        recordSent(length, 1);
+    }
+
+    /**
+     * Records received data
+     * @param bytes the number of bytes received
+     * @param messages the number of complete messages received
+     */
+    void recordReceived(long bytes, int messages) {
+        BialettiMetrics recorder = metrics;
+        if (recorder == null) return;
+
+        if (bytes > 0) recorder.add(BialettiCounter.BYTES_IN, bytes);
+        if (messages > 0) recorder.add(BialettiCounter.MESSAGES_IN, messages);
+    }
+
+    /**
+     * Records sent data
+     * @param bytes the number of bytes sent (Compressed, without fragment headers)
+     * @param messages the number of messages sent
+     */
+    void recordSent(long bytes, int messages) {
+        BialettiMetrics recorder = metrics;
+        if (recorder == null) return;
+
+        recorder.add(BialettiCounter.BYTES_OUT, bytes);
+        recorder.add(BialettiCounter.MESSAGES_OUT, messages);
+    }
+
+    /**
+     * Sends a typed message to a target
+     * The message is encoded into a pooled buffer, which is given back once the message has been sent
+     * @param message the message
+     * @param codec the codec of the message
+     * @param target the address of the target
+     * @param <T> the type of the message
+     * @throws IOException if an I/O error occurs
+     */
+    public <T> void send(T message, BialettiCodec<T> codec, SocketAddress target) throws IOException {
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            codec.encode(message, out);
+            send(out.getWritten(), target);
+        }
+    }
+
+    /**
+     * Receives a typed message
+     * The message is decoded straight from its pooled buffer, datagrams larger than the window are skipped
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return the message
+     * @throws IOException if an I/O error occurs or the message cannot be decoded
+     */
+    public <T> T receive(BialettiCodec<T> codec) throws IOException {
+        try (BialettiUDPPacket message = receiveMessage()) { return message.decode(codec); }
+    }
+
+    /**
+     * Enables fragmentation with the default reassembly limits
+     * Messages are split into datagrams of at most the given size and put back together when received, both ends
+     * must enable it
+     * @param mtu the size of the largest datagram, header included
+     * @throws IllegalArgumentException if the MTU is larger than the window or cannot hold a fragment header
+     */
+    public void setFragmentation(int mtu) throws IllegalArgumentException {
+        setFragmentation(new BialettiUDPFragmenter(mtu), new BialettiUDPReassembler());
+    }
+
+    /**
+     * Enables or disables fragmentation
+     * @param splitter splits outgoing messages (null to disable fragmentation)
+     * @param assembler puts incoming fragments back together (null to disable fragmentation)
+     * @throws IllegalArgumentException if only one of them is null or the MTU is larger than the window
+     */
+    public void setFragmentation(BialettiUDPFragmenter splitter,
+                                 BialettiUDPReassembler assembler) throws IllegalArgumentException {
+        if ((splitter == null) != (assembler == null)) {
+            throw new IllegalArgumentException("Fragmentation needs both a fragmenter and a reassembler");
+        }
+
+        if (splitter != null && splitter.getMtu() > window) {
+            throw new IllegalArgumentException("The MTU (" + splitter.getMtu() + ") is larger than the window (" + window + ")");
+        }
+
+        BialettiUDPReassembler previous = reassembler;
+
+        fragmenter  = splitter;
+        reassembler = assembler;
+        if (previous != null && previous != assembler) previous.clear();
+    }
+
+    /**
+     * Sets the compression of messages
+     * Every message is flagged as compressed or raw, so both ends must enable it. Messages are compressed before
+     * being fragmented.
+     * @param compressor the compressor (null to disable compression)
+     */
+    public void setCompression(BialettiCompressor compressor) { compression = compressor; }
+
+    /**
+     * Sets the metrics in which the connection records the bytes and messages it sends and receives
+     * Bytes are counted per datagram, messages once they have been put back together
+     * @param recorder the metrics (null to disable metrics)
+     */
+    public void setMetrics(BialettiMetrics recorder) { metrics = recorder; }
+
     /**
      * Closes the connection
      */
     public void close() {
         connectionSocket.close();
+
+        // Release the partial messages
+        BialettiUDPReassembler assembler = reassembler;
+        if (assembler != null) assembler.clear();
     }
+
+    /**
+     * @return the {@link DatagramChannel} instance
+     */
+    public DatagramChannel getChannel() { return connectionChannel; }
+    /**
+     * @return the maximum size of a received datagram
+     */
+    public int getWindow() { return window; }
+    /**
+     * @return the fragmenter of outgoing messages (null if fragmentation is disabled)
+     */
+    public BialettiUDPFragmenter getFragmenter() { return fragmenter; }
+    /**
+     * @return the reassembler of incoming fragments (null if fragmentation is disabled)
+     */
+    public BialettiUDPReassembler getReassembler() { return reassembler; }
+    /**
+     * @return the compression of messages (null if it is disabled)
+     */
+    public BialettiCompressor getCompression() { return compression; }
+    /**
+     * @return the metrics of the connection (null if metrics are disabled)
+     */
+    public BialettiMetrics getMetrics() { return metrics; }
 }
@@ -0,0 +1,108 @@
+package bialetti.connection.udp;
+
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits messages into datagrams no larger than a target MTU
+ * Every fragment starts with a header holding the message's id, its total length, the fragment's offset in it, the
+ * fragment's index and the number of fragments; {@link BialettiUDPReassembler} puts them back together
+ * @author Alessandro-Salerno
+ */
+public final class BialettiUDPFragmenter {
+    /**
+     * The size of the fragment header
+     */
+    public static final int HEADER = 16;
+    /**
+     * The largest number of fragments of a message
+     */
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    /**
+     * The size of the largest datagram, header included
+     */
+    private final int mtu;
+    /**
+     * The id given to the next message
+     */
+    private final AtomicInteger nextId;
+
+    /**
+     * Constructor
+     * @param mtu the size of the largest datagram, header included
+     * @throws IllegalArgumentException if the MTU cannot hold a header and at least one byte
+     */
+    public BialettiUDPFragmenter(int mtu) throws IllegalArgumentException {
+        if (mtu <= HEADER) {
+            throw new IllegalArgumentException("The MTU must be larger than " + HEADER);
+        }
+
+        this.mtu = mtu;
+        nextId   = new AtomicInteger();
+    }
+
+    /**
+     * Sends a message as one or more fragments
+     * The fragments are built one at a time in a single pooled buffer
+     * @param channel the UDP channel
+     * @param target the address of the target socket (null to write to the channel's connected peer)
+     * @param message the message, its position is moved to its limit
+     * @return the number of fragments sent
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the message needs more than {@link #MAX_FRAGMENTS} fragments
+     */
+    public int send(DatagramChannel channel, SocketAddress target, ByteBuffer message) throws IOException,
+                                                                                              IllegalArgumentException {
+        int total = message.remaining();
+        int count = Math.max(1, (total + getMaxPayload() - 1) / getMaxPayload());
+
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Message of " + total + " bytes needs more than " + MAX_FRAGMENTS + " fragments");
+        }
+
+        int id    = nextId.getAndIncrement();
+        int start = message.position();
+        int end   = message.limit();
+
+        try (BialettiPooledBuffer pooled = BialettiBufferPool.getDefault().acquire(mtu)) {
+            ByteBuffer fragment = pooled.getBuffer();
+
+            for (int index = 0; index < count; index++) {
+                int offset = index * getMaxPayload();
+                int length = Math.min(getMaxPayload(), total - offset);
+
+                fragment.clear()
+                        .putInt(id)
+                        .putInt(total)
+                        .putInt(offset)
+                        .putShort((short) index)
+                        .putShort((short) count)
+                        .put(message.limit(start + offset + length).position(start + offset))
+                        .flip();
+
+                if (target == null) channel.write(fragment);
+                else channel.send(fragment, target);
+            }
+        }
+
+        finally { message.limit(end).position(end); }
+
+        return count;
+    }
+
+    /**
+     * @return the size of the largest datagram, header included
+     */
+    public int getMtu() { return mtu; }
+    /**
+     * @return the largest number of message bytes carried by one fragment
+     */
+    public int getMaxPayload() { return mtu - HEADER; }
+}
@@ -0,0 +1,132 @@
+package bialetti.connection.udp;
+
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiCodec;
+import bialetti.exceptions.BialettiCodecException;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A received UDP packet held in a pooled buffer
+ * The packet must be released once it is no longer needed, its data may not be used afterwards
+ * @author Alessandro-Salerno
+ */
+public final class BialettiUDPPacket implements AutoCloseable {
+    /**
+     * The buffer holding the packet
+     */
+    private final BialettiPooledBuffer pooled;
+    /**
+     * The packet's data
+     */
+    private final ByteBuffer data;
+    /**
+     * The address the packet came from
+     */
+    private final SocketAddress sender;
+    /**
+     * The connection on which the packet was received
+     */
+    private final BialettiUDPConnection connection;
+
+    /**
+     * Constructor
+     * @param buffer the buffer holding the packet (Flipped)
+     * @param from the address the packet came from
+     * @param c the connection on which the packet was received
+     */
+    BialettiUDPPacket(BialettiPooledBuffer buffer, SocketAddress from, BialettiUDPConnection c) {
+        pooled     = buffer;
+        data       = buffer.getBuffer();
+        sender     = from;
+        connection = c;
+    }
+
+    /**
+     * Sends bytes back to the sender, on the connection the packet arrived on (Fragmented if the connection is)
+     * @param message the bytes, its position is moved to its limit
+     * @throws IOException if an I/O error occurs
+     */
+    public void reply(ByteBuffer message) throws IOException {
+        connection.send(message, sender);
+    }
+
+    /**
+     * Sends a string back to the sender, on the connection the packet arrived on
+     * @param message the string
+     * @throws IOException if an I/O error occurs
+     */
+    public void reply(String message) throws IOException {
+        reply(Charset.defaultCharset().encode(message));
+    }
+
+    /**
+     * Sends a typed message back to the sender, on the connection the packet arrived on
+     * @param message the message
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @throws IOException if an I/O error occurs
+     */
+    public <T> void reply(T message, BialettiCodec<T> codec) throws IOException {
+        connection.send(message, codec, sender);
+    }
+
+    /**
+     * Decodes the packet's data, which is left untouched
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return the message
+     * @throws BialettiCodecException if the data cannot be decoded
+     */
+    public <T> T decode(BialettiCodec<T> codec) throws BialettiCodecException {
+        return codec.decode(new BialettiBinaryReader(data.duplicate()));
+    }
+
+    /**
+     * Keeps the packet alive past the point where its receiver would release it
+     * @return the packet itself
+     * @throws IllegalStateException if the packet has already been released
+     */
+    public BialettiUDPPacket retain() throws IllegalStateException {
+        pooled.retain();
+        return this;
+    }
+
+    /**
+     * Releases the packet, giving its buffer back to the pool once every reference is gone
+     * @throws IllegalStateException if the packet has already been released
+     */
+    public void release() throws IllegalStateException {
+        pooled.release();
+    }
+
+    /**
+     * Releases the packet
+     * @see #release()
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * @return the packet's data, from its position to its limit
+     */
+    public ByteBuffer getData() { return data; }
+    /**
+     * @return the number of bytes in the packet
+     */
+    public int getLength() { return data.limit(); }
+    /**
+     * @return the address the packet came from
+     */
+    public SocketAddress getSender() { return sender; }
+    /**
+     * @return the packet's data as a string
+     */
+    public String getString() { return Charset.defaultCharset().decode(data.duplicate().rewind()).toString(); }
+}
@@ -0,0 +1,376 @@
+package bialetti.connection.udp;
+
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts back together the messages split by a {@link BialettiUDPFragmenter}
+ * Partial messages are assembled in pooled buffers. Their total size is bounded: when a new message does not fit, the
+ * oldest partial messages are discarded. Partial messages that do not complete within the timeout are discarded too.
+ * Fragments must be laid out as the fragmenter lays them out, every one but the last carrying the same number of bytes,
+ * so that a message is only complete once every one of its bytes has been received.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiUDPReassembler {
+    /**
+     * The default size of the largest message
+     */
+    public static final int DEFAULT_MAX_MESSAGE = 1024 * 1024;
+    /**
+     * The default number of bytes that partial messages can take up
+     */
+    public static final long DEFAULT_MAX_PENDING = 16 * 1024 * 1024;
+    /**
+     * The default time a partial message is kept, in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The size of the largest message
+     */
+    private final int maxMessageSize;
+    /**
+     * The number of bytes that partial messages can take up
+     */
+    private final long maxPendingBytes;
+    /**
+     * How long a partial message is kept, in nanoseconds
+     */
+    private final long timeoutNanos;
+    /**
+     * The partial messages, oldest first
+     */
+    private final LinkedHashMap<Key, Partial> pending;
+    /**
+     * The number of bytes taken up by partial messages
+     */
+    private long pendingBytes = 0;
+    /**
+     * The number of partial messages discarded because they timed out
+     */
+    private long expired = 0;
+    /**
+     * The number of partial messages discarded to make room for newer ones
+     */
+    private long evicted = 0;
+    /**
+     * The number of invalid fragments
+     */
+    private long malformed = 0;
+
+    /**
+     * Constructor
+     * Uses the default limits
+     */
+    public BialettiUDPReassembler() {
+        this(DEFAULT_MAX_MESSAGE, DEFAULT_MAX_PENDING, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor
+     * @param maxMessage the size of the largest message
+     * @param maxPending the number of bytes that partial messages can take up
+     * @param timeout how long a partial message is kept
+     * @param unit the unit of the timeout
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public BialettiUDPReassembler(int maxMessage, long maxPending, long timeout, TimeUnit unit) throws IllegalArgumentException {
+        if (maxMessage <= 0 || maxPending <= 0 || timeout <= 0) {
+            throw new IllegalArgumentException("The limits of a reassembler must be positive");
+        }
+
+        maxMessageSize  = maxMessage;
+        maxPendingBytes = maxPending;
+        timeoutNanos    = unit.toNanos(timeout);
+        pending         = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a fragment
+     * @param sender the address the fragment came from
+     * @param fragment the fragment, its position is moved to its limit
+     * @return the complete message, which must be released by the caller (null if the message is not complete yet
+     * or the fragment was discarded)
+     */
+    public synchronized BialettiPooledBuffer accept(SocketAddress sender, ByteBuffer fragment) {
+        if (fragment.remaining() < BialettiUDPFragmenter.HEADER) {
+            malformed++;
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        int id     = fragment.getInt();
+        int total  = fragment.getInt();
+        int offset = fragment.getInt();
+        int index  = fragment.getShort() & 0xFFFF;
+        int count  = fragment.getShort() & 0xFFFF;
+        int length = fragment.remaining();
+
+        int payload = (count == 0 || index >= count || total < 0 || total > maxMessageSize)
+                    ? -1
+                    : payloadOf(total, offset, index, count, length);
+
+        if (payload < 0) {
+            malformed++;
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        long now = System.nanoTime();
+        expire(now);
+
+        // Unfragmented messages skip the bookkeeping
+        if (count == 1) {
+            BialettiPooledBuffer message = BialettiBufferPool.getDefault().acquire(total);
+            message.getBuffer().put(fragment).flip();
+
+            return message;
+        }
+
+        Key key         = new Key(sender, id);
+        Partial partial = pending.get(key);
+
+        if (partial == null) {
+            if (total > maxPendingBytes) {
+                evicted++;
+                fragment.position(fragment.limit());
+                return null;
+            }
+
+            // Make room by discarding the oldest partial messages
+            Iterator<Partial> oldest = pending.values().iterator();
+            while (pendingBytes + total > maxPendingBytes && oldest.hasNext()) {
+                discard(oldest.next());
+                oldest.remove();
+                evicted++;
+            }
+
+            partial = new Partial(BialettiBufferPool.getDefault().acquire(total), total, count, payload, now);
+            pending.put(key, partial);
+            pendingBytes += total;
+        }
+
+        else if (partial.total != total || partial.count != count || partial.payload != payload) {
+            malformed++;
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        // Duplicate
+        if (partial.received.get(index)) {
+            fragment.position(fragment.limit());
+            return null;
+        }
+
+        partial.received.set(index);
+        partial.receivedCount++;
+        partial.buffer.getBuffer().put(offset, fragment, fragment.position(), length);
+        fragment.position(fragment.limit());
+
+        if (partial.receivedCount < count) return null;
+
+        pending.remove(key);
+        pendingBytes -= total;
+
+        return partial.buffer;
+    }
+
+    /**
+     * Works out how many bytes the fragments of a message carry from one of them, and checks that the fragment is
+     * where that puts it: fragment i starts at i times that size, and the last one carries the rest of the message
+     * @param total the length of the message
+     * @param offset the fragment's offset in the message
+     * @param index the fragment's index
+     * @param count the number of fragments
+     * @param length the length of the fragment's payload
+     * @return the number of bytes carried by every fragment but the last, -1 if the fragment does not fit
+     */
+    private static int payloadOf(int total, int offset, int index, int count, int length) {
+        if (count == 1) return (offset == 0 && length == total) ? total : -1;
+
+        int last = count - 1;
+        int payload;
+
+        if (index < last) payload = length;
+        else if (offset % last == 0) payload = offset / last;
+        else return -1;
+
+        // The last fragment carries at least one byte and no more than the others
+        long lastOffset = (long) last * payload;
+        if (payload <= 0 || lastOffset >= total || total - lastOffset > payload) return -1;
+
+        if ((long) index * payload != offset) return -1;
+        if (index == last && length != total - lastOffset) return -1;
+
+        return payload;
+    }
+
+    /**
+     * Discards the partial messages that timed out
+     * @return the number of discarded messages
+     */
+    public synchronized int expire() {
+        return expire(System.nanoTime());
+    }
+
+    /**
+     * Discards every partial message
+     */
+    public synchronized void clear() {
+        for (Partial partial : pending.values()) discard(partial);
+
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * Discards the partial messages that timed out
+     * @param now the current time, in {@link System#nanoTime()} units
+     * @return the number of discarded messages
+     */
+    private int expire(long now) {
+        int discarded = 0;
+        Iterator<Partial> oldest = pending.values().iterator();
+
+        // Partial messages are kept in creation order, the first one that has not timed out ends the scan
+        while (oldest.hasNext()) {
+            Partial partial = oldest.next();
+            if (now - partial.created < timeoutNanos) break;
+
+            discard(partial);
+            oldest.remove();
+            discarded++;
+        }
+
+        expired += discarded;
+        return discarded;
+    }
+
+    /**
+     * Releases the buffer of a partial message
+     * @param partial the partial message (Already removed or about to be removed from the map)
+     */
+    private void discard(Partial partial) {
+        pendingBytes -= partial.total;
+        partial.buffer.release();
+    }
+
+    /**
+     * @return the size of the largest message
+     */
+    public int getMaxMessageSize() { return maxMessageSize; }
+    /**
+     * @return the number of partial messages
+     */
+    public synchronized int getPendingMessages() { return pending.size(); }
+    /**
+     * @return the number of bytes taken up by partial messages
+     */
+    public synchronized long getPendingBytes() { return pendingBytes; }
+    /**
+     * @return the number of partial messages discarded because they timed out
+     */
+    public synchronized long getExpired() { return expired; }
+    /**
+     * @return the number of partial messages discarded to make room for newer ones
+     */
+    public synchronized long getEvicted() { return evicted; }
+    /**
+     * @return the number of invalid fragments
+     */
+    public synchronized long getMalformed() { return malformed; }
+
+    /**
+     * Identifies a message
+     * @author Alessandro-Salerno
+     */
+    private static final class Key {
+        /**
+         * The address the message came from
+         */
+        final SocketAddress sender;
+        /**
+         * The id given by the sender
+         */
+        final int id;
+
+        /**
+         * Constructor
+         * @param from the address the message came from
+         * @param i the id given by the sender
+         */
+        Key(SocketAddress from, int i) {
+            sender = Objects.requireNonNull(from);
+            id     = i;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key key && key.id == id && key.sender.equals(sender);
+        }
+
+        @Override
+        public int hashCode() { return 31 * sender.hashCode() + id; }
+    }
+
+    /**
+     * A message being reassembled
+     * @author Alessandro-Salerno
+     */
+    private static final class Partial {
+        /**
+         * The buffer the message is assembled in
+         */
+        final BialettiPooledBuffer buffer;
+        /**
+         * The length of the message
+         */
+        final int total;
+        /**
+         * The number of fragments
+         */
+        final int count;
+        /**
+         * The number of bytes carried by every fragment but the last
+         */
+        final int payload;
+        /**
+         * When the first fragment arrived
+         */
+        final long created;
+        /**
+         * The indices of the fragments received so far
+         */
+        final BitSet received;
+        /**
+         * The number of fragments received so far
+         */
+        int receivedCount = 0;
+
+        /**
+         * Constructor
+         * @param b the buffer the message is assembled in
+         * @param t the length of the message
+         * @param c the number of fragments
+         * @param p the number of bytes carried by every fragment but the last
+         * @param now when the first fragment arrived
+         */
+        Partial(BialettiPooledBuffer b, int t, int c, int p, long now) {
+            buffer   = b;
+            total    = t;
+            count    = c;
+            payload  = p;
+            created  = now;
+            received = new BitSet(c);
+        }
+    }
+}
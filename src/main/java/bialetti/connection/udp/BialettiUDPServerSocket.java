@@ -1,7 +1,10 @@
 package bialetti.connection.udp;
 
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import bialetti.connection.BialettiSocketOptions;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
 
 /**
  * Subclass of {@link BialettiUDPConnection} that provides a server-specific interface for connections
@@ -12,10 +15,21 @@ public class BialettiUDPServerSocket extends BialettiUDPConnection {
      * Constructor
      * @param port the port on which the socket will be opened
      * @param window the size of the buffer
-     * @throws SocketException if the socket could not be opened
+     * @throws IOException if the socket could not be opened
+     */
+    public BialettiUDPServerSocket(int port, int window) throws IOException {
+        this(port, window, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * @param port the port on which the socket will be opened
+     * @param window the size of the buffer
+     * @param options the options of the socket (Applied before binding)
+     * @throws IOException if the socket could not be opened
      */
-    public BialettiUDPServerSocket(int port, int window) throws SocketException {
-        super(new DatagramSocket(port),
-              new byte[window]);
+    public BialettiUDPServerSocket(int port, int window, BialettiSocketOptions options) throws IOException {
+        super(open(options, new InetSocketAddress(port)),
+              window);
     }
 }
@@ -0,0 +1,20 @@
+package bialetti.connection.udp.reliable;
+
+/**
+ * How a message sent on a {@link BialettiReliableChannel} is delivered
+ * @author Alessandro-Salerno
+ */
+public enum BialettiDeliveryMode {
+    /**
+     * Sent once, may be lost, duplicated or delivered out of order
+     */
+    UNRELIABLE,
+    /**
+     * Retransmitted until acknowledged, delivered exactly once as soon as it arrives
+     */
+    RELIABLE_UNORDERED,
+    /**
+     * Retransmitted until acknowledged, delivered exactly once after every ordered message sent before it
+     */
+    RELIABLE_ORDERED
+}
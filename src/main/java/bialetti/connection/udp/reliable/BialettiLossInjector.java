@@ -0,0 +1,100 @@
+package bialetti.connection.udp.reliable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates an unreliable network on the datagrams sent by a {@link BialettiReliableChannel}
+ * Datagrams are dropped or held back at random, held back datagrams overtake nothing but are overtaken by the ones
+ * sent after them, which reorders them. Meant for testing on loopback.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiLossInjector {
+    /**
+     * The probability that a datagram is dropped
+     */
+    private final double lossRate;
+    /**
+     * The probability that a datagram is held back
+     */
+    private final double reorderRate;
+    /**
+     * The longest a datagram is held back, in nanoseconds
+     */
+    private final long maxDelayNanos;
+    /**
+     * The source of randomness
+     */
+    private final Random random;
+    /**
+     * The number of dropped datagrams
+     */
+    private final LongAdder dropped;
+    /**
+     * The number of held back datagrams
+     */
+    private final LongAdder delayed;
+
+    /**
+     * Constructor
+     * @param loss the probability that a datagram is dropped
+     * @param reorder the probability that a datagram is held back
+     * @param maxDelayMicros the longest a datagram is held back, in microseconds
+     * @param seed the seed of the random generator, so that runs can be repeated
+     * @throws IllegalArgumentException if a probability is not between 0 and 1 or the delay is negative
+     */
+    public BialettiLossInjector(double loss, double reorder, long maxDelayMicros, long seed) throws IllegalArgumentException {
+        if (loss < 0 || loss > 1 || reorder < 0 || reorder > 1) {
+            throw new IllegalArgumentException("Probabilities must be between 0 and 1");
+        }
+
+        if (maxDelayMicros < 0) {
+            throw new IllegalArgumentException("The delay cannot be negative");
+        }
+
+        lossRate      = loss;
+        reorderRate   = reorder;
+        maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        random        = new Random(seed);
+        dropped       = new LongAdder();
+        delayed       = new LongAdder();
+    }
+
+    /**
+     * @return whether the next datagram should be dropped
+     */
+    boolean drop() {
+        if (random.nextDouble() >= lossRate) return false;
+
+        dropped.increment();
+        return true;
+    }
+
+    /**
+     * @return how long the next datagram should be held back, in nanoseconds (0 to send it right away)
+     */
+    long delay() {
+        if (maxDelayNanos == 0 || random.nextDouble() >= reorderRate) return 0;
+
+        delayed.increment();
+        return 1 + (long) (random.nextDouble() * maxDelayNanos);
+    }
+
+    /**
+     * @return the probability that a datagram is dropped
+     */
+    public double getLossRate() { return lossRate; }
+    /**
+     * @return the probability that a datagram is held back
+     */
+    public double getReorderRate() { return reorderRate; }
+    /**
+     * @return the number of dropped datagrams
+     */
+    public long getDropped() { return dropped.sum(); }
+    /**
+     * @return the number of held back datagrams
+     */
+    public long getDelayed() { return delayed.sum(); }
+}
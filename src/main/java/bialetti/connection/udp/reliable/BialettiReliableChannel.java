@@ -0,0 +1,595 @@
+package bialetti.connection.udp.reliable;
+
+import bialetti.buffer.BialettiBufferPool;
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.connection.udp.BialettiUDPClientConnection;
+import bialetti.connection.udp.BialettiUDPServerSocket;
+import bialetti.exceptions.BialettiChannelFullException;
+import bialetti.exceptions.BialettiIllegalOperationException;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A reliability layer on top of a UDP connection
+ * Every message is sent with its own {@link BialettiDeliveryMode}. Reliable messages are numbered, acknowledged
+ * selectively and retransmitted after a timeout derived from the measured round trip time, at most a window's worth
+ * of them being unacknowledged per peer; the others wait in a backlog. Both ends must use the same window size.
+ * The number of peers, the backlog of each peer and the messages waiting to be received are bounded, and peers that
+ * have nothing pending are forgotten once idle for the session timeout. The channel gives up on peers that do not
+ * acknowledge a message after the maximum number of retransmissions and on peers that have forgotten a session which
+ * still has messages in flight, see {@link #onPeerLost(SocketAddress, List)}.
+ * @apiNote the channel takes the socket over: it reads it on its own thread and checks retransmissions on another, so
+ * the socket must not be read or written by anybody else. A socket given to a reliable channel cannot be used by the
+ * receive workers or handle methods of a {@link bialetti.server.udp.BialettiUDPServer}, nor carry fragmented or
+ * compressed messages; use a socket of its own (Such as one bound to another port) next to the server's.
+ * @author Alessandro-Salerno
+ */
+public class BialettiReliableChannel implements AutoCloseable {
+    /**
+     * The default number of reliable messages that can be unacknowledged at once
+     */
+    public static final int DEFAULT_WINDOW = 256;
+    /**
+     * The default size of the largest datagram, header included (Fits an Ethernet frame)
+     */
+    public static final int DEFAULT_MAX_DATAGRAM = 1472;
+    /**
+     * The default number of peers the channel keeps track of
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 1024;
+    /**
+     * The default number of reliable messages per peer that can wait for room in the window
+     */
+    public static final int DEFAULT_MAX_BACKLOG = 4096;
+    /**
+     * The default number of messages that can wait to be received
+     */
+    public static final int DEFAULT_MAX_INBOX = 16384;
+    /**
+     * The default time after which an idle peer is forgotten, in milliseconds
+     */
+    public static final long DEFAULT_SESSION_TIMEOUT_MILLIS = 60_000;
+    /**
+     * The default number of times a reliable message is retransmitted before the peer is given up on (About 15 seconds
+     * with the exponential backoff)
+     */
+    public static final int DEFAULT_MAX_RETRANSMISSIONS = 10;
+    /**
+     * How often retransmission timeouts are checked, in milliseconds
+     */
+    private static final long TICK_MILLIS = 5;
+
+    /**
+     * The UDP channel
+     */
+    private final DatagramChannel channel;
+    /**
+     * The peer of messages sent without an address (null if there is none)
+     */
+    private final SocketAddress defaultPeer;
+    /**
+     * The number of reliable messages that can be unacknowledged at once, per peer
+     */
+    private final int windowSize;
+    /**
+     * The size of the largest datagram
+     */
+    private final int maxDatagramSize;
+    /**
+     * The reliability state of each peer
+     */
+    private final Map<SocketAddress, BialettiReliableSession> sessions;
+    /**
+     * The messages delivered and not yet received
+     */
+    private final BlockingQueue<BialettiReliableMessage> inbox;
+    /**
+     * Checks retransmission timeouts and sends held back datagrams
+     */
+    private final ScheduledExecutorService timer;
+    /**
+     * Reads the UDP channel
+     */
+    private final Thread reader;
+    /**
+     * The number of retransmitted datagrams
+     */
+    private final LongAdder retransmissions;
+    /**
+     * The number of duplicate datagrams received
+     */
+    private final LongAdder duplicates;
+    /**
+     * The number of peers the channel keeps track of
+     */
+    private volatile int maxSessions = DEFAULT_MAX_SESSIONS;
+    /**
+     * The number of reliable messages per peer that can wait for room in the window
+     */
+    private volatile int maxBacklog = DEFAULT_MAX_BACKLOG;
+    /**
+     * The number of messages that can wait to be received
+     */
+    private volatile int maxInbox = DEFAULT_MAX_INBOX;
+    /**
+     * The time after which an idle peer is forgotten, in nanoseconds
+     */
+    private volatile long sessionTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SESSION_TIMEOUT_MILLIS);
+    /**
+     * The number of times a reliable message is retransmitted before the peer is given up on
+     */
+    private volatile int maxRetransmissions = DEFAULT_MAX_RETRANSMISSIONS;
+    /**
+     * Simulates network loss and reordering on outgoing datagrams (null if disabled)
+     */
+    private volatile BialettiLossInjector lossInjector;
+    /**
+     * A boolean that tells whether the channel has been closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor
+     * Reliable messages are exchanged with whoever sends to the socket
+     * @param socket the server socket, which the channel takes over
+     */
+    public BialettiReliableChannel(BialettiUDPServerSocket socket) {
+        this(socket.getChannel(), null, DEFAULT_WINDOW, DEFAULT_MAX_DATAGRAM);
+    }
+
+    /**
+     * Constructor
+     * Messages sent without an address go to the connection's server
+     * @param connection the client connection, which the channel takes over
+     */
+    public BialettiReliableChannel(BialettiUDPClientConnection connection) {
+        this(connection.getChannel(), connection.getTarget(), DEFAULT_WINDOW, DEFAULT_MAX_DATAGRAM);
+    }
+
+    /**
+     * Constructor
+     * @param udpChannel the bound UDP channel, in blocking mode, which the channel takes over
+     * @param peer the peer of messages sent without an address (May be null)
+     * @param window the number of reliable messages that can be unacknowledged at once, per peer
+     * @param maxDatagram the size of the largest datagram, header included
+     * @throws IllegalArgumentException if the window is not positive or the datagram size cannot hold a header
+     */
+    public BialettiReliableChannel(DatagramChannel udpChannel,
+                                   SocketAddress peer,
+                                   int window,
+                                   int maxDatagram) throws IllegalArgumentException {
+        if (window <= 0) {
+            throw new IllegalArgumentException("The window must be positive");
+        }
+
+        if (maxDatagram <= BialettiReliableSession.DATA_HEADER) {
+            throw new IllegalArgumentException("The datagram size must be larger than " + BialettiReliableSession.DATA_HEADER);
+        }
+
+        // Set fields
+        channel         = udpChannel;
+        defaultPeer     = peer;
+        windowSize      = window;
+        maxDatagramSize = maxDatagram;
+        sessions        = new ConcurrentHashMap<>();
+        inbox           = new LinkedBlockingQueue<>();
+        retransmissions = new LongAdder();
+        duplicates      = new LongAdder();
+        timer           = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, getClass().getSimpleName() + "-timer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        reader = new Thread(this::read, getClass().getSimpleName() + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        timer.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a message to the default peer
+     * @param message the message, its position is moved to its limit
+     * @param mode how the message is delivered
+     * @throws IOException if the channel is closed or an I/O error occurs
+     * @throws BialettiIllegalOperationException if the channel has no default peer
+     */
+    public void send(ByteBuffer message, BialettiDeliveryMode mode) throws IOException,
+                                                                           BialettiIllegalOperationException {
+        if (defaultPeer == null) {
+            throw new BialettiIllegalOperationException("The channel has no default peer");
+        }
+
+        send(defaultPeer, message, mode);
+    }
+
+    /**
+     * Sends a string to the default peer
+     * @param message the string
+     * @param mode how the message is delivered
+     * @throws IOException if the channel is closed or an I/O error occurs
+     * @throws BialettiIllegalOperationException if the channel has no default peer
+     */
+    public void send(String message, BialettiDeliveryMode mode) throws IOException,
+                                                                       BialettiIllegalOperationException {
+        send(Charset.defaultCharset().encode(message), mode);
+    }
+
+    /**
+     * Sends a message
+     * @param peer the address of the peer
+     * @param message the message, its position is moved to its limit
+     * @param mode how the message is delivered
+     * @throws BialettiChannelFullException if the peer's backlog is full or the channel keeps track of too many peers
+     * @throws IOException if the channel is closed or an I/O error occurs
+     * @throws IllegalArgumentException if the message does not fit in a datagram
+     */
+    public void send(SocketAddress peer, ByteBuffer message, BialettiDeliveryMode mode) throws IOException,
+                                                                                               IllegalArgumentException {
+        if (closed) throw new ClosedChannelException();
+
+        if (message.remaining() > getMaxMessageSize()) {
+            throw new IllegalArgumentException("Message of " + message.remaining() + " bytes does not fit in a datagram");
+        }
+
+        // A session discarded in the meantime is replaced by a new one
+        while (true) {
+            BialettiReliableSession session = session(peer);
+
+            if (session == null) {
+                throw new BialettiChannelFullException("The channel already has " + maxSessions + " peers");
+            }
+
+            if (session.send(message, mode)) return;
+        }
+    }
+
+    /**
+     * Waits for a message
+     * @return the message
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public BialettiReliableMessage receive() throws InterruptedException {
+        return inbox.take();
+    }
+
+    /**
+     * Waits for a message for a limited time
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the message, null if none arrived in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public BialettiReliableMessage receive(long timeout, TimeUnit unit) throws InterruptedException {
+        return inbox.poll(timeout, unit);
+    }
+
+    /**
+     * Closes the channel and the underlying UDP channel
+     * Unacknowledged messages are not retransmitted anymore
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+
+        // Wakes up the reader
+        try { channel.close(); }
+        catch (IOException ignored) { }
+    }
+
+    /**
+     * Sends a datagram, through the loss injector if there is one
+     * @param datagram the datagram (Not consumed)
+     * @param peer the address of the peer
+     * @throws IOException if an I/O error occurs
+     */
+    void transmit(ByteBuffer datagram, SocketAddress peer) throws IOException {
+        BialettiLossInjector injector = lossInjector;
+
+        if (injector != null) {
+            if (injector.drop()) return;
+
+            long delay = injector.delay();
+            if (delay > 0) {
+                ByteBuffer held = datagram.duplicate();
+
+                timer.schedule(() -> {
+                    try { channel.send(held, peer); }
+                    catch (IOException ignored) { }
+                }, delay, TimeUnit.NANOSECONDS);
+
+                return;
+            }
+        }
+
+        channel.send(datagram.duplicate(), peer);
+    }
+
+    /**
+     * Hands a message over to the receivers
+     * @param data the message's data
+     * @param sender the peer that sent the message
+     * @param mode how the message was delivered
+     */
+    void deliver(ByteBuffer data, SocketAddress sender, BialettiDeliveryMode mode) {
+        inbox.add(new BialettiReliableMessage(data, sender, mode));
+    }
+
+    /**
+     * Forgets a peer whose session has failed and reports the messages it did not acknowledge
+     * @param peer the peer
+     * @param session the peer's session
+     * @param undelivered the payloads of the reliable messages the peer did not acknowledge, in the order they were sent
+     */
+    void lose(SocketAddress peer, BialettiReliableSession session, List<ByteBuffer> undelivered) {
+        sessions.remove(peer, session);
+
+        // Not on the reader, which the handler could otherwise hold up
+        try { timer.execute(() -> onPeerLost(peer, undelivered)); }
+        catch (RejectedExecutionException ignored) {
+            // The channel has been closed
+        }
+    }
+
+    /**
+     * What happens when the channel gives up on a peer, which stops sending to the peer and forgets it
+     * The next message sent to the peer starts a new session
+     * @apiNote runs on the channel's timer thread, the default implementation does nothing
+     * @param peer the peer
+     * @param undelivered the payloads of the reliable messages the peer did not acknowledge, in the order they were
+     * sent (Read-only)
+     */
+    protected void onPeerLost(SocketAddress peer, List<ByteBuffer> undelivered) { }
+
+    /**
+     * @return whether there is room for another message in the inbox (Ordered messages released together by a missing
+     * one may go past it by up to a window)
+     */
+    boolean canDeliver() { return inbox.size() < maxInbox; }
+
+    /**
+     * Accounts for a retransmitted datagram
+     */
+    void countRetransmission() { retransmissions.increment(); }
+    /**
+     * Accounts for a duplicate datagram
+     */
+    void countDuplicate() { duplicates.increment(); }
+
+    /**
+     * Reads datagrams and passes them to the sessions of their senders
+     */
+    private void read() {
+        try (BialettiPooledBuffer pooled = BialettiBufferPool.getDefault().acquire(maxDatagramSize)) {
+            ByteBuffer buffer = pooled.getBuffer();
+
+            while (!closed) {
+                buffer.clear();
+
+                try {
+                    SocketAddress sender = channel.receive(buffer);
+                    if (sender == null || !buffer.flip().hasRemaining()) continue;
+
+                    // Datagrams from new peers are dropped while the channel is full
+                    BialettiReliableSession session = session(sender);
+                    if (session != null) session.receive(buffer);
+                }
+
+                // The channel was closed
+                catch (ClosedChannelException e) { return; }
+
+                // Malformed datagrams and errors reported by the network (Such as unreachable ports) are skipped
+                catch (IOException | RuntimeException ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Checks the retransmission timeouts of every peer and forgets idle peers
+     */
+    private void tick() {
+        long now     = System.nanoTime();
+        long timeout = sessionTimeoutNanos;
+
+        for (Map.Entry<SocketAddress, BialettiReliableSession> entry : sessions.entrySet()) {
+            BialettiReliableSession session = entry.getValue();
+
+            if (session.expire(now, timeout)) {
+                sessions.remove(entry.getKey(), session);
+                continue;
+            }
+
+            try { session.tick(now); }
+            catch (IOException ignored) {
+                // Retried on the next tick
+            }
+        }
+    }
+
+    /**
+     * @param peer the address of a peer
+     * @return the peer's session, created if needed (null if the channel keeps track of too many peers)
+     */
+    private BialettiReliableSession session(SocketAddress peer) {
+        BialettiReliableSession session = sessions.get(peer);
+        if (session != null) return session;
+
+        // Creations are serialized so that the limit holds
+        synchronized (sessions) {
+            if (sessions.size() >= maxSessions) return sessions.get(peer);
+            return sessions.computeIfAbsent(peer, address -> new BialettiReliableSession(this, address, windowSize));
+        }
+    }
+
+    /**
+     * Enables or disables simulated loss and reordering of outgoing datagrams
+     * @param injector the loss injector (null to disable)
+     */
+    public void setLossInjector(BialettiLossInjector injector) { lossInjector = injector; }
+    /**
+     * @return the loss injector (null if disabled)
+     */
+    public BialettiLossInjector getLossInjector() { return lossInjector; }
+
+    /**
+     * Sets the number of peers the channel keeps track of
+     * Sending to another peer fails and datagrams from other peers are dropped until some peer is forgotten
+     * @param sessions the number of peers
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public void setMaxSessions(int sessions) throws IllegalArgumentException {
+        if (sessions <= 0) {
+            throw new IllegalArgumentException("The number of peers must be positive");
+        }
+
+        maxSessions = sessions;
+    }
+
+    /**
+     * Sets the number of reliable messages per peer that can wait for room in the window
+     * Sending a reliable message fails while the backlog is full
+     * @param backlog the number of messages
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public void setMaxBacklog(int backlog) throws IllegalArgumentException {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("The backlog cannot be negative");
+        }
+
+        maxBacklog = backlog;
+    }
+
+    /**
+     * Sets the number of messages that can wait to be received
+     * While the inbox is full, unreliable messages are dropped and reliable ones are not acknowledged, so that
+     * their senders retransmit them later
+     * @param messages the number of messages
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public void setMaxInbox(int messages) throws IllegalArgumentException {
+        if (messages <= 0) {
+            throw new IllegalArgumentException("The inbox must hold at least one message");
+        }
+
+        maxInbox = messages;
+    }
+
+    /**
+     * Sets the number of times a reliable message is retransmitted before the peer is given up on
+     * @see #onPeerLost(SocketAddress, List)
+     * @param retransmissions the number of retransmissions
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public void setMaxRetransmissions(int retransmissions) throws IllegalArgumentException {
+        if (retransmissions < 0) {
+            throw new IllegalArgumentException("The number of retransmissions cannot be negative");
+        }
+
+        maxRetransmissions = retransmissions;
+    }
+
+    /**
+     * Sets the time after which a peer with nothing pending that has not sent or received anything is forgotten
+     * Both ends should use the same timeout, longer than it takes to give up on a peer: a message retransmitted after
+     * the peer has forgotten the session would be delivered twice
+     * @param timeout the timeout
+     * @param unit the unit of the timeout
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    public void setSessionTimeout(long timeout, TimeUnit unit) throws IllegalArgumentException {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("The session timeout must be positive");
+        }
+
+        sessionTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @param peer the address of a peer
+     * @return the smoothed round trip time to the peer in microseconds (Negative if not measured yet)
+     */
+    public long getRoundTripTime(SocketAddress peer) {
+        BialettiReliableSession session = sessions.get(peer);
+        if (session == null) return -1;
+
+        long rtt = session.getSmoothedRtt();
+        return (rtt < 0) ? -1 : TimeUnit.NANOSECONDS.toMicros(rtt);
+    }
+
+    /**
+     * @param peer the address of a peer
+     * @return the number of reliable messages to the peer that have not been acknowledged yet
+     */
+    public int getUnacknowledged(SocketAddress peer) {
+        BialettiReliableSession session = sessions.get(peer);
+        return (session != null) ? session.getUnacknowledged() : 0;
+    }
+
+    /**
+     * @return the number of peers the channel keeps track of at most
+     */
+    public int getMaxSessions() { return maxSessions; }
+    /**
+     * @return the number of reliable messages per peer that can wait for room in the window
+     */
+    public int getMaxBacklog() { return maxBacklog; }
+    /**
+     * @return the number of messages that can wait to be received
+     */
+    public int getMaxInbox() { return maxInbox; }
+    /**
+     * @return the number of times a reliable message is retransmitted before the peer is given up on
+     */
+    public int getMaxRetransmissions() { return maxRetransmissions; }
+    /**
+     * @param unit the unit of the result
+     * @return the time after which an idle peer is forgotten
+     */
+    public long getSessionTimeout(TimeUnit unit) { return unit.convert(sessionTimeoutNanos, TimeUnit.NANOSECONDS); }
+    /**
+     * @return the number of peers the channel currently keeps track of
+     */
+    public int getSessionCount() { return sessions.size(); }
+    /**
+     * @return the size of the largest message
+     */
+    public int getMaxMessageSize() { return maxDatagramSize - BialettiReliableSession.DATA_HEADER; }
+    /**
+     * @return the number of reliable messages that can be unacknowledged at once, per peer
+     */
+    public int getWindowSize() { return windowSize; }
+    /**
+     * @return the number of retransmitted datagrams
+     */
+    public long getRetransmissions() { return retransmissions.sum(); }
+    /**
+     * @return the number of duplicate datagrams received
+     */
+    public long getDuplicates() { return duplicates.sum(); }
+    /**
+     * @return the peer of messages sent without an address (null if there is none)
+     */
+    public SocketAddress getDefaultPeer() { return defaultPeer; }
+    /**
+     * @return whether the channel has been closed
+     */
+    public boolean isClosed() { return closed; }
+}
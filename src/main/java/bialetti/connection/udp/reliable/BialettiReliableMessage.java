@@ -0,0 +1,53 @@
+package bialetti.connection.udp.reliable;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A message delivered by a {@link BialettiReliableChannel}
+ * @author Alessandro-Salerno
+ */
+public final class BialettiReliableMessage {
+    /**
+     * The message's data
+     */
+    private final ByteBuffer data;
+    /**
+     * The peer that sent the message
+     */
+    private final SocketAddress sender;
+    /**
+     * How the message was delivered
+     */
+    private final BialettiDeliveryMode mode;
+
+    /**
+     * Constructor
+     * @param d the message's data
+     * @param from the peer that sent the message
+     * @param m how the message was delivered
+     */
+    BialettiReliableMessage(ByteBuffer d, SocketAddress from, BialettiDeliveryMode m) {
+        data   = d;
+        sender = from;
+        mode   = m;
+    }
+
+    /**
+     * @return the message's data (Read-only)
+     */
+    public ByteBuffer getData() { return data.duplicate(); }
+    /**
+     * @return the message's data as a string
+     */
+    public String getString() { return Charset.defaultCharset().decode(data.duplicate()).toString(); }
+    /**
+     * @return the peer that sent the message
+     */
+    public SocketAddress getSender() { return sender; }
+    /**
+     * @return how the message was delivered
+     */
+    public BialettiDeliveryMode getMode() { return mode; }
+}
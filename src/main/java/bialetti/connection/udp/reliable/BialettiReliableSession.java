@@ -0,0 +1,625 @@
+package bialetti.connection.udp.reliable;
+
+import bialetti.exceptions.BialettiChannelFullException;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The reliability state shared with one peer of a {@link BialettiReliableChannel}
+ * Reliable messages share one sequence space. Every reliable datagram is answered with the sequence number below
+ * which everything has been received, the sequence number of the datagram itself and a bitmap of the rest of the
+ * window. Ordered messages also carry an order number, which the receiver delivers in sequence.
+ * Every datagram carries the epoch of the session that sent it, which grows with every new session: a session that
+ * sees a newer epoch starts receiving from scratch, so that sessions can be discarded and created again on either
+ * side without the sequence numbers getting out of step. A peer that receives the middle of a session it does not
+ * know (Because it forgot it) answers with a reset, and the sender gives up on the session, as it does when a message
+ * has been retransmitted too many times.
+ * @author Alessandro-Salerno
+ */
+final class BialettiReliableSession {
+    /**
+     * Type of datagrams that carry a message
+     */
+    static final byte DATA = 0;
+    /**
+     * Type of datagrams that carry an acknowledgement
+     */
+    static final byte ACK = 1;
+    /**
+     * Type of datagrams that tell the sender that the receiver does not know its session
+     */
+    static final byte RESET = 2;
+    /**
+     * The size of the header of data datagrams: type, mode, epoch, sequence number and order number
+     */
+    static final int DATA_HEADER = 18;
+    /**
+     * The size of the header of acknowledgement datagrams: type, epoch, cumulative acknowledgement and echoed
+     * sequence number
+     */
+    static final int ACK_HEADER = 17;
+    /**
+     * The size of reset datagrams: type and epoch
+     */
+    static final int RESET_SIZE = 9;
+    /**
+     * Set in the mode of data datagrams once some reliable message of the session has been acknowledged
+     */
+    private static final int CONTINUED = 0x80;
+
+    /**
+     * The retransmission timeout before the first round trip has been measured, in nanoseconds
+     */
+    private static final long INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    /**
+     * The lowest retransmission timeout, in nanoseconds
+     */
+    private static final long MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * The highest retransmission timeout, in nanoseconds
+     */
+    private static final long MAX_RTO_NANOS = TimeUnit.SECONDS.toNanos(2);
+    /**
+     * The delivery modes by ordinal
+     */
+    private static final BialettiDeliveryMode[] MODES = BialettiDeliveryMode.values();
+    /**
+     * The epoch of the last session created (Microseconds since the epoch, so that a restarted process keeps growing)
+     */
+    private static final AtomicLong LAST_EPOCH = new AtomicLong();
+
+    /**
+     * The channel the session belongs to
+     */
+    private final BialettiReliableChannel channel;
+    /**
+     * The peer
+     */
+    private final SocketAddress peer;
+    /**
+     * The number of reliable messages that can be unacknowledged at once
+     */
+    private final int windowSize;
+    /**
+     * The epoch of the session, sent with every datagram
+     */
+    private final long localEpoch;
+    /**
+     * When the last datagram was sent or received, in {@link System#nanoTime()} units
+     */
+    private long lastActivity;
+    /**
+     * A boolean that tells whether the session has been discarded by the channel
+     */
+    private boolean closed = false;
+    /**
+     * A boolean that tells whether some reliable message has been acknowledged
+     */
+    private boolean continued = false;
+
+    /**
+     * The unacknowledged messages, by sequence number modulo the window size
+     */
+    private final Outgoing[] sendWindow;
+    /**
+     * The messages waiting for room in the window
+     */
+    private final Deque<Outgoing> backlog;
+    /**
+     * The oldest unacknowledged sequence number
+     */
+    private int sendBase = 0;
+    /**
+     * The sequence number of the next message to enter the window
+     */
+    private int sendNext = 0;
+    /**
+     * The sequence number given to the next reliable message
+     */
+    private int nextSequence = 0;
+    /**
+     * The order number given to the next ordered message
+     */
+    private int nextOrder = 0;
+    /**
+     * The smoothed round trip time, in nanoseconds (Negative until measured)
+     */
+    private long smoothedRtt = -1;
+    /**
+     * The round trip time variation, in nanoseconds
+     */
+    private long rttVariation = 0;
+    /**
+     * The retransmission timeout, in nanoseconds
+     */
+    private long rto = INITIAL_RTO_NANOS;
+
+    /**
+     * The epoch of the peer's session (0 until a reliable message is received)
+     */
+    private long peerEpoch = 0;
+    /**
+     * The received sequence numbers, by sequence number modulo the window size
+     */
+    private final boolean[] receiveWindow;
+    /**
+     * The oldest sequence number not received yet
+     */
+    private int receiveBase = 0;
+    /**
+     * The number of sequence numbers received past the base
+     */
+    private int receivedAhead = 0;
+    /**
+     * The order number of the next ordered message to deliver
+     */
+    private int nextDelivery = 0;
+    /**
+     * Ordered messages received ahead of their turn, by order number
+     */
+    private final Map<Integer, ByteBuffer> reorderBuffer;
+
+    /**
+     * Constructor
+     * @param owner the channel the session belongs to
+     * @param address the peer
+     * @param window the number of reliable messages that can be unacknowledged at once
+     */
+    BialettiReliableSession(BialettiReliableChannel owner, SocketAddress address, int window) {
+        // Set fields
+        channel       = owner;
+        peer          = address;
+        windowSize    = window;
+        localEpoch    = LAST_EPOCH.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis() * 1000));
+        lastActivity  = System.nanoTime();
+        sendWindow    = new Outgoing[window];
+        backlog       = new ArrayDeque<>();
+        receiveWindow = new boolean[window];
+        reorderBuffer = new HashMap<>();
+    }
+
+    /**
+     * Sends a message
+     * @param payload the message
+     * @param mode how the message is delivered
+     * @return false if the session has been discarded, in which case nothing is sent
+     * @throws BialettiChannelFullException if the backlog is full
+     * @throws IOException if the datagram cannot be sent
+     */
+    synchronized boolean send(ByteBuffer payload, BialettiDeliveryMode mode) throws IOException {
+        if (closed) return false;
+        lastActivity = System.nanoTime();
+
+        if (mode == BialettiDeliveryMode.UNRELIABLE) {
+            channel.transmit(datagram(mode, 0, 0, payload), peer);
+            return true;
+        }
+
+        if (backlog.size() >= channel.getMaxBacklog()) {
+            throw new BialettiChannelFullException("The backlog of " + peer + " is full");
+        }
+
+        int order = (mode == BialettiDeliveryMode.RELIABLE_ORDERED) ? nextOrder++ : 0;
+        int seq   = nextSequence++;
+
+        backlog.add(new Outgoing(seq, datagram(mode, seq, order, payload)));
+        fillWindow(lastActivity);
+        return true;
+    }
+
+    /**
+     * Handles a datagram from the peer
+     * @param datagram the datagram
+     * @throws IOException if an acknowledgement cannot be sent
+     */
+    synchronized void receive(ByteBuffer datagram) throws IOException {
+        if (closed) return;
+
+        lastActivity = System.nanoTime();
+        byte type    = datagram.get();
+
+        if (type == ACK && datagram.remaining() >= ACK_HEADER - 1) acknowledge(datagram, lastActivity);
+        else if (type == DATA && datagram.remaining() >= DATA_HEADER - 1) deliver(datagram);
+        else if (type == RESET && datagram.remaining() >= RESET_SIZE - 1 && datagram.getLong() == localEpoch) fail();
+    }
+
+    /**
+     * Retransmits the messages whose timeout expired, or gives up on the peer if one of them has been retransmitted
+     * too many times
+     * @param now the current time, in {@link System#nanoTime()} units
+     * @throws IOException if a datagram cannot be sent
+     */
+    synchronized void tick(long now) throws IOException {
+        if (closed) return;
+
+        int limit       = channel.getMaxRetransmissions();
+        boolean expired = false;
+
+        for (int seq = sendBase; seq - sendNext < 0; seq++) {
+            Outgoing message = sendWindow[slot(seq)];
+            if (message == null || now - message.sentAt < rto) continue;
+
+            // The peer is gone
+            if (message.transmissions > limit) {
+                fail();
+                return;
+            }
+
+            retransmit(message, now);
+            expired = true;
+        }
+
+        // Back off once per timeout, not once per message
+        if (expired) rto = Math.min(rto * 2, MAX_RTO_NANOS);
+    }
+
+    /**
+     * Discards the session if nothing has been sent or received for the timeout and nothing is pending
+     * @param now the current time, in {@link System#nanoTime()} units
+     * @param timeoutNanos the timeout, in nanoseconds
+     * @return whether the session has been discarded
+     */
+    synchronized boolean expire(long now, long timeoutNanos) {
+        if (now - lastActivity < timeoutNanos || nextSequence != sendBase || receivedAhead > 0) return false;
+
+        closed = true;
+        return true;
+    }
+
+    /**
+     * Processes an acknowledgement
+     * @param ack the acknowledgement, positioned after the type
+     * @param now the current time
+     * @throws IOException if a datagram cannot be sent
+     */
+    private void acknowledge(ByteBuffer ack, long now) throws IOException {
+        long epoch     = ack.getLong();
+        int cumulative = ack.getInt();
+        int echo       = ack.getInt();
+
+        // Ignore acknowledgements for an earlier session and for messages that were never sent
+        if (epoch != localEpoch || cumulative - sendNext > 0) return;
+
+        // Only the datagram that caused the acknowledgement gives an accurate round trip sample
+        Outgoing echoed = (echo - sendBase >= 0 && echo - sendNext < 0) ? sendWindow[slot(echo)] : null;
+        if (echoed != null && echoed.seq == echo && echoed.transmissions == 1) sampleRtt(now - echoed.sentAt);
+
+        for (int seq = sendBase; seq - cumulative < 0; seq++) acknowledge(seq);
+
+        // Bit i of the bitmap tells whether cumulative + 1 + i has been received
+        int highest = cumulative;
+        for (int word = 0; ack.remaining() >= Long.BYTES; word++) {
+            long bits = ack.getLong();
+
+            while (bits != 0) {
+                int seq = cumulative + 1 + word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits   &= bits - 1;
+                if (seq - sendNext >= 0) break;
+
+                acknowledge(seq);
+                highest = seq;
+            }
+        }
+
+        // Messages missing below an acknowledged one were probably lost, resend them without waiting for the timeout
+        long threshold = (smoothedRtt > 0) ? smoothedRtt : rto;
+        for (int seq = (cumulative - sendBase < 0) ? sendBase : cumulative; seq - highest < 0; seq++) {
+            Outgoing message = sendWindow[slot(seq)];
+            if (message != null && now - message.sentAt >= threshold) retransmit(message, now);
+        }
+
+        // Slide the window
+        while (sendBase - sendNext < 0 && sendWindow[slot(sendBase)] == null) {
+            sendBase++;
+            continued = true;
+        }
+        fillWindow(now);
+    }
+
+    /**
+     * Marks a message as acknowledged
+     * @param seq the message's sequence number
+     */
+    private void acknowledge(int seq) {
+        int slot = slot(seq);
+        if (sendWindow[slot] != null && sendWindow[slot].seq == seq) sendWindow[slot] = null;
+    }
+
+    /**
+     * Handles a data datagram
+     * @param datagram the datagram, positioned after the type
+     * @throws IOException if the acknowledgement cannot be sent
+     */
+    private void deliver(ByteBuffer datagram) throws IOException {
+        int flags   = datagram.get() & 0xff;
+        int ordinal = flags & ~CONTINUED;
+        long epoch  = datagram.getLong();
+        int seq     = datagram.getInt();
+        int order   = datagram.getInt();
+
+        if (ordinal < 0 || ordinal >= MODES.length) return;
+        BialettiDeliveryMode mode = MODES[ordinal];
+
+        // Dropped when nobody is receiving
+        if (mode == BialettiDeliveryMode.UNRELIABLE) {
+            if (channel.canDeliver()) channel.deliver(copy(datagram), peer, mode);
+            return;
+        }
+
+        // Left over from an earlier session of the peer
+        if (epoch < peerEpoch) return;
+
+        if (epoch > peerEpoch) {
+            // What came before was received by a session that has been discarded, the peer has to start over
+            if ((flags & CONTINUED) != 0) {
+                channel.transmit(ByteBuffer.allocate(RESET_SIZE).put(RESET).putLong(epoch).flip(), peer);
+                return;
+            }
+
+            restart(epoch);
+        }
+
+        // Beyond the window, the peer does not respect it
+        int offset = seq - receiveBase;
+        if (offset >= windowSize) return;
+
+        boolean fresh = offset >= 0 && !receiveWindow[slot(seq)];
+
+        // Not acknowledged when nobody is receiving, the peer sends it again later
+        if (fresh && !channel.canDeliver()) return;
+
+        if (fresh) {
+            receiveWindow[slot(seq)] = true;
+            receivedAhead++;
+
+            while (receiveWindow[slot(receiveBase)]) {
+                receiveWindow[slot(receiveBase)] = false;
+                receivedAhead--;
+                receiveBase++;
+            }
+        }
+
+        else channel.countDuplicate();
+
+        // Duplicates are acknowledged too, the previous acknowledgement may have been lost
+        sendAcknowledgement(seq);
+        if (!fresh) return;
+
+        if (mode == BialettiDeliveryMode.RELIABLE_UNORDERED) {
+            channel.deliver(copy(datagram), peer, mode);
+            return;
+        }
+
+        if (order != nextDelivery) {
+            reorderBuffer.put(order, copy(datagram));
+            return;
+        }
+
+        channel.deliver(copy(datagram), peer, mode);
+        nextDelivery++;
+
+        // Deliver the messages that were waiting for this one
+        ByteBuffer next;
+        while ((next = reorderBuffer.remove(nextDelivery)) != null) {
+            channel.deliver(next, peer, mode);
+            nextDelivery++;
+        }
+    }
+
+    /**
+     * Sends the current acknowledgement state to the peer
+     * @param echo the sequence number of the datagram being acknowledged
+     * @throws IOException if the datagram cannot be sent
+     */
+    private void sendAcknowledgement(int echo) throws IOException {
+        int words      = (windowSize - 1 + Long.SIZE - 1) / Long.SIZE;
+        ByteBuffer ack = ByteBuffer.allocate(ACK_HEADER + words * Long.BYTES)
+                                   .put(ACK)
+                                   .putLong(peerEpoch)
+                                   .putInt(receiveBase)
+                                   .putInt(echo);
+
+        // Nothing past the base is set unless something is missing, the common case needs no scan
+        for (int word = 0; word < words; word++) {
+            long bits = 0;
+
+            for (int i = 0; i < Long.SIZE && receivedAhead > 0; i++) {
+                int offset = 1 + word * Long.SIZE + i;
+                if (offset < windowSize && receiveWindow[slot(receiveBase + offset)]) bits |= 1L << i;
+            }
+
+            ack.putLong(bits);
+        }
+
+        channel.transmit(ack.flip(), peer);
+    }
+
+    /**
+     * Forgets what has been received from an earlier session of the peer
+     * @param epoch the epoch of the peer's new session
+     */
+    private void restart(long epoch) {
+        peerEpoch     = epoch;
+        receiveBase   = 0;
+        receivedAhead = 0;
+        nextDelivery  = 0;
+
+        Arrays.fill(receiveWindow, false);
+        reorderBuffer.clear();
+    }
+
+    /**
+     * Moves messages from the backlog into the window and sends them
+     * @param now the current time
+     * @throws IOException if a datagram cannot be sent
+     */
+    private void fillWindow(long now) throws IOException {
+        while (!backlog.isEmpty() && sendNext - sendBase < windowSize) {
+            Outgoing message = backlog.poll();
+
+            sendWindow[slot(message.seq)] = message;
+            sendNext++;
+
+            message.sentAt        = now;
+            message.transmissions = 1;
+            transmit(message);
+        }
+    }
+
+    /**
+     * Sends a message again
+     * @param message the message
+     * @param now the current time
+     * @throws IOException if the datagram cannot be sent
+     */
+    private void retransmit(Outgoing message, long now) throws IOException {
+        message.sentAt = now;
+        message.transmissions++;
+
+        channel.countRetransmission();
+        transmit(message);
+    }
+
+    /**
+     * Sends the datagram of a message, telling the peer whether the session has been going on
+     * @param message the message
+     * @throws IOException if the datagram cannot be sent
+     */
+    private void transmit(Outgoing message) throws IOException {
+        if (continued) message.datagram.put(1, (byte) (message.datagram.get(1) | CONTINUED));
+        channel.transmit(message.datagram, peer);
+    }
+
+    /**
+     * Discards the session because the peer is gone or does not know it anymore, handing the messages it did not
+     * acknowledge over to the channel
+     */
+    private void fail() {
+        List<ByteBuffer> undelivered = new ArrayList<>(nextSequence - sendBase);
+
+        for (int seq = sendBase; seq - sendNext < 0; seq++) {
+            Outgoing message = sendWindow[slot(seq)];
+            if (message != null) undelivered.add(payloadOf(message));
+        }
+
+        for (Outgoing message : backlog) undelivered.add(payloadOf(message));
+
+        Arrays.fill(sendWindow, null);
+        backlog.clear();
+        closed = true;
+
+        channel.lose(peer, this, undelivered);
+    }
+
+    /**
+     * Updates the round trip estimate and the retransmission timeout (RFC 6298)
+     * @param sample the measured round trip time, in nanoseconds
+     */
+    private void sampleRtt(long sample) {
+        if (smoothedRtt < 0) {
+            smoothedRtt  = sample;
+            rttVariation = sample / 2;
+        }
+
+        else {
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - sample)) / 4;
+            smoothedRtt  = (7 * smoothedRtt + sample) / 8;
+        }
+
+        rto = Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, smoothedRtt + 4 * rttVariation));
+    }
+
+    /**
+     * @return the smoothed round trip time, in nanoseconds (Negative until measured)
+     */
+    synchronized long getSmoothedRtt() { return smoothedRtt; }
+    /**
+     * @return the number of reliable messages sent but not acknowledged yet, including those waiting for the window
+     */
+    synchronized int getUnacknowledged() { return nextSequence - sendBase; }
+
+    /**
+     * @param seq a sequence number
+     * @return its slot in the windows
+     */
+    private int slot(int seq) { return Math.floorMod(seq, windowSize); }
+
+    /**
+     * Builds a data datagram
+     * @param mode how the message is delivered
+     * @param seq the sequence number
+     * @param order the order number
+     * @param payload the message
+     * @return the datagram
+     */
+    private ByteBuffer datagram(BialettiDeliveryMode mode, int seq, int order, ByteBuffer payload) {
+        return ByteBuffer.allocate(DATA_HEADER + payload.remaining())
+                         .put(DATA)
+                         .put((byte) mode.ordinal())
+                         .putLong(localEpoch)
+                         .putInt(seq)
+                         .putInt(order)
+                         .put(payload)
+                         .flip();
+    }
+
+    /**
+     * @param message a message
+     * @return a read-only view of its payload
+     */
+    private static ByteBuffer payloadOf(Outgoing message) {
+        return message.datagram.duplicate().position(DATA_HEADER).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @param datagram a datagram, positioned at the payload
+     * @return a read-only copy of the payload
+     */
+    private static ByteBuffer copy(ByteBuffer datagram) {
+        return ByteBuffer.allocate(datagram.remaining()).put(datagram).flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * A reliable message on its way to the peer
+     * @author Alessandro-Salerno
+     */
+    private static final class Outgoing {
+        /**
+         * The sequence number
+         */
+        final int seq;
+        /**
+         * The datagram, never consumed so that it can be resent
+         */
+        final ByteBuffer datagram;
+        /**
+         * When the datagram was last sent
+         */
+        long sentAt;
+        /**
+         * How many times the datagram was sent
+         */
+        int transmissions;
+
+        /**
+         * Constructor
+         * @param s the sequence number
+         * @param d the datagram
+         */
+        Outgoing(int s, ByteBuffer d) {
+            seq      = s;
+            datagram = d;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package bialetti.eventloop;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Receives readiness events for a channel registered with a {@link BialettiEventLoop}
+ * @apiNote all methods are called on the event loop's thread
+ * @author Alessandro-Salerno
+ */
+public interface BialettiChannelHandler {
+    /**
+     * What happens once the channel has been registered with the selector
+     * @param key the channel's {@link SelectionKey}
+     */
+    default void onRegistered(SelectionKey key) { }
+
+    /**
+     * What happens when the channel has data to be read
+     * @throws Exception if something goes wrong while reading
+     */
+    void onReadable() throws Exception;
+
+    /**
+     * What happens when the channel can accept more outgoing data
+     * @throws Exception if something goes wrong while writing
+     */
+    default void onWritable() throws Exception { }
+
+    /**
+     * What happens when one of the other methods throws
+     * @param throwable the exception
+     */
+    void onException(Throwable throwable);
+}
@@ -0,0 +1,186 @@
+package bialetti.eventloop;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread that multiplexes many channels through a {@link Selector}
+ * @author Alessandro-Salerno
+ */
+public final class BialettiEventLoop implements Runnable {
+    /**
+     * The selector used to wait for readiness events
+     */
+    private final Selector selector;
+    /**
+     * Tasks submitted from other threads
+     */
+    private final Queue<Runnable> tasks;
+    /**
+     * The thread on which the loop runs
+     */
+    private final Thread thread;
+    /**
+     * A boolean that tells whether the loop should keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * Constructor
+     * @param name the name of the loop's thread
+     * @throws IOException if the selector could not be opened
+     */
+    BialettiEventLoop(String name) throws IOException {
+        selector = Selector.open();
+        tasks    = new ConcurrentLinkedQueue<>();
+        thread   = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the loop's thread
+     */
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the loop and closes the selector along with all registered channels
+     */
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Runs a task on the loop's thread
+     * @param task the task
+     */
+    public void execute(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a channel with the loop
+     * @param channel the channel (Switched to non-blocking mode)
+     * @param ops the initial interest set
+     * @param handler the handler that receives the channel's events
+     */
+    public void register(SelectableChannel channel, int ops, BialettiChannelHandler handler) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                handler.onRegistered(channel.register(selector, ops, handler));
+            }
+
+            catch (Exception e) {
+                // Call handler method
+                notifyException(handler, e);
+            }
+        });
+    }
+
+    /**
+     * @return whether the calling thread is the loop's thread
+     */
+    public boolean inEventLoop() { return Thread.currentThread() == thread; }
+
+    /**
+     * @return the number of channels registered with the loop
+     */
+    public int getChannelCount() { return selector.keys().size(); }
+
+    @Override
+    public void run() {
+        while (running) {
+            try { selector.select(); }
+            catch (IOException e) {
+                e.printStackTrace();
+                break;
+            }
+
+            runTasks();
+            processSelectedKeys();
+        }
+
+        closeAll();
+    }
+
+    /**
+     * Runs all pending tasks
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try { task.run(); }
+            catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Dispatches readiness events to the handlers
+     */
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            BialettiChannelHandler handler = (BialettiChannelHandler) key.attachment();
+
+            try {
+                if (key.isValid() && key.isWritable()) handler.onWritable();
+                if (key.isValid() && key.isReadable()) handler.onReadable();
+            }
+
+            // The channel was closed while its events were being handled
+            catch (CancelledKeyException ignored) { }
+
+            catch (Throwable t) {
+                // Call handler method
+                notifyException(handler, t);
+            }
+        }
+    }
+
+    /**
+     * Forwards an exception to a handler without letting it escape the loop
+     * @param handler the handler
+     * @param throwable the exception
+     */
+    private static void notifyException(BialettiChannelHandler handler, Throwable throwable) {
+        try { handler.onException(throwable); }
+        catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the selector and every channel still registered with it
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try { key.channel().close(); }
+            catch (IOException ignored) { }
+        }
+
+        try { selector.close(); }
+        catch (IOException ignored) { }
+    }
+}
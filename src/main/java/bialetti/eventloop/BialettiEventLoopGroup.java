@@ -0,0 +1,84 @@
+package bialetti.eventloop;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed group of {@link BialettiEventLoop}s that share the channels registered with them
+ * @author Alessandro-Salerno
+ */
+public final class BialettiEventLoopGroup {
+    /**
+     * The loops in the group
+     */
+    private final BialettiEventLoop[] loops;
+    /**
+     * Index of the next loop to be handed out
+     */
+    private final AtomicInteger nextLoop;
+    /**
+     * A boolean that tells whether the group has been shut down
+     */
+    private volatile boolean shutdown = false;
+
+    /**
+     * Constructor
+     * Creates one loop per available processor
+     * @throws RuntimeException if a selector could not be opened
+     */
+    public BialettiEventLoopGroup() throws RuntimeException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param threads the number of loops (and thus threads) in the group
+     * @throws IllegalArgumentException if threads is not positive
+     * @throws RuntimeException if a selector could not be opened
+     */
+    public BialettiEventLoopGroup(int threads) throws IllegalArgumentException,
+                                                     RuntimeException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("An event loop group needs at least one thread");
+        }
+
+        loops    = new BialettiEventLoop[threads];
+        nextLoop = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new BialettiEventLoop("bialetti-eventloop-" + i);
+            }
+        }
+
+        catch (Exception e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
+
+        for (BialettiEventLoop loop : loops) loop.start();
+    }
+
+    /**
+     * @return the next loop in round-robin order
+     */
+    public BialettiEventLoop next() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * Stops all loops and closes the channels registered with them
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (BialettiEventLoop loop : loops) loop.shutdown();
+    }
+
+    /**
+     * @return the number of loops in the group
+     */
+    public int size() { return loops.length; }
+    /**
+     * @return whether the group has been shut down
+     */
+    public boolean isShutdown() { return shutdown; }
+}
@@ -0,0 +1,17 @@
+package bialetti.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception that occurs when a channel cannot take any more messages or peers
+ * @author Alessandro-Salerno
+ */
+public class BialettiChannelFullException extends IOException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiChannelFullException(String message) {
+        super(message);
+    }
+}
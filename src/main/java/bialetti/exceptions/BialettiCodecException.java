@@ -0,0 +1,25 @@
+package bialetti.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception that occurs when a message cannot be decoded by a codec
+ * @author Alessandro-Salerno
+ */
+public class BialettiCodecException extends IOException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiCodecException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor
+     * @param cause the cause of the exception ({@link Throwable})
+     */
+    public BialettiCodecException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,25 @@
+package bialetti.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception that occurs when a received message cannot be decompressed
+ * @author Alessandro-Salerno
+ */
+public class BialettiCompressionException extends IOException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiCompressionException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor
+     * @param cause the cause of the exception ({@link Throwable})
+     */
+    public BialettiCompressionException(Throwable cause) {
+        super(cause);
+    }
+}
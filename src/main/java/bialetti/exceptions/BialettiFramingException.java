@@ -0,0 +1,25 @@
+package bialetti.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception that occurs when incoming data cannot be split into valid frames
+ * @author Alessandro-Salerno
+ */
+public class BialettiFramingException extends IOException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiFramingException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor
+     * @param cause the cause of the exception ({@link Throwable})
+     */
+    public BialettiFramingException(Throwable cause) {
+        super(cause);
+    }
+}
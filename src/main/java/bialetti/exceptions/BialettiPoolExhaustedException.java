@@ -0,0 +1,17 @@
+package bialetti.exceptions;
+
+import java.io.IOException;
+
+/**
+ * An exception that occurs when no pooled connection becomes available in time
+ * @author Alessandro-Salerno
+ */
+public class BialettiPoolExhaustedException extends IOException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiPoolExhaustedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package bialetti.exceptions;
+
+/**
+ * An exception that occurs when a remote procedure call fails on the server
+ * @author Alessandro-Salerno
+ */
+public class BialettiRPCException extends RuntimeException {
+    /**
+     * Constructor
+     * @param message the exception's message
+     */
+    public BialettiRPCException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+package bialetti.metrics;
+
+/**
+ * The counters kept by {@link BialettiMetrics}
+ * @author Alessandro-Salerno
+ */
+public enum BialettiCounter {
+    /**
+     * Connections accepted by a server
+     */
+    ACCEPTED_CONNECTIONS("AcceptedConnections"),
+    /**
+     * Connections of a server that have been closed
+     */
+    CLOSED_CONNECTIONS("ClosedConnections"),
+    /**
+     * Bytes read from sockets
+     */
+    BYTES_IN("BytesIn"),
+    /**
+     * Bytes written to sockets
+     */
+    BYTES_OUT("BytesOut"),
+    /**
+     * Frames or datagrams received (Heartbeats excluded)
+     */
+    MESSAGES_IN("MessagesIn"),
+    /**
+     * Frames, datagrams or raw messages sent (Heartbeats excluded)
+     */
+    MESSAGES_OUT("MessagesOut"),
+    /**
+     * Exceptions thrown by handle methods
+     */
+    HANDLER_EXCEPTIONS("HandlerExceptions");
+
+    /**
+     * The name of the counter in snapshots and JMX
+     */
+    private final String name;
+
+    /**
+     * Constructor
+     * @param n the name of the counter
+     */
+    BialettiCounter(String n) {
+        name = n;
+    }
+
+    /**
+     * @return the name of the counter in snapshots and JMX
+     */
+    public String getName() { return name; }
+}
@@ -0,0 +1,220 @@
+package bialetti.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets
+ * Every power of two of nanoseconds is split into four buckets, so a recorded value is off by at most a quarter of
+ * itself, up to about an hour. Recording finds the bucket with a few shifts and adds to a {@link LongAdder}, so
+ * threads recording at the same time do not contend.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiHistogram {
+    /**
+     * The number of buckets per power of two (Must be a power of two)
+     */
+    private static final int SUB_BUCKETS = 4;
+    /**
+     * The number of bits that pick the bucket within a power of two
+     */
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    /**
+     * The highest power of two with its own buckets, larger values go in the last bucket
+     */
+    private static final int MAX_EXPONENT = 42;
+    /**
+     * The number of buckets
+     */
+    private static final int BUCKETS = SUB_BUCKETS * MAX_EXPONENT;
+
+    /**
+     * The number of values in each bucket
+     */
+    private final LongAdder[] buckets;
+    /**
+     * The sum of the values, in nanoseconds
+     */
+    private final LongAdder sum;
+    /**
+     * The largest value, in nanoseconds
+     */
+    private final LongAccumulator max;
+
+    /**
+     * Constructor
+     */
+    public BialettiHistogram() {
+        // Set fields
+        buckets = new LongAdder[BUCKETS];
+        sum     = new LongAdder();
+        max     = new LongAccumulator(Math::max, 0);
+
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records a value
+     * @param nanos the value, in nanoseconds (Negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+
+        buckets[indexOf(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records a value
+     * @param value the value
+     * @param unit the unit of the value
+     */
+    public void record(long value, TimeUnit unit) {
+        record(unit.toNanos(value));
+    }
+
+    /**
+     * @return a copy of the histogram (Values recorded while it is taken may be missing)
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = buckets[i].sum();
+
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+    /**
+     * @param value a value, in nanoseconds (Not negative)
+     * @return the index of its bucket
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub      = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+        return Math.min(SUB_BUCKETS * (exponent - SUB_BITS + 1) + sub, BUCKETS - 1);
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the smallest value of the bucket, in nanoseconds
+     */
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub      = index % SUB_BUCKETS;
+
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the largest value of the bucket, in nanoseconds
+     */
+    private static long upperBound(int index) {
+        return (index == BUCKETS - 1) ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+    }
+
+    /**
+     * A copy of a histogram at some point in time
+     * @author Alessandro-Salerno
+     */
+    public static final class Snapshot {
+        /**
+         * The number of values in each bucket
+         */
+        private final long[] counts;
+        /**
+         * The number of values
+         */
+        private final long count;
+        /**
+         * The sum of the values, in nanoseconds
+         */
+        private final long sum;
+        /**
+         * The largest value, in nanoseconds
+         */
+        private final long max;
+
+        /**
+         * Constructor
+         * @param c the number of values in each bucket
+         * @param s the sum of the values
+         * @param m the largest value
+         */
+        private Snapshot(long[] c, long s, long m) {
+            long total = 0;
+            for (long n : c) total += n;
+
+            // Set fields
+            counts = c;
+            count  = total;
+            sum    = s;
+            max    = m;
+        }
+
+        /**
+         * Estimates a percentile
+         * @param percentile the percentile (From 0 to 100)
+         * @return the largest value of the bucket that holds the percentile, in nanoseconds (0 if there are no values)
+         * @throws IllegalArgumentException if the percentile is not between 0 and 100
+         */
+        public long getPercentile(double percentile) throws IllegalArgumentException {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Invalid percentile " + percentile);
+            }
+
+            if (count == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+
+            return max;
+        }
+
+        /**
+         * @return the number of values
+         */
+        public long getCount() { return count; }
+        /**
+         * @return the sum of the values, in nanoseconds
+         */
+        public long getSum() { return sum; }
+        /**
+         * @return the largest value, in nanoseconds
+         */
+        public long getMax() { return max; }
+        /**
+         * @return the average value, in nanoseconds (0 if there are no values)
+         */
+        public double getMean() { return (count == 0) ? 0 : (double) sum / count; }
+        /**
+         * @return the median, in nanoseconds
+         */
+        public long getP50() { return getPercentile(50); }
+        /**
+         * @return the 99th percentile, in nanoseconds
+         */
+        public long getP99() { return getPercentile(99); }
+        /**
+         * @return the 99.9th percentile, in nanoseconds
+         */
+        public long getP999() { return getPercentile(99.9); }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + Math.round(getMean()) + "ns, p50=" + getP50() + "ns, p99="
+                    + getP99() + "ns, p999=" + getP999() + "ns, max=" + max + "ns";
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package bialetti.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a server, a client or a group of them
+ * Counters are striped {@link LongAdder}s and latencies go in {@link BialettiHistogram}s, so recording never takes a
+ * lock. Servers, clients and connections only record metrics once they have been given a BialettiMetrics, so
+ * metrics cost nothing but a null check until they are enabled. The same instance can be shared, in which case the
+ * values add up.
+ * @author Alessandro-Salerno
+ */
+public final class BialettiMetrics {
+    /**
+     * The domain of the MBeans
+     */
+    public static final String JMX_DOMAIN = "bialetti";
+
+    /**
+     * The statistics of histograms exposed through JMX
+     */
+    private static final String[] HISTOGRAM_STATISTICS = { "Count", "Mean", "P50", "P99", "P999", "Max" };
+
+    /**
+     * The name of the metrics
+     */
+    private final String name;
+    /**
+     * The counters, one per {@link BialettiCounter}
+     */
+    private final LongAdder[] counters;
+    /**
+     * The histograms, by name
+     */
+    private final Map<String, BialettiHistogram> histograms;
+    /**
+     * The gauges, by name
+     */
+    private final Map<String, LongSupplier> gauges;
+    /**
+     * The name under which the metrics are registered with JMX (null if they are not)
+     */
+    private ObjectName objectName;
+
+    /**
+     * Constructor
+     * @param n the name of the metrics, which is also their name in JMX
+     */
+    public BialettiMetrics(String n) {
+        // Set fields
+        name       = Objects.requireNonNull(n);
+        counters   = new LongAdder[BialettiCounter.values().length];
+        histograms = new ConcurrentHashMap<>();
+        gauges     = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+    }
+
+    /**
+     * Adds to a counter
+     * @param counter the counter
+     * @param value the value to be added
+     */
+    public void add(BialettiCounter counter, long value) {
+        counters[counter.ordinal()].add(value);
+    }
+
+    /**
+     * Adds one to a counter
+     * @param counter the counter
+     */
+    public void increment(BialettiCounter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    /**
+     * @param counter a counter
+     * @return the value of the counter
+     */
+    public long get(BialettiCounter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @param histogramName the name of a histogram
+     * @return the histogram, created if needed (Callers on hot paths should keep it instead of looking it up)
+     */
+    public BialettiHistogram histogram(String histogramName) {
+        return histograms.computeIfAbsent(histogramName, key -> new BialettiHistogram());
+    }
+
+    /**
+     * Adds a gauge, a value read whenever the metrics are (Such as the size of a queue)
+     * @param gaugeName the name of the gauge (Replaces the gauge with the same name)
+     * @param gauge reads the value (Must be cheap and thread-safe)
+     */
+    public void gauge(String gaugeName, LongSupplier gauge) {
+        gauges.put(Objects.requireNonNull(gaugeName), Objects.requireNonNull(gauge));
+    }
+
+    /**
+     * Removes a gauge
+     * @param gaugeName the name of the gauge
+     */
+    public void removeGauge(String gaugeName) {
+        gauges.remove(gaugeName);
+    }
+
+    /**
+     * @return a copy of the metrics (Gauges are read while it is taken)
+     */
+    public BialettiMetricsSnapshot snapshot() {
+        Map<String, Long> counterValues                         = new LinkedHashMap<>();
+        Map<String, Long> gaugeValues                           = new TreeMap<>();
+        Map<String, BialettiHistogram.Snapshot> histogramValues = new TreeMap<>();
+
+        for (BialettiCounter counter : BialettiCounter.values()) counterValues.put(counter.getName(), get(counter));
+        gauges.forEach((key, gauge) -> gaugeValues.put(key, gauge.getAsLong()));
+        histograms.forEach((key, histogram) -> histogramValues.put(key, histogram.snapshot()));
+
+        return new BialettiMetricsSnapshot(name, System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+    }
+
+    /**
+     * Registers the metrics with the platform's MBean server, as bialetti:type=Metrics,name=&lt;name&gt;
+     * Counters and gauges are exposed by name, histograms as &lt;name&gt;.Count, .Mean, .P50, .P99, .P999 and .Max,
+     * in nanoseconds
+     * @return the name of the MBean (The current one if the metrics are already registered)
+     * @throws RuntimeException if the metrics cannot be registered, such as when the name is taken
+     */
+    public synchronized ObjectName register() throws RuntimeException {
+        if (objectName != null) return objectName;
+
+        try {
+            ObjectName mbeanName = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), mbeanName);
+
+            objectName = mbeanName;
+            return objectName;
+        }
+
+        catch (JMException e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform's MBean server, if they have been registered
+     * @throws RuntimeException if the metrics cannot be unregistered
+     */
+    public synchronized void unregister() throws RuntimeException {
+        if (objectName == null) return;
+
+        try { ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName); }
+
+        // Somebody else removed it
+        catch (InstanceNotFoundException ignored) { }
+
+        catch (JMException e) {
+            // Throw runtime exception
+            throw new RuntimeException(e);
+        }
+
+        objectName = null;
+    }
+
+    /**
+     * @return the name of the metrics
+     */
+    public String getName() { return name; }
+    /**
+     * @return the name under which the metrics are registered with JMX (null if they are not)
+     */
+    public synchronized ObjectName getObjectName() { return objectName; }
+    /**
+     * @return whether the metrics are registered with JMX
+     */
+    public synchronized boolean isRegistered() { return objectName != null; }
+
+    /**
+     * Exposes the metrics through JMX
+     * Attributes are read-only, and histograms and gauges added later show up the next time the MBean's info is read
+     * @author Alessandro-Salerno
+     */
+    private final class MBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            for (BialettiCounter counter : BialettiCounter.values()) {
+                if (counter.getName().equals(attribute)) return get(counter);
+            }
+
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null) return gauge.getAsLong();
+
+            int dot = attribute.lastIndexOf('.');
+            BialettiHistogram histogram = (dot > 0) ? histograms.get(attribute.substring(0, dot)) : null;
+
+            if (histogram != null) {
+                BialettiHistogram.Snapshot snapshot = histogram.snapshot();
+
+                switch (attribute.substring(dot + 1)) {
+                    case "Count": return snapshot.getCount();
+                    case "Mean":  return snapshot.getMean();
+                    case "P50":   return snapshot.getP50();
+                    case "P99":   return snapshot.getP99();
+                    case "P999":  return snapshot.getP999();
+                    case "Max":   return snapshot.getMax();
+                    default:      break;
+                }
+            }
+
+            throw new AttributeNotFoundException("No metric named \"" + attribute + "\"");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+
+            for (String attribute : attributes) {
+                try { list.add(new Attribute(attribute, getAttribute(attribute))); }
+                catch (AttributeNotFoundException ignored) {
+                    // Missing attributes are left out
+                }
+            }
+
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+            for (BialettiCounter counter : BialettiCounter.values()) {
+                attributes.add(attribute(counter.getName(), "long", "Counter"));
+            }
+
+            for (String gauge : new TreeMap<>(gauges).keySet()) attributes.add(attribute(gauge, "long", "Gauge"));
+
+            for (String histogram : new TreeMap<>(histograms).keySet()) {
+                for (String statistic : HISTOGRAM_STATISTICS) {
+                    String type = statistic.equals("Mean") ? "double" : "long";
+                    attributes.add(attribute(histogram + "." + statistic, type, "Histogram, in nanoseconds"));
+                }
+            }
+
+            return new MBeanInfo(BialettiMetrics.class.getName(),
+                                 "Bialetti metrics \"" + name + "\"",
+                                 attributes.toArray(new MBeanAttributeInfo[0]),
+                                 null,
+                                 null,
+                                 null);
+        }
+
+        /**
+         * @param attributeName the name of an attribute
+         * @param type the type of the attribute
+         * @param description the description of the attribute
+         * @return the read-only attribute
+         */
+        private MBeanAttributeInfo attribute(String attributeName, String type, String description) {
+            return new MBeanAttributeInfo(attributeName, type, description, true, false, false);
+        }
+    }
+}
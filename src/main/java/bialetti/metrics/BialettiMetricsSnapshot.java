@@ -0,0 +1,96 @@
+package bialetti.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A copy of the metrics of a {@link BialettiMetrics} at some point in time
+ * Counters and histograms are read one after the other, so values that change while the snapshot is taken may not
+ * add up exactly
+ * @author Alessandro-Salerno
+ */
+public final class BialettiMetricsSnapshot {
+    /**
+     * The name of the metrics
+     */
+    private final String name;
+    /**
+     * When the snapshot was taken, in milliseconds since the epoch
+     */
+    private final long timestamp;
+    /**
+     * The counters, by name
+     */
+    private final Map<String, Long> counters;
+    /**
+     * The gauges, by name
+     */
+    private final Map<String, Long> gauges;
+    /**
+     * The histograms, by name
+     */
+    private final Map<String, BialettiHistogram.Snapshot> histograms;
+
+    /**
+     * Constructor
+     * @param n the name of the metrics
+     * @param t when the snapshot was taken
+     * @param c the counters (Not copied)
+     * @param g the gauges (Not copied)
+     * @param h the histograms (Not copied)
+     */
+    BialettiMetricsSnapshot(String n,
+                            long t,
+                            Map<String, Long> c,
+                            Map<String, Long> g,
+                            Map<String, BialettiHistogram.Snapshot> h) {
+        // Set fields
+        name       = n;
+        timestamp  = t;
+        counters   = Collections.unmodifiableMap(c);
+        gauges     = Collections.unmodifiableMap(g);
+        histograms = Collections.unmodifiableMap(h);
+    }
+
+    /**
+     * @param counter a counter
+     * @return the value of the counter
+     */
+    public long get(BialettiCounter counter) { return counters.get(counter.getName()); }
+    /**
+     * @param name the name of a gauge
+     * @return the value of the gauge (null if there is no such gauge)
+     */
+    public Long getGauge(String name) { return gauges.get(name); }
+    /**
+     * @param name the name of a histogram
+     * @return the histogram (null if there is no such histogram)
+     */
+    public BialettiHistogram.Snapshot getHistogram(String name) { return histograms.get(name); }
+    /**
+     * @return the name of the metrics
+     */
+    public String getName() { return name; }
+    /**
+     * @return when the snapshot was taken, in milliseconds since the epoch
+     */
+    public long getTimestamp() { return timestamp; }
+    /**
+     * @return the counters, by name
+     */
+    public Map<String, Long> getCounters() { return counters; }
+    /**
+     * @return the gauges, by name
+     */
+    public Map<String, Long> getGauges() { return gauges; }
+    /**
+     * @return the histograms, by name
+     */
+    public Map<String, BialettiHistogram.Snapshot> getHistograms() { return histograms; }
+
+    @Override
+    public String toString() {
+        return "BialettiMetricsSnapshot[name=" + name + ", counters=" + counters + ", gauges=" + gauges
+                + ", histograms=" + histograms + "]";
+    }
+}
@@ -0,0 +1,224 @@
+package bialetti.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates a {@link bialetti.service.BialettiDispatchTable} for every concrete subclass of
+ * {@link bialetti.service.BialettiManagedService}, so that services can be started without scanning their methods
+ * The generated class is named after the service's binary name followed by
+ * {@link bialetti.service.BialettiDispatchTables#GENERATED_SUFFIX} and lives in the same package
+ * @apiNote enable it by adding the Bialetti jar to the annotation processor path
+ * @author Alessandro-Salerno
+ */
+@SupportedAnnotationTypes("*")
+public final class BialettiDispatchProcessor extends AbstractProcessor {
+    /**
+     * The base class of all services that have lifecycle methods
+     */
+    private static final String SERVICE_CLASS = "bialetti.service.BialettiManagedService";
+    /**
+     * The suffix of generated classes (Must match BialettiDispatchTables.GENERATED_SUFFIX)
+     */
+    private static final String SUFFIX = "_BialettiDispatch";
+    /**
+     * The annotation that marks init methods
+     */
+    private static final String INIT_ANNOTATION = "bialetti.annotations.methods.BialettiInitMethod";
+    /**
+     * The annotation that marks handle methods
+     */
+    private static final String HANDLE_ANNOTATION = "bialetti.annotations.methods.BialettiHandleMethod";
+    /**
+     * The annotation that marks end methods
+     */
+    private static final String END_ANNOTATION = "bialetti.annotations.methods.BialettiEndMethod";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() { return SourceVersion.latestSupported(); }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement service = processingEnv.getElementUtils().getTypeElement(SERVICE_CLASS);
+
+        // Bialetti is not on the classpath
+        if (service == null) return false;
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            processType(type, service.asType());
+        }
+
+        // Never claim annotations, other processors may need them
+        return false;
+    }
+
+    /**
+     * Generates the table of a type and of the types nested in it
+     * @param type the type
+     * @param service the service base class
+     */
+    private void processType(TypeElement type, TypeMirror service) {
+        Types types = processingEnv.getTypeUtils();
+
+        if (isEligible(type) && types.isSubtype(types.erasure(type.asType()), types.erasure(service))) {
+            try { generate(type); }
+            catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                                                         "Could not generate dispatch table: " + e.getMessage(),
+                                                         type);
+            }
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            processType(nested, service);
+        }
+    }
+
+    /**
+     * @param type the type
+     * @return whether a table can be generated for the type
+     */
+    private boolean isEligible(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) return false;
+
+        // The generated class must be able to reference the type from its package
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the table of a type
+     * @param type the type
+     * @throws IOException if the source file could not be written
+     */
+    private void generate(TypeElement type) throws IOException {
+        Elements elements     = processingEnv.getElementUtils();
+        PackageElement pkg    = elements.getPackageOf(type);
+        String binaryName     = elements.getBinaryName(type).toString();
+        String simpleName     = binaryName.substring(binaryName.lastIndexOf('.') + 1) + SUFFIX;
+        String qualifiedName  = pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "." + simpleName;
+        String serviceType    = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+        List<ExecutableElement> methods = lifecycleMethods(type);
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+
+        try (Writer writer = file.openWriter()) {
+            if (!pkg.isUnnamed()) writer.write("package " + pkg.getQualifiedName() + ";\n\n");
+
+            writer.write("/**\n"
+                       + " * Dispatch table of {@link " + type.getQualifiedName() + "}\n"
+                       + " * Generated by " + getClass().getName() + ", do not edit\n"
+                       + " */\n"
+                       + "@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n"
+                       + "public final class " + simpleName
+                       + " implements bialetti.service.BialettiDispatchTable<" + serviceType + "> {\n");
+
+            writeGetter(writer, "getInitMethods", serviceType, methods, INIT_ANNOTATION);
+            writer.write("\n");
+            writeGetter(writer, "getHandleMethods", serviceType, methods, HANDLE_ANNOTATION);
+            writer.write("\n");
+            writeGetter(writer, "getEndMethods", serviceType, methods, END_ANNOTATION);
+
+            writer.write("}\n");
+        }
+    }
+
+    /**
+     * Writes one of the table's methods
+     * @param writer the writer
+     * @param name the name of the method
+     * @param serviceType the service type
+     * @param methods the lifecycle methods of the type
+     * @param annotation the annotation that selects the methods returned
+     * @throws IOException if the source file could not be written
+     */
+    private void writeGetter(Writer writer,
+                             String name,
+                             String serviceType,
+                             List<ExecutableElement> methods,
+                             String annotation) throws IOException {
+        List<String> callers = new ArrayList<>();
+
+        for (ExecutableElement method : methods) {
+            if (!hasAnnotation(method, annotation)) continue;
+
+            String methodName = method.getSimpleName().toString();
+            callers.add("new bialetti.util.MethodCaller(\"" + methodName + "\", service::" + methodName + ")");
+        }
+
+        writer.write("    @Override\n"
+                   + "    public java.util.List<bialetti.util.MethodCaller> " + name + "(" + serviceType + " service) {\n"
+                   + "        return java.util.List.of(" + String.join(",\n                                 ", callers) + ");\n"
+                   + "    }\n");
+    }
+
+    /**
+     * Collects the methods that would be found by scanning the type's public methods at runtime
+     * @param type the type
+     * @return the public, non-static, parameterless methods that hold a lifecycle annotation and are not overridden
+     */
+    private List<ExecutableElement> lifecycleMethods(TypeElement type) {
+        Elements elements = processingEnv.getElementUtils();
+        List<ExecutableElement> all = ElementFilter.methodsIn(elements.getAllMembers(type));
+        List<ExecutableElement> found = new ArrayList<>();
+
+        for (ExecutableElement method : all) {
+            if (!method.getModifiers().contains(Modifier.PUBLIC) || method.getModifiers().contains(Modifier.STATIC)) continue;
+            if (!hasAnnotation(method, INIT_ANNOTATION)
+                    && !hasAnnotation(method, HANDLE_ANNOTATION)
+                    && !hasAnnotation(method, END_ANNOTATION)) continue;
+
+            // Only the most specific declaration counts
+            if (all.stream().anyMatch(other -> other != method && elements.overrides(other, method, type))) continue;
+
+            if (!method.getParameters().isEmpty()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                         "Lifecycle methods cannot take parameters, it will be ignored",
+                                                         method);
+                continue;
+            }
+
+            found.add(method);
+        }
+
+        return found;
+    }
+
+    /**
+     * @param method the method
+     * @param annotation the qualified name of the annotation
+     * @return whether the method holds the annotation
+     */
+    private static boolean hasAnnotation(ExecutableElement method, String annotation) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
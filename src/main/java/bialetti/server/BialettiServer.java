@@ -2,8 +2,11 @@ package bialetti.server;
 
 import bialetti.annotations.methods.BialettiEndMethod;
 import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.connection.BialettiSocketOptions;
 import bialetti.service.BialettiRunnableService;
 
+import java.util.Objects;
+
 /**
  * A Bialetti Server
  * @author Alessandro-Salerno
@@ -13,15 +16,37 @@ public abstract class BialettiServer extends BialettiRunnableService {
      * The port on which the server is hosted
      */
     private final int serverPort;
+    /**
+     * The options of the server's sockets
+     */
+    private final BialettiSocketOptions socketOptions;
 
+    /**
+     * Constructor
+     * @param port the port on which the server is hosted
+     */
     public BialettiServer(int port) {
-        serverPort = port;
+        this(port, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * @param port the port on which the server is hosted
+     * @param options the options of the server's sockets
+     */
+    public BialettiServer(int port, BialettiSocketOptions options) {
+        serverPort    = port;
+        socketOptions = Objects.requireNonNull(options);
     }
 
     /**
      * @return the server's port
      */
     public int getPort() { return serverPort; }
+    /**
+     * @return the options of the server's sockets
+     */
+    public BialettiSocketOptions getSocketOptions() { return socketOptions; }
 
     /**
      * What happens when the server is started
@@ -0,0 +1,84 @@
+package bialetti.server.tcp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The connections of a server, indexed by a stable id
+ * Adding, removing and looking up a connection take constant time and never block each other. Iteration is weakly
+ * consistent: it reflects the registry at some point at or since its start and never fails because of concurrent
+ * changes.
+ * @param <ConnectionType> the type of connections
+ * @author Alessandro-Salerno
+ */
+final class BialettiConnectionRegistry<ConnectionType> {
+    /**
+     * The connections by id
+     */
+    private final ConcurrentHashMap<Long, ConnectionType> connections;
+    /**
+     * The id given to the next connection
+     */
+    private final AtomicLong nextId;
+
+    /**
+     * Constructor
+     */
+    BialettiConnectionRegistry() {
+        connections = new ConcurrentHashMap<>();
+        nextId      = new AtomicLong(1);
+    }
+
+    /**
+     * @return a new id, never given before by this registry
+     */
+    long newId() { return nextId.getAndIncrement(); }
+
+    /**
+     * Adds a connection
+     * @param id the connection's id
+     * @param connection the connection
+     */
+    void add(long id, ConnectionType connection) { connections.put(id, connection); }
+
+    /**
+     * Removes a connection
+     * @param id the connection's id
+     * @return whether the connection was in the registry
+     */
+    boolean remove(long id) { return connections.remove(id) != null; }
+
+    /**
+     * @param id a connection's id
+     * @return the connection, null if there is none with the id
+     */
+    ConnectionType get(long id) { return connections.get(id); }
+
+    /**
+     * @return a weakly consistent view of all connections
+     */
+    Collection<ConnectionType> values() { return connections.values(); }
+
+    /**
+     * @return the number of connections
+     */
+    int size() { return connections.size(); }
+
+    /**
+     * Removes all connections
+     * @return the connections that were removed
+     */
+    List<ConnectionType> drain() {
+        List<ConnectionType> drained = new ArrayList<>(connections.size());
+
+        for (Long id : connections.keySet()) {
+            ConnectionType connection = connections.remove(id);
+            if (connection != null) drained.add(connection);
+        }
+
+        return drained;
+    }
+}
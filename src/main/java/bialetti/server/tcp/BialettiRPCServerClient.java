@@ -0,0 +1,160 @@
+package bialetti.server.tcp;
+
+import bialetti.annotations.methods.BialettiHandleMethod;
+import bialetti.annotations.methods.BialettiRPCMethod;
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.connection.tcp.framing.BialettiLengthFieldFrameCodec;
+import bialetti.connection.tcp.rpc.BialettiRPCMessageType;
+import bialetti.exceptions.BialettiCodecException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A client whose requests are calls to its {@link BialettiRPCMethod}s
+ * Requests are read and answered one after the other, in the order they arrive, while the caller keeps sending: the
+ * number of calls served per round trip grows with the number of calls the caller keeps in flight.
+ * @see bialetti.connection.tcp.rpc.BialettiRPCChannel
+ * @param <ServerType> the server class
+ * @author Alessandro-Salerno
+ */
+public abstract class BialettiRPCServerClient<ServerType extends BialettiTCPServer<?>> extends BialettiTCPServerClient<ServerType> {
+    /**
+     * Cache of RPC methods, one table per class
+     */
+    private static final ClassValue<Map<String, MethodHandle>> METHODS = new ClassValue<>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return findMethods(type);
+        }
+    };
+
+    /**
+     * The RPC methods of the client's class, by name
+     */
+    private final Map<String, MethodHandle> methods;
+
+    /**
+     * Constructor
+     * Connections without framing are given a {@link BialettiLengthFieldFrameCodec}, which callers must use as well
+     * @param c the connection
+     * @param s the server
+     */
+    public BialettiRPCServerClient(BialettiTCPConnection c, ServerType s) {
+        super(c, s);
+
+        if (c.getFraming() == null) c.setFraming(new BialettiLengthFieldFrameCodec());
+        methods = METHODS.get(getClass());
+    }
+
+    /**
+     * Serves the requests that have arrived
+     * @throws Exception if a request cannot be read
+     */
+    @BialettiHandleMethod
+    public final void serveRequests() throws Exception {
+        BialettiTCPConnection connection = getConnection();
+
+        do {
+            ByteBuffer frame = connection.receiveFrame();
+
+            if (frame == null) {
+                // The caller closed the connection
+                if (!connection.isEventDriven() && isRunning()) stop();
+                return;
+            }
+
+            serve(new BialettiBinaryReader(frame));
+        }
+
+        // Event loops only call handle methods when data arrives, so take every complete request
+        while (connection.isEventDriven());
+    }
+
+    /**
+     * Calls the method a request is for and sends back its result
+     * Failures of the method are sent back to the caller instead of being raised
+     * @param in the request
+     * @throws BialettiCodecException if the request's header is not valid
+     */
+    private void serve(BialettiBinaryReader in) throws BialettiCodecException {
+        if (BialettiRPCMessageType.fromCode(in.readByte()) != BialettiRPCMessageType.REQUEST) {
+            throw new BialettiCodecException("Expected an RPC request");
+        }
+
+        long id             = in.readVarLong();
+        String name         = in.readString();
+        MethodHandle method = (name != null) ? methods.get(name) : null;
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            out.writeByte(BialettiRPCMessageType.RESPONSE.getCode()).writeVarLong(id);
+
+            if (method == null) {
+                out.reset()
+                   .writeByte(BialettiRPCMessageType.ERROR.getCode())
+                   .writeVarLong(id)
+                   .writeString("Unknown method \"" + name + "\"");
+            }
+
+            else {
+                try { method.invokeExact((Object) this, in, out); }
+                catch (Throwable t) {
+                    out.reset()
+                       .writeByte(BialettiRPCMessageType.ERROR.getCode())
+                       .writeVarLong(id)
+                       .writeString(t.getClass().getName() + ": " + t.getMessage());
+                }
+            }
+
+            getConnection().send(out.getWritten());
+        }
+    }
+
+    /**
+     * Collects the RPC methods of a class
+     * @param type the class
+     * @return the methods, by name, as handles of type (Object, BialettiBinaryReader, BialettiBinaryWriter)void
+     * @throws IllegalArgumentException if a method has the wrong parameters or two methods have the same name
+     */
+    private static Map<String, MethodHandle> findMethods(Class<?> type) throws IllegalArgumentException {
+        Map<String, MethodHandle> found = new HashMap<>();
+        MethodType shape = MethodType.methodType(void.class, Object.class, BialettiBinaryReader.class, BialettiBinaryWriter.class);
+
+        for (Method method : type.getMethods()) {
+            BialettiRPCMethod annotation = method.getAnnotation(BialettiRPCMethod.class);
+            if (annotation == null) continue;
+
+            Class<?>[] parameters = method.getParameterTypes();
+            if (parameters.length != 2
+                    || parameters[0] != BialettiBinaryReader.class
+                    || parameters[1] != BialettiBinaryWriter.class) {
+                throw new IllegalArgumentException("RPC method " + method.getName()
+                                                   + " must take a BialettiBinaryReader and a BialettiBinaryWriter");
+            }
+
+            String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+
+            try {
+                method.trySetAccessible();
+                MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(shape);
+
+                if (found.putIfAbsent(name, handle) != null) {
+                    throw new IllegalArgumentException("Two RPC methods are named \"" + name + "\"");
+                }
+            }
+
+            catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        return Map.copyOf(found);
+    }
+}
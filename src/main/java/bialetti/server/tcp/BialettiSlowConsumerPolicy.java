@@ -0,0 +1,20 @@
+package bialetti.server.tcp;
+
+/**
+ * What a {@link BialettiTCPServer} does when a broadcast reaches a client that has too much data waiting to be written
+ * @author Alessandro-Salerno
+ */
+public enum BialettiSlowConsumerPolicy {
+    /**
+     * The message is not sent to the client
+     */
+    DROP,
+    /**
+     * The client is stopped
+     */
+    DISCONNECT,
+    /**
+     * The broadcast waits for the client to catch up, up to the server's slow consumer timeout, then drops the message
+     */
+    WAIT
+}
@@ -1,31 +1,139 @@
 package bialetti.server.tcp;
 
 import bialetti.annotations.methods.BialettiHandleMethod;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.codec.BialettiCompressor;
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.connection.tcp.BialettiIdleMonitor;
+import bialetti.connection.tcp.BialettiIdlePolicy;
+import bialetti.connection.tcp.BialettiIdleState;
 import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.eventloop.BialettiChannelHandler;
+import bialetti.eventloop.BialettiEventLoop;
+import bialetti.eventloop.BialettiEventLoopGroup;
 import bialetti.exceptions.BialettiIllegalOperationException;
+import bialetti.metrics.BialettiCounter;
+import bialetti.metrics.BialettiMetrics;
 import bialetti.server.BialettiServer;
+import bialetti.service.BialettiServiceState;
+import bialetti.timer.BialettiWheelTimer;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A Bialetti TCP Server
+ * By default every client runs on its own threads, but the server can also multiplex all of its clients on a
+ * {@link BialettiEventLoopGroup}, in which case the clients' handle methods are run whenever data is received
  * @param <ClientType> the type that defines a client (Subclass of {@link BialettiTCPServerClient})
  * @author Alessandro-Salerno
  */
 public abstract class BialettiTCPServer<ClientType extends BialettiTCPServerClient<?>> extends BialettiServer {
     /**
-     *  List of active connections
+     * How long a waiting broadcast sleeps between checks of a slow client, in nanoseconds
      */
-    private final List<BialettiServerConnection> activeConnections;
+    private static final long SLOW_CONSUMER_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
     /**
-     * The socket on which the server listens for new connections
+     * How long stopping the server waits for accepted connections that are still being set up, in milliseconds
      */
-    private ServerSocket serverSocket;
+    private static final long CLIENT_WORKER_SHUTDOWN_MILLIS = 1000;
+    /**
+     * The number of broadcast writes that may wait for a free broadcast thread
+     */
+    private static final int BROADCAST_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The active connections by id
+     */
+    private final BialettiConnectionRegistry<BialettiServerConnection> activeConnections;
+    /**
+     * The event loops on which clients are multiplexed (null if every client runs on its own threads)
+     */
+    private volatile BialettiEventLoopGroup eventLoopGroup;
+    /**
+     * The number of threads of the event loop group owned by the server (0 if the server does not own one)
+     */
+    private final int eventLoopThreads;
+    /**
+     * Runs the blocking writes of broadcast messages (One thread per processor, at least two, and a bounded queue)
+     */
+    private final ExecutorService broadcastExecutor;
+    /**
+     * The number of broadcast messages not sent to slow clients
+     */
+    private final LongAdder droppedBroadcasts;
+    /**
+     * The channels on which the server listens for new connections (One per acceptor with SO_REUSEPORT, else one)
+     */
+    private ServerSocketChannel[] serverChannels;
+    /**
+     * Sets up accepted connections and starts their clients, so that acceptors only accept
+     */
+    private ExecutorService clientExecutor;
+    /**
+     * The maximum number of pending connections (0 for the system default)
+     */
+    private int backlog = 0;
+    /**
+     * The number of threads accepting connections
+     */
+    private int acceptorThreads = 1;
+    /**
+     * The number of threads setting up accepted connections
+     */
+    private int clientWorkerThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * A boolean that tells whether every acceptor has its own SO_REUSEPORT listener
+     */
+    private boolean reusePort = false;
+    /**
+     * What happens when a broadcast reaches a slow client
+     */
+    private volatile BialettiSlowConsumerPolicy slowConsumerPolicy = BialettiSlowConsumerPolicy.DROP;
+    /**
+     * The number of bytes waiting to be written above which a client is considered slow
+     */
+    private volatile long slowConsumerThreshold = 1024 * 1024;
+    /**
+     * How long a broadcast waits for slow clients to catch up, in nanoseconds
+     */
+    private volatile long slowConsumerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    /**
+     * The compression of every connection and broadcast (null if compression is disabled)
+     */
+    private BialettiCompressor compression;
+    /**
+     * The idle timeouts and heartbeats of every connection
+     */
+    private BialettiIdlePolicy idlePolicy = BialettiIdlePolicy.NONE;
+    /**
+     * The number of queued bytes at which connections become writable again
+     */
+    private long lowWatermark = BialettiTCPConnection.DEFAULT_LOW_WATERMARK;
+    /**
+     * The number of queued bytes at which connections stop being writable
+     */
+    private long highWatermark = BialettiTCPConnection.DEFAULT_HIGH_WATERMARK;
 
     /**
      * Constructor
@@ -33,63 +141,378 @@ public abstract class BialettiTCPServer<ClientType extends BialettiTCPServerClie
      * @throws RuntimeException if something goes wrong while initializing the server's socket
      */
     public BialettiTCPServer(int port) throws RuntimeException {
-        super(port);
+        this(port, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * @param port the port on which the server listens
+     * @param options the options of the listening and accepted sockets
+     */
+    public BialettiTCPServer(int port, BialettiSocketOptions options) {
+        this(port, null, 0, options);
+    }
+
+    /**
+     * Constructor
+     * Multiplexes all clients on a shared group of event loops
+     * @param port the port on which the server listens
+     * @param group the event loop group (Not shut down when the server stops)
+     * @throws RuntimeException if something goes wrong while initializing the server's socket
+     */
+    public BialettiTCPServer(int port, BialettiEventLoopGroup group) throws RuntimeException {
+        this(port, group, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * Multiplexes all clients on a shared group of event loops
+     * @param port the port on which the server listens
+     * @param group the event loop group (Not shut down when the server stops)
+     * @param options the options of the listening and accepted sockets
+     */
+    public BialettiTCPServer(int port, BialettiEventLoopGroup group, BialettiSocketOptions options) {
+        this(port, Objects.requireNonNull(group), 0, options);
+    }
+
+    /**
+     * Constructor
+     * Multiplexes all clients on a group of event loops owned by the server
+     * @param port the port on which the server listens
+     * @param eventLoopThreads the number of event loop threads
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public BialettiTCPServer(int port, int eventLoopThreads) throws IllegalArgumentException {
+        this(port, eventLoopThreads, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     * Multiplexes all clients on a group of event loops owned by the server
+     * The group is created when the server is started and shut down when it stops, so a server that is never started
+     * holds no threads
+     * @param port the port on which the server listens
+     * @param eventLoopThreads the number of event loop threads
+     * @param options the options of the listening and accepted sockets
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public BialettiTCPServer(int port, int eventLoopThreads, BialettiSocketOptions options) throws IllegalArgumentException {
+        this(port, null, eventLoopThreads, options);
+
+        if (eventLoopThreads <= 0) {
+            throw new IllegalArgumentException("An event loop group needs at least one thread");
+        }
+    }
+
+    /**
+     * Constructor
+     * @param port the port on which the server listens
+     * @param group the event loop group (May be null)
+     * @param threads the number of threads of the group owned by the server (0 if it does not own one)
+     * @param options the options of the listening and accepted sockets
+     */
+    private BialettiTCPServer(int port, BialettiEventLoopGroup group, int threads, BialettiSocketOptions options) {
+        super(port, options);
 
         // Set fields
-        activeConnections = new ArrayList<>();
+        activeConnections  = new BialettiConnectionRegistry<>();
+        eventLoopGroup     = group;
+        eventLoopThreads   = threads;
+        droppedBroadcasts  = new LongAdder();
+        broadcastExecutor  = newBroadcastExecutor();
     }
 
     /**
      * Listens for incoming connections
-     * @apiNote runs on a separate thread
+     * @apiNote runs on a separate thread, the other acceptors run {@link #accept(ServerSocketChannel)} on their own
      */
     @BialettiHandleMethod
     public final void listen() {
+        accept(serverChannels[0]);
+    }
+
+    /**
+     * Accepts a connection and hands it over to the client workers
+     * @param channel the channel on which the connection is accepted
+     */
+    private void accept(ServerSocketChannel channel) {
         try {
             // Wait for a client to connect
-            BialettiServerConnection newConnection = new BialettiServerConnection(serverSocket.accept());
+            SocketChannel accepted = channel.accept();
 
-            // Append client to the list of connected clients
-            synchronized (activeConnections) { activeConnections.add(newConnection); }
+            try { clientExecutor.execute(() -> open(accepted)); }
+            catch (RejectedExecutionException e) {
+                // The server is stopping
+                closeQuietly(accepted);
+            }
         }
 
         // Exception handler
         catch (Exception e) {
-            // Call handler method
-            raiseException(e);
+            // The channel is closed on purpose when the server stops
+            if (isRunning()) raiseException(e);
+        }
+    }
+
+    /**
+     * Creates, registers and starts the client of an accepted connection
+     * @param channel the accepted channel
+     */
+    private void open(SocketChannel channel) {
+        // Connections accepted right before the server stopped are dropped
+        if (!isRunning()) {
+            closeQuietly(channel);
+            return;
+        }
+
+        try {
+            getSocketOptions().applyTo(channel);
+
+            long id = activeConnections.newId();
+            BialettiServerConnection newConnection = new BialettiServerConnection(channel, id);
+            newConnection.setCompression(compression);
+            newConnection.setWatermarks(lowWatermark, highWatermark);
+
+            // Register the client among the connected clients
+            activeConnections.add(id, newConnection);
+
+            BialettiMetrics metrics = getMetrics();
+            if (metrics != null) metrics.increment(BialettiCounter.ACCEPTED_CONNECTIONS);
+
+            // Start the client
+            newConnection.start();
+        }
+
+        // Exception handler
+        catch (Exception e) {
+            closeQuietly(channel);
+            if (isRunning()) raiseException(e);
+        }
+    }
+
+    /**
+     * Creates the event loop group owned by the server, if any, and starts the acceptors that do not run
+     * {@link #listen()}
+     * @throws RuntimeException if the event loops cannot be created
+     */
+    @Override
+    protected void start() throws BialettiIllegalOperationException {
+        // Connections are only accepted once the start method has returned
+        if (eventLoopThreads > 0) eventLoopGroup = new BialettiEventLoopGroup(eventLoopThreads);
+        super.start();
+
+        for (int i = 1; i < acceptorThreads; i++) {
+            ServerSocketChannel channel = serverChannels[i % serverChannels.length];
+
+            spawnWorker("listen-" + i, () -> accept(channel));
         }
     }
 
     /**
      * Sends the same message to all active connections
+     * @see #broadcast(ByteBuffer)
      * @param message the message to be broadcast
+     * @return the number of clients the message was queued for
      */
-    public void broadcast(String message) {
-        synchronized (activeConnections) {
-            activeConnections.stream()
-                              .parallel()
-                              .filter(Objects::nonNull)
-                              .forEach(conn -> conn.send(message));
+    public int broadcast(String message) {
+        return broadcast(Charset.defaultCharset().encode(message));
+    }
+
+    /**
+     * Sends the same bytes to all active connections
+     * The message is compressed if needed and copied once, and the copy is shared by all connections, each of which
+     * queues it without blocking the caller. Clients with more than the slow consumer threshold waiting to be written are handled
+     * according to the slow consumer policy. With compression, clients whose connection has no framing do not receive
+     * the message and are given an {@link IllegalStateException} instead.
+     * @param message the message to be broadcast, its position is moved to its limit
+     * @return the number of clients the message was queued for
+     */
+    public int broadcast(ByteBuffer message) {
+        BialettiCompressor compressor = compression;
+        ByteBuffer shared;
+
+        if (compressor == null) shared = share(message);
+        else try (BialettiBinaryWriter out = new BialettiBinaryWriter()) { shared = share(compressor.compress(out, message)); }
+
+        long deadline  = System.nanoTime() + slowConsumerTimeoutNanos;
+        int recipients = 0;
+
+        // Clients that connect or disconnect during the broadcast may or may not receive the message
+        for (BialettiServerConnection connection : activeConnections.values()) {
+            if (!connection.getClient().isRunning()) continue;
+
+            if (!admit(connection, deadline)) {
+                droppedBroadcasts.increment();
+                continue;
+            }
+
+            try {
+                connection.sendBroadcast(shared.duplicate());
+                recipients++;
+            }
+
+            catch (RuntimeException e) {
+                // Call handler method
+                connection.getClient().raiseException(e);
+            }
         }
+
+        return recipients;
     }
 
     /**
-     * Stops the server
-     * @throws BialettiIllegalOperationException if the service was not running when the method was called
+     * Sends the same typed message to all active connections
+     * The message is encoded once
+     * @see #broadcast(ByteBuffer)
+     * @param message the message to be broadcast
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return the number of clients the message was queued for
      */
-    @Override
-    public final void stop() throws BialettiIllegalOperationException {
-        super.stop();
+    public <T> int broadcast(T message, BialettiCodec<T> codec) {
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            codec.encode(message, out);
+            return broadcast(out.getWritten());
+        }
+    }
+
+    /**
+     * Sends a message to a single client
+     * @param id the client's id
+     * @param message the message
+     * @return false if there is no active client with the id
+     */
+    public boolean send(long id, String message) {
+        BialettiServerConnection connection = activeConnections.get(id);
+        if (connection == null) return false;
+
+        connection.send(message);
+        return true;
+    }
+
+    /**
+     * Sends bytes to a single client
+     * @param id the client's id
+     * @param message the bytes, its position is moved to its limit
+     * @return false if there is no active client with the id
+     */
+    public boolean send(long id, ByteBuffer message) {
+        BialettiServerConnection connection = activeConnections.get(id);
+        if (connection == null) return false;
+
+        connection.send(message);
+        return true;
+    }
+
+    /**
+     * Sends a typed message to a single client
+     * @param id the client's id
+     * @param message the message
+     * @param codec the codec of the message
+     * @param <T> the type of the message
+     * @return false if there is no active client with the id
+     */
+    public <T> boolean send(long id, T message, BialettiCodec<T> codec) {
+        BialettiServerConnection connection = activeConnections.get(id);
+        if (connection == null) return false;
+
+        connection.send(message, codec);
+        return true;
+    }
+
+    /**
+     * @param id a client's id
+     * @return the client, null if there is no active client with the id
+     */
+    public ClientType getClient(long id) {
+        BialettiServerConnection connection = activeConnections.get(id);
+        return (connection != null) ? connection.getClient() : null;
+    }
+
+    /**
+     * @return a snapshot of the active clients (Clients that connect or disconnect while it is taken may be missing)
+     */
+    public List<ClientType> getClients() {
+        Collection<BialettiServerConnection> connections = activeConnections.values();
+        List<ClientType> clients                         = new ArrayList<>(connections.size());
+
+        for (BialettiServerConnection connection : connections) clients.add(connection.getClient());
+        return clients;
+    }
+
+    /**
+     * @return the number of active clients
+     */
+    public int getClientCount() { return activeConnections.size(); }
+
+    /**
+     * Applies the slow consumer policy to a connection
+     * @param connection the connection
+     * @param deadline when a waiting broadcast gives up, in {@link System#nanoTime()} units
+     * @return whether the message can be queued for the connection
+     */
+    private boolean admit(BialettiServerConnection connection, long deadline) {
+        long threshold = slowConsumerThreshold;
+        if (connection.getPendingBytes() < threshold) return true;
+
+        switch (slowConsumerPolicy) {
+            case DISCONNECT -> {
+                // Stopping the client waits for its handlers, which must not hold the broadcast
+                try { clientExecutor.execute(connection::disconnect); }
+                catch (RejectedExecutionException ignored) {
+                    // The server is stopping and closes every connection anyway
+                }
+            }
 
-        synchronized (activeConnections) {
-            // Close all connections
-            activeConnections.stream()
-                              .parallel()
-                              .forEach(c -> c.getClient().stop());
+            case WAIT -> {
+                while (connection.getPendingBytes() >= threshold
+                        && connection.getClient().isRunning()
+                        && System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(SLOW_CONSUMER_POLL_NANOS);
+                }
 
-            // Clear list of active connections and ensure that no other thread can access it
-            activeConnections.clear();
+                return connection.getPendingBytes() < threshold && connection.getClient().isRunning();
+            }
+
+            default -> { }
+        }
+
+        return false;
+    }
+
+    /**
+     * Closes the server's channel and all connections
+     */
+    @Override
+    protected void unblock() {
+        super.unblock();
+
+        for (ServerSocketChannel channel : serverChannels) {
+            try { channel.close(); }
+            catch (IOException e) {
+                // Call handler method
+                raiseException(e);
+            }
         }
+
+        // Let the connections that are being set up reach the registry
+        clientExecutor.shutdown();
+        try { clientExecutor.awaitTermination(CLIENT_WORKER_SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS); }
+        catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+        // Remove all connections so that closing them does not touch the registry
+        List<BialettiServerConnection> connections = activeConnections.drain();
+
+        // Close all connections
+        connections.stream()
+                   .parallel()
+                   .map(BialettiServerConnection::getClient)
+                   .filter(BialettiTCPServerClient::isRunning)
+                   .forEach(BialettiTCPServerClient::stop);
+
+        broadcastExecutor.shutdown();
+        BialettiEventLoopGroup group = eventLoopGroup;
+        if (eventLoopThreads > 0 && group != null) group.shutdown();
     }
 
     /**
@@ -99,41 +522,455 @@ public abstract class BialettiTCPServer<ClientType extends BialettiTCPServerClie
      */
     protected abstract ClientType getNewClient(BialettiTCPConnection bialettiTCPConnection);
 
+    /**
+     * Sets the maximum number of connections the system queues before the server accepts them
+     * @param backlog the backlog (0 for the system default)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the backlog is negative
+     */
+    public void setBacklog(int backlog) throws BialettiIllegalOperationException,
+                                               IllegalArgumentException {
+        ensureNotStarted();
+        if (backlog < 0) throw new IllegalArgumentException("The backlog cannot be negative");
+
+        this.backlog = backlog;
+    }
+
+    /**
+     * Sets the number of threads accepting connections
+     * @param threads the number of acceptors
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public void setAcceptorThreads(int threads) throws BialettiIllegalOperationException,
+                                                       IllegalArgumentException {
+        ensureNotStarted();
+        if (threads <= 0) throw new IllegalArgumentException("There must be at least one acceptor");
+
+        acceptorThreads = threads;
+    }
+
+    /**
+     * Sets the number of threads that create and start the clients of accepted connections
+     * @param threads the number of workers
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the number is not positive
+     */
+    public void setClientWorkerThreads(int threads) throws BialettiIllegalOperationException,
+                                                           IllegalArgumentException {
+        ensureNotStarted();
+        if (threads <= 0) throw new IllegalArgumentException("There must be at least one client worker");
+
+        clientWorkerThreads = threads;
+    }
+
+    /**
+     * Sets whether every acceptor listens on its own SO_REUSEPORT channel bound to the same port
+     * The system then spreads incoming connections across the acceptors, instead of them all sharing one queue
+     * @param enabled whether SO_REUSEPORT is used
+     * @throws BialettiIllegalOperationException if the server has already been started or SO_REUSEPORT is not supported
+     */
+    public void setReusePort(boolean enabled) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+
+        if (enabled && !isReusePortSupported()) {
+            throw new BialettiIllegalOperationException("SO_REUSEPORT is not supported on this platform");
+        }
+
+        reusePort = enabled;
+    }
+
+    /**
+     * @return whether server channels support SO_REUSEPORT on this platform
+     */
+    public static boolean isReusePortSupported() {
+        return BialettiSocketOptions.isReusePortSupported();
+    }
+
+    /**
+     * @return the maximum number of pending connections (0 for the system default)
+     */
+    public int getBacklog() { return backlog; }
+    /**
+     * @return the number of threads accepting connections
+     */
+    public int getAcceptorThreads() { return acceptorThreads; }
+    /**
+     * @return the number of threads that create and start the clients of accepted connections
+     */
+    public int getClientWorkerThreads() { return clientWorkerThreads; }
+    /**
+     * @return whether every acceptor has its own SO_REUSEPORT channel
+     */
+    public boolean isReusePort() { return reusePort; }
+
+    /**
+     * Sets what happens when a broadcast reaches a slow client
+     * @param policy the slow consumer policy
+     */
+    public void setSlowConsumerPolicy(BialettiSlowConsumerPolicy policy) {
+        slowConsumerPolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Sets the number of bytes waiting to be written above which a client is considered slow
+     * @param bytes the slow consumer threshold
+     * @throws IllegalArgumentException if the threshold is not positive
+     */
+    public void setSlowConsumerThreshold(long bytes) throws IllegalArgumentException {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("The slow consumer threshold must be positive");
+        }
+
+        slowConsumerThreshold = bytes;
+    }
+
+    /**
+     * Sets how long a broadcast waits for slow clients to catch up (Only used by {@link BialettiSlowConsumerPolicy#WAIT})
+     * @param timeout the maximum time a broadcast waits, in total
+     * @param unit the unit of the timeout
+     */
+    public void setSlowConsumerTimeout(long timeout, TimeUnit unit) {
+        slowConsumerTimeoutNanos = Math.max(0, unit.toNanos(timeout));
+    }
+
+    /**
+     * @return what happens when a broadcast reaches a slow client
+     */
+    public BialettiSlowConsumerPolicy getSlowConsumerPolicy() { return slowConsumerPolicy; }
+    /**
+     * @return the number of bytes waiting to be written above which a client is considered slow
+     */
+    public long getSlowConsumerThreshold() { return slowConsumerThreshold; }
+    /**
+     * @return how long a broadcast waits for slow clients to catch up, in milliseconds
+     */
+    public long getSlowConsumerTimeout() { return TimeUnit.NANOSECONDS.toMillis(slowConsumerTimeoutNanos); }
+    /**
+     * @return the number of broadcast messages not sent to slow clients
+     */
+    public long getDroppedBroadcasts() { return droppedBroadcasts.sum(); }
+
+    /**
+     * Sets the compression of every connection and broadcast
+     * Compression needs framing, so every connection must be given one, and clients must enable compression and the
+     * same framing on their end
+     * @param compressor the compressor (null to disable compression)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     */
+    public void setCompression(BialettiCompressor compressor) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        compression = compressor;
+    }
+
+    /**
+     * @return the compression of every connection and broadcast (null if it is disabled)
+     */
+    public BialettiCompressor getCompression() { return compression; }
+
+    /**
+     * Sets the watermarks of every connection's outbound queue
+     * Clients are told when their connection crosses them through {@link BialettiTCPServerClient#onWritabilityChanged(boolean)}
+     * @see BialettiTCPConnection#setWatermarks(long, long)
+     * @param low the number of queued bytes at which connections become writable again
+     * @param high the number of queued bytes at which connections stop being writable
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the low watermark is negative or greater than the high one
+     */
+    public void setWatermarks(long low, long high) throws BialettiIllegalOperationException,
+                                                          IllegalArgumentException {
+        ensureNotStarted();
+        if (low < 0 || low > high) throw new IllegalArgumentException("The watermarks must satisfy 0 <= low <= high");
+
+        lowWatermark  = low;
+        highWatermark = high;
+    }
+
+    /**
+     * Sets the idle timeouts and heartbeats of every connection
+     * Clients are told when their connection has been idle for a timeout through
+     * {@link BialettiTCPServerClient#onIdle(BialettiIdleState)}, which stops them unless overridden. The timeouts of
+     * all connections share a single {@link bialetti.timer.BialettiWheelTimer}.
+     * @param policy the timeouts and heartbeat interval ({@link BialettiIdlePolicy#NONE} to disable them)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     */
+    public void setIdlePolicy(BialettiIdlePolicy policy) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        idlePolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * @return the idle timeouts and heartbeats of every connection
+     */
+    public BialettiIdlePolicy getIdlePolicy() { return idlePolicy; }
+    /**
+     * @return the number of queued bytes at which connections become writable again
+     */
+    public long getLowWatermark() { return lowWatermark; }
+    /**
+     * @return the number of queued bytes at which connections stop being writable
+     */
+    public long getHighWatermark() { return highWatermark; }
+
+    /**
+     * @return the event loop group on which the clients are multiplexed (null if every client runs on its own threads,
+     * or if the server owns its group and has not been started yet)
+     */
+    public BialettiEventLoopGroup getEventLoopGroup() { return eventLoopGroup; }
+
     /**
      * Starts the server
      * @throws RuntimeException if something goes wrong while opening the connection
      */
     @Override
     public void run() throws RuntimeException {
-        try { serverSocket=  new ServerSocket(getPort()); }
+        serverChannels = new ServerSocketChannel[reusePort ? acceptorThreads : 1];
+
+        try {
+            serverChannels[0] = openServerChannel(getPort());
+
+            // The other listeners join the port actually bound by the first one
+            int port = serverChannels[0].socket().getLocalPort();
+            for (int i = 1; i < serverChannels.length; i++) serverChannels[i] = openServerChannel(port);
+        }
+
         catch (Exception e) {
+            for (ServerSocketChannel channel : serverChannels) {
+                if (channel != null) closeQuietly(channel);
+            }
+
             // Throw runtime exception
             throw new RuntimeException(e);
         }
 
+        clientExecutor = Executors.newFixedThreadPool(clientWorkerThreads, daemonThreads("client-worker"));
+        addGauges();
+
         super.run();
     }
 
     /**
-     * An extension of {@link BialettiTCPConnection} that also holds the handler thread and
+     * Adds the server's gauges to its metrics, if it has any
+     * Connections and their clients share the server's metrics, so their counters add up to the server's
+     */
+    private void addGauges() {
+        BialettiMetrics metrics = getMetrics();
+        if (metrics == null) return;
+
+        metrics.gauge("ActiveConnections", activeConnections::size);
+        metrics.gauge("DroppedBroadcasts", droppedBroadcasts::sum);
+        metrics.gauge("PendingBytes", () -> {
+            long pending = 0;
+            for (BialettiServerConnection connection : activeConnections.values()) pending += connection.getPendingBytes();
+
+            return pending;
+        });
+    }
+
+    /**
+     * Opens and binds a channel on which the server listens
+     * @param port the port
+     * @return the channel
+     * @throws IOException if the channel cannot be opened or bound
+     */
+    private ServerSocketChannel openServerChannel(int port) throws IOException {
+        ServerSocketChannel channel   = ServerSocketChannel.open();
+        BialettiSocketOptions options = reusePort ? getSocketOptions().withReusePort(true) : getSocketOptions();
+
+        try {
+            // Accepted sockets inherit the receive buffer size, which must be known before listening
+            options.applyTo(channel);
+            return channel.bind(new InetSocketAddress(port), backlog);
+        }
+
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates the executor of broadcast writes
+     * Threads are only started while there are writes to run. A connection whose write finds all of them busy and
+     * the queue full keeps the shared copy queued and submits the write again later, never on the broadcaster: its
+     * queued bytes keep counting towards the slow consumer threshold, so the slow consumer policy catches up with it.
+     * A client that stops reading holds a thread until it reads again or the policy disconnects it, hence the two
+     * threads on a single processor.
+     * @return the executor
+     */
+    private ExecutorService newBroadcastExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                                                             threads,
+                                                             60,
+                                                             TimeUnit.SECONDS,
+                                                             new ArrayBlockingQueue<>(BROADCAST_QUEUE_CAPACITY),
+                                                             daemonThreads("broadcast"));
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * @param role what the threads do
+     * @return a factory of daemon threads named after the server and their role
+     */
+    private ThreadFactory daemonThreads(String role) {
+        return task -> {
+            Thread thread = new Thread(task, getClass().getSimpleName() + "-" + role);
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    /**
+     * @throws BialettiIllegalOperationException if the server has already been started
+     */
+    private void ensureNotStarted() throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Server \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+    }
+
+    /**
+     * Copies a message into a buffer shared by every recipient of a broadcast
+     * @param message the parts of the message, their positions are moved to their limits
+     * @return the read-only copy
+     */
+    private static ByteBuffer share(ByteBuffer... message) {
+        long length = 0;
+        for (ByteBuffer part : message) length += part.remaining();
+
+        ByteBuffer shared = ByteBuffer.allocateDirect(Math.toIntExact(length));
+        for (ByteBuffer part : message) shared.put(part);
+
+        return shared.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Closes a channel, ignoring failures
+     * @param channel the channel
+     */
+    private static void closeQuietly(Channel channel) {
+        try { channel.close(); }
+        catch (IOException ignored) { }
+    }
+
+    /**
+     * An extension of {@link BialettiTCPConnection} that also holds the client and
      * provides a server-specific close() method
      * @author Alessandro-Salerno
      */
-    private final class BialettiServerConnection extends BialettiTCPConnection {
+    private final class BialettiServerConnection extends BialettiTCPConnection implements BialettiChannelHandler {
         /**
          * A ClientType instance
          */
         private final ClientType client;
+        /**
+         * The event loop driving the connection (null if the client runs on its own threads)
+         */
+        private final BialettiEventLoop eventLoop;
+        /**
+         * The connection's id in the registry
+         */
+        private final long id;
+        /**
+         * Watches the connection for inactivity (null if the server has no idle policy)
+         */
+        private final BialettiIdleMonitor idleMonitor;
 
         /**
          * Default constructor
-         * @param socket the client's socket
+         * @param channel the client's channel
+         * @param id the connection's id
          * @throws IOException if the super constructor throws one
          */
-        public BialettiServerConnection(Socket socket) throws IOException {
-            super(socket);
-            client = getNewClient(this);
-            client.run();
+        public BialettiServerConnection(SocketChannel channel, long id) throws IOException {
+            super(channel);
+            this.id   = id;
+            eventLoop = (eventLoopGroup != null) ? eventLoopGroup.next() : null;
+            client    = getNewClient(this);
+
+            // Idle clients are told on the client workers, so that they may stop themselves
+            idleMonitor = (idlePolicy.isEnabled())
+                        ? new BialettiIdleMonitor(this, idlePolicy, client::onIdle, clientExecutor, BialettiWheelTimer.getDefault())
+                        : null;
+
+            // Connections and clients record into the server's metrics
+            BialettiMetrics metrics = BialettiTCPServer.this.getMetrics();
+            setMetrics(metrics);
+            client.setMetrics(metrics);
+
+            client.setId(id);
+        }
+
+        /**
+         * Starts the client either on its own threads or on the event loop
+         */
+        public void start() {
+            if (idleMonitor != null) idleMonitor.start();
+
+            if (eventLoop == null) {
+                client.run();
+                return;
+            }
+
+            eventLoop.execute(() -> {
+                client.runOnEventLoop();
+
+                // The client might have been stopped by its init methods
+                if (client.isRunning()) eventLoop.register(getChannel(), SelectionKey.OP_READ, this);
+            });
+        }
+
+        @Override
+        public void onRegistered(SelectionKey key) {
+            attach(key);
+        }
+
+        @Override
+        public void onReadable() throws IOException {
+            int read = readAvailable();
+            int left = getInboundCount();
+
+            // One read may carry several frames, keep going as long as the handlers consume data
+            while (left > 0 && client.isRunning()) {
+                client.handleEvent();
+
+                int now = getInboundCount();
+                if (now >= left) break;
+                left = now;
+            }
+
+            if (read == -1) {
+                if (client.isRunning()) client.stop();
+                return;
+            }
+
+            if (client.isRunning()) resumeReading();
+        }
+
+        @Override
+        public void onWritable() throws IOException {
+            flushPending();
+        }
+
+        @Override
+        protected void onFlushFailure(IOException e) {
+            onException(e);
+        }
+
+        @Override
+        public void onException(Throwable throwable) {
+            if (!client.isRunning()) return;
+
+            // Call handler method
+            client.raiseException(throwable);
+
+            // The connection cannot be trusted anymore
+            if (throwable instanceof IOException && client.isRunning()) client.stop();
         }
 
         /**
@@ -141,14 +978,35 @@ public abstract class BialettiTCPServer<ClientType extends BialettiTCPServerClie
          */
         @Override
         public void close() {
-            synchronized (activeConnections) {
-                activeConnections.remove(this);
-                justClose();
-            }
+            if (idleMonitor != null) idleMonitor.stop();
+            activeConnections.remove(id);
+
+            BialettiMetrics metrics = getMetrics();
+            if (metrics != null) metrics.increment(BialettiCounter.CLOSED_CONNECTIONS);
+
+            justClose();
+        }
+
+        /**
+         * Queues a broadcast message without blocking
+         * @param message the message (Shared with the other connections, not copied)
+         */
+        public void sendBroadcast(ByteBuffer message) {
+            sendAsync(broadcastExecutor, message);
+        }
+
+        /**
+         * Stops the client if it is still running
+         */
+        public void disconnect() {
+            try { if (client.isRunning()) client.stop(); }
+
+            // Somebody else stopped it first
+            catch (BialettiIllegalOperationException ignored) { }
         }
 
         /**
-         * Closes the connection without removing it from the list
+         * Closes the connection without removing it from the registry
          */
         public void justClose() {
             try { super.close(); }
@@ -2,6 +2,7 @@ package bialetti.server.tcp;
 
 import bialetti.annotations.methods.BialettiEndMethod;
 import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.connection.tcp.BialettiIdleState;
 import bialetti.connection.tcp.BialettiTCPConnection;
 import bialetti.exceptions.BialettiIllegalOperationException;
 import bialetti.service.BialettiManagedService;
@@ -20,6 +21,10 @@ public abstract class BialettiTCPServerClient<ServerType extends BialettiTCPServ
      * The server handling the connection
      */
     private final ServerType server;
+    /**
+     * The client's id on the server
+     */
+    private volatile long id;
 
     /**
      * Constructor
@@ -29,15 +34,16 @@ public abstract class BialettiTCPServerClient<ServerType extends BialettiTCPServ
     public BialettiTCPServerClient(BialettiTCPConnection c, ServerType s) {
         connection = c;
         server     = s;
+
+        connection.setWritabilityListener(this::onWritabilityChanged);
     }
 
     /**
-     * Shuts down the client
-     * @throws BialettiIllegalOperationException if the service was not running when the method was called
+     * Closes the connection to the client
      */
     @Override
-    public final void stop() throws BialettiIllegalOperationException {
-        super.stop();
+    protected void unblock() {
+        super.unblock();
 
         try { connection.close(); }
         catch (Exception e) {
@@ -46,6 +52,29 @@ public abstract class BialettiTCPServerClient<ServerType extends BialettiTCPServ
         }
     }
 
+    /**
+     * Starts the client on the calling event loop thread instead of dedicated threads
+     * The handle methods are then run whenever the connection receives data
+     */
+    void runOnEventLoop() {
+        initDriven();
+    }
+
+    /**
+     * Sets the client's id
+     * @param id the id assigned by the server
+     */
+    void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Runs the handle methods once after the connection received data
+     */
+    void handleEvent() {
+        drive();
+    }
+
     /**
      * @return the {@link BialettiTCPConnection} to the client
      */
@@ -54,6 +83,11 @@ public abstract class BialettiTCPServerClient<ServerType extends BialettiTCPServ
      * @return the {@link BialettiTCPServer}
      */
     public ServerType getServer() { return server; }
+    /**
+     * @return the client's id, unique among the clients of its server (0 until the client's constructor returns)
+     * @see BialettiTCPServer#getClient(long)
+     */
+    public long getId() { return id; }
 
     /**
      * What happens when the connection is first established
@@ -69,4 +103,28 @@ public abstract class BialettiTCPServerClient<ServerType extends BialettiTCPServ
      */
     @BialettiEndMethod
     public abstract void onClose() throws Exception;
+
+    /**
+     * What happens when the data waiting to be sent to the client crosses one of the connection's watermarks
+     * Producers can use this to defer or shed messages instead of blocking on a slow client
+     * @apiNote runs on the thread whose send or write crossed the watermark, and should not block. The default
+     * implementation does nothing
+     * @see BialettiTCPConnection#setWatermarks(long, long)
+     * @param writable false once the queued bytes reach the high watermark, true once they fall to the low one
+     */
+    public void onWritabilityChanged(boolean writable) { }
+
+    /**
+     * What happens when the connection has been idle for one of the server's idle timeouts
+     * The default implementation stops the client, which closes the connection and runs its end methods
+     * @apiNote runs on a thread of the server, never on the timer's, so it may block
+     * @see BialettiTCPServer#setIdlePolicy(bialetti.connection.tcp.BialettiIdlePolicy)
+     * @param state the kind of inactivity
+     */
+    public void onIdle(BialettiIdleState state) {
+        try { if (isRunning()) stop(); }
+
+        // Somebody else stopped it first
+        catch (BialettiIllegalOperationException ignored) { }
+    }
 }
@@ -1,19 +1,82 @@
 package bialetti.server.udp;
 
+import bialetti.codec.BialettiCompressor;
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.connection.udp.BialettiUDPFragmenter;
+import bialetti.connection.udp.BialettiUDPPacket;
 import bialetti.connection.udp.BialettiUDPServerSocket;
 import bialetti.exceptions.BialettiIllegalOperationException;
+import bialetti.metrics.BialettiMetrics;
 import bialetti.server.BialettiServer;
+import bialetti.service.BialettiServiceState;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A Bialetti UDP Server
+ * By default packets are received by the server's handle methods. With receive workers, the server receives them
+ * itself, each into its own pooled buffer, and passes them to {@link #onPacket(BialettiUDPPacket)}.
  * @author Alessandro-Salerno
  */
 public abstract class BialettiUDPServer extends BialettiServer {
     /**
-     * The socket on which the server listens for incoming requests
-     * and sends outgoing replies
+     * The maximum size of a received datagram unless another one is set
+     */
+    public static final int DEFAULT_WINDOW = 512;
+    /**
+     * The minimum time over which the packet rate is measured, in nanoseconds
      */
-    private BialettiUDPServerSocket serverSocket;
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The number of packets received by the workers
+     */
+    private final LongAdder receivedPackets;
+    /**
+     * The number of packets discarded by the workers
+     */
+    private final LongAdder droppedPackets;
+    /**
+     * Guards the packet rate sample
+     */
+    private final Object rateLock;
+    /**
+     * The sockets on which the server listens (One per worker with SO_REUSEPORT, else one)
+     */
+    private BialettiUDPServerSocket[] serverSockets;
+    /**
+     * The number of threads receiving packets (0 if packets are received by the handle methods)
+     */
+    private int receiveWorkers = 0;
+    /**
+     * A boolean that tells whether every worker has its own SO_REUSEPORT socket
+     */
+    private boolean reusePort = false;
+    /**
+     * The maximum size of a received datagram
+     */
+    private int window = DEFAULT_WINDOW;
+    /**
+     * The size of the largest datagram sent by fragmentation (0 if fragmentation is disabled)
+     */
+    private int fragmentationMtu = 0;
+    /**
+     * The compression of the server's sockets (null if compression is disabled)
+     */
+    private BialettiCompressor compression;
+    /**
+     * When the packet rate was last sampled, in {@link System#nanoTime()} units
+     */
+    private long rateSampleNanos;
+    /**
+     * The number of received packets when the packet rate was last sampled
+     */
+    private long rateSampleCount;
+    /**
+     * The last measured packet rate
+     */
+    private double packetRate;
 
     /**
      * Constructor
@@ -21,25 +84,216 @@ public abstract class BialettiUDPServer extends BialettiServer {
      * @throws RuntimeException if something goes wrong while opening the connection
      */
     public BialettiUDPServer(int port) throws RuntimeException {
-        super(port);
+        this(port, BialettiSocketOptions.DEFAULT);
     }
 
     /**
-     * Stops the server
-     * @throws BialettiIllegalOperationException if the service was not running when the method was called
+     * Constructor
+     * @param port the port on which to open the server
+     * @param options the options of the server's socket
+     */
+    public BialettiUDPServer(int port, BialettiSocketOptions options) {
+        super(port, options);
+
+        // Set fields
+        receivedPackets = new LongAdder();
+        droppedPackets  = new LongAdder();
+        rateLock        = new Object();
+    }
+
+    /**
+     * What happens when a worker receives a packet
+     * The packet is released once the method returns, unless it is retained
+     * @apiNote only called if the server has receive workers, does nothing unless overridden
+     * @param packet the packet
+     * @throws Exception if the user code throws one
+     */
+    protected void onPacket(BialettiUDPPacket packet) throws Exception { }
+
+    /**
+     * Receives a packet and passes it to {@link #onPacket(BialettiUDPPacket)}
+     * With fragmentation, the packet is a whole message
+     * @param socket the socket on which the packet is received
+     */
+    private void receive(BialettiUDPServerSocket socket) {
+        try {
+            BialettiUDPPacket packet = socket.receivePooled();
+
+            // Larger than the window
+            if (packet == null) {
+                droppedPackets.increment();
+                return;
+            }
+
+            receivedPackets.increment();
+
+            try { onPacket(packet); }
+            finally { packet.release(); }
+        }
+
+        // Exception handler
+        catch (Exception e) {
+            // The socket is closed on purpose when the server stops
+            if (isRunning()) raiseException(e);
+        }
+    }
+
+    /**
+     * Starts the receive workers
      */
     @Override
-    public final void stop() throws BialettiIllegalOperationException {
-        super.stop();
+    protected void start() throws BialettiIllegalOperationException {
+        super.start();
+
+        for (int i = 0; i < receiveWorkers; i++) {
+            BialettiUDPServerSocket socket = serverSockets[i % serverSockets.length];
+
+            spawnWorker("receive-" + i, () -> receive(socket));
+        }
+    }
+
+    /**
+     * Closes the server's sockets
+     */
+    @Override
+    protected void unblock() {
+        super.unblock();
 
         // Close the server
-        serverSocket.close();
+        for (BialettiUDPServerSocket socket : serverSockets) socket.close();
     }
 
     /**
-     * @return the UDP connection used by the server
+     * Sets the number of threads that receive packets and pass them to {@link #onPacket(BialettiUDPPacket)}
+     * @param workers the number of workers (0 to leave packets to the handle methods)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the number is negative
      */
-    public BialettiUDPServerSocket getSocket() { return serverSocket; }
+    public void setReceiveWorkers(int workers) throws BialettiIllegalOperationException,
+                                                      IllegalArgumentException {
+        ensureNotStarted();
+        if (workers < 0) throw new IllegalArgumentException("The number of receive workers cannot be negative");
+
+        receiveWorkers = workers;
+    }
+
+    /**
+     * Sets whether every receive worker has its own SO_REUSEPORT socket bound to the same port
+     * The system then spreads incoming packets across the sockets
+     * @param enabled whether SO_REUSEPORT is used
+     * @throws BialettiIllegalOperationException if the server has already been started or SO_REUSEPORT is not supported
+     */
+    public void setReusePort(boolean enabled) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+
+        if (enabled && !BialettiSocketOptions.isReusePortSupported()) {
+            throw new BialettiIllegalOperationException("SO_REUSEPORT is not supported on this platform");
+        }
+
+        reusePort = enabled;
+    }
+
+    /**
+     * Sets the maximum size of a received datagram, larger ones are discarded
+     * @param size the window
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the window is not positive or smaller than the fragmentation MTU
+     */
+    public void setWindow(int size) throws BialettiIllegalOperationException,
+                                           IllegalArgumentException {
+        ensureNotStarted();
+        if (size <= 0) throw new IllegalArgumentException("The window must be positive");
+        if (size < fragmentationMtu) throw new IllegalArgumentException("The window cannot be smaller than the fragmentation MTU");
+
+        window = size;
+    }
+
+    /**
+     * Enables or disables fragmentation on the server's sockets
+     * Messages are split into datagrams of at most the given size and put back together when received, clients must
+     * enable it with the same header format
+     * @param mtu the size of the largest datagram, header included (0 to disable fragmentation)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     * @throws IllegalArgumentException if the MTU is larger than the window or cannot hold a fragment header
+     */
+    public void setFragmentation(int mtu) throws BialettiIllegalOperationException,
+                                                 IllegalArgumentException {
+        ensureNotStarted();
+
+        if (mtu != 0) {
+            if (mtu <= BialettiUDPFragmenter.HEADER) {
+                throw new IllegalArgumentException("The MTU must be larger than " + BialettiUDPFragmenter.HEADER);
+            }
+
+            if (mtu > window) throw new IllegalArgumentException("The MTU cannot be larger than the window");
+        }
+
+        fragmentationMtu = mtu;
+    }
+
+    /**
+     * Sets the compression of the server's sockets
+     * Clients must enable compression as well
+     * @param compressor the compressor (null to disable compression)
+     * @throws BialettiIllegalOperationException if the server has already been started
+     */
+    public void setCompression(BialettiCompressor compressor) throws BialettiIllegalOperationException {
+        ensureNotStarted();
+        compression = compressor;
+    }
+
+    /**
+     * @return the UDP connection used by the server (The first one if workers have their own sockets)
+     */
+    public BialettiUDPServerSocket getSocket() { return serverSockets[0]; }
+    /**
+     * @return the number of threads receiving packets
+     */
+    public int getReceiveWorkers() { return receiveWorkers; }
+    /**
+     * @return whether every receive worker has its own SO_REUSEPORT socket
+     */
+    public boolean isReusePort() { return reusePort; }
+    /**
+     * @return the maximum size of a received datagram
+     */
+    public int getWindow() { return window; }
+    /**
+     * @return the size of the largest datagram sent by fragmentation (0 if fragmentation is disabled)
+     */
+    public int getFragmentationMtu() { return fragmentationMtu; }
+    /**
+     * @return the compression of the server's sockets (null if it is disabled)
+     */
+    public BialettiCompressor getCompression() { return compression; }
+    /**
+     * @return the number of packets received by the workers
+     */
+    public long getReceivedPackets() { return receivedPackets.sum(); }
+    /**
+     * @return the number of packets discarded by the workers because they were larger than the window
+     */
+    public long getDroppedPackets() { return droppedPackets.sum(); }
+
+    /**
+     * @return the number of packets received by the workers per second, measured over at least the last second
+     */
+    public double getPacketsPerSecond() {
+        synchronized (rateLock) {
+            long now     = System.nanoTime();
+            long elapsed = now - rateSampleNanos;
+
+            if (elapsed >= RATE_INTERVAL_NANOS) {
+                long count = receivedPackets.sum();
+
+                packetRate      = (count - rateSampleCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+                rateSampleNanos = now;
+                rateSampleCount = count;
+            }
+
+            return packetRate;
+        }
+    }
 
     /**
      * Starts the server
@@ -47,12 +301,50 @@ public abstract class BialettiUDPServer extends BialettiServer {
      */
     @Override
     public void run() {
-        try { serverSocket = new BialettiUDPServerSocket(getPort(), 512); }
+        serverSockets = new BialettiUDPServerSocket[(reusePort && receiveWorkers > 1) ? receiveWorkers : 1];
+        BialettiSocketOptions options = reusePort ? getSocketOptions().withReusePort(true) : getSocketOptions();
+
+        try {
+            serverSockets[0] = new BialettiUDPServerSocket(getPort(), window, options);
+
+            // The other sockets join the port actually bound by the first one
+            int port = serverSockets[0].getChannel().socket().getLocalPort();
+            for (int i = 1; i < serverSockets.length; i++) serverSockets[i] = new BialettiUDPServerSocket(port, window, options);
+
+            // Every socket has its own reassembler, fragments of a message may only arrive on one of them
+            if (fragmentationMtu != 0) {
+                for (BialettiUDPServerSocket socket : serverSockets) socket.setFragmentation(fragmentationMtu);
+            }
+
+            for (BialettiUDPServerSocket socket : serverSockets) {
+                socket.setCompression(compression);
+                socket.setMetrics(getMetrics());
+            }
+        }
+
         catch (Exception e) {
+            for (BialettiUDPServerSocket socket : serverSockets) {
+                if (socket != null) socket.close();
+            }
+
             // Throw runtime exception
             throw new RuntimeException(e);
         }
 
+        // Datagrams larger than the window never become messages, so they are only seen here
+        BialettiMetrics metrics = getMetrics();
+        if (metrics != null) metrics.gauge("DroppedPackets", droppedPackets::sum);
+
+        synchronized (rateLock) { rateSampleNanos = System.nanoTime(); }
         super.run();
     }
+
+    /**
+     * @throws BialettiIllegalOperationException if the server has already been started
+     */
+    private void ensureNotStarted() throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Server \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package bialetti.service;
+
+import bialetti.util.MethodCaller;
+
+import java.util.List;
+
+/**
+ * The lifecycle methods of a {@link BialettiManagedService} subclass, bound to a given instance
+ * Implementations are generated at compile time by {@link bialetti.processor.BialettiDispatchProcessor}
+ * or built once per class at runtime by {@link BialettiDispatchTables}
+ * @param <ServiceType> the service class
+ * @author Alessandro-Salerno
+ */
+public interface BialettiDispatchTable<ServiceType> {
+    /**
+     * @param service the service instance
+     * @return the methods marked with {@link bialetti.annotations.methods.BialettiInitMethod}
+     */
+    List<MethodCaller> getInitMethods(ServiceType service);
+
+    /**
+     * @param service the service instance
+     * @return the methods marked with {@link bialetti.annotations.methods.BialettiHandleMethod}
+     */
+    List<MethodCaller> getHandleMethods(ServiceType service);
+
+    /**
+     * @param service the service instance
+     * @return the methods marked with {@link bialetti.annotations.methods.BialettiEndMethod}
+     */
+    List<MethodCaller> getEndMethods(ServiceType service);
+}
@@ -0,0 +1,144 @@
+package bialetti.service;
+
+import bialetti.annotations.methods.BialettiEndMethod;
+import bialetti.annotations.methods.BialettiHandleMethod;
+import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.util.MethodCaller;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the {@link BialettiDispatchTable} of a class
+ * Tables generated at compile time are preferred, otherwise the class is scanned once and the result is cached
+ * @author Alessandro-Salerno
+ */
+public final class BialettiDispatchTables {
+    /**
+     * The suffix appended to a class' binary name to get the name of its generated table
+     */
+    public static final String GENERATED_SUFFIX = "_BialettiDispatch";
+
+    /**
+     * Cache of tables, one per class
+     */
+    private static final ClassValue<BialettiDispatchTable<?>> TABLES = new ClassValue<>() {
+        @Override
+        protected BialettiDispatchTable<?> computeValue(Class<?> type) {
+            BialettiDispatchTable<?> generated = loadGenerated(type);
+            return (generated != null) ? generated : new ReflectiveDispatchTable(type);
+        }
+    };
+
+    /**
+     * Private constructor, the class only has static methods
+     */
+    private BialettiDispatchTables() { }
+
+    /**
+     * @param type the class
+     * @param <ServiceType> the class
+     * @return the dispatch table of the class
+     */
+    @SuppressWarnings("unchecked")
+    public static <ServiceType> BialettiDispatchTable<ServiceType> forClass(Class<ServiceType> type) {
+        return (BialettiDispatchTable<ServiceType>) TABLES.get(type);
+    }
+
+    /**
+     * @param service the service
+     * @param <ServiceType> the class of the service
+     * @return the dispatch table of the service's class
+     */
+    @SuppressWarnings("unchecked")
+    public static <ServiceType> BialettiDispatchTable<ServiceType> forObject(ServiceType service) {
+        return (BialettiDispatchTable<ServiceType>) TABLES.get(service.getClass());
+    }
+
+    /**
+     * Loads the table generated at compile time for a class
+     * @param type the class
+     * @return the table, null if there is none
+     */
+    private static BialettiDispatchTable<?> loadGenerated(Class<?> type) {
+        try {
+            Class<?> generated = Class.forName(type.getName() + GENERATED_SUFFIX, true, type.getClassLoader());
+
+            if (BialettiDispatchTable.class.isAssignableFrom(generated)) {
+                return (BialettiDispatchTable<?>) generated.getConstructor().newInstance();
+            }
+        }
+
+        // No table was generated for the class
+        catch (ReflectiveOperationException | LinkageError ignored) { }
+
+        return null;
+    }
+
+    /**
+     * A table built by scanning the public methods of a class once
+     * @author Alessandro-Salerno
+     */
+    private static final class ReflectiveDispatchTable implements BialettiDispatchTable<Object> {
+        /**
+         * The init methods
+         */
+        private final List<Method> initMethods;
+        /**
+         * The handle methods
+         */
+        private final List<Method> handleMethods;
+        /**
+         * The end methods
+         */
+        private final List<Method> endMethods;
+
+        /**
+         * Constructor
+         * @param type the class to be scanned
+         */
+        ReflectiveDispatchTable(Class<?> type) {
+            Method[] methods = type.getMethods();
+
+            initMethods   = withAnnotation(methods, BialettiInitMethod.class);
+            handleMethods = withAnnotation(methods, BialettiHandleMethod.class);
+            endMethods    = withAnnotation(methods, BialettiEndMethod.class);
+        }
+
+        @Override
+        public List<MethodCaller> getInitMethods(Object service) { return bind(service, initMethods); }
+        @Override
+        public List<MethodCaller> getHandleMethods(Object service) { return bind(service, handleMethods); }
+        @Override
+        public List<MethodCaller> getEndMethods(Object service) { return bind(service, endMethods); }
+
+        /**
+         * Binds methods to an instance
+         * @param service the instance
+         * @param methods the methods
+         * @return the bound calls
+         */
+        private static List<MethodCaller> bind(Object service, List<Method> methods) {
+            List<MethodCaller> callers = new ArrayList<>(methods.size());
+            for (Method method : methods) callers.add(new MethodCaller(service, method));
+
+            return callers;
+        }
+
+        /**
+         * Filters methods by annotation
+         * @param methods the methods
+         * @param annotation the annotation required
+         * @return the methods that hold the annotation and take no parameters
+         */
+        private static List<Method> withAnnotation(Method[] methods, Class<? extends Annotation> annotation) {
+            return Arrays.stream(methods)
+                         .filter(method -> method.isAnnotationPresent(annotation))
+                         .filter(method -> method.getParameterCount() == 0)
+                         .toList();
+        }
+    }
+}
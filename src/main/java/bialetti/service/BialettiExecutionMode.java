@@ -0,0 +1,128 @@
+package bialetti.service;
+
+import bialetti.exceptions.BialettiIllegalOperationException;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+
+/**
+ * The kind of threads on which a {@link BialettiService} runs its start and handle methods
+ * @author Alessandro-Salerno
+ */
+public enum BialettiExecutionMode {
+    /**
+     * Every method runs on its own platform (OS) thread
+     */
+    PLATFORM {
+        @Override
+        public Thread newThread(Runnable task, String name) {
+            return new Thread(task, name);
+        }
+
+        @Override
+        public boolean isSupported() { return true; }
+    },
+
+    /**
+     * Every method runs on its own virtual thread, so that blocking calls such as receive() do not hold an OS thread
+     * @apiNote requires a Java runtime with virtual threads (21 or newer)
+     */
+    VIRTUAL {
+        @Override
+        public Thread newThread(Runnable task, String name) throws BialettiIllegalOperationException {
+            if (!isSupported()) {
+                throw new BialettiIllegalOperationException("Virtual threads are not supported by this Java runtime");
+            }
+
+            try {
+                Object builder = VirtualThreads.OF_VIRTUAL.invoke(null);
+                VirtualThreads.NAME.invoke(builder, name);
+                return (Thread) VirtualThreads.UNSTARTED.invoke(builder, task);
+            }
+
+            catch (ReflectiveOperationException e) {
+                // Throw illegal operation exception
+                throw new BialettiIllegalOperationException(e);
+            }
+        }
+
+        @Override
+        public boolean isSupported() { return VirtualThreads.OF_VIRTUAL != null; }
+    };
+
+    /**
+     * The mode used by services that do not set one themselves
+     */
+    private static volatile BialettiExecutionMode defaultMode = PLATFORM;
+
+    /**
+     * Creates a new, unstarted thread
+     * @param task the task run by the thread
+     * @param name the name of the thread
+     * @return the thread
+     * @throws BialettiIllegalOperationException if the mode is not supported by the Java runtime
+     */
+    public abstract Thread newThread(Runnable task, String name) throws BialettiIllegalOperationException;
+
+    /**
+     * @return whether the mode is supported by the Java runtime
+     */
+    public abstract boolean isSupported();
+
+    /**
+     * Sets the mode used by services that do not set one themselves
+     * @param mode the new default mode
+     * @throws BialettiIllegalOperationException if the mode is not supported by the Java runtime
+     */
+    public static void setDefault(BialettiExecutionMode mode) throws BialettiIllegalOperationException {
+        if (!Objects.requireNonNull(mode).isSupported()) {
+            throw new BialettiIllegalOperationException("Execution mode " + mode + " is not supported by this Java runtime");
+        }
+
+        defaultMode = mode;
+    }
+
+    /**
+     * @return the mode used by services that do not set one themselves
+     */
+    public static BialettiExecutionMode getDefault() { return defaultMode; }
+
+    /**
+     * Lazily resolved virtual thread builder API (Looked up reflectively, so that the library still runs on Java 17)
+     * @author Alessandro-Salerno
+     */
+    private static final class VirtualThreads {
+        /**
+         * Thread.ofVirtual()
+         */
+        static final Method OF_VIRTUAL;
+        /**
+         * Thread.Builder.name(String)
+         */
+        static final Method NAME;
+        /**
+         * Thread.Builder.unstarted(Runnable)
+         */
+        static final Method UNSTARTED;
+
+        static {
+            Method ofVirtual = null, name = null, unstarted = null;
+
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name      = builder.getMethod("name", String.class);
+                unstarted = builder.getMethod("unstarted", Runnable.class);
+            }
+
+            // Older runtime, virtual threads are not available
+            catch (ReflectiveOperationException ignored) {
+                ofVirtual = null;
+            }
+
+            OF_VIRTUAL = ofVirtual;
+            NAME       = name;
+            UNSTARTED  = unstarted;
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package bialetti.service;
 
-import bialetti.annotations.methods.BialettiEndMethod;
-import bialetti.annotations.methods.BialettiInitMethod;
 import bialetti.exceptions.BialettiIllegalOperationException;
 import bialetti.util.MethodCaller;
-import bialetti.util.ObjectUtility;
+
+import java.util.List;
 
 /**
  * Subclass of {@link BialettiService}
@@ -17,31 +16,18 @@ public class BialettiManagedService extends BialettiService implements Runnable
         super.start();
 
         // Call init methods
-        new ObjectUtility(this).forEachMethodWithAnnotation(BialettiInitMethod.class,
-                                                               method -> {
-            try { new MethodCaller(this,
-                                   method).call(); }
-            catch (Throwable t) {
-                // Call handler method
-                raiseException(t);
-            }
-        });
+        callAll(BialettiDispatchTables.forObject(this).getInitMethods(this));
     }
 
+    /**
+     * Calls the end methods once the handlers have been drained
+     */
     @Override
-    public void stop() throws BialettiIllegalOperationException {
-        super.stop();
+    protected void terminate() {
+        super.terminate();
 
         // Call end methods
-        new ObjectUtility(this).forEachMethodWithAnnotation(BialettiEndMethod.class,
-                                                               method -> {
-            try { new MethodCaller(this,
-                                   method).call(); }
-            catch (Throwable t) {
-                // Call handler method
-                raiseException(t);
-            }
-        });
+        callAll(BialettiDispatchTables.forObject(this).getEndMethods(this));
     }
 
     /**
@@ -52,4 +38,18 @@ public class BialettiManagedService extends BialettiService implements Runnable
     public void run() {
         init();
     }
+
+    /**
+     * Calls every method in a list, forwarding exceptions to the handler
+     * @param methods the methods
+     */
+    private void callAll(List<MethodCaller> methods) {
+        for (MethodCaller method : methods) {
+            try { method.call(); }
+            catch (Throwable t) {
+                // Call handler method
+                raiseException(t);
+            }
+        }
+    }
 }
@@ -4,36 +4,32 @@ import bialetti.exceptions.BialettiIllegalOperationException;
 
 /**
  * Subclass of {@link BialettiManagedService}
- * A Bialetti Managed Service that can run as a standalone program thanks to a dummy thread
+ * A Bialetti Managed Service that can run as a standalone program thanks to a keep-alive thread
  * @author Alessandro-Salernoo
  */
 public abstract class BialettiRunnableService extends BialettiManagedService {
     /**
      * A thread used to keep the process alive
+     * Always a platform thread, since virtual threads do not keep the process alive
      */
-    private final Thread dummyThread;
+    private final Thread keepAliveThread;
 
     /**
      * Constructor
      */
     public BialettiRunnableService() {
-        // Set up dummy thread
-        dummyThread = new Thread(() -> { while (!Thread.interrupted()); });
+        // Set up keep-alive thread, it parks until the service terminates
+        keepAliveThread = new Thread(() -> {
+            try { awaitTermination(); }
+            catch (InterruptedException ignored) { }
+        }, getClass().getSimpleName() + "-keepalive");
     }
 
     @Override
     protected void start() throws BialettiIllegalOperationException {
         super.start();
 
-        // Start dummy thread
-        dummyThread.start();
-    }
-
-    @Override
-    public void stop() throws BialettiIllegalOperationException {
-        super.stop();
-
-        // Stop dummy thread
-        dummyThread.interrupt();
+        // Start keep-alive thread
+        keepAliveThread.start();
     }
 }
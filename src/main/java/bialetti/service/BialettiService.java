@@ -1,117 +1,482 @@
 package bialetti.service;
 
 import bialetti.BialettiExceptionHandler;
-import bialetti.annotations.methods.BialettiHandleMethod;
 import bialetti.exceptions.BialettiIllegalOperationException;
-import bialetti.util.MethodThread;
-import bialetti.util.ObjectUtility;
+import bialetti.metrics.BialettiCounter;
+import bialetti.metrics.BialettiHistogram;
+import bialetti.metrics.BialettiMetrics;
+import bialetti.util.MethodCaller;
+import bialetti.util.MethodRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A Bialetti Service
+ * The service's life is tracked by a {@link BialettiServiceState}: callers can wait for it to start or terminate,
+ * and stopping it lets in-flight handler work drain before releasing the resources handlers may be blocked on
  * @author Alessandro-Salerno
  */
 abstract class BialettiService extends BialettiExceptionHandler {
     /**
      * The list of threads used to run service methods
      */
-    private final List<MethodThread> threads;
+    private final List<Thread> threads;
+    /**
+     * The handle methods of a service driven by its caller
+     */
+    private final List<MethodCaller> drivenMethods;
+    /**
+     * The latency of each handle method driven by the caller, in the same order (Empty without metrics)
+     */
+    private final List<BialettiHistogram> drivenLatencies;
+    /**
+     * The current state of the service
+     */
+    private final AtomicReference<BialettiServiceState> state;
+    /**
+     * Released once the start method has returned (Or the service has been stopped)
+     */
+    private final CountDownLatch startedLatch;
+    /**
+     * Released once the service has terminated
+     */
+    private final CountDownLatch terminatedLatch;
     /**
      * The thread used to run the start method
      */
-    private final Thread startThread;
+    private volatile Thread startThread;
     /**
-     * A boolean that tells whether the service is running
+     * The kind of threads used by the service (null to use the default one)
      */
-    private boolean running = false;
+    private volatile BialettiExecutionMode executionMode;
+    /**
+     * Records handler latencies and exceptions (null if metrics are disabled)
+     */
+    private volatile BialettiMetrics metrics;
+    /**
+     * How long stop() waits for handlers to finish their current iteration, in nanoseconds
+     */
+    private volatile long drainTimeoutNanos = 0;
+    /**
+     * A boolean that tells whether the resources handlers may be blocked on have been released
+     */
+    private volatile boolean unblocked = false;
+    /**
+     * A boolean that tells whether the handle methods are driven by the caller instead of dedicated threads
+     */
+    private boolean driven = false;
 
     /**
      * Constructor
      */
     public BialettiService() {
         // Set up service threads
-        threads     = new ArrayList<>();
-        startThread = new Thread(this::start);
+        threads         = new ArrayList<>();
+        drivenMethods   = new ArrayList<>();
+        drivenLatencies = new ArrayList<>();
+        state           = new AtomicReference<>(BialettiServiceState.NEW);
+        startedLatch    = new CountDownLatch(1);
+        terminatedLatch = new CountDownLatch(1);
     }
 
     /**
      * Starts the thread to run the start method
-     * @throws BialettiIllegalOperationException if the start method throws one
-     * @throws IllegalThreadStateException if the thread is in an invalid state
+     * @throws BialettiIllegalOperationException if the service has already been started
      */
-    protected final void init() throws BialettiIllegalOperationException,
-                                       IllegalThreadStateException {
+    protected final void init() throws BialettiIllegalOperationException {
+        begin();
+
+        startThread = getExecutionMode().newThread(this::bootstrap, getClass().getSimpleName() + "-start");
         startThread.start();
     }
 
+    /**
+     * Runs the start method on the calling thread without spawning handler threads
+     * The handle methods are then only executed when {@link #drive()} is called
+     * @throws BialettiIllegalOperationException if the service has already been started
+     */
+    protected final void initDriven() throws BialettiIllegalOperationException {
+        begin();
+
+        driven = true;
+        bootstrap();
+    }
+
+    /**
+     * Runs every handle method once on the calling thread
+     * @apiNote only meaningful for services started with {@link #initDriven()}
+     */
+    protected final void drive() {
+        for (int i = 0; i < drivenMethods.size(); i++) {
+            if (getState() != BialettiServiceState.RUNNING) return;
+
+            BialettiHistogram latency = drivenLatencies.isEmpty() ? null : drivenLatencies.get(i);
+            long start                = (latency != null) ? System.nanoTime() : 0;
+
+            try { drivenMethods.get(i).call(); }
+            catch (Throwable t) {
+                // Call handler method
+                raiseCountedException(t);
+            }
+
+            if (latency != null) latency.record(System.nanoTime() - start);
+        }
+    }
+
     /**
      * Spawns threads for all methods
-     * @throws BialettiIllegalOperationException if the service is already running
+     * @throws BialettiIllegalOperationException if the service is not starting
      * @throws IllegalCallerException if the method is called directly
      */
     protected void start() throws BialettiIllegalOperationException,
                                   IllegalCallerException {
-        // Make sure that the service is not running
-        if (isRunning()) {
+        // Make sure that the service is being started
+        if (getState() != BialettiServiceState.STARTING) {
             throw new BialettiIllegalOperationException("Service \"" + getClass().getSimpleName() + "\" is already running");
         }
 
         // Make sure that the method is running on the right thread
-        if (!Thread.currentThread().equals(startThread)) {
+        if (!driven && !Thread.currentThread().equals(startThread)) {
             throw new IllegalCallerException("Direct call to " + getClass().getSimpleName() + "\".start()");
         }
 
+        List<MethodCaller> handleMethods = BialettiDispatchTables.forObject(this).getHandleMethods(this);
+        BialettiMetrics recorder         = metrics;
+
+        // Leave the methods to the caller
+        if (driven) {
+            drivenMethods.addAll(handleMethods);
+            if (recorder != null) handleMethods.forEach(method -> drivenLatencies.add(latencyOf(recorder, method)));
+
+            return;
+        }
+
         // Spawn hanlder threads
-        new ObjectUtility(this).forEachMethodWithAnnotation(BialettiHandleMethod.class,
-                                                               method -> {
-            MethodThread newThread
-                    = new MethodThread(this::raiseException,
-                                       this,
-                                       method) {
-                @Override
-                public void run() {
-                    try { startThread.join(); }
-                    catch (InterruptedException ignored) { }
-
-                    super.run();
-                }
-            };
-
-            newThread.start();
-            threads.add(newThread);
-        });
-        
-        // State that the service has been started
-        running = true;
-    }
-
-    /**
-     * Clears all threads
+        for (MethodCaller method : handleMethods) {
+            MethodRunner runner       = new MethodRunner(this::raiseHandlerException, method);
+            BialettiHistogram latency = (recorder != null) ? latencyOf(recorder, method) : null;
+
+            if (latency == null) {
+                spawnWorker(method.getName(), runner::runOnce);
+                continue;
+            }
+
+            spawnWorker(method.getName(), () -> {
+                long start = System.nanoTime();
+                runner.runOnce();
+                latency.record(System.nanoTime() - start);
+            });
+        }
+    }
+
+    /**
+     * Spawns a thread that runs an iteration over and over while the service is running, like a handle method
+     * The thread waits for the start method to return and is drained and interrupted by {@link #stop()}
+     * @param name the name of the thread, after the name of the service
+     * @param iteration the iteration
+     */
+    protected final void spawnWorker(String name, Runnable iteration) {
+        Thread newThread = getExecutionMode().newThread(() -> {
+            // Wait for the start method to return
+            try { startedLatch.await(); }
+            catch (InterruptedException ignored) { return; }
+
+            while (getState() == BialettiServiceState.RUNNING
+                    && !Thread.currentThread().isInterrupted()) iteration.run();
+        }, getClass().getSimpleName() + "-" + name);
+
+        newThread.start();
+        synchronized (threads) { threads.add(newThread); }
+    }
+
+    /**
+     * Stops the service
+     * New handler iterations are no longer started and the ones in flight are given up to the drain timeout
+     * to complete. Then {@link #terminate()} and {@link #unblock()} are called and the remaining handler threads
+     * are interrupted.
      * @throws BialettiIllegalOperationException if the service was not running when the method was called
      */
     public void stop() throws BialettiIllegalOperationException {
         // Make sure that the service is running
-        if (!isRunning()) {
+        BialettiServiceState current = getState();
+        if ((current != BialettiServiceState.STARTING && current != BialettiServiceState.RUNNING)
+                || !state.compareAndSet(current, BialettiServiceState.STOPPING)) {
             throw new BialettiIllegalOperationException("Service \"" + getClass().getSimpleName() + "\" is not running");
         }
 
-        // Stop all threads
-        synchronized (threads) {
-            threads.stream()
-                    .parallel()
-                    .forEach(Thread::interrupt);
+        // Handlers still waiting for the start method should give up
+        startedLatch.countDown();
 
+        List<Thread> handlers;
+        synchronized (threads) {
+            handlers = new ArrayList<>(threads);
             threads.clear();
         }
 
-        // Update
-        running = false;
+        // The calling thread may be one of the handlers
+        handlers.remove(Thread.currentThread());
+
+        try {
+            drain(handlers);
+            terminate();
+        }
+
+        finally {
+            // Release whatever the remaining handlers are blocked on
+            unblocked = true;
+            try { unblock(); }
+            finally {
+                handlers.stream()
+                        .filter(Thread::isAlive)
+                        .forEach(Thread::interrupt);
+
+                state.set(BialettiServiceState.TERMINATED);
+                terminatedLatch.countDown();
+            }
+        }
+    }
+
+    /**
+     * What happens once the handlers have been drained, before resources are released
+     * @apiNote called by {@link #stop()}, the default implementation does nothing
+     */
+    protected void terminate() { }
+
+    /**
+     * Releases the resources (Such as sockets) on which handler threads may be blocked,
+     * so that calls like accept() or receive() return
+     * @apiNote called once by {@link #stop()}, the default implementation does nothing
+     */
+    protected void unblock() { }
+
+    /**
+     * Waits until the service has finished starting
+     * @return whether the service is running
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public final boolean awaitStarted() throws InterruptedException {
+        startedLatch.await();
+        return isRunning();
+    }
+
+    /**
+     * Waits until the service has finished starting or the timeout expires
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return whether the service is running
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public final boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return startedLatch.await(timeout, unit) && isRunning();
+    }
+
+    /**
+     * Waits until the service has terminated
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public final void awaitTermination() throws InterruptedException {
+        terminatedLatch.await();
+    }
+
+    /**
+     * Waits until the service has terminated or the timeout expires
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return whether the service has terminated
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public final boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminatedLatch.await(timeout, unit);
+    }
+
+    /**
+     * Sets how long {@link #stop()} waits for in-flight handler iterations before releasing resources
+     * @param timeout the drain timeout (0 to release resources right away)
+     * @param unit the unit of the timeout
+     */
+    public final void setDrainTimeout(long timeout, TimeUnit unit) {
+        drainTimeoutNanos = Math.max(0, unit.toNanos(timeout));
+    }
+
+    /**
+     * @return the drain timeout in milliseconds
+     */
+    public final long getDrainTimeout() { return TimeUnit.NANOSECONDS.toMillis(drainTimeoutNanos); }
+
+    /**
+     * Sets the kind of threads used by the service
+     * @param mode the execution mode (null to use {@link BialettiExecutionMode#getDefault()})
+     * @throws BialettiIllegalOperationException if the service has already been started or the mode is not supported
+     */
+    public final void setExecutionMode(BialettiExecutionMode mode) throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Service \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+
+        if (mode != null && !mode.isSupported()) {
+            throw new BialettiIllegalOperationException("Execution mode " + mode + " is not supported by this Java runtime");
+        }
+
+        executionMode = mode;
+    }
+
+    /**
+     * Sets the metrics in which the service records the latency of every iteration of its handle methods and the
+     * exceptions they throw
+     * Histograms are named &lt;class&gt;.&lt;method&gt;, and services of the same class that share the metrics add up.
+     * Handle methods that block, such as those waiting for a message, count the time spent waiting as well.
+     * @param recorder the metrics (null to disable metrics)
+     * @throws BialettiIllegalOperationException if the service has already been started
+     */
+    public final void setMetrics(BialettiMetrics recorder) throws BialettiIllegalOperationException {
+        if (getState() != BialettiServiceState.NEW) {
+            throw new BialettiIllegalOperationException("Service \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+
+        metrics = recorder;
     }
 
+    /**
+     * @return the metrics of the service (null if metrics are disabled)
+     */
+    public final BialettiMetrics getMetrics() { return metrics; }
+
+    /**
+     * @return the kind of threads used by the service
+     */
+    public final BialettiExecutionMode getExecutionMode() {
+        BialettiExecutionMode mode = executionMode;
+        return (mode != null) ? mode : BialettiExecutionMode.getDefault();
+    }
+
+    /**
+     * @return the current state of the service
+     */
+    public final BialettiServiceState getState() { return state.get(); }
+
     /**
      * @return Whether the service is running or not
      */
-    public final boolean isRunning() { return running; }
+    public final boolean isRunning() {
+        BialettiServiceState current = getState();
+        return current == BialettiServiceState.STARTING || current == BialettiServiceState.RUNNING;
+    }
+
+    /**
+     * Moves the service from NEW to STARTING
+     * @throws BialettiIllegalOperationException if the service has already been started
+     */
+    private void begin() throws BialettiIllegalOperationException {
+        if (!state.compareAndSet(BialettiServiceState.NEW, BialettiServiceState.STARTING)) {
+            throw new BialettiIllegalOperationException("Service \"" + getClass().getSimpleName() + "\" has already been started");
+        }
+    }
+
+    /**
+     * Runs the start method and marks the service as running
+     * If the start method throws, the service is terminated instead: its resources are released and waiters are
+     * told that it never started. The exception is rethrown to the caller of a driven service, and forwarded to the
+     * handler methods otherwise.
+     */
+    private void bootstrap() {
+        try { start(); }
+        catch (RuntimeException | Error e) {
+            abort(e);
+
+            if (driven) throw e;
+
+            // Call handler method
+            raiseException(e);
+            return;
+        }
+
+        // The start method may have stopped the service
+        state.compareAndSet(BialettiServiceState.STARTING, BialettiServiceState.RUNNING);
+        startedLatch.countDown();
+    }
+
+    /**
+     * Terminates a service whose start method failed, without draining handlers or calling end methods
+     * @param cause the exception thrown by the start method (Receives those thrown while releasing resources)
+     */
+    private void abort(Throwable cause) {
+        // The start method may have stopped the service, in which case stop() did the rest
+        if (!state.compareAndSet(BialettiServiceState.STARTING, BialettiServiceState.TERMINATED)) {
+            startedLatch.countDown();
+            return;
+        }
+
+        List<Thread> handlers;
+        synchronized (threads) {
+            handlers = new ArrayList<>(threads);
+            threads.clear();
+        }
+
+        unblocked = true;
+        try { unblock(); }
+
+        // Resources may be released only in part, the first failure is the one that matters
+        catch (RuntimeException | Error e) { cause.addSuppressed(e); }
+
+        finally {
+            handlers.forEach(Thread::interrupt);
+
+            startedLatch.countDown();
+            terminatedLatch.countDown();
+        }
+    }
+
+    /**
+     * Forwards an exception thrown by a handle method to the handler methods
+     * Exceptions thrown after {@link #unblock()} has been called are the expected result of releasing the resources
+     * the handler was using (Such as a socket closed during a read), so they are not reported
+     * @param throwable the exception
+     */
+    private void raiseHandlerException(Throwable throwable) {
+        if (!unblocked) raiseCountedException(throwable);
+    }
+
+    /**
+     * Counts an exception thrown by a handle method and forwards it to the handler methods
+     * @param throwable the exception
+     */
+    private void raiseCountedException(Throwable throwable) {
+        BialettiMetrics recorder = metrics;
+        if (recorder != null) recorder.increment(BialettiCounter.HANDLER_EXCEPTIONS);
+
+        raiseException(throwable);
+    }
+
+    /**
+     * @param recorder the metrics
+     * @param method a handle method
+     * @return the histogram of the method's latency
+     */
+    private BialettiHistogram latencyOf(BialettiMetrics recorder, MethodCaller method) {
+        return recorder.histogram(getClass().getSimpleName() + "." + method.getName());
+    }
+
+    /**
+     * Waits for the handler threads to finish their current iteration
+     * @param handlers the handler threads
+     */
+    private void drain(List<Thread> handlers) {
+        long deadline = System.nanoTime() + drainTimeoutNanos;
+
+        for (Thread handler : handlers) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+
+            try { handler.join(TimeUnit.NANOSECONDS.toMillis(remaining) + 1); }
+            catch (InterruptedException e) {
+                // Stop waiting, but keep the interrupt for the caller
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package bialetti.service;
+
+/**
+ * The states a {@link BialettiService} goes through during its life
+ * A service moves forward only: NEW, STARTING, RUNNING, STOPPING and finally TERMINATED
+ * @author Alessandro-Salerno
+ */
+public enum BialettiServiceState {
+    /**
+     * The service has not been started yet
+     */
+    NEW,
+    /**
+     * The start method is running
+     */
+    STARTING,
+    /**
+     * The handle methods are running
+     */
+    RUNNING,
+    /**
+     * The service is draining its handlers and releasing its resources
+     */
+    STOPPING,
+    /**
+     * The service has stopped and cannot be started again
+     */
+    TERMINATED
+}
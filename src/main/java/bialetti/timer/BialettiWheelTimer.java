@@ -0,0 +1,360 @@
+package bialetti.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel: runs tasks after a delay, with the precision of one tick, on a single thread
+ * Timeouts are hashed into a ring of buckets by their deadline and the thread only visits one bucket per tick, so
+ * scheduling and cancelling take constant time and a tick only costs the timeouts that share its bucket. This suits
+ * large numbers of timeouts that are mostly cancelled or pushed back before they expire, such as one per connection.
+ * @apiNote tasks run on the wheel's thread and must not block, or they delay every other timeout
+ * @author Alessandro-Salerno
+ */
+public final class BialettiWheelTimer implements AutoCloseable {
+    /**
+     * The duration of a tick unless another one is given, in milliseconds
+     */
+    public static final long DEFAULT_TICK = 100;
+    /**
+     * The number of buckets unless another one is given
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * The most timeouts moved from the queue to the wheel per tick, so that a burst of schedules cannot stall a tick
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * The buckets, one per tick of a turn
+     */
+    private final Bucket[] wheel;
+    /**
+     * Turns a tick into the index of its bucket (The size of the wheel is a power of two)
+     */
+    private final int mask;
+    /**
+     * The duration of a tick, in nanoseconds
+     */
+    private final long tickNanos;
+    /**
+     * When the wheel started, as given by {@link System#nanoTime()}, deadlines are relative to it
+     */
+    private final long startTime;
+    /**
+     * Timeouts scheduled but not placed on the wheel yet (Only the wheel's thread touches the buckets)
+     */
+    private final Queue<Timeout> scheduled;
+    /**
+     * The number of timeouts that have neither expired nor been cancelled
+     */
+    private final AtomicInteger pending;
+    /**
+     * Turns the wheel
+     */
+    private final Thread worker;
+    /**
+     * The number of ticks since the wheel started
+     */
+    private long tick = 0;
+    /**
+     * A boolean that tells whether the wheel has been stopped
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor
+     * @param tickDuration the duration of a tick, which is the precision of the timeouts
+     * @param unit the unit of the duration
+     * @param wheelSize the number of buckets (Rounded up to a power of two)
+     * @throws IllegalArgumentException if the duration or the size is not positive
+     */
+    public BialettiWheelTimer(long tickDuration, TimeUnit unit, int wheelSize) throws IllegalArgumentException {
+        if (tickDuration <= 0) throw new IllegalArgumentException("The tick duration must be positive");
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) throw new IllegalArgumentException("Invalid wheel size " + wheelSize);
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) size <<= 1;
+
+        // Set fields
+        wheel     = new Bucket[size];
+        mask      = size - 1;
+        tickNanos = unit.toNanos(tickDuration);
+        startTime = System.nanoTime();
+        scheduled = new ConcurrentLinkedQueue<>();
+        pending   = new AtomicInteger();
+        worker    = new Thread(this::turn, "bialetti-wheel-timer");
+
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return the timer shared by every connection (Created the first time it is needed)
+     */
+    public static BialettiWheelTimer getDefault() {
+        return Default.INSTANCE;
+    }
+
+    /**
+     * Runs a task after a delay
+     * @param task the task (Must not block)
+     * @param delay the delay, rounded up to the next tick
+     * @param unit the unit of the delay
+     * @return the timeout, which can be cancelled
+     * @throws IllegalStateException if the timer has been stopped
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) throws IllegalStateException {
+        if (closed) throw new IllegalStateException("The timer has been stopped");
+
+        Timeout timeout = new Timeout(this, task, System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel, the timeouts that have not expired yet never run
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Runs the wheel until it is stopped
+     */
+    private void turn() {
+        while (!closed) {
+            long deadline = (tick + 1) * tickNanos;
+
+            // Sleep until the end of the tick
+            long now;
+            while ((now = System.nanoTime() - startTime) < deadline) {
+                if (closed) return;
+                LockSupport.parkNanos(deadline - now);
+            }
+
+            transfer();
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    /**
+     * Places the newly scheduled timeouts on the wheel
+     */
+    private void transfer() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null) return;
+
+            if (timeout.state.get() != Timeout.WAITING) continue;
+
+            // Timeouts already late go in the current bucket
+            long expiresAt = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (expiresAt - tick) / wheel.length;
+
+            wheel[(int) (expiresAt & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * @return the number of timeouts that have neither expired nor been cancelled
+     */
+    public int getPending() { return pending.get(); }
+    /**
+     * @return the duration of a tick, in milliseconds
+     */
+    public long getTickDuration() { return TimeUnit.NANOSECONDS.toMillis(tickNanos); }
+    /**
+     * @return the number of buckets
+     */
+    public int getWheelSize() { return wheel.length; }
+    /**
+     * @return whether the timer has been stopped
+     */
+    public boolean isClosed() { return closed; }
+
+    /**
+     * A task waiting on the wheel
+     * @author Alessandro-Salerno
+     */
+    public static final class Timeout {
+        /**
+         * The state of timeouts waiting to expire
+         */
+        private static final int WAITING = 0;
+        /**
+         * The state of cancelled timeouts
+         */
+        private static final int CANCELLED = 1;
+        /**
+         * The state of expired timeouts
+         */
+        private static final int EXPIRED = 2;
+
+        /**
+         * The wheel of the timeout
+         */
+        private final BialettiWheelTimer timer;
+        /**
+         * The task
+         */
+        private final Runnable task;
+        /**
+         * When the timeout expires, relative to the start of the wheel, in nanoseconds
+         */
+        private final long deadline;
+        /**
+         * Whether the timeout is waiting, cancelled or expired
+         */
+        private final AtomicInteger state;
+        /**
+         * The number of full turns left before the timeout expires (Wheel thread only)
+         */
+        private long rounds;
+        /**
+         * The previous timeout in the bucket (Wheel thread only)
+         */
+        private Timeout prev;
+        /**
+         * The next timeout in the bucket (Wheel thread only)
+         */
+        private Timeout next;
+
+        /**
+         * Constructor
+         * @param w the wheel of the timeout
+         * @param t the task
+         * @param d when the timeout expires, relative to the start of the wheel
+         */
+        private Timeout(BialettiWheelTimer w, Runnable t, long d) {
+            timer    = w;
+            task     = t;
+            deadline = d;
+            state    = new AtomicInteger(WAITING);
+        }
+
+        /**
+         * Cancels the timeout, which is dropped from the wheel the next time its bucket is visited
+         * @return false if the timeout had already expired or been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) return false;
+
+            timer.pending.decrementAndGet();
+            return true;
+        }
+
+        /**
+         * Runs the task
+         */
+        private void expire() {
+            if (!state.compareAndSet(WAITING, EXPIRED)) return;
+            timer.pending.decrementAndGet();
+
+            try { task.run(); }
+            catch (Throwable ignored) {
+                // A failing task must not stop the wheel
+            }
+        }
+
+        /**
+         * @return whether the timeout has been cancelled
+         */
+        public boolean isCancelled() { return state.get() == CANCELLED; }
+        /**
+         * @return whether the task has run (Or is running)
+         */
+        public boolean isExpired() { return state.get() == EXPIRED; }
+    }
+
+    /**
+     * The timeouts hashed to one tick of a turn, as a doubly linked list
+     * @apiNote only used by the wheel's thread
+     * @author Alessandro-Salerno
+     */
+    private static final class Bucket {
+        /**
+         * The first timeout (null if the bucket is empty)
+         */
+        private Timeout head;
+        /**
+         * The last timeout (null if the bucket is empty)
+         */
+        private Timeout tail;
+
+        /**
+         * Adds a timeout at the end of the bucket
+         * @param timeout the timeout
+         */
+        void add(Timeout timeout) {
+            if (head == null) {
+                head = timeout;
+                tail = timeout;
+                return;
+            }
+
+            tail.next    = timeout;
+            timeout.prev = tail;
+            tail         = timeout;
+        }
+
+        /**
+         * Runs the timeouts due in this turn, drops the cancelled ones and counts down the others
+         */
+        void expire() {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.isCancelled()) remove(timeout);
+
+                else if (timeout.rounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                }
+
+                else timeout.rounds--;
+
+                timeout = next;
+            }
+        }
+
+        /**
+         * Unlinks a timeout from the bucket
+         * @param timeout the timeout
+         */
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            else head = timeout.next;
+
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            else tail = timeout.prev;
+
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+    /**
+     * Holds the default timer, started the first time it is needed
+     * @author Alessandro-Salerno
+     */
+    private static final class Default {
+        /**
+         * The timer shared by every connection
+         */
+        static final BialettiWheelTimer INSTANCE = new BialettiWheelTimer(DEFAULT_TICK, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+}
@@ -9,12 +9,24 @@ import java.io.InputStreamReader;
  * @author Alessandro-Salerno
  */
 public class BialettiInputStreamReader extends InputStreamReader {
+    /**
+     * The temp buffer, reused by every call to {@link #readall()}
+     */
+    private final char[] buffer;
+    /**
+     * The final output, reused by every call to {@link #readall()}
+     */
+    private final StringBuilder data;
+
     /**
      * Constructor
      * @param stream the InputStream
      */
     public BialettiInputStreamReader(InputStream stream) {
         super(stream);
+
+        buffer = new char[1024];
+        data   = new StringBuilder();
     }
 
     /**
@@ -22,18 +34,20 @@ public class BialettiInputStreamReader extends InputStreamReader {
      * @throws IOException if an error occurs while reading from the stream
      */
     public String readall() throws IOException {
-        char[] buffer = new char[1024];             // Temp buffer
-        StringBuilder data = new StringBuilder();   // Final output
         int numRead;                                // Number of characters read from the stream
 
-        do {
-            // Read from the stream
-            numRead = read(buffer, 0, buffer.length);
+        synchronized (lock) {
+            data.setLength(0);
+
+            do {
+                // Read from the stream
+                numRead = read(buffer, 0, buffer.length);
 
-            // If the stream was read successfully, then append the temp buffer to the final string
-            if (numRead != -1) data.append(buffer, 0, numRead); else break;
-        } while (numRead == buffer.length);
+                // If the stream was read successfully, then append the temp buffer to the final string
+                if (numRead != -1) data.append(buffer, 0, numRead); else break;
+            } while (numRead == buffer.length);
 
-        return data.toString();
+            return data.toString();
+        }
     }
 }
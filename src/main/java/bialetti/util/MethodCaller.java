@@ -1,36 +1,65 @@
 package bialetti.util;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A utility that calls a given method on a target object when requested
+ * The method is resolved once and bound to its target, either as a class generated through the
+ * {@link LambdaMetafactory} or as a bound {@link MethodHandle}, so that calls can be inlined by the JIT
+ * and exceptions are forwarded without being wrapped
  * @author Alessandro-Salerno
  */
 public final class MethodCaller {
     /**
-     * The object on which the method is called
+     * Lookup used to resolve methods
      */
-    private final Object target;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
     /**
-     * The method to call
+     * Cached factories that turn a target object into an {@link Invoker} (One per method)
      */
-    private final Method method;
+    private static final Map<Method, MethodHandle> FACTORIES = new ConcurrentHashMap<>();
     /**
-     * The method's arguments
+     * Marks methods for which no factory could be generated
      */
-    private  final Object[] args;
+    private static final MethodHandle NO_FACTORY = MethodHandles.constant(Object.class, null);
+
+    /**
+     * The bound call
+     */
+    private final Invoker invoker;
+    /**
+     * The name of the method
+     */
+    private final String name;
 
     /**
      * Constructor
-     * @param o the target object
+     * @param o the target object (Ignored for static methods)
      * @param m the method
      * @param a the method's arguments
+     * @throws IllegalArgumentException if the method cannot be accessed or the arguments do not match its parameters
      */
-    public MethodCaller(Object o, Method m, Object... a) {
-        target = o;
-        method = m;
-        args = a;
+    public MethodCaller(Object o, Method m, Object... a) throws IllegalArgumentException {
+        invoker = bind(o, m, a);
+        name    = m.getName();
+    }
+
+    /**
+     * Constructor
+     * @param n the name of the call
+     * @param i the call itself
+     */
+    public MethodCaller(String n, Invoker i) {
+        invoker = i;
+        name    = n;
     }
 
     /**
@@ -38,15 +67,129 @@ public final class MethodCaller {
      * @throws Throwable if an exception is farwarded from the method
      */
     public void call() throws Throwable {
-        try { method.invoke(target); }
+        invoker.invoke();
+    }
+
+    /**
+     * @return the name of the method
+     */
+    public String getName() { return name; }
+
+    /**
+     * Resolves a method and binds it to its target and arguments
+     * @param target the target object
+     * @param method the method
+     * @param args the method's arguments
+     * @return the bound call
+     * @throws IllegalArgumentException if the method cannot be accessed or the arguments do not match its parameters
+     */
+    private static Invoker bind(Object target, Method method, Object[] args) throws IllegalArgumentException {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        if (args.length != method.getParameterCount()) {
+            throw new IllegalArgumentException("Method " + method.getName() + " takes " + method.getParameterCount()
+                                               + " arguments, " + args.length + " given");
+        }
+
+        // Fast path: generated class that calls the method directly
+        if (!isStatic && args.length == 0) {
+            MethodHandle factory = FACTORIES.computeIfAbsent(method, MethodCaller::generateFactory);
+
+            if (factory != NO_FACTORY) {
+                try { return (Invoker) factory.invoke(target); }
+                catch (Throwable ignored) {
+                    // Fall back to a bound handle
+                }
+            }
+        }
+
+        try {
+            MethodHandle handle = LOOKUP.unreflect(accessible(method));
+            if (!isStatic) handle = handle.bindTo(target);
+
+            return new HandleInvoker(MethodHandles.insertArguments(handle, 0, args)
+                                                  .asType(MethodType.methodType(void.class)));
+        }
+
+        catch (IllegalAccessException | ClassCastException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Generates a factory that creates {@link Invoker}s for an instance method with no parameters
+     * @param method the method
+     * @return the factory, {@link #NO_FACTORY} if none could be generated
+     */
+    private static MethodHandle generateFactory(Method method) {
+        Class<?> owner = method.getDeclaringClass();
+
+        try {
+            // The generated class must be able to see the method's class
+            if (Class.forName(owner.getName(), false, MethodCaller.class.getClassLoader()) != owner) {
+                return NO_FACTORY;
+            }
+
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP,
+                                                          "invoke",
+                                                          MethodType.methodType(Invoker.class, owner),
+                                                          MethodType.methodType(void.class),
+                                                          LOOKUP.unreflect(accessible(method)),
+                                                          MethodType.methodType(void.class));
+
+            return site.getTarget();
+        }
+
+        // The method cannot be linked directly
+        catch (Throwable t) {
+            return NO_FACTORY;
+        }
+    }
+
+    /**
+     * Makes a method accessible if possible
+     * @param method the method
+     * @return the method
+     */
+    private static Method accessible(Method method) {
+        method.trySetAccessible();
+        return method;
+    }
+
+    /**
+     * A call with no arguments and no result that may throw any exception
+     * @author Alessandro-Salerno
+     */
+    @FunctionalInterface
+    public interface Invoker {
+        /**
+         * Performs the call
+         * @throws Throwable if the called code throws one
+         */
+        void invoke() throws Throwable;
+    }
+
+    /**
+     * An {@link Invoker} backed by a fully bound {@link MethodHandle}
+     * @author Alessandro-Salerno
+     */
+    private static final class HandleInvoker implements Invoker {
+        /**
+         * The handle, of type ()void
+         */
+        private final MethodHandle handle;
 
-        catch (IllegalAccessException iae) {
-            iae.printStackTrace();
+        /**
+         * Constructor
+         * @param h the handle
+         */
+        HandleInvoker(MethodHandle h) {
+            handle = h;
         }
 
-        catch (InvocationTargetException ite) {
-            // Throw the underlying exception
-            throw ite.getCause();
+        @Override
+        public void invoke() throws Throwable {
+            handle.invokeExact();
         }
     }
 }
@@ -0,0 +1,92 @@
+package bialetti.util;
+
+import bialetti.BialettiExceptionHandler;
+import bialetti.annotations.exceptions.BialettiExceptionHandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+/**
+ * Calls a method until the running thread is interrupted and forwards exceptions to a handler
+ * Unlike {@link MethodThread}, it can be run on any kind of thread
+ * @author Alessandro-Salerno
+ */
+public class MethodRunner implements Runnable {
+    /**
+     * The exception handler
+     */
+    private final BialettiExceptionHandler exceptionHandler;
+    /**
+     * Caller utility
+     */
+    private final MethodCaller caller;
+
+    /**
+     * Constructor
+     * @param eh the exception handler
+     * @param target the object on which the method will be called
+     * @param m the method
+     * @param args the method's arguments
+     */
+    public MethodRunner(BialettiExceptionHandler eh,
+                        Object target,
+                        Method m,
+                        Object... args) {
+        this(eh, new MethodCaller(target, m, args));
+    }
+
+    /**
+     * Constructor
+     * @param eh the exception handler
+     * @param c the call to be repeated
+     */
+    public MethodRunner(BialettiExceptionHandler eh, MethodCaller c) {
+        exceptionHandler = eh;
+        caller           = c;
+    }
+
+    /**
+     * Constructor
+     * @param handler a lambda expression that handles a generic exception
+     * @param c the call to be repeated
+     */
+    public MethodRunner(Consumer<Throwable> handler, MethodCaller c) {
+        this(new BialettiExceptionHandler() {
+            @Override
+            @BialettiExceptionHandlerMethod
+            public void onThrowable(Throwable throwable) {
+                handler.accept(throwable);
+            }
+        }, c);
+    }
+
+    /**
+     * Constructor
+     * @param handler a lambda expression that handles a generic exception
+     * @param target the object on which the method will be called
+     * @param m the method
+     * @param args the method's arguments
+     */
+    public MethodRunner(Consumer<Throwable> handler,
+                        Object target,
+                        Method m,
+                        Object... args) {
+        this(handler, new MethodCaller(target, m, args));
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.interrupted()) runOnce();
+    }
+
+    /**
+     * Calls the method once
+     */
+    public void runOnce() {
+        try { caller.call(); }
+        catch (Throwable t) {
+            // Call handler method
+            exceptionHandler.raiseException(t);
+        }
+    }
+}
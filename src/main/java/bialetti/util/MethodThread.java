@@ -1,7 +1,6 @@
 package bialetti.util;
 
 import bialetti.BialettiExceptionHandler;
-import bialetti.annotations.exceptions.BialettiExceptionHandlerMethod;
 
 import java.lang.reflect.Method;
 import java.util.function.Consumer;
@@ -9,17 +8,14 @@ import java.util.function.Consumer;
 /**
  * Subclass of {@link Thread}
  * Calls a method until the thread is interrupted and forwards exceptions to a handler
+ * @see MethodRunner
  * @author Alessandro-Salerno
  */
 public class MethodThread extends Thread {
     /**
-     * The exception handler
+     * The loop run by the thread
      */
-    private final BialettiExceptionHandler exceptionHandler;
-    /**
-     * Caller utility
-     */
-    private final MethodCaller caller;
+    private final MethodRunner runner;
 
     /**
      * Constructor
@@ -32,8 +28,7 @@ public class MethodThread extends Thread {
                         Object target,
                         Method m,
                         Object... args) {
-        exceptionHandler = eh;
-        caller           = new MethodCaller(target, m, args);
+        runner = new MethodRunner(eh, target, m, args);
     }
 
     /**
@@ -47,23 +42,11 @@ public class MethodThread extends Thread {
                         Object target,
                         Method m,
                         Object... args) {
-        this(new BialettiExceptionHandler() {
-            @Override
-            @BialettiExceptionHandlerMethod
-            public void onThrowable(Throwable throwable) {
-                handler.accept(throwable);
-            }
-        }, target, m, args);
+        runner = new MethodRunner(handler, target, m, args);
     }
 
     @Override
     public void run() {
-        while (!Thread.interrupted()) {
-            try { caller.call(); }
-            catch (Throwable t) {
-                // Call handler method
-                exceptionHandler.raiseException(t);
-            }
-        }
+        runner.run();
     }
 }
@@ -0,0 +1,171 @@
+package bialetti.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiBufferPool} and {@link BialettiPooledBuffer}
+ * @author Alessandro-Salerno
+ */
+public class BialettiBufferPoolTest {
+    /**
+     * How long to wait for the garbage collector to report a leak, in milliseconds
+     */
+    private static final long LEAK_TIMEOUT = 10_000;
+
+    @Test
+    public void acquireRoundsUpToTheSizeClass() {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 4096, 4, 2);
+
+        try (BialettiPooledBuffer pooled = pool.acquire(300)) {
+            ByteBuffer buffer = pooled.getBuffer();
+
+            assertTrue(buffer.isDirect());
+            assertEquals(512, buffer.capacity());
+            assertEquals(0, buffer.position());
+            assertEquals(300, buffer.limit());
+        }
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 4096, 4, 2);
+
+        BialettiPooledBuffer first = pool.acquire(256);
+        ByteBuffer buffer          = first.getBuffer();
+        first.release();
+
+        BialettiPooledBuffer second = pool.acquire(200);
+        assertSame(buffer, second.getBuffer());
+        assertEquals(200, second.getBuffer().limit());
+        second.release();
+
+        assertEquals(1, pool.getMisses());
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getOutstanding());
+    }
+
+    @Test
+    public void buffersOverflowTheThreadCacheIntoTheSharedPool() {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 256, 4, 1);
+
+        BialettiPooledBuffer first  = pool.acquire(256);
+        BialettiPooledBuffer second = pool.acquire(256);
+        first.release();
+        second.release();
+
+        // One comes from the thread cache, the other from the shared pool
+        pool.acquire(256).release();
+        BialettiPooledBuffer a = pool.acquire(256);
+        BialettiPooledBuffer b = pool.acquire(256);
+
+        assertNotSame(a.getBuffer(), b.getBuffer());
+        assertEquals(2, pool.getMisses());
+        assertEquals(3, pool.getHits());
+
+        a.release();
+        b.release();
+    }
+
+    @Test
+    public void largeBuffersAreNotPooled() {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 1024, 4, 2);
+
+        BialettiPooledBuffer pooled = pool.acquire(5000);
+        ByteBuffer buffer           = pooled.getBuffer();
+        assertEquals(5000, buffer.capacity());
+        pooled.release();
+
+        BialettiPooledBuffer next = pool.acquire(5000);
+        assertNotSame(buffer, next.getBuffer());
+        next.release();
+
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(0, pool.getOutstanding());
+    }
+
+    @Test
+    public void bufferGoesBackOnlyWithTheLastReference() {
+        BialettiBufferPool pool     = new BialettiBufferPool(256, 1024, 4, 2);
+        BialettiPooledBuffer pooled = pool.acquire(256);
+
+        assertSame(pooled, pooled.retain());
+        assertEquals(2, pooled.getReferenceCount());
+
+        assertFalse(pooled.release());
+        assertEquals(1, pool.getOutstanding());
+        assertNotNull(pooled.getBuffer());
+
+        assertTrue(pooled.release());
+        assertEquals(0, pooled.getReferenceCount());
+        assertEquals(0, pool.getOutstanding());
+    }
+
+    @Test
+    public void releasedBuffersCannotBeUsed() {
+        BialettiBufferPool pool     = new BialettiBufferPool(256, 1024, 4, 2);
+        BialettiPooledBuffer pooled = pool.acquire(256);
+        pooled.release();
+
+        assertThrows(IllegalStateException.class, pooled::getBuffer);
+        assertThrows(IllegalStateException.class, pooled::retain);
+        assertThrows(IllegalStateException.class, pooled::release);
+        assertEquals(0, pool.getOutstanding());
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new BialettiBufferPool(0, 1024, 4, 2));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiBufferPool(1024, 256, 4, 2));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiBufferPool(256, 1024, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiBufferPool(256, 1024, 4, -1));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiBufferPool(256, 1024, 4, 2).acquire(-1));
+    }
+
+    @Test
+    public void leaksAreReportedWithLeakDetection() throws InterruptedException {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 1024, 4, 2);
+        pool.setLeakDetection(true);
+        assertTrue(pool.isLeakDetectionEnabled());
+
+        // Released buffers are not leaks
+        pool.acquire(256).release();
+        leak(pool);
+
+        long deadline = System.currentTimeMillis() + LEAK_TIMEOUT;
+        while (pool.getLeaks() == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, pool.getLeaks());
+        assertEquals(1, pool.getOutstanding());
+    }
+
+    @Test
+    public void leaksAreNotTrackedByDefault() throws InterruptedException {
+        BialettiBufferPool pool = new BialettiBufferPool(256, 1024, 4, 2);
+        assertFalse(pool.isLeakDetectionEnabled());
+
+        leak(pool);
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        assertEquals(0, pool.getLeaks());
+    }
+
+    /**
+     * Acquires a buffer and drops it without releasing it
+     * @param pool the pool
+     */
+    private static void leak(BialettiBufferPool pool) {
+        pool.acquire(256).getBuffer().put((byte) 1);
+    }
+}
@@ -0,0 +1,290 @@
+package bialetti.client.tcp;
+
+import bialetti.connection.BialettiSocketOptions;
+import bialetti.exceptions.BialettiIllegalOperationException;
+import bialetti.exceptions.BialettiPoolExhaustedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiTCPClientPool} over loopback
+ * @author Alessandro-Salerno
+ */
+public class BialettiTCPClientPoolTest {
+    /**
+     * How long to wait for the background thread, in milliseconds
+     */
+    private static final long MAINTENANCE_TIMEOUT = 10_000;
+    /**
+     * How long borrowers wait for a connection, in milliseconds
+     */
+    private static final long BORROW_TIMEOUT = 500;
+
+    /**
+     * The servers of the current test
+     */
+    private final List<Listener> listeners = new ArrayList<>();
+    /**
+     * The pool of the current test
+     */
+    private BialettiTCPClientPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) pool.close();
+        for (Listener listener : listeners) listener.close();
+    }
+
+    @Test
+    public void roundRobinTakesTurns() throws Exception {
+        pool = pool(3);
+        pool.setLoadBalancing(BialettiLoadBalancing.ROUND_ROBIN);
+        pool.setConnectionBounds(0, 8);
+
+        // More borrows than endpoints, so that the cursor wraps around
+        List<BialettiTCPClientPool.Lease> leases = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            BialettiTCPClientPool.Lease lease = pool.borrow();
+            leases.add(lease);
+
+            assertEquals(listeners.get(i % 3).port(), lease.getEndpoint().getPort(), "Borrow " + i);
+        }
+
+        assertEquals(10, pool.getInFlight());
+        for (BialettiTCPClientPool.Lease lease : leases) lease.close();
+
+        assertEquals(0, pool.getInFlight());
+        assertEquals(10, pool.getIdleConnections());
+    }
+
+    @Test
+    public void leastInFlightPrefersTheLeastBusyEndpoint() throws Exception {
+        pool = pool(2);
+        pool.setLoadBalancing(BialettiLoadBalancing.LEAST_IN_FLIGHT);
+        pool.setConnectionBounds(0, 8);
+
+        BialettiTCPClientPool.Lease first  = pool.borrow();
+        BialettiTCPClientPool.Lease second = pool.borrow();
+        assertNotEquals(first.getEndpoint(), second.getEndpoint());
+
+        // Both endpoints are equally busy, then one of them has two borrowed connections
+        BialettiTCPClientPool.Lease third = pool.borrow();
+        InetSocketAddress busy            = third.getEndpoint();
+        BialettiTCPClientPool.Lease other = busy.equals(first.getEndpoint()) ? second : first;
+
+        // Every following borrow goes to the other endpoint until they are even again
+        other.close();
+        for (int i = 0; i < 20; i++) {
+            try (BialettiTCPClientPool.Lease lease = pool.borrow()) {
+                assertNotEquals(busy, lease.getEndpoint(), "Borrow " + i);
+            }
+        }
+
+        // The idle connection is reused instead of opening a new one
+        assertEquals(3, pool.getOpenConnections());
+
+        first.close();
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void borrowersGiveUpWhenThePoolIsExhausted() throws Exception {
+        pool = pool(1);
+        pool.setConnectionBounds(0, 2);
+        pool.setBorrowTimeout(BORROW_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        BialettiTCPClientPool.Lease first  = pool.borrow();
+        BialettiTCPClientPool.Lease second = pool.borrow();
+
+        long start = System.nanoTime();
+        assertThrows(BialettiPoolExhaustedException.class, () -> pool.borrow());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(BORROW_TIMEOUT));
+        assertEquals(2, pool.getOpenConnections());
+
+        // A connection given back is handed to the next borrower
+        second.close();
+        try (BialettiTCPClientPool.Lease third = pool.borrow()) {
+            assertSame(second.getEndpoint(), third.getEndpoint());
+            assertEquals(2, pool.getOpenConnections());
+        }
+
+        // Waiting borrowers are woken up as soon as a connection is given back
+        pool.borrow();
+        Thread giver = new Thread(() -> {
+            try { Thread.sleep(20); }
+            catch (InterruptedException ignored) { }
+
+            first.close();
+        });
+
+        giver.start();
+        assertNotNull(pool.borrow());
+        giver.join();
+    }
+
+    @Test
+    public void failingEndpointsAreEjectedAndRecovered() throws Exception {
+        pool = pool(2);
+        Listener failing         = listeners.get(1);
+        Set<Integer> unreachable = ConcurrentHashMap.newKeySet();
+
+        pool.setLoadBalancing(BialettiLoadBalancing.ROUND_ROBIN);
+        pool.setConnectionBounds(1, 8);
+        pool.setHealthCheckInterval(20, TimeUnit.MILLISECONDS);
+        pool.setHealthCheck(connection -> !unreachable.contains(connection.getSocket().getPort()));
+        pool.open();
+
+        assertEquals(2, pool.getIdleConnections());
+        assertEquals(2, pool.getHealthyEndpoints().size());
+
+        // The probe of the idle connection fails and reconnecting is refused
+        unreachable.add(failing.port());
+        failing.close();
+
+        awaitHealthy(1);
+        assertEquals(listeners.get(0).port(), pool.getHealthyEndpoints().get(0).getPort());
+
+        for (int i = 0; i < 5; i++) {
+            try (BialettiTCPClientPool.Lease lease = pool.borrow()) {
+                assertEquals(listeners.get(0).port(), lease.getEndpoint().getPort(), "Borrow " + i);
+            }
+        }
+
+        // The endpoint is tried again in the background and comes back once reachable
+        unreachable.clear();
+        listeners.add(new Listener(failing.port()));
+        awaitHealthy(2);
+    }
+
+    @Test
+    public void settingsAreFixedOnceOpened() throws Exception {
+        pool = pool(1);
+
+        assertThrows(IllegalArgumentException.class, () -> pool.setConnectionBounds(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> pool.setConnectionBounds(3, 2));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiTCPClientPool(List.of(), BialettiSocketOptions.DEFAULT));
+
+        pool.open();
+        assertThrows(BialettiIllegalOperationException.class, () -> pool.setLoadBalancing(BialettiLoadBalancing.ROUND_ROBIN));
+
+        pool.close();
+        assertTrue(pool.isClosed());
+        assertEquals(0, pool.getOpenConnections());
+        assertThrows(IOException.class, () -> pool.borrow());
+    }
+
+    /**
+     * Starts the servers and creates a pool over them
+     * @param count the number of servers
+     * @return the pool, not opened yet
+     * @throws IOException if a server cannot be started
+     */
+    private BialettiTCPClientPool pool(int count) throws IOException {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Listener listener = new Listener(0);
+            listeners.add(listener);
+            endpoints.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.port()));
+        }
+
+        return new BialettiTCPClientPool(endpoints, BialettiSocketOptions.DEFAULT);
+    }
+
+    /**
+     * Waits for the background thread to bring the pool to a number of healthy endpoints
+     * @param count the number of healthy endpoints
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitHealthy(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MAINTENANCE_TIMEOUT;
+
+        while (pool.getHealthyEndpoints().size() != count) {
+            if (System.currentTimeMillis() > deadline) fail("Expected " + count + " healthy endpoints");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * A loopback server that accepts connections and keeps them open
+     * @author Alessandro-Salerno
+     */
+    private static final class Listener {
+        /**
+         * The listening socket
+         */
+        private final ServerSocket server;
+        /**
+         * The accepted sockets
+         */
+        private final List<Socket> accepted;
+
+        /**
+         * Constructor
+         * @param port the port to listen on (0 for any)
+         * @throws IOException if the socket cannot be bound
+         */
+        Listener(int port) throws IOException {
+            server   = new ServerSocket();
+            accepted = new ArrayList<>();
+
+            server.setReuseAddress(true);
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+            Thread acceptor = new Thread(this::accept, "listener-" + server.getLocalPort());
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        /**
+         * Accepts connections until the socket is closed
+         */
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    synchronized (accepted) { accepted.add(socket); }
+                }
+            }
+
+            catch (IOException ignored) {
+                // Closed
+            }
+        }
+
+        /**
+         * @return the port the server listens on
+         */
+        int port() { return server.getLocalPort(); }
+
+        /**
+         * Stops listening and closes every accepted socket
+         */
+        void close() {
+            try { server.close(); }
+            catch (IOException ignored) { }
+
+            synchronized (accepted) {
+                for (Socket socket : accepted) {
+                    try { socket.close(); }
+                    catch (IOException ignored) { }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package bialetti.codec;
+
+import bialetti.buffer.BialettiPooledBuffer;
+import bialetti.exceptions.BialettiCompressionException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiCompressor}
+ * @author Alessandro-Salerno
+ */
+public class BialettiCompressorTest {
+    /**
+     * The size from which the tested compressors compress payloads
+     */
+    private static final int THRESHOLD = 64;
+
+    @Test
+    public void smallPayloadsAreSentRaw() throws BialettiCompressionException {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD);
+        byte[] payload                = text(THRESHOLD - 1);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer part      = ByteBuffer.wrap(payload);
+            ByteBuffer[] message = compressor.compress(out, part);
+
+            assertEquals(2, message.length);
+            assertSame(part, message[1]);
+            assertEquals(0, part.position());
+
+            ByteBuffer joined = join(message);
+            assertFalse(BialettiCompressor.isCompressed(joined));
+            assertArrayEquals(payload, decompress(compressor, joined));
+        }
+
+        assertEquals(0, compressor.getCompressedMessages());
+        assertEquals(1.0, compressor.getCompressionRatio());
+    }
+
+    @Test
+    public void largePayloadsAreDeflated() throws BialettiCompressionException {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD);
+        byte[] payload                = text(16 * 1024);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer part      = ByteBuffer.wrap(payload);
+            ByteBuffer[] message = compressor.compress(out, part);
+
+            assertEquals(1, message.length);
+            assertFalse(part.hasRemaining());
+            assertTrue(message[0].remaining() < payload.length / 4);
+
+            ByteBuffer joined = join(message);
+            assertTrue(BialettiCompressor.isCompressed(joined));
+            assertArrayEquals(payload, decompress(compressor, joined));
+        }
+
+        assertEquals(1, compressor.getCompressedMessages());
+        assertTrue(compressor.getCompressionRatio() < 0.25);
+    }
+
+    @Test
+    public void payloadsCanBeSplitAcrossBuffers() throws BialettiCompressionException {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD, Deflater.BEST_COMPRESSION, 1 << 20);
+        byte[] payload                = text(10_000);
+
+        ByteBuffer first  = ByteBuffer.wrap(payload, 0, 3_000).slice();
+        ByteBuffer second = ByteBuffer.allocateDirect(payload.length - 3_000).put(payload, 3_000, payload.length - 3_000).flip();
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer joined = join(compressor.compress(out, first, second));
+
+            assertTrue(BialettiCompressor.isCompressed(joined));
+            assertArrayEquals(payload, decompress(compressor, joined));
+        }
+    }
+
+    @Test
+    public void payloadsThatDoNotShrinkAreSentRaw() throws BialettiCompressionException {
+        BialettiCompressor compressor = new BialettiCompressor(0);
+        byte[] payload                = new byte[4096];
+        new Random(1).nextBytes(payload);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer part      = ByteBuffer.wrap(payload);
+            ByteBuffer[] message = compressor.compress(out, part);
+
+            assertEquals(2, message.length);
+            assertEquals(0, part.position());
+            assertArrayEquals(payload, decompress(compressor, join(message)));
+        }
+
+        assertEquals(0, compressor.getCompressedMessages());
+    }
+
+    @Test
+    public void emptyPayloadsSurvive() throws BialettiCompressionException {
+        BialettiCompressor compressor = new BialettiCompressor(0);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            assertArrayEquals(new byte[0], decompress(compressor, join(compressor.compress(out, ByteBuffer.allocate(0)))));
+        }
+    }
+
+    @Test
+    public void oversizedPayloadsAreRejected() throws BialettiCompressionException {
+        BialettiCompressor small = new BialettiCompressor(THRESHOLD, BialettiCompressor.DEFAULT_LEVEL, 1000);
+        BialettiCompressor large = new BialettiCompressor(THRESHOLD);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            assertThrows(IllegalArgumentException.class, () -> small.compress(out, ByteBuffer.wrap(text(1001))));
+
+            // The receiver does not inflate what it would not send
+            ByteBuffer message = join(large.compress(out, ByteBuffer.wrap(text(1001))));
+            assertTrue(BialettiCompressor.isCompressed(message));
+            assertThrows(BialettiCompressionException.class, () -> small.decompress(message));
+        }
+
+        ByteBuffer negative = ByteBuffer.allocate(5).put(BialettiCompressor.DEFLATE).putInt(-1).flip();
+        assertThrows(BialettiCompressionException.class, () -> large.decompress(negative));
+    }
+
+    @Test
+    public void truncatedMessagesAreRejected() {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer message = join(compressor.compress(out, ByteBuffer.wrap(text(8192))));
+
+            // Cut in the header, then in the body
+            for (int length : new int[] { 1, 3, message.remaining() / 2, message.remaining() - 1 }) {
+                ByteBuffer truncated = message.duplicate().limit(length);
+                assertThrows(BialettiCompressionException.class, () -> compressor.decompress(truncated), "Length " + length);
+            }
+        }
+    }
+
+    @Test
+    public void sizeMismatchesAreRejected() {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD);
+
+        try (BialettiBinaryWriter out = new BialettiBinaryWriter()) {
+            ByteBuffer message = join(compressor.compress(out, ByteBuffer.wrap(text(8192))));
+
+            ByteBuffer shorter = message.duplicate().putInt(1, 8191);
+            assertThrows(BialettiCompressionException.class, () -> compressor.decompress(shorter));
+
+            ByteBuffer longer = message.duplicate().putInt(1, 8193);
+            assertThrows(BialettiCompressionException.class, () -> compressor.decompress(longer));
+        }
+    }
+
+    @Test
+    public void malformedMessagesAreRejected() {
+        BialettiCompressor compressor = new BialettiCompressor(THRESHOLD);
+
+        assertThrows(BialettiCompressionException.class, () -> compressor.decompress(ByteBuffer.allocate(0)));
+        assertThrows(BialettiCompressionException.class, () -> compressor.decompress(ByteBuffer.wrap(new byte[] { 2, 0 })));
+
+        ByteBuffer garbage = ByteBuffer.allocate(64).put(BialettiCompressor.DEFLATE).putInt(32);
+        while (garbage.hasRemaining()) garbage.put((byte) 0xff);
+        assertThrows(BialettiCompressionException.class, () -> compressor.decompress(garbage.flip()));
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new BialettiCompressor(-1));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiCompressor(0, 0, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiCompressor(0, 10, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiCompressor(0, BialettiCompressor.DEFAULT_LEVEL, 0));
+    }
+
+    /**
+     * Decompresses a message
+     * @param compressor the compressor
+     * @param message the message
+     * @return the payload
+     * @throws BialettiCompressionException if the message is malformed
+     */
+    private static byte[] decompress(BialettiCompressor compressor, ByteBuffer message) throws BialettiCompressionException {
+        try (BialettiPooledBuffer payload = compressor.decompress(message)) {
+            assertFalse(message.hasRemaining());
+
+            byte[] bytes = new byte[payload.getBuffer().remaining()];
+            payload.getBuffer().get(bytes);
+
+            return bytes;
+        }
+    }
+
+    /**
+     * Copies the buffers of a message into one, like the receiving end sees it
+     * @param message the buffers of the message
+     * @return the message (In read mode)
+     */
+    private static ByteBuffer join(ByteBuffer[] message) {
+        int length = 0;
+        for (ByteBuffer part : message) length += part.remaining();
+
+        ByteBuffer joined = ByteBuffer.allocate(length);
+        for (ByteBuffer part : message) joined.put(part.duplicate());
+
+        return joined.flip();
+    }
+
+    /**
+     * @param length the number of bytes
+     * @return compressible text
+     */
+    private static byte[] text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; text.length() < length; i++) text.append("message ").append(i).append(' ');
+
+        return text.substring(0, length).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,198 @@
+package bialetti.connection.tcp;
+
+import bialetti.timer.BialettiWheelTimer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiIdleMonitor} over loopback
+ * @author Alessandro-Salerno
+ */
+public class BialettiIdleMonitorTest {
+    /**
+     * The idle timeout of the tests, in milliseconds
+     */
+    private static final long TIMEOUT = 200;
+    /**
+     * How often the tests read or write while the connection is meant to be active, in milliseconds
+     */
+    private static final long ACTIVITY_INTERVAL = 40;
+
+    /**
+     * Runs the checks of the monitors
+     */
+    private BialettiWheelTimer timer;
+    /**
+     * Accepts the watched connection
+     */
+    private ServerSocket server;
+    /**
+     * The other end of the watched connection
+     */
+    private Socket peer;
+    /**
+     * The watched connection
+     */
+    private BialettiTCPConnection connection;
+    /**
+     * The idle states the listener was told about, in order
+     */
+    private final List<BialettiIdleState> states = new ArrayList<>();
+    /**
+     * When the listener was told, as given by {@link System#nanoTime()}
+     */
+    private final List<Long> times = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        timer      = new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+        server     = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        connection = new BialettiTCPConnection(InetAddress.getLoopbackAddress().getHostAddress(), server.getLocalPort());
+        peer       = server.accept();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        connection.close();
+        peer.close();
+        server.close();
+        timer.close();
+    }
+
+    @Test
+    public void writesPushTheWriterTimeoutBack() throws Exception {
+        BialettiIdleMonitor monitor = monitor(BialettiIdlePolicy.NONE.withWriteTimeout(TIMEOUT, TimeUnit.MILLISECONDS));
+        monitor.start();
+
+        // Active for several timeouts, every check finds a recent write and moves itself
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3 * TIMEOUT);
+        while (System.nanoTime() < end) {
+            connection.send("x");
+            Thread.sleep(ACTIVITY_INTERVAL);
+        }
+
+        assertEquals(0, told());
+
+        long lastWrite = connection.getLastWriteTime();
+        awaitTold(1);
+
+        synchronized (states) {
+            assertEquals(BialettiIdleState.WRITER_IDLE, states.get(0));
+            assertTrue(times.get(0) - lastWrite >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT));
+        }
+
+        monitor.stop();
+    }
+
+    @Test
+    public void readsPushTheReaderTimeoutBack() throws Exception {
+        BialettiIdleMonitor monitor = monitor(BialettiIdlePolicy.NONE.withReadTimeout(TIMEOUT, TimeUnit.MILLISECONDS));
+        monitor.start();
+
+        OutputStream out = peer.getOutputStream();
+        long end         = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3 * TIMEOUT);
+
+        while (System.nanoTime() < end) {
+            out.write('x');
+            out.flush();
+            assertEquals("x", connection.receive());
+
+            Thread.sleep(ACTIVITY_INTERVAL);
+        }
+
+        assertEquals(0, told());
+
+        long lastRead = connection.getLastReadTime();
+        awaitTold(1);
+
+        synchronized (states) {
+            assertEquals(BialettiIdleState.READER_IDLE, states.get(0));
+            assertTrue(times.get(0) - lastRead >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT));
+        }
+
+        // Still idle, so the listener is told again one timeout later
+        awaitTold(2);
+        monitor.stop();
+    }
+
+    @Test
+    public void stoppedMonitorsCancelTheirTimeouts() throws Exception {
+        BialettiIdleMonitor monitor = monitor(BialettiIdlePolicy.NONE.withReadTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                                                                     .withWriteTimeout(TIMEOUT, TimeUnit.MILLISECONDS));
+        monitor.start();
+        assertEquals(2, timer.getPending());
+
+        monitor.stop();
+        assertTrue(monitor.isStopped());
+        assertEquals(0, timer.getPending());
+
+        Thread.sleep(2 * TIMEOUT);
+        assertEquals(0, told());
+
+        // Stopped monitors cannot be started again
+        monitor.start();
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    public void monitorsStopWithTheirConnection() throws Exception {
+        BialettiIdleMonitor monitor = monitor(BialettiIdlePolicy.NONE.withReadTimeout(TIMEOUT, TimeUnit.MILLISECONDS));
+        monitor.start();
+
+        connection.close();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!monitor.isStopped() && System.nanoTime() < deadline) Thread.sleep(10);
+
+        assertTrue(monitor.isStopped());
+        assertEquals(0, timer.getPending());
+        assertEquals(0, told());
+    }
+
+    /**
+     * Creates a monitor of the connection whose listener records what it is told, on the wheel's thread
+     * @param policy the timeouts
+     * @return the monitor, not started yet
+     */
+    private BialettiIdleMonitor monitor(BialettiIdlePolicy policy) {
+        return new BialettiIdleMonitor(connection, policy, state -> {
+            synchronized (states) {
+                states.add(state);
+                times.add(System.nanoTime());
+            }
+        }, Runnable::run, timer);
+    }
+
+    /**
+     * @return the number of times the listener has been told
+     */
+    private int told() {
+        synchronized (states) { return states.size(); }
+    }
+
+    /**
+     * Waits for the listener to have been told a number of times
+     * @param count the number of times
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitTold(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (told() < count) {
+            if (System.nanoTime() > deadline) fail("The listener was told " + told() + " times, not " + count);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package bialetti.connection.tcp.framing;
+
+import bialetti.exceptions.BialettiFramingException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the {@link BialettiFrameCodec} implementations, fed the way a connection reads from its socket
+ * @author Alessandro-Salerno
+ */
+public class BialettiFrameCodecTest {
+    @Test
+    public void lengthFieldFramesSplitAcrossReads() throws BialettiFramingException {
+        BialettiFrameCodec codec = new BialettiLengthFieldFrameCodec();
+        byte[] stream            = join(encode(codec, "hello"), encode(codec, "world!"));
+
+        // One byte per read, so that both the length field and the payload arrive in pieces
+        assertEquals(List.of("hello", "world!"), receive(codec, split(stream, 1)));
+        assertEquals(List.of("hello", "world!"), receive(codec, split(stream, 3)));
+    }
+
+    @Test
+    public void lengthFieldFramesInOneRead() throws BialettiFramingException {
+        BialettiFrameCodec codec = new BialettiLengthFieldFrameCodec(2, 100);
+        byte[] stream            = join(encode(codec, "a"), encode(codec, ""), encode(codec, "bc"), encode(codec, "d"));
+
+        assertEquals(List.of("a", "", "bc", "d"), receive(codec, stream));
+    }
+
+    @Test
+    public void lengthFieldFramesAtTheLimit() throws BialettiFramingException {
+        BialettiLengthFieldFrameCodec codec = new BialettiLengthFieldFrameCodec(2, 10);
+
+        assertEquals(List.of("0123456789"), receive(codec, encode(codec, "0123456789")));
+        assertThrows(IllegalArgumentException.class, () -> encode(codec, "0123456789A"));
+
+        // The length field alone is enough to reject the frame
+        assertThrows(BialettiFramingException.class, () -> receive(codec, new byte[] { 0, 11 }));
+    }
+
+    @Test
+    public void lengthFieldBounds() throws BialettiFramingException {
+        assertEquals(255, new BialettiLengthFieldFrameCodec(1, 1000).getMaxFrameLength());
+        assertEquals(65535, new BialettiLengthFieldFrameCodec(2, 1 << 20).getMaxFrameLength());
+        assertEquals(1 << 20, new BialettiLengthFieldFrameCodec(4, 1 << 20).getMaxFrameLength());
+        assertEquals(16 * 1024 * 1024, new BialettiLengthFieldFrameCodec().getMaxFrameLength());
+
+        assertThrows(IllegalArgumentException.class, () -> new BialettiLengthFieldFrameCodec(0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiLengthFieldFrameCodec(3, 100));
+
+        // Lengths are unsigned
+        BialettiFrameCodec small = new BialettiLengthFieldFrameCodec(1, 255);
+        byte[] payload           = new byte[255];
+        Arrays.fill(payload, (byte) 'x');
+
+        assertEquals(List.of(new String(payload, StandardCharsets.US_ASCII)), receive(small, encode(small, payload)));
+
+        BialettiFrameCodec large = new BialettiLengthFieldFrameCodec(4, Integer.MAX_VALUE);
+        assertThrows(BialettiFramingException.class, () -> receive(large, new byte[] { -1, -1, -1, -1 }));
+    }
+
+    @Test
+    public void delimitedFramesSplitAcrossReads() throws BialettiFramingException {
+        BialettiFrameCodec codec = new BialettiDelimiterFrameCodec(bytes("||"), 100);
+        byte[] stream            = bytes("first||second||||third||");
+
+        // Every possible size of read, including the ones that cut the delimiter in half
+        for (int size = 1; size <= stream.length; size++) {
+            assertEquals(List.of("first", "second", "", "third"), receive(codec, split(stream, size)), "Reads of " + size);
+        }
+    }
+
+    @Test
+    public void delimitedFramesInOneRead() throws BialettiFramingException {
+        BialettiFrameCodec codec = new BialettiDelimiterFrameCodec(bytes("\n"), 100);
+
+        assertEquals(List.of("a", "bc", "", "d"), receive(codec, bytes("a\nbc\n\nd\n")));
+
+        // What follows the last delimiter waits for the next read
+        assertEquals(List.of("a", "bcd"), receive(codec, bytes("a\nb"), bytes("c"), bytes("d\n")));
+    }
+
+    @Test
+    public void delimitedFramesAtTheLimit() throws BialettiFramingException {
+        assertEquals(List.of("12345"), receive(new BialettiDelimiterFrameCodec(bytes("\n"), 5), bytes("12345\n")));
+
+        // Whole, then growing without a delimiter
+        assertThrows(BialettiFramingException.class, () -> receive(new BialettiDelimiterFrameCodec(bytes("\n"), 5), bytes("123456\n")));
+        assertThrows(BialettiFramingException.class, () -> receive(new BialettiDelimiterFrameCodec(bytes("\n"), 5), bytes("123"), bytes("456")));
+
+        // A frame at the limit may still be waiting for its delimiter
+        assertEquals(List.of("12345"), receive(new BialettiDelimiterFrameCodec(bytes("\n"), 5), bytes("12345"), bytes("\n")));
+
+        assertThrows(IllegalArgumentException.class, () -> new BialettiDelimiterFrameCodec(new byte[0], 5));
+    }
+
+    @Test
+    public void delimiterScanResumesWhereItStopped() throws BialettiFramingException {
+        BialettiFrameCodec codec = new BialettiDelimiterFrameCodec(bytes("--"), 100);
+        ByteBuffer inbound       = ByteBuffer.allocate(64).put(bytes("abc-"));
+
+        assertNull(codec.decode(inbound.duplicate().flip()));
+
+        // The bytes already searched are not searched again, but the last one may still start the delimiter
+        inbound.put(1, (byte) '-').put(2, (byte) '-');
+        inbound.put(bytes("-def--"));
+
+        ByteBuffer readable = inbound.duplicate().flip();
+        assertEquals("a--", string(codec.decode(readable)));
+        assertEquals("def", string(codec.decode(readable)));
+        assertFalse(readable.hasRemaining());
+    }
+
+    @Test
+    public void linesStripCarriageReturns() throws BialettiFramingException {
+        BialettiFrameCodec codec = BialettiDelimiterFrameCodec.lines(5);
+
+        // The carriage return ends one read and the line feed starts the next
+        assertEquals(List.of("hello", "world"), receive(codec, bytes("hello\r"), bytes("\nworld\n")));
+        assertEquals(List.of("", "a\rb", "c"), receive(codec, bytes("\r\na\rb\n"), bytes("c\r"), bytes("\n")));
+
+        // The carriage return does not count towards the limit
+        assertEquals(List.of("12345"), receive(codec, bytes("12345\r\n")));
+        assertThrows(BialettiFramingException.class, () -> receive(BialettiDelimiterFrameCodec.lines(5), bytes("123456\r\n")));
+    }
+
+    @Test
+    public void fixedLengthFrames() throws BialettiFramingException {
+        BialettiFixedLengthFrameCodec codec = new BialettiFixedLengthFrameCodec(3);
+        byte[] stream                       = bytes("abcdefghi");
+
+        assertEquals(List.of("abc", "def", "ghi"), receive(codec, stream));
+        assertEquals(List.of("abc", "def", "ghi"), receive(codec, split(stream, 2)));
+        assertEquals(List.of("abc"), receive(codec, bytes("abcde")));
+
+        assertArrayEquals(bytes("xyz"), join(codec.encode(ByteBuffer.wrap(bytes("x")), ByteBuffer.wrap(bytes("yz")))));
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(ByteBuffer.wrap(bytes("ab"))));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiFixedLengthFrameCodec(0));
+    }
+
+    /**
+     * Decodes a stream the way a connection does: each read is appended to the unconsumed data, and the bytes of the
+     * frames already returned are dropped before the next read
+     * @param codec the codec
+     * @param reads the data returned by each read
+     * @return the payloads of the frames
+     * @throws BialettiFramingException if the data is not valid for the framing
+     */
+    private static List<String> receive(BialettiFrameCodec codec, byte[]... reads) throws BialettiFramingException {
+        ByteBuffer inbound  = ByteBuffer.allocate(join(reads).length);
+        List<String> frames = new ArrayList<>();
+
+        for (byte[] read : reads) {
+            inbound.put(read);
+
+            ByteBuffer readable = inbound.duplicate().flip();
+            ByteBuffer frame;
+
+            while ((frame = codec.decode(readable)) != null) frames.add(string(frame));
+
+            inbound.flip().position(readable.position());
+            inbound.compact();
+        }
+
+        return frames;
+    }
+
+    /**
+     * @param codec the codec
+     * @param payload the payload
+     * @return the bytes of the frame
+     */
+    private static byte[] encode(BialettiFrameCodec codec, String payload) {
+        return encode(codec, bytes(payload));
+    }
+
+    /**
+     * @param codec the codec
+     * @param payload the payload
+     * @return the bytes of the frame
+     */
+    private static byte[] encode(BialettiFrameCodec codec, byte[] payload) {
+        return join(codec.encode(ByteBuffer.wrap(payload)));
+    }
+
+    /**
+     * @param stream the bytes
+     * @param size the size of each piece
+     * @return the pieces, the last one possibly shorter
+     */
+    private static byte[][] split(byte[] stream, int size) {
+        byte[][] pieces = new byte[(stream.length + size - 1) / size][];
+
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = Arrays.copyOfRange(stream, i * size, Math.min(stream.length, (i + 1) * size));
+        }
+
+        return pieces;
+    }
+
+    /**
+     * @param parts the parts
+     * @return the parts one after the other
+     */
+    private static byte[] join(byte[]... parts) {
+        ByteBuffer joined = ByteBuffer.allocate(Arrays.stream(parts).mapToInt(part -> part.length).sum());
+        for (byte[] part : parts) joined.put(part);
+
+        return joined.array();
+    }
+
+    /**
+     * @param parts the buffers of a frame
+     * @return their remaining bytes one after the other
+     */
+    private static byte[] join(ByteBuffer[] parts) {
+        ByteBuffer joined = ByteBuffer.allocate(BialettiFrameCodec.length(parts));
+        for (ByteBuffer part : parts) joined.put(part.duplicate());
+
+        return joined.array();
+    }
+
+    /**
+     * @param text ASCII text
+     * @return its bytes
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param buffer a buffer
+     * @return its remaining bytes as ASCII text
+     */
+    private static String string(ByteBuffer buffer) {
+        return StandardCharsets.US_ASCII.decode(buffer.duplicate()).toString();
+    }
+}
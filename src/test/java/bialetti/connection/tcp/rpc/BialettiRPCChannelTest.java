@@ -0,0 +1,283 @@
+package bialetti.connection.tcp.rpc;
+
+import bialetti.annotations.methods.BialettiEndMethod;
+import bialetti.annotations.methods.BialettiInitMethod;
+import bialetti.annotations.methods.BialettiRPCMethod;
+import bialetti.codec.BialettiBinaryReader;
+import bialetti.codec.BialettiBinaryWriter;
+import bialetti.codec.BialettiCodec;
+import bialetti.connection.tcp.BialettiTCPConnection;
+import bialetti.exceptions.BialettiCodecException;
+import bialetti.exceptions.BialettiRPCException;
+import bialetti.server.tcp.BialettiRPCServerClient;
+import bialetti.server.tcp.BialettiTCPServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiRPCChannel} and {@link BialettiRPCServerClient} over loopback
+ * @author Alessandro-Salerno
+ */
+public class BialettiRPCChannelTest {
+    /**
+     * How long to wait for a response, in seconds
+     */
+    private static final long RESPONSE_TIMEOUT = 10;
+    /**
+     * Writes and reads integers
+     */
+    private static final BialettiCodec<Integer> INTEGERS = new BialettiCodec<>() {
+        @Override
+        public void encode(Integer message, BialettiBinaryWriter out) { out.writeInt(message); }
+
+        @Override
+        public Integer decode(BialettiBinaryReader in) throws BialettiCodecException { return in.readInt(); }
+    };
+
+    /**
+     * Answers the calls
+     */
+    private TestServer server;
+    /**
+     * Makes the calls
+     */
+    private BialettiRPCChannel channel;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = new TestServer(freePort());
+        server.run();
+        assertTrue(server.awaitStarted(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+
+        channel = new BialettiRPCChannel(new BialettiTCPConnection("localhost", server.getPort()));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.gate.countDown();
+        channel.close();
+        server.stop();
+    }
+
+    @Test
+    public void pipelinedCallsAreMatchedToTheirResponses() throws Exception {
+        int count                                = 1000;
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) results.add(channel.call("square", i, INTEGERS, INTEGERS));
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i * i, (int) results.get(i).get(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, channel.getInFlight());
+    }
+
+    @Test
+    public void callsAreSentWithoutWaitingForResponses() throws Exception {
+        CompletableFuture<ByteBuffer> blocked    = channel.call("block", ByteBuffer.allocate(0));
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        // The server is stuck on the first call, so every other one is still in flight
+        for (int i = 0; i < 100; i++) results.add(channel.call("square", i, INTEGERS, INTEGERS));
+
+        assertTrue(server.blocked.await(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(101, channel.getInFlight());
+        assertFalse(blocked.isDone());
+
+        server.gate.countDown();
+
+        assertNotNull(blocked.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i * i, (int) results.get(i).get(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void rawBytesAreEchoed() throws Exception {
+        ByteBuffer argument = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 });
+        ByteBuffer result   = channel.call("echo", argument).get(RESPONSE_TIMEOUT, TimeUnit.SECONDS);
+
+        assertFalse(argument.hasRemaining());
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }), result);
+    }
+
+    @Test
+    public void failuresAreSentBack() throws Exception {
+        CompletableFuture<Integer> failing = channel.call("fail", 1, INTEGERS, INTEGERS);
+        CompletableFuture<Integer> unknown = channel.call("missing", 1, INTEGERS, INTEGERS);
+        CompletableFuture<Integer> after   = channel.call("square", 3, INTEGERS, INTEGERS);
+
+        Throwable failure = assertThrows(ExecutionException.class, () -> failing.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS)).getCause();
+        assertTrue(failure instanceof BialettiRPCException);
+        assertTrue(failure.getMessage().contains("IllegalStateException: Failed on purpose"), failure.getMessage());
+
+        failure = assertThrows(ExecutionException.class, () -> unknown.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS)).getCause();
+        assertTrue(failure instanceof BialettiRPCException);
+        assertTrue(failure.getMessage().contains("Unknown method \"missing\""), failure.getMessage());
+
+        // The connection survives failed calls
+        assertEquals(9, (int) after.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callsTimeOut() throws Exception {
+        channel.setTimeout(100, TimeUnit.MILLISECONDS);
+        assertEquals(100, channel.getTimeout());
+
+        CompletableFuture<ByteBuffer> blocked = channel.call("block", ByteBuffer.allocate(0));
+        CompletableFuture<Integer> queued     = channel.call("square", 2, INTEGERS, INTEGERS);
+
+        Throwable failure = assertThrows(ExecutionException.class, () -> blocked.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS)).getCause();
+        assertTrue(failure instanceof TimeoutException);
+        failure = assertThrows(ExecutionException.class, () -> queued.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS)).getCause();
+        assertTrue(failure instanceof TimeoutException);
+        assertEquals(0, channel.getInFlight());
+
+        // The late responses are dropped and the next calls get their own
+        server.gate.countDown();
+        channel.setTimeout(0, TimeUnit.SECONDS);
+        assertEquals(16, (int) channel.call("square", 4, INTEGERS, INTEGERS).get(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, channel.getInFlight());
+    }
+
+    @Test
+    public void closingFailsPendingCalls() throws Exception {
+        CompletableFuture<ByteBuffer> blocked = channel.call("block", ByteBuffer.allocate(0));
+        assertTrue(server.blocked.await(RESPONSE_TIMEOUT, TimeUnit.SECONDS));
+
+        channel.close();
+        assertTrue(channel.isClosed());
+
+        Throwable failure = assertThrows(ExecutionException.class, () -> blocked.get(RESPONSE_TIMEOUT, TimeUnit.SECONDS)).getCause();
+        assertTrue(failure instanceof ClosedChannelException);
+
+        CompletableFuture<Integer> late = channel.call("square", 1, INTEGERS, INTEGERS);
+        assertTrue(late.isCompletedExceptionally());
+        assertEquals(0, channel.getInFlight());
+    }
+
+    /**
+     * @return a port nobody is listening on
+     * @throws IOException if no port can be found
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) { return socket.getLocalPort(); }
+    }
+
+    /**
+     * A server whose clients can be held on a gate
+     * @author Alessandro-Salerno
+     */
+    public static class TestServer extends BialettiTCPServer<TestClient> {
+        /**
+         * Holds the calls to "block" until opened
+         */
+        private final CountDownLatch gate = new CountDownLatch(1);
+        /**
+         * Opened once a call to "block" is waiting on the gate
+         */
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        /**
+         * Constructor
+         * @param port the port to listen on
+         */
+        public TestServer(int port) {
+            super(port);
+        }
+
+        @Override
+        public void onStart() { }
+
+        @Override
+        public void onStop() { }
+
+        @Override
+        protected TestClient getNewClient(BialettiTCPConnection connection) {
+            return new TestClient(connection, this);
+        }
+    }
+
+    /**
+     * A client of the {@link TestServer}
+     * @author Alessandro-Salerno
+     */
+    public static class TestClient extends BialettiRPCServerClient<TestServer> {
+        /**
+         * Constructor
+         * @param c the connection
+         * @param s the server
+         */
+        public TestClient(BialettiTCPConnection c, TestServer s) {
+            super(c, s);
+        }
+
+        @Override
+        @BialettiInitMethod
+        public void onConnect() { }
+
+        @Override
+        @BialettiEndMethod
+        public void onClose() { }
+
+        /**
+         * Sends back the argument
+         * @param in the argument
+         * @param out the result
+         */
+        @BialettiRPCMethod
+        public void echo(BialettiBinaryReader in, BialettiBinaryWriter out) {
+            out.writeRaw(in.readRemaining());
+        }
+
+        /**
+         * Squares an integer
+         * @param in the integer
+         * @param out its square
+         * @throws BialettiCodecException if the argument is not an integer
+         */
+        @BialettiRPCMethod
+        public void square(BialettiBinaryReader in, BialettiBinaryWriter out) throws BialettiCodecException {
+            int value = in.readInt();
+            out.writeInt(value * value);
+        }
+
+        /**
+         * Waits for the server's gate to open
+         * @param in ignored
+         * @param out ignored
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        @BialettiRPCMethod
+        public void block(BialettiBinaryReader in, BialettiBinaryWriter out) throws InterruptedException {
+            getServer().blocked.countDown();
+            getServer().gate.await();
+        }
+
+        /**
+         * Always fails
+         * @param in ignored
+         * @param out ignored
+         */
+        @BialettiRPCMethod
+        public void fail(BialettiBinaryReader in, BialettiBinaryWriter out) {
+            throw new IllegalStateException("Failed on purpose");
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package bialetti.connection.udp;
+
+import bialetti.buffer.BialettiPooledBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiUDPFragmenter} and {@link BialettiUDPReassembler}
+ * @author Alessandro-Salerno
+ */
+public class BialettiUDPReassemblerTest {
+    /**
+     * The address fragments come from
+     */
+    private static final SocketAddress SENDER = new InetSocketAddress("127.0.0.1", 4000);
+    /**
+     * The number of bytes carried by every fragment but the last
+     */
+    private static final int PAYLOAD = 100;
+
+    @Test
+    public void messagesSurviveTheLoopback() throws IOException {
+        byte[] message                     = randomBytes(1050, 1);
+        BialettiUDPFragmenter fragmenter   = new BialettiUDPFragmenter(BialettiUDPFragmenter.HEADER + PAYLOAD);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+
+        try (DatagramChannel sender   = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+             DatagramChannel receiver = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            int count = fragmenter.send(sender, receiver.getLocalAddress(), ByteBuffer.wrap(message));
+            assertEquals(11, count);
+
+            ByteBuffer datagram = ByteBuffer.allocate(fragmenter.getMtu());
+
+            for (int i = 0; i < count; i++) {
+                SocketAddress from            = receiver.receive(datagram.clear());
+                BialettiPooledBuffer complete = reassembler.accept(from, datagram.flip());
+
+                if (i < count - 1) {
+                    assertNull(complete);
+                    continue;
+                }
+
+                assertNotNull(complete);
+                assertArrayEquals(message, bytesOf(complete));
+                complete.release();
+            }
+        }
+
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+        assertEquals(0, reassembler.getMalformed());
+    }
+
+    @Test
+    public void fragmentsCanArriveInAnyOrder() {
+        byte[] message                     = randomBytes(777, 2);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+
+        List<ByteBuffer> fragments = fragments(7, message);
+        Collections.shuffle(fragments, new Random(3));
+
+        BialettiPooledBuffer complete = null;
+        for (ByteBuffer fragment : fragments) {
+            assertNull(complete);
+            complete = reassembler.accept(SENDER, fragment);
+        }
+
+        assertNotNull(complete);
+        assertArrayEquals(message, bytesOf(complete));
+        complete.release();
+    }
+
+    @Test
+    public void unfragmentedMessagesAreReturnedRightAway() {
+        byte[] message                     = randomBytes(PAYLOAD - 10, 4);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+
+        BialettiPooledBuffer complete = reassembler.accept(SENDER, fragments(1, message).get(0));
+
+        assertNotNull(complete);
+        assertArrayEquals(message, bytesOf(complete));
+        assertEquals(0, reassembler.getPendingMessages());
+        complete.release();
+    }
+
+    @Test
+    public void duplicatesAreIgnored() {
+        byte[] message                     = randomBytes(250, 5);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+        List<ByteBuffer> fragments         = fragments(9, message);
+
+        assertNull(reassembler.accept(SENDER, fragments.get(0).duplicate()));
+        assertNull(reassembler.accept(SENDER, fragments.get(0).duplicate()));
+        assertNull(reassembler.accept(SENDER, fragments.get(1).duplicate()));
+        assertNull(reassembler.accept(SENDER, fragments.get(1).duplicate()));
+
+        BialettiPooledBuffer complete = reassembler.accept(SENDER, fragments.get(2));
+        assertNotNull(complete);
+        assertArrayEquals(message, bytesOf(complete));
+        complete.release();
+
+        // A late duplicate starts a new partial message, which never completes
+        assertNull(reassembler.accept(SENDER, fragments.get(0)));
+        assertEquals(1, reassembler.getPendingMessages());
+        reassembler.clear();
+        assertEquals(0, reassembler.getPendingBytes());
+    }
+
+    @Test
+    public void lostFragmentsExpire() throws InterruptedException {
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler(4096, 4096, 50, TimeUnit.MILLISECONDS);
+        List<ByteBuffer> fragments         = fragments(11, randomBytes(300, 6));
+
+        assertNull(reassembler.accept(SENDER, fragments.get(0)));
+        assertNull(reassembler.accept(SENDER, fragments.get(2)));
+        assertEquals(1, reassembler.getPendingMessages());
+        assertEquals(300, reassembler.getPendingBytes());
+
+        Thread.sleep(100);
+
+        assertEquals(1, reassembler.expire());
+        assertEquals(1, reassembler.getExpired());
+        assertEquals(0, reassembler.getPendingMessages());
+        assertEquals(0, reassembler.getPendingBytes());
+
+        // The missing fragment alone does not complete anything
+        assertNull(reassembler.accept(SENDER, fragments.get(1)));
+    }
+
+    @Test
+    public void oldestPartialMessagesAreEvicted() {
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler(4096, 500, 5, TimeUnit.SECONDS);
+        List<ByteBuffer> first             = fragments(1, randomBytes(300, 7));
+        List<ByteBuffer> second            = fragments(2, randomBytes(300, 8));
+
+        assertNull(reassembler.accept(SENDER, first.get(0)));
+        assertNull(reassembler.accept(SENDER, second.get(0)));
+
+        assertEquals(1, reassembler.getEvicted());
+        assertEquals(1, reassembler.getPendingMessages());
+        assertEquals(300, reassembler.getPendingBytes());
+
+        // Larger than every partial message together
+        assertNull(reassembler.accept(SENDER, fragments(3, randomBytes(600, 9)).get(0)));
+        assertEquals(2, reassembler.getEvicted());
+        reassembler.clear();
+    }
+
+    @Test
+    public void sendersAreKeptApart() {
+        byte[] message                     = randomBytes(200, 10);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+        SocketAddress other                = new InetSocketAddress("127.0.0.1", 4001);
+
+        assertNull(reassembler.accept(SENDER, fragments(1, message).get(0)));
+        assertNull(reassembler.accept(other, fragments(1, message).get(0)));
+        assertEquals(2, reassembler.getPendingMessages());
+
+        BialettiPooledBuffer complete = reassembler.accept(other, fragments(1, message).get(1));
+        assertNotNull(complete);
+        assertArrayEquals(message, bytesOf(complete));
+        complete.release();
+
+        assertEquals(1, reassembler.getPendingMessages());
+        reassembler.clear();
+    }
+
+    @Test
+    public void malformedFragmentsAreDropped() {
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler(1000, 4096, 5, TimeUnit.SECONDS);
+        byte[] data                        = randomBytes(PAYLOAD, 11);
+
+        // Too short for a header
+        assertMalformed(reassembler, ByteBuffer.allocate(BialettiUDPFragmenter.HEADER - 1), 1);
+        // No fragments, or an index past the count
+        assertMalformed(reassembler, fragment(1, 300, 0, 0, 0, data, PAYLOAD), 2);
+        assertMalformed(reassembler, fragment(1, 300, 300, 3, 3, data, PAYLOAD), 3);
+        // Larger than the largest message
+        assertMalformed(reassembler, fragment(1, 1001, 0, 0, 11, data, PAYLOAD), 4);
+        // An unfragmented message that does not start at 0 or is not whole
+        assertMalformed(reassembler, fragment(1, PAYLOAD, 1, 0, 1, data, PAYLOAD - 1), 5);
+        assertMalformed(reassembler, fragment(1, PAYLOAD + 1, 0, 0, 1, data, PAYLOAD), 6);
+        // An offset that is not where the index puts it
+        assertMalformed(reassembler, fragment(1, 300, 50, 1, 3, data, PAYLOAD), 7);
+        // A last fragment that does not carry the rest of the message
+        assertMalformed(reassembler, fragment(1, 300, 200, 2, 3, data, 50), 8);
+        // More fragments than the payload needs
+        assertMalformed(reassembler, fragment(1, 300, 0, 0, 4, data, PAYLOAD), 9);
+
+        assertEquals(0, reassembler.getPendingMessages());
+    }
+
+    @Test
+    public void fragmentsThatDisagreeWithTheMessageAreDropped() {
+        byte[] message                     = randomBytes(300, 12);
+        BialettiUDPReassembler reassembler = new BialettiUDPReassembler();
+
+        assertNull(reassembler.accept(SENDER, fragment(1, 300, 0, 0, 3, message, PAYLOAD)));
+
+        // Short middle fragment, which would leave stale bytes in the message
+        assertMalformed(reassembler, fragment(1, 300, 100, 1, 3, message, 50), 1);
+        // Another total or number of fragments
+        assertMalformed(reassembler, fragment(1, 301, 100, 1, 3, message, PAYLOAD), 2);
+        assertMalformed(reassembler, fragment(1, 300, 100, 1, 2, message, PAYLOAD), 3);
+        // Another fragment size that fits the same total and count
+        assertMalformed(reassembler, fragment(1, 300, 220, 2, 3, message, 80), 4);
+
+        assertNull(reassembler.accept(SENDER, fragment(1, 300, 100, 1, 3, message, PAYLOAD)));
+        BialettiPooledBuffer complete = reassembler.accept(SENDER, fragment(1, 300, 200, 2, 3, message, PAYLOAD));
+
+        assertNotNull(complete);
+        assertArrayEquals(message, bytesOf(complete));
+        complete.release();
+    }
+
+    /**
+     * Feeds a fragment that must be dropped as malformed
+     * @param reassembler the reassembler
+     * @param fragment the fragment
+     * @param malformed the number of malformed fragments expected afterwards
+     */
+    private static void assertMalformed(BialettiUDPReassembler reassembler, ByteBuffer fragment, int malformed) {
+        assertNull(reassembler.accept(SENDER, fragment));
+        assertFalse(fragment.hasRemaining());
+        assertEquals(malformed, reassembler.getMalformed());
+    }
+
+    /**
+     * Splits a message the way the fragmenter does, {@link #PAYLOAD} bytes per fragment
+     * @param id the message's id
+     * @param message the message
+     * @return the fragments, in order
+     */
+    private static List<ByteBuffer> fragments(int id, byte[] message) {
+        int count                  = Math.max(1, (message.length + PAYLOAD - 1) / PAYLOAD);
+        List<ByteBuffer> fragments = new ArrayList<>();
+
+        for (int index = 0; index < count; index++) {
+            int offset = index * PAYLOAD;
+            fragments.add(fragment(id, message.length, offset, index, count, message, Math.min(PAYLOAD, message.length - offset)));
+        }
+
+        return fragments;
+    }
+
+    /**
+     * Builds a fragment, whose payload is taken from the message at the offset (Or from the start if it does not fit)
+     * @param id the message's id
+     * @param total the message's length
+     * @param offset the fragment's offset
+     * @param index the fragment's index
+     * @param count the number of fragments
+     * @param message the message
+     * @param length the length of the payload
+     * @return the fragment
+     */
+    private static ByteBuffer fragment(int id, int total, int offset, int index, int count, byte[] message, int length) {
+        int from = (offset + length <= message.length) ? offset : 0;
+
+        return ByteBuffer.allocate(BialettiUDPFragmenter.HEADER + length)
+                         .putInt(id)
+                         .putInt(total)
+                         .putInt(offset)
+                         .putShort((short) index)
+                         .putShort((short) count)
+                         .put(message, from, length)
+                         .flip();
+    }
+
+    /**
+     * @param length the number of bytes
+     * @param seed the seed of the random generator
+     * @return random bytes
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * @param message a complete message
+     * @return its bytes
+     */
+    private static byte[] bytesOf(BialettiPooledBuffer message) {
+        ByteBuffer buffer = message.getBuffer().duplicate();
+        byte[] bytes      = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        return bytes;
+    }
+}
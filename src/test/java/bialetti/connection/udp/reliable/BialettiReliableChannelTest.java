@@ -0,0 +1,277 @@
+package bialetti.connection.udp.reliable;
+
+import bialetti.exceptions.BialettiChannelFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiReliableChannel} over loopback, with losses and reordering injected by a
+ * {@link BialettiLossInjector}
+ * @author Alessandro-Salerno
+ */
+public class BialettiReliableChannelTest {
+    /**
+     * How long to wait for a message, in seconds
+     */
+    private static final long RECEIVE_TIMEOUT = 10;
+
+    /**
+     * The UDP channel of the first end
+     */
+    private DatagramChannel socketA;
+    /**
+     * The UDP channel of the second end
+     */
+    private DatagramChannel socketB;
+    /**
+     * The reliable channels created by the test
+     */
+    private final List<BialettiReliableChannel> channels = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        socketA = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        socketB = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        channels.forEach(BialettiReliableChannel::close);
+        socketA.close();
+        socketB.close();
+    }
+
+    @Test
+    public void messagesSurviveLossAndReordering() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 64);
+        BialettiReliableChannel b = open(socketB, socketA, 64);
+
+        BialettiLossInjector lossA = new BialettiLossInjector(0.2, 0.2, 2000, 1);
+        BialettiLossInjector lossB = new BialettiLossInjector(0.2, 0.2, 2000, 2);
+        a.setLossInjector(lossA);
+        b.setLossInjector(lossB);
+
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            a.send("ordered " + i, BialettiDeliveryMode.RELIABLE_ORDERED);
+            a.send("unordered " + i, BialettiDeliveryMode.RELIABLE_UNORDERED);
+        }
+
+        int nextOrdered       = 0;
+        Set<String> unordered = new HashSet<>();
+
+        for (int i = 0; i < 2 * count; i++) {
+            BialettiReliableMessage message = b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(message, "Only " + i + " messages were delivered");
+            assertEquals(socketA.getLocalAddress(), message.getSender());
+
+            if (message.getMode() == BialettiDeliveryMode.RELIABLE_ORDERED) {
+                assertEquals("ordered " + nextOrdered++, message.getString());
+            }
+
+            else assertTrue(unordered.add(message.getString()), "Duplicate " + message.getString());
+        }
+
+        assertEquals(count, nextOrdered);
+        assertEquals(count, unordered.size());
+        assertNull(b.receive(200, TimeUnit.MILLISECONDS));
+
+        assertTrue(lossA.getDropped() > 0 && lossB.getDropped() > 0);
+        assertTrue(lossA.getDelayed() > 0 && lossB.getDelayed() > 0);
+        assertTrue(a.getRetransmissions() > 0);
+        assertTrue(b.getDuplicates() > 0);
+        assertTrue(a.getRoundTripTime(socketB.getLocalAddress()) >= 0);
+        assertEquals(0, a.getUnacknowledged(socketB.getLocalAddress()));
+    }
+
+    @Test
+    public void unreliableMessagesAreDelivered() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 16);
+        BialettiReliableChannel b = open(socketB, socketA, 16);
+
+        a.send("unreliable", BialettiDeliveryMode.UNRELIABLE);
+
+        BialettiReliableMessage message = b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+        assertNotNull(message);
+        assertEquals("unreliable", message.getString());
+        assertEquals(BialettiDeliveryMode.UNRELIABLE, message.getMode());
+        assertEquals(0, a.getUnacknowledged(socketB.getLocalAddress()));
+    }
+
+    @Test
+    public void deadPeersAreGivenUp() throws Exception {
+        CompletableFuture<List<String>> lost = new CompletableFuture<>();
+        BialettiReliableChannel a           = open(socketA, socketB, 4, lost);
+        a.setMaxRetransmissions(2);
+
+        socketB.close();
+        for (int i = 0; i < 6; i++) a.send("message " + i, BialettiDeliveryMode.RELIABLE_ORDERED);
+
+        List<String> undelivered = lost.get(RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(List.of("message 0", "message 1", "message 2", "message 3", "message 4", "message 5"), undelivered);
+        assertEquals(0, a.getSessionCount());
+        assertEquals(0, a.getUnacknowledged(a.getDefaultPeer()));
+    }
+
+    @Test
+    public void forgottenSessionsAreReset() throws Exception {
+        CompletableFuture<List<String>> lost = new CompletableFuture<>();
+        BialettiReliableChannel a           = open(socketA, socketB, 16, lost);
+        BialettiReliableChannel b           = open(socketB, socketA, 16);
+        b.setSessionTimeout(100, TimeUnit.MILLISECONDS);
+
+        a.send("first", BialettiDeliveryMode.RELIABLE_ORDERED);
+        assertEquals("first", b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS).getString());
+
+        // Only the receiver forgets the session
+        awaitSessions(b, 0);
+        assertEquals(1, a.getSessionCount());
+
+        a.send("second", BialettiDeliveryMode.RELIABLE_ORDERED);
+        assertEquals(List.of("second"), lost.get(RECEIVE_TIMEOUT, TimeUnit.SECONDS));
+
+        // A new session starts from scratch
+        a.send("third", BialettiDeliveryMode.RELIABLE_ORDERED);
+        assertEquals("third", b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS).getString());
+    }
+
+    @Test
+    public void idleSessionsAreForgotten() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 16);
+        BialettiReliableChannel b = open(socketB, socketA, 16);
+        a.setSessionTimeout(200, TimeUnit.MILLISECONDS);
+        b.setSessionTimeout(200, TimeUnit.MILLISECONDS);
+
+        a.send("before", BialettiDeliveryMode.RELIABLE_ORDERED);
+        assertEquals("before", b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS).getString());
+
+        awaitSessions(a, 0);
+        awaitSessions(b, 0);
+
+        a.send("after", BialettiDeliveryMode.RELIABLE_ORDERED);
+        assertEquals("after", b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS).getString());
+    }
+
+    @Test
+    public void fullInboxDefersReliableMessages() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 64);
+        BialettiReliableChannel b = open(socketB, socketA, 64);
+        b.setMaxInbox(4);
+
+        for (int i = 0; i < 20; i++) a.send("message " + i, BialettiDeliveryMode.RELIABLE_ORDERED);
+
+        // Let the inbox fill up before receiving
+        Thread.sleep(200);
+
+        for (int i = 0; i < 20; i++) {
+            BialettiReliableMessage message = b.receive(RECEIVE_TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(message, "Only " + i + " messages were delivered");
+            assertEquals("message " + i, message.getString());
+        }
+    }
+
+    @Test
+    public void backlogIsBounded() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 1);
+        a.setMaxBacklog(2);
+        socketB.close();
+
+        // One in the window and two in the backlog
+        for (int i = 0; i < 3; i++) a.send("message " + i, BialettiDeliveryMode.RELIABLE_ORDERED);
+
+        assertThrows(BialettiChannelFullException.class,
+                     () -> a.send("too many", BialettiDeliveryMode.RELIABLE_ORDERED));
+        assertEquals(3, a.getUnacknowledged(a.getDefaultPeer()));
+    }
+
+    @Test
+    public void sessionsAreBounded() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 16);
+        a.setMaxSessions(1);
+
+        a.send("first", BialettiDeliveryMode.UNRELIABLE);
+
+        SocketAddress other = new InetSocketAddress("127.0.0.1", 9);
+        assertThrows(BialettiChannelFullException.class,
+                     () -> a.send(other, ByteBuffer.allocate(1), BialettiDeliveryMode.UNRELIABLE));
+        assertEquals(1, a.getSessionCount());
+    }
+
+    @Test
+    public void oversizedMessagesAreRejected() throws Exception {
+        BialettiReliableChannel a = open(socketA, socketB, 16);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> a.send(ByteBuffer.allocate(a.getMaxMessageSize() + 1), BialettiDeliveryMode.RELIABLE_ORDERED));
+    }
+
+    /**
+     * Opens a reliable channel
+     * @param socket the UDP channel
+     * @param peer the UDP channel of the default peer
+     * @param window the window size
+     * @return the channel
+     * @throws IOException if the address of the peer cannot be read
+     */
+    private BialettiReliableChannel open(DatagramChannel socket, DatagramChannel peer, int window) throws IOException {
+        return open(socket, peer, window, null);
+    }
+
+    /**
+     * Opens a reliable channel that reports the peers it gives up on
+     * @param socket the UDP channel
+     * @param peer the UDP channel of the default peer
+     * @param window the window size
+     * @param lost completed with the undelivered messages when the channel gives up on a peer (May be null)
+     * @return the channel
+     * @throws IOException if the address of the peer cannot be read
+     */
+    private BialettiReliableChannel open(DatagramChannel socket,
+                                         DatagramChannel peer,
+                                         int window,
+                                         CompletableFuture<List<String>> lost) throws IOException {
+        BialettiReliableChannel channel = new BialettiReliableChannel(socket, peer.getLocalAddress(), window, 1472) {
+            @Override
+            protected void onPeerLost(SocketAddress address, List<ByteBuffer> undelivered) {
+                if (lost == null) return;
+
+                List<String> messages = new ArrayList<>();
+                for (ByteBuffer message : undelivered) messages.add(Charset.defaultCharset().decode(message).toString());
+
+                lost.complete(messages);
+            }
+        };
+
+        channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Waits for a channel to forget its peers
+     * @param channel the channel
+     * @param sessions the expected number of peers
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void awaitSessions(BialettiReliableChannel channel, int sessions) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RECEIVE_TIMEOUT);
+
+        while (channel.getSessionCount() != sessions && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(sessions, channel.getSessionCount());
+    }
+}
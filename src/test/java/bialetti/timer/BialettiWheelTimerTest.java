@@ -0,0 +1,161 @@
+package bialetti.timer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link BialettiWheelTimer}
+ * @author Alessandro-Salerno
+ */
+public class BialettiWheelTimerTest {
+    /**
+     * How long to wait for a timeout that should expire, in seconds
+     */
+    private static final long EXPIRY_TIMEOUT = 10;
+
+    /**
+     * The timer of the current test
+     */
+    private BialettiWheelTimer timer;
+
+    @AfterEach
+    public void tearDown() {
+        if (timer != null) timer.close();
+    }
+
+    @Test
+    public void timeoutsNeverExpireEarly() throws InterruptedException {
+        timer = new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 64);
+
+        int count              = 50;
+        CountDownLatch expired = new CountDownLatch(count);
+        AtomicInteger early    = new AtomicInteger();
+        long start             = System.nanoTime();
+
+        for (int i = 0; i < count; i++) {
+            long delay = 10 + 7 * i;
+
+            timer.schedule(() -> {
+                if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) early.incrementAndGet();
+                expired.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(expired.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    public void delaysLongerThanATurnWaitForTheirRound() throws InterruptedException {
+        // A turn is 4 ticks of 20ms, so the timeouts go around the wheel several times
+        timer = new BialettiWheelTimer(20, TimeUnit.MILLISECONDS, 4);
+        assertEquals(4, timer.getWheelSize());
+
+        long start             = System.nanoTime();
+        AtomicLong shortExpiry = new AtomicLong();
+        AtomicLong longExpiry  = new AtomicLong();
+        CountDownLatch expired = new CountDownLatch(2);
+
+        timer.schedule(() -> { longExpiry.set(System.nanoTime() - start); expired.countDown(); }, 330, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> { shortExpiry.set(System.nanoTime() - start); expired.countDown(); }, 90, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(shortExpiry.get() >= TimeUnit.MILLISECONDS.toNanos(90), "Short timeout after " + shortExpiry.get());
+        assertTrue(longExpiry.get() >= TimeUnit.MILLISECONDS.toNanos(330), "Long timeout after " + longExpiry.get());
+        assertTrue(shortExpiry.get() < longExpiry.get());
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverRun() throws InterruptedException {
+        timer = new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+
+        AtomicInteger ran                 = new AtomicInteger();
+        BialettiWheelTimer.Timeout first  = timer.schedule(ran::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        CountDownLatch expired            = new CountDownLatch(1);
+        BialettiWheelTimer.Timeout second = timer.schedule(expired::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, timer.getPending());
+        assertTrue(first.cancel());
+        assertFalse(first.cancel());
+        assertTrue(first.isCancelled());
+        assertEquals(1, timer.getPending());
+
+        // The cancelled timeout shares the wheel with one that expires after it
+        assertTrue(expired.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+        assertFalse(first.isExpired());
+
+        // Expired timeouts cannot be cancelled
+        assertTrue(second.isExpired());
+        assertFalse(second.cancel());
+        assertFalse(second.isCancelled());
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    public void lateTimeoutsExpireInTheCurrentTick() throws InterruptedException {
+        // Long ticks and a large burst, so that part of it is only placed on the wheel after its tick has passed
+        timer = new BialettiWheelTimer(100, TimeUnit.MILLISECONDS, 16);
+
+        CountDownLatch tick = new CountDownLatch(1);
+        timer.schedule(tick::countDown, 0, TimeUnit.MILLISECONDS);
+        assertTrue(tick.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+
+        int count              = 250_000;
+        CountDownLatch expired = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) timer.schedule(expired::countDown, 0, TimeUnit.MILLISECONDS);
+
+        // A late timeout placed in the bucket of its deadline would wait for a whole turn (1.6s)
+        long start = System.nanoTime();
+        assertTrue(expired.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(1000), "Expired after " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    public void pendingCountsWaitingTimeouts() throws InterruptedException {
+        timer = new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 8);
+        List<BialettiWheelTimer.Timeout> timeouts = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) timeouts.add(timer.schedule(() -> { }, 1, TimeUnit.HOURS));
+        assertEquals(10, timer.getPending());
+
+        for (int i = 0; i < 4; i++) timeouts.get(i).cancel();
+        assertEquals(6, timer.getPending());
+
+        // Failing tasks count as expired and do not stop the wheel
+        CountDownLatch expired = new CountDownLatch(1);
+        timer.schedule(() -> { throw new IllegalStateException("Failed on purpose"); }, 0, TimeUnit.MILLISECONDS);
+        timer.schedule(expired::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(EXPIRY_TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(6, timer.getPending());
+    }
+
+    @Test
+    public void closedTimersRejectTimeouts() {
+        timer = new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 5);
+
+        assertEquals(8, timer.getWheelSize());
+        assertEquals(10, timer.getTickDuration());
+
+        timer.close();
+        assertTrue(timer.isClosed());
+        assertThrows(IllegalStateException.class, () -> timer.schedule(() -> { }, 1, TimeUnit.SECONDS));
+
+        assertThrows(IllegalArgumentException.class, () -> new BialettiWheelTimer(0, TimeUnit.MILLISECONDS, 8));
+        assertThrows(IllegalArgumentException.class, () -> new BialettiWheelTimer(10, TimeUnit.MILLISECONDS, 0));
+    }
+}